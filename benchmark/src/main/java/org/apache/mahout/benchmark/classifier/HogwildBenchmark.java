@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.classifier;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.classifier.OnlineLearner;
+import org.apache.mahout.classifier.evaluation.Auc;
+import org.apache.mahout.classifier.sgd.AbstractOnlineLogisticRegression;
+import org.apache.mahout.classifier.sgd.HogwildTrainer;
+import org.apache.mahout.classifier.sgd.L1;
+import org.apache.mahout.classifier.sgd.OnlineLogisticRegression;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long {@link HogwildTrainer} with a given number of threads takes for one pass over a training set,
+ * compared to a single-threaded {@link OnlineLogisticRegression}. The examples are sparse binary vectors that look
+ * like hashed text features: a few features occur in most examples, most features are rare. The targets are drawn
+ * from a logistic model with random weights. Every pass trains a new model, and the AUC of the last one on the held
+ * out tenth of the examples is printed after each iteration, so that the speed up can be weighed against the
+ * accuracy lost to the unsynchronized updates. The sequential baseline does not depend on {@code numThreads}, so
+ * it is best run with {@code -p trainer=SEQUENTIAL -p numThreads=1} on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HogwildBenchmark {
+
+  public enum Trainer {
+    SEQUENTIAL, HOGWILD
+  }
+
+  @Param({"SEQUENTIAL", "HOGWILD"})
+  public Trainer trainer;
+
+  /** number of threads training the model, for {@link Trainer#HOGWILD} */
+  @Param({"1", "2", "4"})
+  public int numThreads;
+
+  /** number of examples, a tenth of which is held out */
+  @Param("200000")
+  public int numExamples;
+
+  /** number of hashed features */
+  @Param("10000")
+  public int numFeatures;
+
+  /** number of features set in each example */
+  @Param("50")
+  public int featuresPerExample;
+
+  private Vector[] instances;
+  private int[] targets;
+  private int numTraining;
+  private OnlineLearner learner;
+  private AbstractOnlineLogisticRegression model;
+
+  @Setup(Level.Trial)
+  public void createExamples() {
+    Random random = new Random(42);
+    Vector weights = new DenseVector(numFeatures);
+    for (int j = 0; j < numFeatures; j++) {
+      weights.setQuick(j, random.nextGaussian());
+    }
+    instances = new Vector[numExamples];
+    targets = new int[numExamples];
+    for (int n = 0; n < numExamples; n++) {
+      Vector instance = new RandomAccessSparseVector(numFeatures, featuresPerExample);
+      for (int k = 0; k < featuresPerExample; k++) {
+        double r = random.nextDouble();
+        instance.setQuick((int) (r * r * r * numFeatures), 1);
+      }
+      instances[n] = instance;
+      double p = 1 / (1 + Math.exp(-weights.dot(instance)));
+      targets[n] = random.nextDouble() < p ? 1 : 0;
+    }
+    numTraining = numExamples - numExamples / 10;
+  }
+
+  @Setup(Level.Invocation)
+  public void createModel() {
+    model = new OnlineLogisticRegression(2, numFeatures, new L1()).lambda(1.0e-6).learningRate(1);
+    learner = trainer == Trainer.HOGWILD ? new HogwildTrainer(model, numThreads) : model;
+  }
+
+  @Benchmark
+  public AbstractOnlineLogisticRegression train() {
+    for (int n = 0; n < numTraining; n++) {
+      learner.train(targets[n], instances[n]);
+    }
+    learner.close();
+    return model;
+  }
+
+  @TearDown(Level.Iteration)
+  public void printAuc() {
+    Auc auc = new Auc();
+    for (int n = numTraining; n < instances.length; n++) {
+      auc.add(targets[n], model.classifyScalar(instances[n]));
+    }
+    System.out.println("AUC: " + auc.auc());
+  }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.classifier;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.classifier.sgd.L1;
+import org.apache.mahout.classifier.sgd.OnlineLogisticRegression;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link OnlineLogisticRegression#train(int, Vector)} for one example at a time, for each kind of instance
+ * vector and for two and for five categories. Run it with the gc profiler to see how many bytes training allocates
+ * per example once it is warmed up, which is reported as {@code gc.alloc.rate.norm}:
+ *
+ * <pre>
+ * java -jar benchmark/target/mahout-benchmarks.jar TrainingAllocationBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainingAllocationBenchmark {
+
+  private static final int NUM_FEATURES = 10000;
+  private static final int FEATURES_PER_EXAMPLE = 50;
+  private static final int NUM_INSTANCES = 1000;
+
+  public enum VectorType {
+    RANDOM_ACCESS_SPARSE, SEQUENTIAL_ACCESS_SPARSE, DENSE
+  }
+
+  @Param({"RANDOM_ACCESS_SPARSE", "SEQUENTIAL_ACCESS_SPARSE", "DENSE"})
+  public VectorType vectorType;
+
+  @Param({"2", "5"})
+  public int numCategories;
+
+  private Vector[] instances;
+  private OnlineLogisticRegression model;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    instances = new Vector[NUM_INSTANCES];
+    for (int n = 0; n < NUM_INSTANCES; n++) {
+      instances[n] = randomInstance(random);
+    }
+    model = new OnlineLogisticRegression(numCategories, NUM_FEATURES, new L1());
+  }
+
+  @Benchmark
+  public void train() {
+    model.train(next % numCategories, instances[next]);
+    next = (next + 1) % NUM_INSTANCES;
+  }
+
+  private Vector randomInstance(Random random) {
+    Vector instance;
+    switch (vectorType) {
+      case RANDOM_ACCESS_SPARSE:
+        instance = new RandomAccessSparseVector(NUM_FEATURES, FEATURES_PER_EXAMPLE);
+        break;
+      case SEQUENTIAL_ACCESS_SPARSE:
+        instance = new SequentialAccessSparseVector(NUM_FEATURES, FEATURES_PER_EXAMPLE);
+        break;
+      default:
+        instance = new DenseVector(NUM_FEATURES);
+        break;
+    }
+    for (int k = 0; k < FEATURES_PER_EXAMPLE; k++) {
+      instance.setQuick(random.nextInt(NUM_FEATURES), 1);
+    }
+    return instance;
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cache-blocked {@link DenseMatrix#times(DenseMatrix, int)} and
+ * {@link DenseMatrix#transposeTimes(DenseMatrix, int)} with the naive triple loop over
+ * {@link Matrix#getQuick(int, int)} which {@link DenseMatrix} used to inherit, for square matrices.  The naive loop
+ * always runs in the calling thread and takes seconds for the biggest default size, so bigger sizes are better
+ * measured without it, e.g. with {@code -p size=2000,4000 blocked transposeBlocked}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DenseMatrixMultiplyBenchmark {
+
+  @Param({"100", "500", "1000"})
+  public int size;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private DenseMatrix a;
+  private DenseMatrix b;
+
+  @Setup
+  public void setUp() {
+    Random random = RandomUtils.getRandom(size);
+    a = (DenseMatrix) MatrixBenchmark.randomMatrix(MatrixBenchmark.Implementation.DENSE, size, size, 1.0, random);
+    b = (DenseMatrix) MatrixBenchmark.randomMatrix(MatrixBenchmark.Implementation.DENSE, size, size, 1.0, random);
+  }
+
+  @Benchmark
+  public Matrix naive() {
+    int rows = a.rowSize();
+    int inner = a.columnSize();
+    int columns = b.columnSize();
+    Matrix result = new DenseMatrix(rows, columns);
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < columns; col++) {
+        double sum = 0.0;
+        for (int k = 0; k < inner; k++) {
+          sum += a.getQuick(row, k) * b.getQuick(k, col);
+        }
+        result.setQuick(row, col, sum);
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public Matrix blocked() {
+    return a.times(b, threads);
+  }
+
+  @Benchmark
+  public Matrix transposeBlocked() {
+    return a.transposeTimes(b, threads);
+  }
+
+}
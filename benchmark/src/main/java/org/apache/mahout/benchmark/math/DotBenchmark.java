@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.benchmark.math.VectorBenchmark.Implementation;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Vector#dot(Vector)} for every combination of vector implementations, so that each of the type
+ * specific code paths is covered.  The left operand has the given density, the right one is ten times denser, up to
+ * fully dense.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DotBenchmark {
+
+  @Param({"DENSE", "RANDOM_ACCESS_SPARSE", "SEQUENTIAL_ACCESS_SPARSE"})
+  public Implementation left;
+
+  @Param({"DENSE", "RANDOM_ACCESS_SPARSE", "SEQUENTIAL_ACCESS_SPARSE"})
+  public Implementation right;
+
+  @Param({"1000", "100000"})
+  public int cardinality;
+
+  @Param({"0.001", "0.01", "0.1"})
+  public double density;
+
+  private Vector x;
+  private Vector y;
+
+  @Setup
+  public void setUp() {
+    Random random = RandomUtils.getRandom(31 * left.ordinal() + right.ordinal());
+    x = VectorBenchmark.randomVector(left, cardinality, density, random);
+    y = VectorBenchmark.randomVector(right, cardinality, Math.min(1.0, 10 * density), random);
+  }
+
+  @Benchmark
+  public double dot() {
+    return x.dot(y);
+  }
+
+}
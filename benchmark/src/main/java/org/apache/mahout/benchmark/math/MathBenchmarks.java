@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.math;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks. Accepts the usual JMH command line options, for example a regular expression to select
+ * benchmarks or {@code -p cardinality=1000} to restrict a parameter, but unlike the plain JMH launcher it writes the
+ * results as JSON to {@value #DEFAULT_RESULT_FILE} unless {@code -rf} or {@code -rff} say otherwise, so that the
+ * numbers of different releases can be compared by tools.
+ *
+ * <pre>
+ * mvn -Pbenchmark package
+ * java -jar benchmark/target/mahout-benchmarks.jar VectorBenchmark.dot -rff dot-0.5.json
+ * </pre>
+ */
+public final class MathBenchmarks {
+
+  public static final String DEFAULT_RESULT_FILE = "mahout-benchmarks.json";
+
+  private MathBenchmarks() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+      if (!commandLine.getResult().hasValue()) {
+        options.result(DEFAULT_RESULT_FILE);
+      }
+    }
+    Runner runner = new Runner(options.build());
+    if (commandLine.shouldList()) {
+      runner.list();
+    } else {
+      runner.run();
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SparseColumnMatrix;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the square matrix product {@link Matrix#times(Matrix)} of {@link DenseMatrix}, {@link SparseRowMatrix}
+ * and {@link SparseColumnMatrix}, for every combination of size and density.  {@link TimesVectorBenchmark} covers
+ * the product with a vector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixBenchmark {
+
+  public enum Implementation {
+    DENSE, SPARSE_ROW, SPARSE_COLUMN
+  }
+
+  @Param({"DENSE", "SPARSE_ROW", "SPARSE_COLUMN"})
+  public Implementation implementation;
+
+  @Param({"100", "300"})
+  public int size;
+
+  @Param({"0.01", "0.1", "1.0"})
+  public double density;
+
+  private Matrix a;
+  private Matrix b;
+
+  @Setup
+  public void setUp() {
+    Random random = RandomUtils.getRandom(implementation.ordinal());
+    a = randomMatrix(implementation, size, size, density, random);
+    b = randomMatrix(implementation, size, size, density, random);
+  }
+
+  @Benchmark
+  public Matrix timesMatrix() {
+    return a.times(b);
+  }
+
+  static Matrix randomMatrix(Implementation implementation, int rows, int columns, double density, Random random) {
+    Matrix matrix;
+    switch (implementation) {
+      case DENSE:
+        matrix = new DenseMatrix(rows, columns);
+        break;
+      case SPARSE_ROW:
+        matrix = new SparseRowMatrix(new int[] {rows, columns}, true);
+        break;
+      case SPARSE_COLUMN:
+        matrix = new SparseColumnMatrix(new int[] {rows, columns});
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown implementation: " + implementation);
+    }
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        if (random.nextDouble() < density) {
+          matrix.setQuick(row, column, random.nextGaussian());
+        }
+      }
+    }
+    return matrix;
+  }
+
+}
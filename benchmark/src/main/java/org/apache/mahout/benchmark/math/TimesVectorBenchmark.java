@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Matrix#times(Vector)} for every combination of matrix and vector implementations, sizes and
+ * densities.  The matrices have ten times as many columns as rows, as term-document matrices tend to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimesVectorBenchmark {
+
+  @Param({"DENSE", "SPARSE_ROW", "SPARSE_COLUMN"})
+  public MatrixBenchmark.Implementation matrixImplementation;
+
+  @Param({"DENSE", "RANDOM_ACCESS_SPARSE", "SEQUENTIAL_ACCESS_SPARSE"})
+  public VectorBenchmark.Implementation vectorImplementation;
+
+  @Param({"100", "1000"})
+  public int rows;
+
+  @Param({"0.01", "0.1"})
+  public double density;
+
+  private Matrix a;
+  private Vector v;
+
+  @Setup
+  public void setUp() {
+    Random random = RandomUtils.getRandom(31 * matrixImplementation.ordinal() + vectorImplementation.ordinal());
+    a = MatrixBenchmark.randomMatrix(matrixImplementation, rows, 10 * rows, density, random);
+    v = VectorBenchmark.randomVector(vectorImplementation, 10 * rows, density, random);
+  }
+
+  @Benchmark
+  public Vector times() {
+    return a.times(v);
+  }
+
+}
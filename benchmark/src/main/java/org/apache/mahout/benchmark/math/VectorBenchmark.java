@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.math;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the common {@link Vector} operations of each implementation, for every combination of cardinality
+ * and density (the fraction of non-zero entries). Both operands of the binary operations have the same
+ * implementation and density, but different non-zero positions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+
+  public enum Implementation {
+    DENSE, RANDOM_ACCESS_SPARSE, SEQUENTIAL_ACCESS_SPARSE
+  }
+
+  @Param({"DENSE", "RANDOM_ACCESS_SPARSE", "SEQUENTIAL_ACCESS_SPARSE"})
+  public Implementation implementation;
+
+  @Param({"1000", "100000"})
+  public int cardinality;
+
+  @Param({"0.001", "0.01", "0.1"})
+  public double density;
+
+  private Vector x;
+  private Vector y;
+  private Vector target;
+
+  @Setup
+  public void setUp() {
+    Random random = RandomUtils.getRandom(implementation.ordinal());
+    x = randomVector(implementation, cardinality, density, random);
+    y = randomVector(implementation, cardinality, density, random);
+    target = x.clone();
+  }
+
+  @Benchmark
+  public double dot() {
+    return x.dot(y);
+  }
+
+  @Benchmark
+  public Vector plus() {
+    return x.plus(y);
+  }
+
+  @Benchmark
+  public Vector assignVector() {
+    return target.assign(y);
+  }
+
+  /** negates in place, so the non-zero entries of the target stay the same from one invocation to the next */
+  @Benchmark
+  public Vector assignFunction() {
+    return target.assign(Functions.NEGATE);
+  }
+
+  @Benchmark
+  public double iterateNonZero() {
+    double sum = 0;
+    Iterator<Vector.Element> it = x.iterateNonZero();
+    while (it.hasNext()) {
+      sum += it.next().get();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double getDistanceSquared() {
+    return x.getDistanceSquared(y);
+  }
+
+  static Vector randomVector(Implementation implementation, int cardinality, double density, Random random) {
+    Vector vector;
+    int numNonZeros = (int) Math.ceil(cardinality * density);
+    switch (implementation) {
+      case DENSE:
+        vector = new DenseVector(cardinality);
+        break;
+      case RANDOM_ACCESS_SPARSE:
+        vector = new RandomAccessSparseVector(cardinality, numNonZeros);
+        break;
+      case SEQUENTIAL_ACCESS_SPARSE:
+        vector = new SequentialAccessSparseVector(cardinality, numNonZeros);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown implementation: " + implementation);
+    }
+    for (int i = 0; i < cardinality; i++) {
+      if (random.nextDouble() < density) {
+        vector.setQuick(i, random.nextGaussian());
+      }
+    }
+    return vector;
+  }
+
+}
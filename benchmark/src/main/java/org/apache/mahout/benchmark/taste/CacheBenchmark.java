@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark.taste;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.FastMap;
+import org.apache.mahout.cf.taste.impl.common.Retriever;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link Cache} under contention, compared to a cache guarded by a single lock as
+ * {@link Cache} used to be. Every iteration starts with an empty cache, so it includes the misses for the hot keys
+ * which the threads race to retrieve. The number of threads is best varied on the command line, e.g. with
+ * {@code -t 1}, {@code -t 16} and {@code -t 64} in turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class CacheBenchmark {
+
+  public enum Implementation {
+    SINGLE_LOCK, STRIPED
+  }
+
+  @Param({"SINGLE_LOCK", "STRIPED"})
+  public Implementation implementation;
+
+  /** number of distinct keys that are looked up */
+  @Param("10000")
+  public int numKeys;
+
+  /** maximum number of entries in the cache */
+  @Param("20000")
+  public int maxEntries;
+
+  /** number of arithmetic steps needed to retrieve a value */
+  @Param("10000")
+  public int retrievalCost;
+
+  private Retriever<Long,Long> cache;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    Retriever<Long,Long> retriever = new CostlyRetriever(retrievalCost);
+    cache = implementation == Implementation.STRIPED
+        ? new Cache<Long,Long>(retriever, maxEntries)
+        : new SingleLockCache(retriever, maxEntries);
+  }
+
+  @Benchmark
+  public Long get(Keys keys) throws TasteException {
+    // skew the key distribution, so that a few hot keys get most of the lookups
+    double r = keys.random.nextDouble();
+    return cache.get((long) (r * r * r * numKeys));
+  }
+
+  /**
+   * The keys looked up by a thread.
+   */
+  @State(Scope.Thread)
+  public static class Keys {
+
+    private Random random;
+
+    @Setup
+    public void setUp() {
+      random = new Random(Thread.currentThread().getId());
+    }
+  }
+
+  /**
+   * Simulates an expensive computation like a similarity.
+   */
+  private static final class CostlyRetriever implements Retriever<Long,Long> {
+
+    private final int cost;
+
+    private CostlyRetriever(int cost) {
+      this.cost = cost;
+    }
+
+    @Override
+    public Long get(Long key) {
+      long value = key;
+      for (int i = 0; i < cost; i++) {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+      }
+      return value;
+    }
+  }
+
+  /**
+   * The baseline: every lookup goes through one lock, and concurrent misses for a key all invoke the
+   * {@link Retriever}.
+   */
+  private static final class SingleLockCache implements Retriever<Long,Long> {
+
+    private final FastMap<Long,Long> cache;
+    private final Retriever<Long,Long> retriever;
+
+    private SingleLockCache(Retriever<Long,Long> retriever, int maxEntries) {
+      this.cache = new FastMap<Long,Long>(11, maxEntries);
+      this.retriever = retriever;
+    }
+
+    @Override
+    public Long get(Long key) throws TasteException {
+      Long value;
+      synchronized (cache) {
+        value = cache.get(key);
+      }
+      if (value == null) {
+        value = retriever.get(key);
+        synchronized (cache) {
+          cache.put(key, value);
+        }
+      }
+      return value;
+    }
+  }
+
+}
@@ -64,6 +64,7 @@ public final class PrefAndSimilarityColumnWritable implements Writable {
     out.writeFloat(prefValue);
     VectorWritable vw = new VectorWritable(similarityColumn);
     vw.setWritesLaxPrecision(true);
+    vw.setWritesDictionary(true);
     vw.write(out);
   }
 
@@ -60,6 +60,7 @@ public final class ToUserVectorReducer extends
 
     VectorWritable vw = new VectorWritable(userVector);
     vw.setWritesLaxPrecision(true);
+    vw.setWritesDictionary(true);
     context.write(userID, vw);
   }
   
@@ -59,6 +59,7 @@ public final class VectorAndPrefsWritable implements Writable {
   public void write(DataOutput out) throws IOException {
     VectorWritable vw = new VectorWritable(vector);
     vw.setWritesLaxPrecision(true);
+    vw.setWritesDictionary(true);
     vw.write(out);
     Varint.writeUnsignedVarInt(userIDs.size(), out);
     for (int i = 0; i < userIDs.size(); i++) {
@@ -79,6 +79,7 @@ public final class VectorOrPrefWritable implements Writable {
       out.writeBoolean(true);
       VectorWritable vw = new VectorWritable(vector);
       vw.setWritesLaxPrecision(true);
+      vw.setWritesDictionary(true);
       vw.write(out);
     }
   }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.hadoop.similarity.item;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.cf.taste.hadoop.TasteHadoopUtils;
+import org.apache.mahout.cf.taste.impl.similarity.file.MemoryMappedItemSimilarity;
+import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.common.FileLineIterator;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.map.OpenIntLongHashMap;
+
+/**
+ * <p>Builds a {@link MemoryMappedItemSimilarity} index on the local file system from the output of
+ * {@link ItemSimilarityJob}, or from a similarity matrix written by
+ * {@link org.apache.mahout.math.hadoop.similarity.RowSimilarityJob}.</p>
+ *
+ * <p>Command line arguments specific to this class are:</p>
+ *
+ * <ol>
+ * <li>-Dmapred.input.dir=(path): Directory containing the similarities</li>
+ * <li>--indexFile (path): local file to write the index to</li>
+ * <li>--similarityMatrix (boolean): Input is a similarity matrix of rows keyed by {@link IntWritable} instead of
+ *  the item pairs written by {@link ItemSimilarityJob} (false)</li>
+ * <li>--itemIDIndex (path): Directory containing the mapping from matrix indices to item IDs, like the
+ *  "itemIDIndex" in the temp directory of {@link ItemSimilarityJob}; without it, indices are taken as item IDs</li>
+ * </ol>
+ *
+ * <p>General command line options are documented in {@link AbstractJob}.</p>
+ */
+public final class ItemSimilarityIndexBuilder extends AbstractJob {
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new ItemSimilarityIndexBuilder(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws IOException {
+
+    addInputOption();
+    addOption("indexFile", "if", "local file to write the index to", true);
+    addOption("similarityMatrix", "sm", "Input is a similarity matrix as written by RowSimilarityJob",
+        Boolean.FALSE.toString());
+    addOption("itemIDIndex", "iii", "mapping from matrix indices to item IDs (optional)");
+
+    Map<String,String> parsedArgs = parseArguments(args);
+    if (parsedArgs == null) {
+      return -1;
+    }
+
+    File indexFile = new File(parsedArgs.get("--indexFile"));
+    if (Boolean.valueOf(parsedArgs.get("--similarityMatrix"))) {
+      String itemIDIndex = parsedArgs.get("--itemIDIndex");
+      fromSimilarityMatrix(getInputPath(), itemIDIndex == null ? null : new Path(itemIDIndex), getConf(),
+          indexFile);
+    } else {
+      fromItemPairs(getInputPath(), getConf(), indexFile);
+    }
+    return 0;
+  }
+
+  /**
+   * reads the text output of {@link ItemSimilarityJob}, lines of two item IDs and their similarity
+   */
+  public static void fromItemPairs(Path input, Configuration conf, File indexFile) throws IOException {
+    MemoryMappedItemSimilarity.Builder builder = new MemoryMappedItemSimilarity.Builder();
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    for (FileStatus status : fs.listStatus(input, TasteHadoopUtils.PARTS_FILTER)) {
+      FileLineIterator lines = new FileLineIterator(fs.open(status.getPath()));
+      try {
+        while (lines.hasNext()) {
+          String[] tokens = TasteHadoopUtils.splitPrefTokens(lines.next());
+          builder.add(Long.parseLong(tokens[0]), Long.parseLong(tokens[1]), Double.parseDouble(tokens[2]));
+        }
+      } finally {
+        lines.close();
+      }
+    }
+    builder.write(indexFile);
+  }
+
+  /**
+   * reads a similarity matrix, a sequence file of rows keyed by {@link IntWritable}
+   *
+   * @param itemIDIndex mapping from row and column indices to item IDs, as written by {@link ItemSimilarityJob},
+   *  or null if the indices are the item IDs
+   */
+  public static void fromSimilarityMatrix(Path input, Path itemIDIndex, Configuration conf, File indexFile)
+    throws IOException {
+    OpenIntLongHashMap indexItemIDMap =
+        itemIDIndex == null ? null : TasteHadoopUtils.readItemIDIndexMap(itemIDIndex.toString(), conf);
+    MemoryMappedItemSimilarity.Builder builder = new MemoryMappedItemSimilarity.Builder();
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    IntWritable row = new IntWritable();
+    VectorWritable similarities = new VectorWritable();
+    for (FileStatus status : fs.listStatus(input, TasteHadoopUtils.PARTS_FILTER)) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+      try {
+        while (reader.next(row, similarities)) {
+          long itemID = toItemID(indexItemIDMap, row.get());
+          Iterator<Vector.Element> elements = similarities.get().iterateNonZero();
+          while (elements.hasNext()) {
+            Vector.Element element = elements.next();
+            builder.add(itemID, toItemID(indexItemIDMap, element.index()), element.get());
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    builder.write(indexFile);
+  }
+
+  private static long toItemID(OpenIntLongHashMap indexItemIDMap, int index) {
+    return indexItemIDMap == null ? index : indexItemIDMap.get(index);
+  }
+
+}
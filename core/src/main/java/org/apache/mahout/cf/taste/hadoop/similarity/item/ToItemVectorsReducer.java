@@ -39,6 +39,7 @@ public class ToItemVectorsReducer
     }
     VectorWritable vectorWritable = new VectorWritable(vector);
     vectorWritable.setWritesLaxPrecision(true);
+    vectorWritable.setWritesDictionary(true);
     ctx.write(rowIndex, vectorWritable);
   }
 }
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes primitive values to a {@link FileChannel} at a given position through a small buffer, so that arbitrarily
+ * large arrays can be written without holding them on the heap.
+ */
+public final class BufferedChannelWriter {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  /** position in the file of the first byte in the buffer */
+  private long position;
+
+  public BufferedChannelWriter(FileChannel channel, long position) {
+    this.channel = channel;
+    this.position = position;
+  }
+
+  public void writeLong(long value) throws IOException {
+    if (buffer.remaining() < 8) {
+      flush();
+    }
+    buffer.putLong(value);
+  }
+
+  public void writeFloat(float value) throws IOException {
+    if (buffer.remaining() < 4) {
+      flush();
+    }
+    buffer.putFloat(value);
+  }
+
+  public void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    buffer.clear();
+  }
+
+}
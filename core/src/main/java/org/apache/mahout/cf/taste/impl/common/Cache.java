@@ -20,7 +20,10 @@ package org.apache.mahout.cf.taste.impl.common;
 import com.google.common.base.Preconditions;
 import org.apache.mahout.cf.taste.common.TasteException;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * <p>
@@ -32,6 +35,13 @@ import java.util.Iterator;
  * <p>
  * The cache does not support <code>null</code> keys.
  * </p>
+ *
+ * <p>
+ * Keys are spread over a number of independently locked segments, so that threads working on different keys
+ * rarely contend. No lock is held while the {@link Retriever} computes a value, and concurrent requests for a key
+ * that is not cached yet are answered by a single call to the {@link Retriever}: the first thread loads the value
+ * while the others wait for its result.
+ * </p>
  * 
  * <p>
  * Thanks to Amila Jayasooriya for helping evaluate performance of the rewrite of this class, as part of a
@@ -41,8 +51,13 @@ import java.util.Iterator;
 public final class Cache<K,V> implements Retriever<K,V> {
 
   private static final Object NULL = new Object();
-  
-  private final FastMap<K,V> cache;
+
+  /** default number of segments, the actual number never exceeds the maximum number of entries */
+  public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+  private static final int MAX_CONCURRENCY_LEVEL = 1 << 16;
+
+  private final Segment<K>[] segments;
+  private final int segmentShift;
   private final Retriever<? super K,? extends V> retriever;
   
   /**
@@ -68,10 +83,50 @@ public final class Cache<K,V> implements Retriever<K,V> {
    *          maximum number of entries the cache will store before evicting some
    */
   public Cache(Retriever<? super K,? extends V> retriever, int maxEntries) {
+    this(retriever, maxEntries, DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /**
+   * <p>
+   * Creates a new cache based on the given {@link Retriever}, with given maximum size and number of segments.
+   * </p>
+   *
+   * @param retriever
+   *          object which can retrieve values for keys
+   * @param maxEntries
+   *          maximum number of entries the cache will store before evicting some
+   * @param concurrencyLevel
+   *          estimated number of threads using the cache concurrently, rounded up to a power of two
+   */
+  public Cache(Retriever<? super K,? extends V> retriever, int maxEntries, int concurrencyLevel) {
     Preconditions.checkArgument(retriever != null, "retriever is null");
     Preconditions.checkArgument(maxEntries >= 1, "maxEntries must be at least 1");
-    cache = new FastMap<K, V>(11, maxEntries);
+    Preconditions.checkArgument(concurrencyLevel >= 1, "concurrencyLevel must be at least 1");
     this.retriever = retriever;
+
+    int numSegments = 1;
+    int shift = 32;
+    int maxSegments = Math.min(Math.min(concurrencyLevel, maxEntries), MAX_CONCURRENCY_LEVEL);
+    while (numSegments < maxSegments) {
+      numSegments <<= 1;
+      shift--;
+    }
+    if (numSegments > maxEntries) {
+      numSegments >>= 1;
+      shift++;
+    }
+    segmentShift = shift;
+
+    int maxEntriesPerSegment = maxEntries == FastMap.NO_MAX_SIZE
+        ? FastMap.NO_MAX_SIZE
+        : (maxEntries + numSegments - 1) / numSegments;
+    // arrays of a generic type can only be created with a wildcard type
+    @SuppressWarnings("unchecked")
+    Segment<K>[] newSegments = (Segment<K>[]) new Segment<?>[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      newSegments[i] = new Segment<K>(maxEntriesPerSegment);
+    }
+    segments = newSegments;
   }
   
   /**
@@ -87,14 +142,23 @@ public final class Cache<K,V> implements Retriever<K,V> {
    */
   @Override
   public V get(K key) throws TasteException {
-    V value;
-    synchronized (cache) {
-      value = cache.get(key);
-    }
-    if (value == null) {
-      return getAndCacheValue(key);
+    Segment<K> segment = segmentFor(key);
+    Object value;
+    PendingValue pending;
+    boolean loadHere = false;
+    synchronized (segment) {
+      value = segment.cache.get(key);
+      if (value != null) {
+        return unwrap(value);
+      }
+      pending = segment.pending.get(key);
+      if (pending == null) {
+        pending = new PendingValue();
+        segment.pending.put(key, pending);
+        loadHere = true;
+      }
     }
-    return value == NULL ? null : value;
+    return loadHere ? getAndCacheValue(segment, key, pending) : unwrap(pending.await());
   }
   
   /**
@@ -106,8 +170,10 @@ public final class Cache<K,V> implements Retriever<K,V> {
    *          cache key
    */
   public void remove(K key) {
-    synchronized (cache) {
-      cache.remove(key);
+    Segment<K> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.cache.remove(key);
+      segment.pending.remove(key);
     }
   }
 
@@ -115,12 +181,20 @@ public final class Cache<K,V> implements Retriever<K,V> {
    * Clears all cache entries whose key matches the given predicate.
    */
   public void removeKeysMatching(MatchPredicate<K> predicate) {
-    synchronized (cache) {
-      Iterator<K> it = cache.keySet().iterator();
-      while (it.hasNext()) {
-        K key = it.next();
-        if (predicate.matches(key)) {
-          it.remove();
+    for (Segment<K> segment : segments) {
+      synchronized (segment) {
+        Iterator<K> it = segment.cache.keySet().iterator();
+        while (it.hasNext()) {
+          K key = it.next();
+          if (predicate.matches(key)) {
+            it.remove();
+          }
+        }
+        it = segment.pending.keySet().iterator();
+        while (it.hasNext()) {
+          if (predicate.matches(it.next())) {
+            it.remove();
+          }
         }
       }
     }
@@ -130,12 +204,13 @@ public final class Cache<K,V> implements Retriever<K,V> {
    * Clears all cache entries whose value matches the given predicate.
    */
   public void removeValueMatching(MatchPredicate<V> predicate) {
-    synchronized (cache) {
-      Iterator<V> it = cache.values().iterator();
-      while (it.hasNext()) {
-        V value = it.next();
-        if (predicate.matches(value)) {
-          it.remove();
+    for (Segment<K> segment : segments) {
+      synchronized (segment) {
+        Iterator<Object> it = segment.cache.values().iterator();
+        while (it.hasNext()) {
+          if (predicate.matches(unwrap(it.next()))) {
+            it.remove();
+          }
         }
       }
     }
@@ -147,20 +222,78 @@ public final class Cache<K,V> implements Retriever<K,V> {
    * </p>
    */
   public void clear() {
-    synchronized (cache) {
-      cache.clear();
+    for (Segment<K> segment : segments) {
+      synchronized (segment) {
+        segment.cache.clear();
+        segment.pending.clear();
+      }
     }
   }
-  
-  private V getAndCacheValue(K key) throws TasteException {
-    V value = retriever.get(key);
+
+  private Segment<K> segmentFor(Object key) {
+    if (segments.length == 1) {
+      return segments[0];
+    }
+    // spread the bits so that keys with similar hash codes end up in different segments
+    int hash = key.hashCode();
+    hash += (hash << 15) ^ 0xffffcd7d;
+    hash ^= hash >>> 10;
+    hash += hash << 3;
+    hash ^= hash >>> 6;
+    hash += (hash << 2) + (hash << 14);
+    hash ^= hash >>> 16;
+    return segments[hash >>> segmentShift];
+  }
+
+  private V getAndCacheValue(Segment<K> segment, K key, PendingValue pending) throws TasteException {
+    Object value;
+    try {
+      value = retriever.get(key);
+    } catch (Throwable t) {
+      // whatever went wrong, the threads waiting for this key must not wait forever
+      abandon(segment, key, pending, t);
+      throw rethrow(t);
+    }
     if (value == null) {
-      value = (V) NULL;
+      value = NULL;
     }
-    synchronized (cache) {
-      cache.put(key, value);
+    synchronized (segment) {
+      // only cache the value if the key has not been removed while it was being retrieved
+      if (segment.pending.get(key) == pending) {
+        segment.pending.remove(key);
+        segment.cache.put(key, value);
+      }
+    }
+    pending.set(value);
+    return unwrap(value);
+  }
+
+  private static <K> void abandon(Segment<K> segment, K key, PendingValue pending, Throwable cause) {
+    synchronized (segment) {
+      if (segment.pending.get(key) == pending) {
+        segment.pending.remove(key);
+      }
     }
-    return value;
+    pending.fail(cause);
+  }
+
+  /**
+   * Throws an unchecked failure of the {@link Retriever} as is, and returns any other to be thrown.
+   */
+  private static TasteException rethrow(Throwable failure) {
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    return failure instanceof TasteException ? (TasteException) failure : new TasteException(failure);
+  }
+
+  // only values of the Retriever are cached, besides NULL
+  @SuppressWarnings("unchecked")
+  private V unwrap(Object value) {
+    return value == NULL ? null : (V) value;
   }
   
   @Override
@@ -174,5 +307,53 @@ public final class Cache<K,V> implements Retriever<K,V> {
   public interface MatchPredicate<T> {
     boolean matches(T thing);
   }
+
+  /**
+   * A part of the cache holding the cached values and the values being retrieved for a subset of the keys. All
+   * access happens while holding the segment's monitor.
+   */
+  private static final class Segment<K> {
+
+    private final FastMap<K,Object> cache;
+    private final Map<K,PendingValue> pending;
+
+    private Segment(int maxEntries) {
+      cache = new FastMap<K,Object>(11, maxEntries);
+      pending = new HashMap<K,PendingValue>();
+    }
+  }
+
+  /**
+   * A value that is being retrieved by one thread and waited for by others that requested the same key.
+   */
+  private static final class PendingValue {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Object value;
+    private Throwable failure;
+
+    void set(Object value) {
+      this.value = value;
+      done.countDown();
+    }
+
+    void fail(Throwable failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+
+    Object await() throws TasteException {
+      try {
+        done.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new TasteException(ie);
+      }
+      if (failure != null) {
+        throw rethrow(failure);
+      }
+      return value;
+    }
+  }
   
 }
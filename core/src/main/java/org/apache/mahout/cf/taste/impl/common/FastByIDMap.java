@@ -306,16 +306,17 @@ public final class FastByIDMap<V> implements Serializable, Cloneable {
   
   @Override
   public FastByIDMap<V> clone() {
-    FastByIDMap<V> clone;
     try {
-      clone = (FastByIDMap<V>) super.clone();
+      // super.clone() returns a copy of this map, so it holds values of type V as well
+      @SuppressWarnings("unchecked")
+      FastByIDMap<V> clone = (FastByIDMap<V>) super.clone();
+      clone.keys = keys.clone();
+      clone.values = values.clone();
+      clone.recentlyAccessed = countingAccesses ? new BitSet(keys.length) : null;
+      return clone;
     } catch (CloneNotSupportedException cnse) {
       throw new AssertionError();
     }
-    clone.keys = keys.clone();
-    clone.values = values.clone();
-    clone.recentlyAccessed = countingAccesses ? new BitSet(keys.length) : null;
-    return clone;
   }
   
   @Override
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only array of floats in a memory-mapped file, mapped in chunks like {@link MappedLongArray}.
+ */
+public final class MappedFloatArray {
+
+  private static final int CHUNK_SHIFT = 28;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final FloatBuffer[] chunks;
+
+  /**
+   * @param position offset of the first element in the file, in bytes
+   * @param length number of elements
+   */
+  public MappedFloatArray(FileChannel channel, long position, long length) throws IOException {
+    int numChunks = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+    chunks = new FloatBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      long start = (long) i << CHUNK_SHIFT;
+      long chunkLength = Math.min(length - start, 1L << CHUNK_SHIFT);
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start * 4, chunkLength * 4).asFloatBuffer();
+    }
+  }
+
+  public float get(long index) {
+    return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+  }
+
+}
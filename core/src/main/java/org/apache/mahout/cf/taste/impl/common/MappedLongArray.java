@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only array of longs in a memory-mapped file. Mappings are limited to 2GB, so large arrays are mapped in
+ * chunks.
+ */
+public final class MappedLongArray {
+
+  private static final int CHUNK_SHIFT = 27;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final LongBuffer[] chunks;
+  private final long length;
+
+  /**
+   * @param position offset of the first element in the file, in bytes
+   * @param length number of elements
+   */
+  public MappedLongArray(FileChannel channel, long position, long length) throws IOException {
+    this.length = length;
+    int numChunks = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+    chunks = new LongBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      long start = (long) i << CHUNK_SHIFT;
+      long chunkLength = Math.min(length - start, 1L << CHUNK_SHIFT);
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start * 8, chunkLength * 8).asLongBuffer();
+    }
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public long get(long index) {
+    return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+  }
+
+  /**
+   * @return index of key within [from,to), which must be sorted, if present, or else
+   *  <code>-(insertion point) - 1</code>
+   */
+  public long binarySearch(long from, long to, long key) {
+    long low = from;
+    long high = to - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      long value = get(mid);
+      if (value < key) {
+        low = mid + 1;
+      } else if (value > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * @return an iterator over the elements in [from,to), which reads them directly from the mapped file
+   */
+  public LongPrimitiveIterator iterator(long from, long to) {
+    return new MappedLongArrayIterator(from, to);
+  }
+
+  private final class MappedLongArrayIterator implements LongPrimitiveIterator {
+
+    private final long max;
+    private long position;
+
+    private MappedLongArrayIterator(long from, long to) {
+      this.position = from;
+      this.max = to;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return position < max;
+    }
+
+    @Override
+    public Long next() {
+      return nextLong();
+    }
+
+    @Override
+    public long nextLong() {
+      if (position >= max) {
+        throw new NoSuchElementException();
+      }
+      return get(position++);
+    }
+
+    @Override
+    public long peek() {
+      if (position >= max) {
+        throw new NoSuchElementException();
+      }
+      return get(position);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void skip(int n) {
+      if (n > 0) {
+        position += n;
+      }
+    }
+  }
+
+}
@@ -17,6 +17,9 @@
 
 package org.apache.mahout.cf.taste.impl.model;
 
+import java.util.Arrays;
+
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
 
 /**
@@ -50,4 +53,34 @@ public abstract class AbstractDataModel implements DataModel {
     this.minPreference = minPreference;
   }
 
+  /**
+   * @param ids sorted IDs
+   * @param addedIDs IDs to add, none of which is in ids
+   * @param removedIDs IDs to remove from ids
+   * @return sorted IDs after adding and removing the given IDs, in one pass over ids, or ids itself if there are
+   *  none to add or remove
+   */
+  static long[] updateIDs(long[] ids, FastIDSet addedIDs, FastIDSet removedIDs) {
+    if (addedIDs.isEmpty() && removedIDs.isEmpty()) {
+      return ids;
+    }
+    long[] added = addedIDs.toArray();
+    Arrays.sort(added);
+    long[] result = new long[ids.length + added.length - removedIDs.size()];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < ids.length || j < added.length) {
+      if (j == added.length || (i < ids.length && ids[i] < added[j])) {
+        if (!removedIDs.contains(ids[i])) {
+          result[k++] = ids[i];
+        }
+        i++;
+      } else {
+        result[k++] = added[j++];
+      }
+    }
+    return result;
+  }
+
 }
@@ -106,6 +106,18 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
 
     this.timestamps = timestamps;
   }
+
+  private GenericBooleanPrefDataModel(long[] userIDs,
+                                      FastByIDMap<FastIDSet> preferenceFromUsers,
+                                      long[] itemIDs,
+                                      FastByIDMap<FastIDSet> preferenceForItems,
+                                      FastByIDMap<FastByIDMap<Long>> timestamps) {
+    this.userIDs = userIDs;
+    this.preferenceFromUsers = preferenceFromUsers;
+    this.itemIDs = itemIDs;
+    this.preferenceForItems = preferenceForItems;
+    this.timestamps = timestamps;
+  }
   
   /**
    * <p>
@@ -168,6 +180,83 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
     return this.preferenceForItems;
   }
   
+  /**
+   * <p>
+   * Returns a new model with the given changes applied, and leaves this one untouched so that it can go on
+   * serving readers. The maps of ID sets are copied shallowly and only the ID sets of affected users and items are
+   * rebuilt, so this costs time in proportion to the number of users and items plus the preferences of those
+   * affected, not to all data.
+   * </p>
+   *
+   * <p>
+   * This is used mostly internally to the framework, and shouldn't be relied upon otherwise.
+   * </p>
+   *
+   * @param changes maps user IDs to maps of item IDs to new preference values; {@link Float#NaN} removes a
+   *  preference, and any other value adds it
+   * @param newTimestamps timestamps of the new model, which must not be shared with this one where they differ
+   */
+  public GenericBooleanPrefDataModel withChanges(FastByIDMap<FastByIDMap<Float>> changes,
+                                                 FastByIDMap<FastByIDMap<Long>> newTimestamps) {
+    FastByIDMap<FastIDSet> changedUsers = new FastByIDMap<FastIDSet>();
+    FastByIDMap<FastIDSet> changedItems = new FastByIDMap<FastIDSet>();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : changes.entrySet()) {
+      long userID = entry.getKey();
+      FastIDSet itemIDsForUser = copyForChange(userID, preferenceFromUsers, changedUsers);
+      for (Map.Entry<Long,Float> change : entry.getValue().entrySet()) {
+        long itemID = change.getKey();
+        FastIDSet userIDsForItem = copyForChange(itemID, preferenceForItems, changedItems);
+        if (Float.isNaN(change.getValue())) {
+          itemIDsForUser.remove(itemID);
+          userIDsForItem.remove(userID);
+        } else {
+          itemIDsForUser.add(itemID);
+          userIDsForItem.add(userID);
+        }
+      }
+    }
+    FastByIDMap<FastIDSet> newPreferenceFromUsers = preferenceFromUsers.clone();
+    FastIDSet addedUserIDs = new FastIDSet();
+    FastIDSet removedUserIDs = new FastIDSet();
+    install(changedUsers, newPreferenceFromUsers, addedUserIDs, removedUserIDs);
+    FastByIDMap<FastIDSet> newPreferenceForItems = preferenceForItems.clone();
+    FastIDSet addedItemIDs = new FastIDSet();
+    FastIDSet removedItemIDs = new FastIDSet();
+    install(changedItems, newPreferenceForItems, addedItemIDs, removedItemIDs);
+    return new GenericBooleanPrefDataModel(updateIDs(userIDs, addedUserIDs, removedUserIDs),
+                                           newPreferenceFromUsers,
+                                           updateIDs(itemIDs, addedItemIDs, removedItemIDs),
+                                           newPreferenceForItems,
+                                           newTimestamps);
+  }
+
+  private static FastIDSet copyForChange(long id, FastByIDMap<FastIDSet> data, FastByIDMap<FastIDSet> changed) {
+    FastIDSet copy = changed.get(id);
+    if (copy == null) {
+      FastIDSet original = data.get(id);
+      copy = original == null ? new FastIDSet(2) : original.clone();
+      changed.put(id, copy);
+    }
+    return copy;
+  }
+
+  private static void install(FastByIDMap<FastIDSet> changed,
+                              FastByIDMap<FastIDSet> data,
+                              FastIDSet addedIDs,
+                              FastIDSet removedIDs) {
+    for (Map.Entry<Long,FastIDSet> entry : changed.entrySet()) {
+      long id = entry.getKey();
+      FastIDSet ids = entry.getValue();
+      if (ids.isEmpty()) {
+        if (data.remove(id) != null) {
+          removedIDs.add(id);
+        }
+      } else if (data.put(id, ids) == null) {
+        addedIDs.add(id);
+      }
+    }
+  }
+
   @Override
   public LongPrimitiveArrayIterator getUserIDs() {
     return new LongPrimitiveArrayIterator(userIDs);
@@ -136,6 +136,22 @@ public final class GenericDataModel extends AbstractDataModel {
     this.timestamps = timestamps;
   }
 
+  private GenericDataModel(long[] userIDs,
+                           FastByIDMap<PreferenceArray> preferenceFromUsers,
+                           long[] itemIDs,
+                           FastByIDMap<PreferenceArray> preferenceForItems,
+                           FastByIDMap<FastByIDMap<Long>> timestamps,
+                           float minPreference,
+                           float maxPreference) {
+    this.userIDs = userIDs;
+    this.preferenceFromUsers = preferenceFromUsers;
+    this.itemIDs = itemIDs;
+    this.preferenceForItems = preferenceForItems;
+    this.timestamps = timestamps;
+    setMinPreference(minPreference);
+    setMaxPreference(maxPreference);
+  }
+
   /**
    * <p>
    * Creates a new containing an immutable copy of the data from another given
@@ -197,6 +213,122 @@ public final class GenericDataModel extends AbstractDataModel {
     return this.preferenceForItems;
   }
 
+  /**
+   * <p>
+   * Returns a new model with the given changes applied, and leaves this one untouched so that it can go on
+   * serving readers. The maps of preferences are copied shallowly and only the preference arrays of affected users
+   * and items are rebuilt, so this costs time in proportion to the number of users and items plus the preferences
+   * of those affected, not to all data. The minimum and maximum preference only ever widen.
+   * </p>
+   *
+   * <p>
+   * This is used mostly internally to the framework, and shouldn't be relied upon otherwise.
+   * </p>
+   *
+   * @param changes maps user IDs to maps of item IDs to new preference values; {@link Float#NaN} removes a
+   *  preference
+   * @param newTimestamps timestamps of the new model, which must not be shared with this one where they differ
+   */
+  public GenericDataModel withChanges(FastByIDMap<FastByIDMap<Float>> changes,
+                                      FastByIDMap<FastByIDMap<Long>> newTimestamps) {
+    FastByIDMap<PreferenceArray> newPreferenceFromUsers = preferenceFromUsers.clone();
+    FastByIDMap<PreferenceArray> newPreferenceForItems = preferenceForItems.clone();
+    FastByIDMap<FastByIDMap<Float>> changesByItem = new FastByIDMap<FastByIDMap<Float>>();
+    FastIDSet addedUserIDs = new FastIDSet();
+    FastIDSet removedUserIDs = new FastIDSet();
+    float maxPrefValue = getMaxPreference();
+    float minPrefValue = getMinPreference();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : changes.entrySet()) {
+      long userID = entry.getKey();
+      FastByIDMap<Float> changesForUser = entry.getValue();
+      for (Map.Entry<Long,Float> change : changesForUser.entrySet()) {
+        long itemID = change.getKey();
+        float value = change.getValue();
+        FastByIDMap<Float> changesForItem = changesByItem.get(itemID);
+        if (changesForItem == null) {
+          changesForItem = new FastByIDMap<Float>(2);
+          changesByItem.put(itemID, changesForItem);
+        }
+        changesForItem.put(userID, value);
+        if (value > maxPrefValue) {
+          maxPrefValue = value;
+        }
+        if (value < minPrefValue) {
+          minPrefValue = value;
+        }
+      }
+      PreferenceArray prefs = applyChanges(userID, preferenceFromUsers.get(userID), changesForUser, true);
+      if (prefs == null) {
+        if (newPreferenceFromUsers.remove(userID) != null) {
+          removedUserIDs.add(userID);
+        }
+      } else if (newPreferenceFromUsers.put(userID, prefs) == null) {
+        addedUserIDs.add(userID);
+      }
+    }
+
+    FastIDSet addedItemIDs = new FastIDSet();
+    FastIDSet removedItemIDs = new FastIDSet();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : changesByItem.entrySet()) {
+      long itemID = entry.getKey();
+      PreferenceArray prefs = applyChanges(itemID, preferenceForItems.get(itemID), entry.getValue(), false);
+      if (prefs == null) {
+        if (newPreferenceForItems.remove(itemID) != null) {
+          removedItemIDs.add(itemID);
+        }
+      } else if (newPreferenceForItems.put(itemID, prefs) == null) {
+        addedItemIDs.add(itemID);
+      }
+    }
+
+    return new GenericDataModel(updateIDs(userIDs, addedUserIDs, removedUserIDs),
+                                newPreferenceFromUsers,
+                                updateIDs(itemIDs, addedItemIDs, removedItemIDs),
+                                newPreferenceForItems,
+                                newTimestamps,
+                                minPrefValue,
+                                maxPrefValue);
+  }
+
+  /**
+   * @return a new, sorted array with the changed preferences of one user (or item), or null if none are left
+   */
+  private static PreferenceArray applyChanges(long id,
+                                              PreferenceArray prefs,
+                                              FastByIDMap<Float> changes,
+                                              boolean byUser) {
+    List<Preference> result = new ArrayList<Preference>((prefs == null ? 0 : prefs.length()) + changes.size());
+    if (prefs != null) {
+      int size = prefs.length();
+      for (int i = 0; i < size; i++) {
+        long otherID = byUser ? prefs.getItemID(i) : prefs.getUserID(i);
+        if (!changes.containsKey(otherID)) {
+          result.add(new GenericPreference(prefs.getUserID(i), prefs.getItemID(i), prefs.getValue(i)));
+        }
+      }
+    }
+    for (Map.Entry<Long,Float> change : changes.entrySet()) {
+      float value = change.getValue();
+      if (!Float.isNaN(value)) {
+        result.add(byUser
+            ? new GenericPreference(id, change.getKey(), value)
+            : new GenericPreference(change.getKey(), id, value));
+      }
+    }
+    if (result.isEmpty()) {
+      return null;
+    }
+    PreferenceArray newPrefs;
+    if (byUser) {
+      newPrefs = new GenericUserPreferenceArray(result);
+      newPrefs.sortByItem();
+    } else {
+      newPrefs = new GenericItemPreferenceArray(result);
+      newPrefs.sortByUser();
+    }
+    return newPrefs;
+  }
+
   @Override
   public LongPrimitiveArrayIterator getUserIDs() {
     return new LongPrimitiveArrayIterator(userIDs);
@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
@@ -42,6 +43,7 @@ import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.Preference;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
 import org.apache.mahout.common.FileLineIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,6 +97,14 @@ import com.google.common.base.Preconditions;
  * </p>
  *
  * <p>
+ * When only update files changed since the last load, their changes are applied to a copy of the loaded model,
+ * which then replaces it. Such a refresh costs time in proportion to the number of users and items plus the size
+ * of the updates, instead of the size of all data. The users and items affected by such a refresh are passed to
+ * any registered {@link PreferenceChangeListener}, for instance a cache which can then drop only what depends on
+ * them.
+ * </p>
+ *
+ * <p>
  * One small format difference exists. Update files must also be able to express deletes.
  * This is done by ending with a blank preference value, as in "123,456,".
  * </p>
@@ -128,7 +138,12 @@ public class FileDataModel extends AbstractDataModel {
   private final char delimiter;
   private final Pattern delimiterPattern;
   private final boolean hasPrefValues;
-  private DataModel delegate;
+  private volatile DataModel delegate;
+  private FastByIDMap<FastByIDMap<Long>> timestamps;
+  private final List<PreferenceChangeListener> listeners;
+  /** what the last {@link #buildModel()} changed, to tell the listeners once the new model is visible */
+  private FastByIDMap<FastByIDMap<Float>> unannouncedChanges;
+  private boolean unannouncedReload;
   private final ReentrantLock reloadLock;
   private final boolean transpose;
   private final long minReloadIntervalMS;
@@ -183,6 +198,7 @@ public class FileDataModel extends AbstractDataModel {
     hasPrefValues = firstLineSplit.length >= 3 && firstLineSplit[2].length() > 0;
 
     this.reloadLock = new ReentrantLock();
+    this.listeners = new CopyOnWriteArrayList<PreferenceChangeListener>();
     this.transpose = transpose;
     this.minReloadIntervalMS = minReloadIntervalMS;
 
@@ -197,10 +213,24 @@ public class FileDataModel extends AbstractDataModel {
     return delimiter;
   }
 
+  /**
+   * Registers a listener which is told about the users and items affected whenever update files are applied in
+   * place, and about every complete reload.
+   */
+  public void addPreferenceChangeListener(PreferenceChangeListener listener) {
+    Preconditions.checkArgument(listener != null, "listener is null");
+    listeners.add(listener);
+  }
+
+  public void removePreferenceChangeListener(PreferenceChangeListener listener) {
+    listeners.remove(listener);
+  }
+
   protected void reload() {
     if (reloadLock.tryLock()) {
       try {
         delegate = buildModel();
+        announceChanges();
       } catch (IOException ioe) {
         log.warn("Exception while reloading", ioe);
       } finally {
@@ -220,60 +250,63 @@ public class FileDataModel extends AbstractDataModel {
     lastModified = newLastModified;
     lastUpdateFileModified = newLastUpdateFileModified;
 
-    FastByIDMap<FastByIDMap<Long>> timestamps = new FastByIDMap<FastByIDMap<Long>>();
-
-    if (hasPrefValues) {
-
-      if (loadFreshData) {
-
-        FastByIDMap<Collection<Preference>> data = new FastByIDMap<Collection<Preference>>();
-        FileLineIterator iterator = new FileLineIterator(dataFile, false);
-        processFile(iterator, data, timestamps, false);
-
-        for (File updateFile : findUpdateFilesAfter(newLastModified)) {
-          processFile(new FileLineIterator(updateFile, false), data, timestamps, false);
-        }
-
-        return new GenericDataModel(GenericDataModel.toDataMap(data, true), timestamps);
-
-      } else {
-
-        FastByIDMap<PreferenceArray> rawData = ((GenericDataModel) delegate).getRawUserData();
-
-        for (File updateFile : findUpdateFilesAfter(Math.max(oldLastUpdateFileModifieid, newLastModified))) {
-          processFile(new FileLineIterator(updateFile, false), rawData, timestamps, true);
+    if (!loadFreshData) {
+      Iterable<File> updateFiles = findUpdateFilesAfter(Math.max(oldLastUpdateFileModifieid, newLastModified));
+      FastByIDMap<FastByIDMap<Float>> changes = new FastByIDMap<FastByIDMap<Float>>();
+      for (File updateFile : updateFiles) {
+        processUpdateFile(new FileLineIterator(updateFile, false), changes, new FastByIDMap<FastByIDMap<Long>>());
+      }
+      if (changes.isEmpty()) {
+        return delegate;
+      }
+      // The current model keeps serving readers until the new one replaces it, so its timestamps must not change.
+      // Now that the affected users are known, the update files are read again into copies of just their maps.
+      FastByIDMap<FastByIDMap<Long>> newTimestamps = timestamps.clone();
+      for (Map.Entry<Long,FastByIDMap<Float>> entry : changes.entrySet()) {
+        FastByIDMap<Long> itemTimestamps = timestamps.get(entry.getKey());
+        if (itemTimestamps != null) {
+          newTimestamps.put(entry.getKey(), itemTimestamps.clone());
         }
-
-        return new GenericDataModel(rawData, timestamps);
-
       }
+      for (File updateFile : updateFiles) {
+        processUpdateFile(new FileLineIterator(updateFile, false), new FastByIDMap<FastByIDMap<Float>>(),
+                          newTimestamps);
+      }
+      timestamps = newTimestamps;
+      unannouncedChanges = changes;
+      return hasPrefValues
+          ? ((GenericDataModel) delegate).withChanges(changes, newTimestamps)
+          : ((GenericBooleanPrefDataModel) delegate).withChanges(changes, newTimestamps);
+    }
 
-    } else {
-
-      if (loadFreshData) {
+    unannouncedReload = delegate != null;
 
-        FastByIDMap<FastIDSet> data = new FastByIDMap<FastIDSet>();
-        FileLineIterator iterator = new FileLineIterator(dataFile, false);
-        processFileWithoutID(iterator, data, timestamps);
+    timestamps = new FastByIDMap<FastByIDMap<Long>>();
 
-        for (File updateFile : findUpdateFilesAfter(newLastModified)) {
-          processFileWithoutID(new FileLineIterator(updateFile, false), data, timestamps);
-        }
+    if (hasPrefValues) {
 
-        return new GenericBooleanPrefDataModel(data, timestamps);
+      FastByIDMap<Collection<Preference>> data = new FastByIDMap<Collection<Preference>>();
+      FileLineIterator iterator = new FileLineIterator(dataFile, false);
+      processFile(iterator, data, timestamps, false);
 
-      } else {
+      for (File updateFile : findUpdateFilesAfter(newLastModified)) {
+        processFile(new FileLineIterator(updateFile, false), data, timestamps, false);
+      }
 
-        FastByIDMap<FastIDSet> rawData = ((GenericBooleanPrefDataModel) delegate).getRawUserData();
+      return new GenericDataModel(GenericDataModel.toDataMap(data, true), timestamps);
 
-        for (File updateFile : findUpdateFilesAfter(Math.max(oldLastUpdateFileModifieid, newLastModified))) {
-          processFileWithoutID(new FileLineIterator(updateFile, false), rawData, timestamps);
-        }
+    } else {
 
-        return new GenericBooleanPrefDataModel(rawData, timestamps);
+      FastByIDMap<FastIDSet> data = new FastByIDMap<FastIDSet>();
+      FileLineIterator iterator = new FileLineIterator(dataFile, false);
+      processFileWithoutID(iterator, data, timestamps);
 
+      for (File updateFile : findUpdateFilesAfter(newLastModified)) {
+        processFileWithoutID(new FileLineIterator(updateFile, false), data, timestamps);
       }
 
+      return new GenericBooleanPrefDataModel(data, timestamps);
+
     }
   }
 
@@ -284,6 +317,10 @@ public class FileDataModel extends AbstractDataModel {
    * etc.
    */
   private Iterable<File> findUpdateFilesAfter(long minimumLastModified) {
+    return findUpdateFilesAfter(dataFile, minimumLastModified);
+  }
+
+  static Iterable<File> findUpdateFilesAfter(File dataFile, long minimumLastModified) {
     String dataFileName = dataFile.getName();
     int period = dataFileName.indexOf('.');
     String startName = period < 0 ? dataFileName : dataFileName.substring(0, period);
@@ -474,6 +511,9 @@ public class FileDataModel extends AbstractDataModel {
               break;
             }
           }
+          if (prefs.isEmpty()) {
+            data.remove(userID);
+          }
         }
 
         removeTimestamp(userID, itemID, timestamps);
@@ -533,7 +573,8 @@ public class FileDataModel extends AbstractDataModel {
       return;
     }
 
-    String[] tokens = delimiterPattern.split(line);
+    // Keep a trailing empty preference value, which marks a removal
+    String[] tokens = delimiterPattern.split(line, 5);
     Preconditions.checkArgument(tokens.length >= 2, "Bad line: %s", line);
     String userIDString = tokens[0];
     String itemIDString = tokens[1];
@@ -555,6 +596,9 @@ public class FileDataModel extends AbstractDataModel {
       FastIDSet itemIDs = data.get(userID);
       if (itemIDs != null) {
         itemIDs.remove(itemID);
+        if (itemIDs.isEmpty()) {
+          data.remove(userID);
+        }
       }
 
       removeTimestamp(userID, itemID, timestamps);
@@ -573,6 +617,106 @@ public class FileDataModel extends AbstractDataModel {
     }
   }
 
+  /**
+   * Reads an update file whose changes are applied to already loaded data.
+   *
+   * @see #processUpdateLine(String, FastByIDMap, FastByIDMap)
+   */
+  protected void processUpdateFile(FileLineIterator updateFileIterator,
+                                   FastByIDMap<FastByIDMap<Float>> changes,
+                                   FastByIDMap<FastByIDMap<Long>> timestamps) {
+    log.info("Reading update file...");
+    int count = 0;
+    while (updateFileIterator.hasNext()) {
+      String line = updateFileIterator.next();
+      if (line.length() > 0) {
+        processUpdateLine(line, changes, timestamps);
+        if (++count % 100000 == 0) {
+          log.info("Processed {} lines", count);
+        }
+      }
+    }
+    log.info("Read lines: {}", count);
+  }
+
+  /**
+   * <p>
+   * Reads one line from an update file into a map of user IDs to changed preferences by item ID. A removed
+   * preference is recorded as {@link Float#NaN}; without preference values, any other value means the
+   * preference exists. A later line for the same user and item supersedes an earlier one.
+   * </p>
+   *
+   * <p>
+   * Subclasses which override {@link #processLine(String, FastByIDMap, FastByIDMap, boolean)} to read another
+   * format should override this too.
+   * </p>
+   */
+  protected void processUpdateLine(String line,
+                                   FastByIDMap<FastByIDMap<Float>> changes,
+                                   FastByIDMap<FastByIDMap<Long>> timestamps) {
+
+    if (line.length() == 0 || line.charAt(0) == COMMENT_CHAR) {
+      return;
+    }
+
+    String[] tokens = delimiterPattern.split(line, 5);
+    Preconditions.checkArgument(tokens.length >= (hasPrefValues ? 3 : 2), "Bad line: %s", line);
+    String preferenceValueString = tokens.length >= 3 ? tokens[2] : "";
+    String timestampString = tokens.length >= 4 ? tokens[3] : null;
+
+    long userID = readUserIDFromString(tokens[0]);
+    long itemID = readItemIDFromString(tokens[1]);
+
+    if (transpose) {
+      long tmp = userID;
+      userID = itemID;
+      itemID = tmp;
+    }
+
+    FastByIDMap<Float> changesForUser = changes.get(userID);
+    if (changesForUser == null) {
+      changesForUser = new FastByIDMap<Float>(2);
+      changes.put(userID, changesForUser);
+    }
+
+    if (tokens.length == 3 && preferenceValueString.length() == 0) {
+      // Then line is of form "userID,itemID,", meaning remove
+      changesForUser.put(itemID, Float.NaN);
+      removeTimestamp(userID, itemID, timestamps);
+    } else {
+      changesForUser.put(itemID, hasPrefValues ? Float.parseFloat(preferenceValueString) : 1.0f);
+      addTimestamp(userID, itemID, timestampString, timestamps);
+    }
+  }
+
+  private void announceChanges() {
+    if (unannouncedReload) {
+      for (PreferenceChangeListener listener : listeners) {
+        listener.allPreferencesChanged();
+      }
+    } else if (unannouncedChanges != null) {
+      firePreferencesChanged(unannouncedChanges);
+    }
+    unannouncedReload = false;
+    unannouncedChanges = null;
+  }
+
+  private void firePreferencesChanged(FastByIDMap<FastByIDMap<Float>> changes) {
+    FastIDSet userIDs = new FastIDSet(changes.size());
+    FastIDSet itemIDs = new FastIDSet();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : changes.entrySet()) {
+      userIDs.add(entry.getKey());
+      LongPrimitiveIterator it = entry.getValue().keySetIterator();
+      while (it.hasNext()) {
+        itemIDs.add(it.nextLong());
+      }
+    }
+    log.info("Applied changes of {} users and {} items", userIDs.size(), itemIDs.size());
+    for (PreferenceChangeListener listener : listeners) {
+      listener.preferencesChanged(userIDs, itemIDs);
+    }
+  }
+
   private void addTimestamp(long userID,
                             long itemID,
                             String timestampString,
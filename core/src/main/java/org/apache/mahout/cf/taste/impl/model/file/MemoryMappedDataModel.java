@@ -0,0 +1,672 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.BufferedChannelWriter;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.MappedFloatArray;
+import org.apache.mahout.cf.taste.impl.common.MappedLongArray;
+import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.Swapper;
+import org.apache.mahout.math.function.IntComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A read-only {@link DataModel} backed by a memory-mapped file in a compact, columnar binary format. The file
+ * holds the sorted user IDs, and for every user an offset into an array of the item IDs and values of the user's
+ * preferences (compressed sparse rows). The same is stored the other way around for the items (compressed sparse
+ * columns). Preferences of a user are sorted by item ID, preferences for an item by user ID.
+ * </p>
+ *
+ * <p>
+ * Opening such a file only maps it into memory, so it takes about the same time regardless of the amount of data,
+ * and the data is shared through the operating system's page cache instead of living on the heap. The
+ * {@link PreferenceArray}s returned by {@link #getPreferencesFromUser(long)} and
+ * {@link #getPreferencesForItem(long)} are views which read directly from the mapped file; they can't be
+ * modified. Users and items are found by binary search.
+ * </p>
+ *
+ * <p>
+ * Files are written by {@link #write(DataModel, File)}. {@link MemoryMappedDataModelConverter} converts a file in
+ * the format read by {@link FileDataModel} without loading it into memory. Timestamps are not stored.
+ * </p>
+ */
+public final class MemoryMappedDataModel extends AbstractDataModel {
+
+  private static final Logger log = LoggerFactory.getLogger(MemoryMappedDataModel.class);
+
+  private static final int MAGIC = 0x4D4D444D;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 48;
+
+  private final File dataFile;
+  private final boolean hasPrefValues;
+  private final int numUsers;
+  private final int numItems;
+  private final long numPrefs;
+
+  private transient MappedLongArray userIDs;
+  private transient MappedLongArray userOffsets;
+  private transient MappedLongArray userPrefItemIDs;
+  private transient MappedFloatArray userPrefValues;
+  private transient MappedLongArray itemIDs;
+  private transient MappedLongArray itemOffsets;
+  private transient MappedLongArray itemPrefUserIDs;
+  private transient MappedFloatArray itemPrefValues;
+
+  /**
+   * @param dataFile file written by {@link #write(DataModel, File)}
+   * @throws FileNotFoundException if dataFile does not exist
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public MemoryMappedDataModel(File dataFile) throws IOException {
+    Preconditions.checkArgument(dataFile != null, "dataFile is null");
+    if (!dataFile.exists() || dataFile.isDirectory()) {
+      throw new FileNotFoundException(dataFile.toString());
+    }
+    log.info("Mapping preferences from {}", dataFile);
+    this.dataFile = dataFile.getAbsoluteFile();
+
+    RandomAccessFile raf = new RandomAccessFile(this.dataFile, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a memory-mapped data model file: " + dataFile);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported file version " + version + " in " + dataFile);
+      }
+      hasPrefValues = header.getInt() != 0;
+      numUsers = header.getInt();
+      numItems = header.getInt();
+      header.getInt(); // unused
+      numPrefs = header.getLong();
+      setMinPreference(header.getFloat());
+      setMaxPreference(header.getFloat());
+      map(channel);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private void map(FileChannel channel) throws IOException {
+    Layout layout = new Layout(numUsers, numItems, numPrefs, hasPrefValues);
+    userIDs = new MappedLongArray(channel, layout.userIDs, numUsers);
+    userOffsets = new MappedLongArray(channel, layout.userOffsets, numUsers + 1L);
+    userPrefItemIDs = new MappedLongArray(channel, layout.userPrefIDs, numPrefs);
+    userPrefValues = hasPrefValues ? new MappedFloatArray(channel, layout.userPrefValues, numPrefs) : null;
+    itemIDs = new MappedLongArray(channel, layout.itemIDs, numItems);
+    itemOffsets = new MappedLongArray(channel, layout.itemOffsets, numItems + 1L);
+    itemPrefUserIDs = new MappedLongArray(channel, layout.itemPrefIDs, numPrefs);
+    itemPrefValues = hasPrefValues ? new MappedFloatArray(channel, layout.itemPrefValues, numPrefs) : null;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    RandomAccessFile raf = new RandomAccessFile(dataFile, "r");
+    try {
+      map(raf.getChannel());
+    } finally {
+      raf.close();
+    }
+  }
+
+  public File getDataFile() {
+    return dataFile;
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() {
+    return userIDs.iterator(0, numUsers);
+  }
+
+  /**
+   * @throws NoSuchUserException
+   *           if there is no such user
+   */
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws NoSuchUserException {
+    long index = userIDs.binarySearch(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException();
+    }
+    long offset = userOffsets.get(index);
+    return new MappedPreferenceArray(true, userID, offset, (int) (userOffsets.get(index + 1) - offset));
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+    PreferenceArray prefs = getPreferencesFromUser(userID);
+    int size = prefs.length();
+    FastIDSet result = new FastIDSet(size);
+    for (int i = 0; i < size; i++) {
+      result.add(prefs.getItemID(i));
+    }
+    return result;
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() {
+    return itemIDs.iterator(0, numItems);
+  }
+
+  /**
+   * @throws NoSuchItemException
+   *           if there is no such item
+   */
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws NoSuchItemException {
+    long index = itemIDs.binarySearch(0, numItems, itemID);
+    if (index < 0) {
+      throw new NoSuchItemException();
+    }
+    long offset = itemOffsets.get(index);
+    return new MappedPreferenceArray(false, itemID, offset, (int) (itemOffsets.get(index + 1) - offset));
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+    long index = userIDs.binarySearch(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException();
+    }
+    long prefIndex = userPrefItemIDs.binarySearch(userOffsets.get(index), userOffsets.get(index + 1), itemID);
+    if (prefIndex < 0) {
+      return null;
+    }
+    return hasPrefValues ? userPrefValues.get(prefIndex) : 1.0f;
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) {
+    return null;
+  }
+
+  @Override
+  public int getNumItems() {
+    return numItems;
+  }
+
+  @Override
+  public int getNumUsers() {
+    return numUsers;
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long... itemIDs) {
+    Preconditions.checkArgument(itemIDs != null, "itemIDs is null");
+    Preconditions.checkArgument(itemIDs.length == 1 || itemIDs.length == 2, "Illegal number of IDs", itemIDs.length);
+    long index1 = this.itemIDs.binarySearch(0, numItems, itemIDs[0]);
+    if (index1 < 0) {
+      return 0;
+    }
+    long start1 = itemOffsets.get(index1);
+    long end1 = itemOffsets.get(index1 + 1);
+    if (itemIDs.length == 1) {
+      return (int) (end1 - start1);
+    }
+
+    long index2 = this.itemIDs.binarySearch(0, numItems, itemIDs[1]);
+    if (index2 < 0) {
+      return 0;
+    }
+    long start2 = itemOffsets.get(index2);
+    long end2 = itemOffsets.get(index2 + 1);
+
+    // both lists of user IDs are sorted, so intersect them by merging
+    int count = 0;
+    while (start1 < end1 && start2 < end2) {
+      long userID1 = itemPrefUserIDs.get(start1);
+      long userID2 = itemPrefUserIDs.get(start2);
+      if (userID1 < userID2) {
+        start1++;
+      } else if (userID1 > userID2) {
+        start2++;
+      } else {
+        count++;
+        start1++;
+        start2++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+  // Does nothing
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return hasPrefValues;
+  }
+
+  @Override
+  public String toString() {
+    return "MemoryMappedDataModel[dataFile:" + dataFile + ']';
+  }
+
+  /**
+   * Writes the preferences of the given {@link DataModel} in the format read by this class. Preference arrays are
+   * sorted while they are written, the given {@link DataModel} is not modified.
+   */
+  public static void write(DataModel dataModel, File file) throws TasteException, IOException {
+    long[] sortedUserIDs = sortedIDs(dataModel.getNumUsers(), dataModel.getUserIDs());
+    long[] sortedItemIDs = sortedIDs(dataModel.getNumItems(), dataModel.getItemIDs());
+    boolean hasPrefValues = dataModel.hasPreferenceValues();
+
+    long numPrefs = 0;
+    for (long userID : sortedUserIDs) {
+      numPrefs += dataModel.getPreferencesFromUser(userID).length();
+    }
+    Layout layout = new Layout(sortedUserIDs.length, sortedItemIDs.length, numPrefs, hasPrefValues);
+
+    log.info("Writing {} preferences of {} users and {} items to {}",
+             new Object[] {numPrefs, sortedUserIDs.length, sortedItemIDs.length, file});
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      FileChannel channel = raf.getChannel();
+      writeHeader(channel, hasPrefValues, sortedUserIDs.length, sortedItemIDs.length, numPrefs,
+                  dataModel.getMinPreference(), dataModel.getMaxPreference());
+      writeSection(channel, dataModel, sortedUserIDs, true, layout.userIDs, layout.userOffsets, layout.userPrefIDs,
+                   hasPrefValues ? layout.userPrefValues : -1L);
+      writeSection(channel, dataModel, sortedItemIDs, false, layout.itemIDs, layout.itemOffsets, layout.itemPrefIDs,
+                   hasPrefValues ? layout.itemPrefValues : -1L);
+    } finally {
+      raf.close();
+    }
+  }
+
+  static void writeHeader(FileChannel channel,
+                          boolean hasPrefValues,
+                          int numUsers,
+                          int numItems,
+                          long numPrefs,
+                          float minPreference,
+                          float maxPreference) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(hasPrefValues ? 1 : 0);
+    header.putInt(numUsers);
+    header.putInt(numItems);
+    header.putInt(0);
+    header.putLong(numPrefs);
+    header.putFloat(minPreference);
+    header.putFloat(maxPreference);
+    header.rewind();
+    while (header.hasRemaining()) {
+      channel.write(header, header.position());
+    }
+  }
+
+  private static void writeSection(FileChannel channel,
+                                   DataModel dataModel,
+                                   long[] ids,
+                                   boolean byUser,
+                                   long idsPosition,
+                                   long offsetsPosition,
+                                   long prefIDsPosition,
+                                   long prefValuesPosition) throws TasteException, IOException {
+    BufferedChannelWriter idWriter = new BufferedChannelWriter(channel, idsPosition);
+    for (long id : ids) {
+      idWriter.writeLong(id);
+    }
+    idWriter.flush();
+
+    BufferedChannelWriter offsetWriter = new BufferedChannelWriter(channel, offsetsPosition);
+    BufferedChannelWriter prefIDWriter = new BufferedChannelWriter(channel, prefIDsPosition);
+    BufferedChannelWriter prefValueWriter =
+        prefValuesPosition >= 0 ? new BufferedChannelWriter(channel, prefValuesPosition) : null;
+    long offset = 0;
+    for (long id : ids) {
+      offsetWriter.writeLong(offset);
+      PreferenceArray prefs = byUser ? dataModel.getPreferencesFromUser(id) : dataModel.getPreferencesForItem(id);
+      int length = prefs.length();
+
+      final long[] prefIDs = new long[length];
+      final float[] prefValues = new float[length];
+      for (int i = 0; i < length; i++) {
+        prefIDs[i] = byUser ? prefs.getItemID(i) : prefs.getUserID(i);
+        prefValues[i] = prefs.getValue(i);
+      }
+      Sorting.quickSort(0, length, new IntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          return prefIDs[a] < prefIDs[b] ? -1 : prefIDs[a] > prefIDs[b] ? 1 : 0;
+        }
+      }, new Swapper() {
+        @Override
+        public void swap(int a, int b) {
+          long tmpID = prefIDs[a];
+          prefIDs[a] = prefIDs[b];
+          prefIDs[b] = tmpID;
+          float tmpValue = prefValues[a];
+          prefValues[a] = prefValues[b];
+          prefValues[b] = tmpValue;
+        }
+      });
+
+      for (long prefID : prefIDs) {
+        prefIDWriter.writeLong(prefID);
+      }
+      if (prefValueWriter != null) {
+        for (float prefValue : prefValues) {
+          prefValueWriter.writeFloat(prefValue);
+        }
+      }
+      offset += length;
+    }
+    offsetWriter.writeLong(offset);
+    offsetWriter.flush();
+    prefIDWriter.flush();
+    if (prefValueWriter != null) {
+      prefValueWriter.flush();
+    }
+  }
+
+  static long[] sortedIDs(int size, LongPrimitiveIterator it) {
+    long[] ids = new long[size];
+    int i = 0;
+    while (it.hasNext()) {
+      ids[i++] = it.nextLong();
+    }
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  /**
+   * Positions of the sections of the file, all sections start at a multiple of 8 bytes.
+   */
+  static final class Layout {
+
+    final long userIDs;
+    final long userOffsets;
+    final long userPrefIDs;
+    final long userPrefValues;
+    final long itemIDs;
+    final long itemOffsets;
+    final long itemPrefIDs;
+    final long itemPrefValues;
+
+    Layout(int numUsers, int numItems, long numPrefs, boolean hasPrefValues) {
+      long prefValuesSize = hasPrefValues ? align(numPrefs * 4) : 0L;
+      userIDs = HEADER_SIZE;
+      userOffsets = userIDs + numUsers * 8L;
+      userPrefIDs = userOffsets + (numUsers + 1L) * 8L;
+      userPrefValues = userPrefIDs + numPrefs * 8L;
+      itemIDs = userPrefValues + prefValuesSize;
+      itemOffsets = itemIDs + numItems * 8L;
+      itemPrefIDs = itemOffsets + (numItems + 1L) * 8L;
+      itemPrefValues = itemPrefIDs + numPrefs * 8L;
+    }
+
+    private static long align(long size) {
+      return (size + 7L) & ~7L;
+    }
+  }
+
+  /**
+   * A read-only view of the preferences of one user (sorted by item) or for one item (sorted by user). Sorting
+   * by value reorders the view only, through a permutation of the positions in the file.
+   */
+  private final class MappedPreferenceArray implements PreferenceArray {
+
+    private final boolean forUser;
+    private final long id;
+    private final long offset;
+    private final int length;
+    // position in the file of the i-th preference, or null if the preferences are in file order
+    private int[] order;
+
+    private MappedPreferenceArray(boolean forUser, long id, long offset, int length) {
+      this.forUser = forUser;
+      this.id = id;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private MappedLongArray otherIDs() {
+      return forUser ? userPrefItemIDs : itemPrefUserIDs;
+    }
+
+    private long position(int i) {
+      return offset + (order == null ? i : order[i]);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public Preference get(int i) {
+      return new GenericPreference(getUserID(i), getItemID(i), getValue(i));
+    }
+
+    @Override
+    public void set(int i, Preference pref) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getUserID(int i) {
+      return forUser ? id : itemPrefUserIDs.get(position(i));
+    }
+
+    @Override
+    public void setUserID(int i, long userID) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getItemID(int i) {
+      return forUser ? userPrefItemIDs.get(position(i)) : id;
+    }
+
+    @Override
+    public void setItemID(int i, long itemID) {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return a copy of the item IDs (for a user) or user IDs (for an item)
+     */
+    @Override
+    public long[] getIDs() {
+      MappedLongArray otherIDs = otherIDs();
+      long[] ids = new long[length];
+      for (int i = 0; i < length; i++) {
+        ids[i] = otherIDs.get(position(i));
+      }
+      return ids;
+    }
+
+    @Override
+    public float getValue(int i) {
+      if (!hasPrefValues) {
+        return 1.0f;
+      }
+      return (forUser ? userPrefValues : itemPrefValues).get(position(i));
+    }
+
+    @Override
+    public void setValue(int i, float value) {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return a modifiable copy of this array
+     */
+    @Override
+    public PreferenceArray clone() {
+      PreferenceArray copy = forUser
+          ? new GenericUserPreferenceArray(length)
+          : new GenericItemPreferenceArray(length);
+      for (int i = 0; i < length; i++) {
+        copy.setUserID(i, getUserID(i));
+        copy.setItemID(i, getItemID(i));
+        copy.setValue(i, getValue(i));
+      }
+      return copy;
+    }
+
+    /** Returns to file order, in which a user's preferences have the same user ID and an item's are sorted by user. */
+    @Override
+    public void sortByUser() {
+      order = null;
+    }
+
+    /** Returns to file order, in which a user's preferences are sorted by item and an item's have the same item ID. */
+    @Override
+    public void sortByItem() {
+      order = null;
+    }
+
+    @Override
+    public void sortByValue() {
+      sortByValue(false);
+    }
+
+    @Override
+    public void sortByValueReversed() {
+      sortByValue(true);
+    }
+
+    private void sortByValue(final boolean reversed) {
+      if (!hasPrefValues) {
+        // all values are 1
+        order = null;
+        return;
+      }
+      final int[] positions = new int[length];
+      final float[] values = new float[length];
+      MappedFloatArray prefValues = forUser ? userPrefValues : itemPrefValues;
+      for (int i = 0; i < length; i++) {
+        positions[i] = i;
+        values[i] = prefValues.get(offset + i);
+      }
+      Sorting.quickSort(0, length, new IntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          return reversed ? Float.compare(values[b], values[a]) : Float.compare(values[a], values[b]);
+        }
+      }, new Swapper() {
+        @Override
+        public void swap(int a, int b) {
+          int tmpPosition = positions[a];
+          positions[a] = positions[b];
+          positions[b] = tmpPosition;
+          float tmpValue = values[a];
+          values[a] = values[b];
+          values[b] = tmpValue;
+        }
+      });
+      order = positions;
+    }
+
+    @Override
+    public boolean hasPrefWithUserID(long userID) {
+      if (forUser) {
+        return id == userID;
+      }
+      return itemPrefUserIDs.binarySearch(offset, offset + length, userID) >= 0;
+    }
+
+    @Override
+    public boolean hasPrefWithItemID(long itemID) {
+      if (!forUser) {
+        return id == itemID;
+      }
+      return userPrefItemIDs.binarySearch(offset, offset + length, itemID) >= 0;
+    }
+
+    @Override
+    public Iterator<Preference> iterator() {
+      return new Iterator<Preference>() {
+        private int i;
+
+        @Override
+        public boolean hasNext() {
+          return i < length;
+        }
+
+        @Override
+        public Preference next() {
+          if (i >= length) {
+            throw new NoSuchElementException();
+          }
+          return get(i++);
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return "MappedPreferenceArray[" + (forUser ? "userID:" : "itemID:") + id + ",length:" + length + ']';
+    }
+  }
+
+}
@@ -0,0 +1,429 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.cf.taste.impl.common.BufferedChannelWriter;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.common.FileLineIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Converts a file in the format read by {@link FileDataModel}, together with its update files, into the format read
+ * by {@link MemoryMappedDataModel}, without loading the preferences into memory. As with {@link FileDataModel}, a
+ * later line for the same user and item replaces an earlier one, and a line with an empty preference value removes
+ * it.
+ * </p>
+ *
+ * <p>
+ * The input is read three times: to collect the user and item IDs, to count the preferences of each user and item,
+ * and to scatter the preferences into the rows of the users and the columns of the items in a memory-mapped scratch
+ * file next to the output. Then each row and column is sorted and its duplicates are dropped, and the result is
+ * written out sequentially. The heap only holds the IDs, with a count and an offset each, and the largest single row
+ * or column while it is being sorted.
+ * </p>
+ */
+public final class MemoryMappedDataModelConverter extends AbstractJob {
+
+  private static final Logger log = LoggerFactory.getLogger(MemoryMappedDataModelConverter.class);
+
+  private static final char COMMENT_CHAR = '#';
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new MemoryMappedDataModelConverter(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws IOException {
+    addInputOption();
+    addOutputOption();
+    if (parseArguments(args) == null) {
+      return -1;
+    }
+    convert(new File(getInputPath().toUri().getPath()), new File(getOutputPath().toUri().getPath()));
+    return 0;
+  }
+
+  /**
+   * Writes the preferences in dataFile, and in the update files which {@link FileDataModel} would read with it, to
+   * file in the format read by {@link MemoryMappedDataModel}.
+   */
+  public static void convert(File dataFile, File file) throws IOException {
+    File absoluteDataFile = dataFile.getAbsoluteFile();
+    List<File> files = new ArrayList<File>();
+    files.add(absoluteDataFile);
+    for (File updateFile : FileDataModel.findUpdateFilesAfter(absoluteDataFile, 0L)) {
+      // the output of an earlier conversion may look like an update file
+      if (!updateFile.equals(file.getAbsoluteFile())) {
+        files.add(updateFile);
+      }
+    }
+
+    String firstLine = firstLine(absoluteDataFile);
+    Pattern delimiterPattern = Pattern.compile(String.valueOf(FileDataModel.determineDelimiter(firstLine)));
+    String[] firstLineSplit = delimiterPattern.split(firstLine);
+    boolean hasPrefValues = firstLineSplit.length >= 3 && firstLineSplit[2].length() > 0;
+    PreferenceReader reader = new PreferenceReader(files, delimiterPattern, hasPrefValues);
+
+    log.info("Collecting IDs in {}", files);
+    FastIDSet userIDSet = new FastIDSet();
+    FastIDSet itemIDSet = new FastIDSet();
+    long numLines = 0;
+    while (reader.next()) {
+      userIDSet.add(reader.userID);
+      itemIDSet.add(reader.itemID);
+      numLines++;
+    }
+    long[] userIDs = MemoryMappedDataModel.sortedIDs(userIDSet.size(), userIDSet.iterator());
+    long[] itemIDs = MemoryMappedDataModel.sortedIDs(itemIDSet.size(), itemIDSet.iterator());
+    userIDSet = null;
+    itemIDSet = null;
+
+    log.info("Counting {} preferences of {} users and {} items",
+             new Object[] {numLines, userIDs.length, itemIDs.length});
+    long[] userStarts = new long[userIDs.length + 1];
+    long[] itemStarts = new long[itemIDs.length + 1];
+    reader = new PreferenceReader(files, delimiterPattern, hasPrefValues);
+    while (reader.next()) {
+      userStarts[Arrays.binarySearch(userIDs, reader.userID) + 1]++;
+      itemStarts[Arrays.binarySearch(itemIDs, reader.itemID) + 1]++;
+    }
+    for (int i = 1; i < userStarts.length; i++) {
+      userStarts[i] += userStarts[i - 1];
+    }
+    for (int i = 1; i < itemStarts.length; i++) {
+      itemStarts[i] += itemStarts[i - 1];
+    }
+
+    File scratchFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+    RandomAccessFile scratch = new RandomAccessFile(scratchFile, "rw");
+    try {
+      FileChannel scratchChannel = scratch.getChannel();
+      LongColumn userPrefIDs = new LongColumn(scratchChannel, 0L, numLines);
+      FloatColumn userPrefValues = new FloatColumn(scratchChannel, numLines * 8, numLines);
+      LongColumn itemPrefIDs = new LongColumn(scratchChannel, numLines * 12, numLines);
+      FloatColumn itemPrefValues = new FloatColumn(scratchChannel, numLines * 20, numLines);
+
+      log.info("Scattering preferences into {}", scratchFile);
+      long[] userNext = Arrays.copyOf(userStarts, userIDs.length);
+      long[] itemNext = Arrays.copyOf(itemStarts, itemIDs.length);
+      reader = new PreferenceReader(files, delimiterPattern, hasPrefValues);
+      while (reader.next()) {
+        long userPosition = userNext[Arrays.binarySearch(userIDs, reader.userID)]++;
+        userPrefIDs.set(userPosition, reader.itemID);
+        userPrefValues.set(userPosition, reader.value);
+        long itemPosition = itemNext[Arrays.binarySearch(itemIDs, reader.itemID)]++;
+        itemPrefIDs.set(itemPosition, reader.userID);
+        itemPrefValues.set(itemPosition, reader.value);
+      }
+      userNext = null;
+      itemNext = null;
+
+      log.info("Sorting preferences");
+      float[] minMax = {Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+      int[] userLengths = new int[userIDs.length];
+      long numPrefs = compactRows(userStarts, userLengths, userPrefIDs, userPrefValues, minMax);
+      int[] itemLengths = new int[itemIDs.length];
+      compactRows(itemStarts, itemLengths, itemPrefIDs, itemPrefValues, minMax);
+      int numUsers = countNonEmpty(userLengths);
+      int numItems = countNonEmpty(itemLengths);
+      MemoryMappedDataModel.Layout layout =
+          new MemoryMappedDataModel.Layout(numUsers, numItems, numPrefs, hasPrefValues);
+
+      log.info("Writing {} preferences of {} users and {} items to {}",
+               new Object[] {numPrefs, numUsers, numItems, file});
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(0);
+        FileChannel channel = raf.getChannel();
+        MemoryMappedDataModel.writeHeader(channel, hasPrefValues, numUsers, numItems, numPrefs,
+                                          hasPrefValues ? minMax[0] : Float.NaN,
+                                          hasPrefValues ? minMax[1] : Float.NaN);
+        writeRows(channel, userIDs, userStarts, userLengths, userPrefIDs, userPrefValues,
+                  layout.userIDs, layout.userOffsets, layout.userPrefIDs,
+                  hasPrefValues ? layout.userPrefValues : -1L);
+        writeRows(channel, itemIDs, itemStarts, itemLengths, itemPrefIDs, itemPrefValues,
+                  layout.itemIDs, layout.itemOffsets, layout.itemPrefIDs,
+                  hasPrefValues ? layout.itemPrefValues : -1L);
+      } finally {
+        raf.close();
+      }
+    } finally {
+      scratch.close();
+      if (!scratchFile.delete()) {
+        log.warn("Could not delete {}", scratchFile);
+      }
+    }
+  }
+
+  private static String firstLine(File dataFile) throws IOException {
+    FileLineIterator iterator = new FileLineIterator(dataFile, false);
+    try {
+      while (iterator.hasNext()) {
+        String line = iterator.next();
+        if (line.length() > 0 && line.charAt(0) != COMMENT_CHAR) {
+          return line;
+        }
+      }
+    } finally {
+      iterator.close();
+    }
+    throw new IllegalArgumentException("No preferences in " + dataFile);
+  }
+
+  /**
+   * Sorts each row by ID, keeps only the last of the entries with the same ID, which stand in the order of the input
+   * lines, and drops removed entries. The remaining entries are moved to the start of the row.
+   *
+   * @return the number of entries in all rows
+   */
+  private static long compactRows(long[] starts,
+                                  int[] lengths,
+                                  LongColumn ids,
+                                  FloatColumn values,
+                                  float[] minMax) {
+    long total = 0;
+    for (int row = 0; row < lengths.length; row++) {
+      long start = starts[row];
+      int length = (int) (starts[row + 1] - start);
+      long[] rowIDs = new long[length];
+      float[] rowValues = new float[length];
+      for (int i = 0; i < length; i++) {
+        rowIDs[i] = ids.get(start + i);
+        rowValues[i] = values.get(start + i);
+      }
+      // the sort is stable, so entries with the same ID stay in the order of the input lines
+      Integer[] order = new Integer[length];
+      for (int i = 0; i < length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new IDComparator(rowIDs));
+      int kept = 0;
+      for (int i = 0; i < length; i++) {
+        int index = order[i];
+        if ((i + 1 < length && rowIDs[order[i + 1]] == rowIDs[index]) || Float.isNaN(rowValues[index])) {
+          continue;
+        }
+        ids.set(start + kept, rowIDs[index]);
+        values.set(start + kept, rowValues[index]);
+        minMax[0] = Math.min(minMax[0], rowValues[index]);
+        minMax[1] = Math.max(minMax[1], rowValues[index]);
+        kept++;
+      }
+      lengths[row] = kept;
+      total += kept;
+    }
+    return total;
+  }
+
+  private static final class IDComparator implements Comparator<Integer> {
+
+    private final long[] ids;
+
+    private IDComparator(long[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public int compare(Integer a, Integer b) {
+      long idA = ids[a];
+      long idB = ids[b];
+      return idA < idB ? -1 : idA > idB ? 1 : 0;
+    }
+  }
+
+  private static int countNonEmpty(int[] lengths) {
+    int count = 0;
+    for (int length : lengths) {
+      if (length > 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void writeRows(FileChannel channel,
+                                long[] ids,
+                                long[] starts,
+                                int[] lengths,
+                                LongColumn prefIDs,
+                                FloatColumn prefValues,
+                                long idsPosition,
+                                long offsetsPosition,
+                                long prefIDsPosition,
+                                long prefValuesPosition) throws IOException {
+    BufferedChannelWriter idWriter = new BufferedChannelWriter(channel, idsPosition);
+    BufferedChannelWriter offsetWriter = new BufferedChannelWriter(channel, offsetsPosition);
+    BufferedChannelWriter prefIDWriter = new BufferedChannelWriter(channel, prefIDsPosition);
+    BufferedChannelWriter prefValueWriter =
+        prefValuesPosition >= 0 ? new BufferedChannelWriter(channel, prefValuesPosition) : null;
+    long offset = 0;
+    for (int row = 0; row < ids.length; row++) {
+      if (lengths[row] == 0) {
+        continue;
+      }
+      idWriter.writeLong(ids[row]);
+      offsetWriter.writeLong(offset);
+      for (long i = starts[row]; i < starts[row] + lengths[row]; i++) {
+        prefIDWriter.writeLong(prefIDs.get(i));
+        if (prefValueWriter != null) {
+          prefValueWriter.writeFloat(prefValues.get(i));
+        }
+      }
+      offset += lengths[row];
+    }
+    offsetWriter.writeLong(offset);
+    idWriter.flush();
+    offsetWriter.flush();
+    prefIDWriter.flush();
+    if (prefValueWriter != null) {
+      prefValueWriter.flush();
+    }
+  }
+
+  /**
+   * Reads the preferences of all files in turn. A line which removes a preference has the value NaN, and a
+   * line without a preference value the value 1.
+   */
+  private static final class PreferenceReader {
+
+    private final Pattern delimiterPattern;
+    private final boolean hasPrefValues;
+    private final List<File> files;
+    private int nextFile;
+    private FileLineIterator lines;
+    private long userID;
+    private long itemID;
+    private float value;
+
+    private PreferenceReader(List<File> files, Pattern delimiterPattern, boolean hasPrefValues) {
+      this.files = files;
+      this.delimiterPattern = delimiterPattern;
+      this.hasPrefValues = hasPrefValues;
+    }
+
+    /**
+     * @return true if there was another preference, which is now in userID, itemID and value
+     */
+    boolean next() throws IOException {
+      while (true) {
+        while (lines == null || !lines.hasNext()) {
+          if (lines != null) {
+            lines.close();
+          }
+          if (nextFile == files.size()) {
+            return false;
+          }
+          lines = new FileLineIterator(files.get(nextFile++), false);
+        }
+        String line = lines.next();
+        if (line.length() == 0 || line.charAt(0) == COMMENT_CHAR) {
+          continue;
+        }
+        String[] tokens = delimiterPattern.split(line, 5);
+        Preconditions.checkArgument(tokens.length >= (hasPrefValues ? 3 : 2), "Bad line: %s", line);
+        userID = Long.parseLong(tokens[0]);
+        itemID = Long.parseLong(tokens[1]);
+        if (tokens.length == 3 && tokens[2].length() == 0) {
+          // Then line is of form "userID,itemID,", meaning remove
+          value = Float.NaN;
+        } else {
+          value = hasPrefValues ? Float.parseFloat(tokens[2]) : 1.0f;
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * A writable array of longs in a memory-mapped file, mapped in chunks like
+   * {@link org.apache.mahout.cf.taste.impl.common.MappedLongArray}.
+   */
+  private static final class LongColumn {
+
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final LongBuffer[] chunks;
+
+    private LongColumn(FileChannel channel, long position, long length) throws IOException {
+      int numChunks = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+      chunks = new LongBuffer[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        long start = (long) i << CHUNK_SHIFT;
+        long chunkLength = Math.min(length - start, 1L << CHUNK_SHIFT);
+        chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position + start * 8, chunkLength * 8).asLongBuffer();
+      }
+    }
+
+    long get(long index) {
+      return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    void set(long index, long value) {
+      chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+  }
+
+  /**
+   * A writable array of floats in a memory-mapped file.
+   */
+  private static final class FloatColumn {
+
+    private static final int CHUNK_SHIFT = 28;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final FloatBuffer[] chunks;
+
+    private FloatColumn(FileChannel channel, long position, long length) throws IOException {
+      int numChunks = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+      chunks = new FloatBuffer[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        long start = (long) i << CHUNK_SHIFT;
+        long chunkLength = Math.min(length - start, 1L << CHUNK_SHIFT);
+        chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position + start * 4, chunkLength * 4)
+            .asFloatBuffer();
+      }
+    }
+
+    float get(long index) {
+      return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    void set(long index, float value) {
+      chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+  }
+
+}
@@ -86,12 +86,12 @@ public final class NearestNUserNeighborhood extends AbstractUserNeighborhood {
     DataModel dataModel = getDataModel();
     UserSimilarity userSimilarityImpl = getUserSimilarity();
     
-    TopItems.Estimator<Long> estimator = new Estimator(userSimilarityImpl, userID, minSimilarity);
+    TopItems.IDEstimator estimator = new Estimator(userSimilarityImpl, userID, minSimilarity);
     
     LongPrimitiveIterator userIDs = SamplingLongPrimitiveIterator.maybeWrapIterator(dataModel.getUserIDs(),
       getSamplingRate());
     
-    return TopItems.getTopUsers(n, userIDs, null, estimator);
+    return TopItems.getTopUsersUnboxed(n, userIDs, null, estimator);
   }
   
   @Override
@@ -99,7 +99,7 @@ public final class NearestNUserNeighborhood extends AbstractUserNeighborhood {
     return "NearestNUserNeighborhood";
   }
   
-  private static final class Estimator implements TopItems.Estimator<Long> {
+  private static final class Estimator implements TopItems.IDEstimator {
     private final UserSimilarity userSimilarityImpl;
     private final long theUserID;
     private final double minSim;
@@ -111,7 +111,7 @@ public final class NearestNUserNeighborhood extends AbstractUserNeighborhood {
     }
     
     @Override
-    public double estimate(Long userID) throws TasteException {
+    public double estimate(long userID) throws TasteException {
       if (userID == theUserID) {
         return Double.NaN;
       }
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItemsSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Computes recommendations for many users in one pass, on several threads, and streams them to a
+ * {@link RecommendedItemsSink}. The threads take the user IDs from the given iterator in small blocks, so it may
+ * be a lazy iterator over a huge number of users. Every thread keeps its own {@link TopItemsHeap} and reuses it
+ * for all of its users. Progress and the final throughput are logged in users/sec.
+ * </p>
+ *
+ * <p>
+ * Recommenders like {@link GenericItemBasedRecommender} offer this through a {@code recommend} method taking a
+ * {@link LongPrimitiveIterator} of user IDs, which sets up state shared by the whole batch and then hands a
+ * {@link UserRecommender} to this class.
+ * </p>
+ */
+public final class BatchRecommender {
+  
+  private static final Logger log = LoggerFactory.getLogger(BatchRecommender.class);
+  
+  private static final int BLOCK_SIZE = 100;
+  private static final long LOG_INTERVAL = 100000L;
+  
+  private BatchRecommender() { }
+  
+  /**
+   * Computes the recommendations for one user. It is invoked by several threads at once, each of which passes in
+   * its own heap.
+   */
+  public interface UserRecommender {
+    
+    /**
+     * @param topItems
+     *          a heap sized for the number of recommendations, to be used with
+     *          {@link TopItems#getTopItemsUnboxed(LongPrimitiveIterator,
+     *          org.apache.mahout.cf.taste.recommender.IDRescorer, TopItems.IDEstimator, TopItemsHeap)}
+     */
+    List<RecommendedItem> recommend(long userID, TopItemsHeap topItems) throws TasteException;
+    
+  }
+  
+  /**
+   * @param userIDs
+   *          users to compute recommendations for; only ever accessed by one thread at a time
+   * @param howMany
+   *          number of recommendations per user, used to size the per-thread heaps
+   * @param numThreads
+   *          number of threads to use; with 1, everything runs in the calling thread
+   * @return number of users recommendations were computed for
+   * @throws TasteException
+   *           if computing or writing the recommendations for any user fails; the remaining users are skipped
+   */
+  public static long recommend(LongPrimitiveIterator userIDs,
+                               int howMany,
+                               int numThreads,
+                               UserRecommender recommender,
+                               RecommendedItemsSink sink) throws TasteException {
+    Preconditions.checkArgument(userIDs != null, "userIDs is null");
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    Preconditions.checkArgument(recommender != null, "recommender is null");
+    Preconditions.checkArgument(sink != null, "sink is null");
+    
+    log.info("Recommending {} items per user in {} threads", howMany, numThreads);
+    long start = System.currentTimeMillis();
+    Progress progress = new Progress(start);
+    
+    if (numThreads == 1) {
+      new Worker(userIDs, howMany, recommender, sink, progress).call();
+    } else {
+      Collection<Callable<Void>> workers = new ArrayList<Callable<Void>>(numThreads);
+      for (int n = 0; n < numThreads; n++) {
+        workers.add(new Worker(userIDs, howMany, recommender, sink, progress));
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      try {
+        for (Future<Void> future : executor.invokeAll(workers)) {
+          future.get();
+        }
+      } catch (InterruptedException ie) {
+        throw new TasteException(ie);
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof TasteException) {
+          throw (TasteException) cause;
+        }
+        throw new TasteException(cause);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    
+    long numUsers = progress.numUsers.get();
+    long elapsed = System.currentTimeMillis() - start;
+    log.info("Recommended for {} users in {}ms ({} users/sec)",
+             new Object[] {numUsers, elapsed, usersPerSecond(numUsers, elapsed)});
+    return numUsers;
+  }
+  
+  private static long usersPerSecond(long numUsers, long elapsedMillis) {
+    return elapsedMillis == 0L ? numUsers * 1000L : numUsers * 1000L / elapsedMillis;
+  }
+  
+  private static final class Progress {
+    
+    private final long start;
+    private final AtomicLong numUsers = new AtomicLong();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    
+    private Progress(long start) {
+      this.start = start;
+    }
+    
+    private void add(int users) {
+      long after = numUsers.addAndGet(users);
+      if (after / LOG_INTERVAL != (after - users) / LOG_INTERVAL) {
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Recommended for {} users so far ({} users/sec)", after, usersPerSecond(after, elapsed));
+      }
+    }
+  }
+  
+  private static final class Worker implements Callable<Void> {
+    
+    private final LongPrimitiveIterator userIDs;
+    private final UserRecommender recommender;
+    private final RecommendedItemsSink sink;
+    private final Progress progress;
+    private final TopItemsHeap topItems;
+    private final long[] block = new long[BLOCK_SIZE];
+    
+    private Worker(LongPrimitiveIterator userIDs,
+                   int howMany,
+                   UserRecommender recommender,
+                   RecommendedItemsSink sink,
+                   Progress progress) {
+      this.userIDs = userIDs;
+      this.recommender = recommender;
+      this.sink = sink;
+      this.progress = progress;
+      this.topItems = new TopItemsHeap(howMany);
+    }
+    
+    @Override
+    public Void call() throws TasteException {
+      try {
+        int size;
+        while (!progress.failed.get() && (size = nextBlock()) > 0) {
+          for (int i = 0; i < size; i++) {
+            long userID = block[i];
+            sink.write(userID, recommender.recommend(userID, topItems));
+          }
+          progress.add(size);
+        }
+      } catch (TasteException te) {
+        progress.failed.set(true);
+        throw te;
+      } catch (RuntimeException re) {
+        progress.failed.set(true);
+        throw re;
+      }
+      return null;
+    }
+    
+    private int nextBlock() {
+      synchronized (userIDs) {
+        int size = 0;
+        while (size < BLOCK_SIZE && userIDs.hasNext()) {
+          block[size++] = userIDs.nextLong();
+        }
+        return size;
+      }
+    }
+  }
+  
+}
@@ -25,10 +25,13 @@ import java.util.concurrent.Callable;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
 import org.apache.mahout.cf.taste.impl.model.PlusAnonymousUserDataModel;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
 import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.apache.mahout.cf.taste.recommender.Recommender;
@@ -42,8 +45,16 @@ import com.google.common.base.Preconditions;
  * <p>
  * A {@link Recommender} which caches the results from another {@link Recommender} in memory.
  * </p>
+ *
+ * <p>
+ * A refresh clears all cached recommendations and estimated preferences. When this is registered as the
+ * {@link PreferenceChangeListener} of its {@link DataModel}, changes the {@link DataModel} applies between
+ * refreshes also drop the recommendations of the changed users, and the estimated preferences of the changed
+ * users or items, right away. Recommendations of other users may depend on the changes too, so they are only
+ * dropped by the next refresh.
+ * </p>
  */
-public final class CachingRecommender implements Recommender {
+public final class CachingRecommender implements Recommender, PreferenceChangeListener {
   
   private static final Logger log = LoggerFactory.getLogger(CachingRecommender.class);
   
@@ -68,6 +79,7 @@ public final class CachingRecommender implements Recommender {
       @Override
       public Object call() {
         clear();
+        estimatedPrefCache.clear();
         return null;
       }
     });
@@ -172,6 +184,26 @@ public final class CachingRecommender implements Recommender {
     recommendationCache.clear();
   }
   
+  @Override
+  public void preferencesChanged(final FastIDSet userIDs, final FastIDSet itemIDs) {
+    LongPrimitiveIterator it = userIDs.iterator();
+    while (it.hasNext()) {
+      clear(it.nextLong());
+    }
+    estimatedPrefCache.removeKeysMatching(new Cache.MatchPredicate<LongPair>() {
+      @Override
+      public boolean matches(LongPair userItem) {
+        return userIDs.contains(userItem.getFirst()) || itemIDs.contains(userItem.getSecond());
+      }
+    });
+  }
+
+  @Override
+  public void allPreferencesChanged() {
+    clear();
+    estimatedPrefCache.clear();
+  }
+
   @Override
   public String toString() {
     return "CachingRecommender[recommender:" + recommender + ']';
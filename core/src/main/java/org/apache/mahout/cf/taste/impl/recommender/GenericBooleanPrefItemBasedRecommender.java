@@ -49,9 +49,11 @@ public final class GenericBooleanPrefItemBasedRecommender extends GenericItemBas
    * sum of similarities.
    */
   @Override
-  protected float doEstimatePreference(long userID, long itemID) throws TasteException {
-    PreferenceArray prefs = getDataModel().getPreferencesFromUser(userID);
-    double[] similarities = getSimilarity().itemSimilarities(itemID, prefs.getIDs());
+  protected float doEstimatePreference(long userID,
+                                       PreferenceArray prefs,
+                                       long itemID,
+                                       ItemSimilarity itemSimilarity) throws TasteException {
+    double[] similarities = itemSimilarity.itemSimilarities(itemID, prefs.getIDs());
     boolean foundAPref = false;
     double totalSimilarity = 0.0;
     for (double theSimilarity : similarities) {
@@ -27,14 +27,18 @@ import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.similarity.CachingItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.ItemBasedRecommender;
 import org.apache.mahout.cf.taste.recommender.MostSimilarItemsCandidateItemsStrategy;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItemsSink;
 import org.apache.mahout.cf.taste.recommender.Rescorer;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 import org.apache.mahout.common.LongPair;
@@ -74,8 +78,10 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   private final MostSimilarItemsCandidateItemsStrategy mostSimilarItemsCandidateItemsStrategy;
   private final RefreshHelper refreshHelper;
   private EstimatedPreferenceCapper capper;
+  private final boolean overridesDoEstimatePreference;
 
   private static final boolean EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT = true;
+  public static final int DEFAULT_BATCH_SIMILARITY_CACHE_SIZE = 1000000;
 
   public GenericItemBasedRecommender(DataModel dataModel,
                                      ItemSimilarity similarity,
@@ -97,6 +103,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     refreshHelper.addDependency(dataModel);
     refreshHelper.addDependency(similarity);
     capper = buildCapper();
+    overridesDoEstimatePreference = overridesDoEstimatePreference(getClass());
   }
 
   public GenericItemBasedRecommender(DataModel dataModel, ItemSimilarity similarity) {
@@ -117,19 +124,74 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
     log.debug("Recommending items for user ID '{}'", userID);
 
-    if (getNumPreferences(userID) == 0) {
+    List<RecommendedItem> topItems = doRecommend(userID, rescorer, similarity, new TopItemsHeap(howMany));
+
+    log.debug("Recommendations are: {}", topItems);
+    return topItems;
+  }
+
+  /**
+   * <p>
+   * Computes the top {@code howMany} recommendations for each of the given users and writes them to the given
+   * sink, using {@code numThreads} threads; see {@link BatchRecommender}. Results are the same as those of
+   * {@link #recommend(long, int, IDRescorer)}.
+   * </p>
+   *
+   * <p>
+   * Unless the {@link ItemSimilarity} is already cached or precomputed, up to
+   * {@link #DEFAULT_BATCH_SIMILARITY_CACHE_SIZE} similarities are cached for the duration of the batch, so that the
+   * many users who share candidate and preferred items look each similarity up only once.
+   * </p>
+   *
+   * @return number of users recommendations were computed for
+   */
+  public long recommend(LongPrimitiveIterator userIDs,
+                        int howMany,
+                        IDRescorer rescorer,
+                        int numThreads,
+                        RecommendedItemsSink sink) throws TasteException {
+    return recommend(userIDs, howMany, rescorer, numThreads, DEFAULT_BATCH_SIMILARITY_CACHE_SIZE, sink);
+  }
+
+  /**
+   * Like {@link #recommend(LongPrimitiveIterator, int, IDRescorer, int, RecommendedItemsSink)}, but caches up to
+   * {@code similarityCacheSize} similarities for the duration of the batch.
+   *
+   * @return number of users recommendations were computed for
+   */
+  public long recommend(LongPrimitiveIterator userIDs,
+                        int howMany,
+                        final IDRescorer rescorer,
+                        int numThreads,
+                        int similarityCacheSize,
+                        RecommendedItemsSink sink) throws TasteException {
+    Preconditions.checkArgument(similarityCacheSize >= 1, "similarityCacheSize must be at least 1");
+    final ItemSimilarity batchSimilarity =
+        similarity instanceof CachingItemSimilarity || similarity instanceof GenericItemSimilarity
+        ? similarity
+        : new CachingItemSimilarity(similarity, similarityCacheSize);
+    return BatchRecommender.recommend(userIDs, howMany, numThreads, new BatchRecommender.UserRecommender() {
+      @Override
+      public List<RecommendedItem> recommend(long userID, TopItemsHeap topItems) throws TasteException {
+        return doRecommend(userID, rescorer, batchSimilarity, topItems);
+      }
+    }, sink);
+  }
+
+  private List<RecommendedItem> doRecommend(long userID,
+                                            IDRescorer rescorer,
+                                            ItemSimilarity itemSimilarity,
+                                            TopItemsHeap topItems) throws TasteException {
+    PreferenceArray preferencesFromUser = getDataModel().getPreferencesFromUser(userID);
+    if (preferencesFromUser.length() == 0) {
       return Collections.emptyList();
     }
 
     FastIDSet possibleItemIDs = getAllOtherItems(userID);
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID);
-
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
-      estimator);
+    TopItems.IDEstimator estimator = new Estimator(userID, preferencesFromUser, itemSimilarity);
 
-    log.debug("Recommendations are: {}", topItems);
-    return topItems;
+    return TopItems.getTopItemsUnboxed(possibleItemIDs.iterator(), rescorer, estimator, topItems);
   }
   
   @Override
@@ -212,12 +274,40 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     return TopItems.getTopItems(howMany, possibleItemIDs.iterator(), null, estimator);
   }
   
+  /**
+   * Estimates the preference of a user for an item the user has not expressed a preference for. Subclasses which
+   * override this method are used by {@link #recommend(long, int, IDRescorer)} too, but then lose the batch-scoped
+   * similarities and the user's preferences looked up once per user; overriding
+   * {@link #doEstimatePreference(long, PreferenceArray, long, ItemSimilarity)} instead keeps both.
+   */
   protected float doEstimatePreference(long userID, long itemID) throws TasteException {
+    return doEstimatePreference(userID, getDataModel().getPreferencesFromUser(userID), itemID, similarity);
+  }
+
+  private static boolean overridesDoEstimatePreference(Class<?> clazz) {
+    for (Class<?> c = clazz; c != GenericItemBasedRecommender.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("doEstimatePreference", long.class, long.class);
+        return true;
+      } catch (NoSuchMethodException nsme) {
+        // not declared here, look further up
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Estimates the preference from the user's preferences, which the caller has already looked up, and the given
+   * {@link ItemSimilarity}, which is either {@link #getSimilarity()} or a batch-scoped wrapper around it.
+   */
+  protected float doEstimatePreference(long userID,
+                                       PreferenceArray prefs,
+                                       long itemID,
+                                       ItemSimilarity itemSimilarity) throws TasteException {
     double preference = 0.0;
     double totalSimilarity = 0.0;
     int count = 0;
-    PreferenceArray prefs = getDataModel().getPreferencesFromUser(userID);
-    double[] similarities = similarity.itemSimilarities(itemID, prefs.getIDs());
+    double[] similarities = itemSimilarity.itemSimilarities(itemID, prefs.getIDs());
     for (int i = 0; i < similarities.length; i++) {
       double theSimilarity = similarities[i];
       if (!Double.isNaN(theSimilarity)) {
@@ -242,10 +332,6 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     return estimate;
   }
   
-  private int getNumPreferences(long userID) throws TasteException {
-    return getDataModel().getPreferencesFromUser(userID).length();
-  }
-  
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
     refreshHelper.refresh(alreadyRefreshed);
@@ -288,17 +374,24 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long userID;
+    private final PreferenceArray preferencesFromUser;
+    private final ItemSimilarity similarity;
     
-    private Estimator(long userID) {
+    private Estimator(long userID, PreferenceArray preferencesFromUser, ItemSimilarity similarity) {
       this.userID = userID;
+      this.preferencesFromUser = preferencesFromUser;
+      this.similarity = similarity;
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
-      return doEstimatePreference(userID, itemID);
+    public double estimate(long itemID) throws TasteException {
+      if (overridesDoEstimatePreference) {
+        return doEstimatePreference(userID, itemID);
+      }
+      return doEstimatePreference(userID, preferencesFromUser, itemID, similarity);
     }
   }
   
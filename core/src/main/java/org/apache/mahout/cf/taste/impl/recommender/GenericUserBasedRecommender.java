@@ -92,10 +92,10 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
 
     FastIDSet allItemIDs = getAllOtherItems(theNeighborhood, userID);
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID, theNeighborhood);
+    TopItems.IDEstimator estimator = new Estimator(userID, theNeighborhood);
 
     List<RecommendedItem> topItems = TopItems
-        .getTopItems(howMany, allItemIDs.iterator(), rescorer, estimator);
+        .getTopItemsUnboxed(howMany, allItemIDs.iterator(), rescorer, estimator);
 
     log.debug("Recommendations are: {}", topItems);
     return topItems;
@@ -225,7 +225,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long theUserID;
     private final long[] theNeighborhood;
@@ -236,7 +236,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       return doEstimatePreference(theUserID, theNeighborhood, itemID);
     }
   }
@@ -49,15 +49,39 @@ public final class TopItems {
                                                   LongPrimitiveIterator possibleItemIDs,
                                                   IDRescorer rescorer,
                                                   Estimator<Long> estimator) throws TasteException {
+    Preconditions.checkArgument(estimator != null, "argument is null");
+    return getTopItemsUnboxed(howMany, possibleItemIDs, rescorer, new BoxingIDEstimator(estimator));
+  }
+  
+  /**
+   * Like {@link #getTopItems(int, LongPrimitiveIterator, IDRescorer, Estimator)}, but estimates through an
+   * {@link IDEstimator}, which takes IDs as primitives. The name differs so that an estimator implementing both
+   * interfaces, or a {@code null} one, does not make calls ambiguous.
+   */
+  public static List<RecommendedItem> getTopItemsUnboxed(int howMany,
+                                                         LongPrimitiveIterator possibleItemIDs,
+                                                         IDRescorer rescorer,
+                                                         IDEstimator estimator) throws TasteException {
+    return getTopItemsUnboxed(possibleItemIDs, rescorer, estimator, new TopItemsHeap(howMany));
+  }
+  
+  /**
+   * Like {@link #getTopItemsUnboxed(int, LongPrimitiveIterator, IDRescorer, IDEstimator)}, but collects the top
+   * items in the given heap, which is cleared first and sized for the number of items to return. This lets callers
+   * which compute recommendations for many users in a row reuse one heap, so that nothing is allocated per
+   * candidate item.
+   */
+  public static List<RecommendedItem> getTopItemsUnboxed(LongPrimitiveIterator possibleItemIDs,
+                                                         IDRescorer rescorer,
+                                                         IDEstimator estimator,
+                                                         TopItemsHeap topItems) throws TasteException {
     Preconditions.checkArgument(possibleItemIDs != null, "argument is null");
     Preconditions.checkArgument(estimator != null, "argument is null");
+    Preconditions.checkArgument(topItems != null, "argument is null");
 
-    Queue<RecommendedItem> topItems = new PriorityQueue<RecommendedItem>(howMany + 1,
-      Collections.reverseOrder(ByValueRecommendedItemComparator.getInstance()));
-    boolean full = false;
-    double lowestTopValue = Double.NEGATIVE_INFINITY;
+    topItems.clear();
     while (possibleItemIDs.hasNext()) {
-      long itemID = possibleItemIDs.next();
+      long itemID = possibleItemIDs.nextLong();
       if ((rescorer == null) || !rescorer.isFiltered(itemID)) {
         double preference;
         try {
@@ -66,37 +90,36 @@ public final class TopItems {
           continue;
         }
         double rescoredPref = rescorer == null ? preference : rescorer.rescore(itemID, preference);
-        if (!Double.isNaN(rescoredPref) && (!full || (rescoredPref > lowestTopValue))) {
-          topItems.add(new GenericRecommendedItem(itemID, (float) rescoredPref));
-          if (full) {
-            topItems.poll();
-          } else if (topItems.size() > howMany) {
-            full = true;
-            topItems.poll();
-          }
-          lowestTopValue = topItems.peek().getValue();
+        if (!Double.isNaN(rescoredPref)) {
+          // recommended items hold float values, so rank by those
+          topItems.offer(itemID, (float) rescoredPref);
         }
       }
     }
-    int size = topItems.size();
-    if (size == 0) {
-      return Collections.emptyList();
-    }
-    List<RecommendedItem> result = new ArrayList<RecommendedItem>(size);
-    result.addAll(topItems);
-    Collections.sort(result, ByValueRecommendedItemComparator.getInstance());
-    return result;
+    return topItems.toRecommendedItems();
   }
   
   public static long[] getTopUsers(int howMany,
                                    LongPrimitiveIterator allUserIDs,
                                    IDRescorer rescorer,
                                    Estimator<Long> estimator) throws TasteException {
+    Preconditions.checkArgument(estimator != null, "argument is null");
+    return getTopUsersUnboxed(howMany, allUserIDs, rescorer, new BoxingIDEstimator(estimator));
+  }
+  
+  /**
+   * Like {@link #getTopUsers(int, LongPrimitiveIterator, IDRescorer, Estimator)}, but estimates through an
+   * {@link IDEstimator}.
+   */
+  public static long[] getTopUsersUnboxed(int howMany,
+                                          LongPrimitiveIterator allUserIDs,
+                                          IDRescorer rescorer,
+                                          IDEstimator estimator) throws TasteException {
     Queue<SimilarUser> topUsers = new PriorityQueue<SimilarUser>(howMany + 1, Collections.reverseOrder());
     boolean full = false;
     double lowestTopValue = Double.NEGATIVE_INFINITY;
     while (allUserIDs.hasNext()) {
-      long userID = allUserIDs.next();
+      long userID = allUserIDs.nextLong();
       if ((rescorer != null) && rescorer.isFiltered(userID)) {
         continue;
       }
@@ -208,4 +231,25 @@ public final class TopItems {
     double estimate(T thing) throws TasteException;
   }
   
+  /**
+   * An {@link Estimator} for {@code long} IDs which avoids boxing them, in the spirit of {@link IDRescorer}.
+   */
+  public interface IDEstimator {
+    double estimate(long id) throws TasteException;
+  }
+  
+  private static final class BoxingIDEstimator implements IDEstimator {
+    
+    private final Estimator<Long> estimator;
+    
+    private BoxingIDEstimator(Estimator<Long> estimator) {
+      this.estimator = estimator;
+    }
+    
+    @Override
+    public double estimate(long id) throws TasteException {
+      return estimator.estimate(id);
+    }
+  }
+  
 }
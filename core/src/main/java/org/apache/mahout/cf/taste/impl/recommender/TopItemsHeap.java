@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A bounded min-heap of IDs and their values, which keeps the IDs with the highest values offered to it. IDs and
+ * values are held in primitive arrays, so offering does not allocate; only reading the result out does. The heap
+ * can be reused after {@link #clear()}.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public final class TopItemsHeap {
+  
+  private final long[] ids;
+  private final double[] values;
+  private int size;
+  
+  /**
+   * @param maxSize
+   *          number of IDs to keep
+   */
+  public TopItemsHeap(int maxSize) {
+    Preconditions.checkArgument(maxSize >= 1, "maxSize must be at least 1");
+    ids = new long[maxSize];
+    values = new double[maxSize];
+  }
+  
+  public int size() {
+    return size;
+  }
+  
+  public boolean isEmpty() {
+    return size == 0;
+  }
+  
+  public void clear() {
+    size = 0;
+  }
+  
+  /**
+   * @param value
+   *          must not be {@link Double#NaN}
+   * @return true if the ID is kept, possibly pushing out the ID with the lowest value
+   */
+  public boolean offer(long id, double value) {
+    if (size < ids.length) {
+      siftUp(size++, id, value);
+      return true;
+    }
+    if (value > values[0]) {
+      siftDown(0, id, value);
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * @return the kept IDs and their values as {@link RecommendedItem}s, ordered from highest to lowest value. This
+   *         empties the heap.
+   */
+  public List<RecommendedItem> toRecommendedItems() {
+    if (size == 0) {
+      return Collections.emptyList();
+    }
+    int count = sortDescending();
+    List<RecommendedItem> result = new ArrayList<RecommendedItem>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(new GenericRecommendedItem(ids[i], (float) values[i]));
+    }
+    return result;
+  }
+  
+  /**
+   * @return the kept IDs, ordered from highest to lowest value. This empties the heap.
+   */
+  public long[] toIDs() {
+    int count = sortDescending();
+    long[] result = new long[count];
+    System.arraycopy(ids, 0, result, 0, count);
+    return result;
+  }
+  
+  /**
+   * Heapsort: repeatedly moves the lowest value to the end of the heap, which leaves the arrays ordered from
+   * highest to lowest value.
+   */
+  private int sortDescending() {
+    int count = size;
+    while (size > 1) {
+      long lowestID = ids[0];
+      double lowestValue = values[0];
+      size--;
+      siftDown(0, ids[size], values[size]);
+      ids[size] = lowestID;
+      values[size] = lowestValue;
+    }
+    size = 0;
+    return count;
+  }
+  
+  private void siftUp(int index, long id, double value) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (values[parent] <= value) {
+        break;
+      }
+      ids[index] = ids[parent];
+      values[index] = values[parent];
+      index = parent;
+    }
+    ids[index] = id;
+    values[index] = value;
+  }
+  
+  private void siftDown(int index, long id, double value) {
+    int half = size >>> 1;
+    while (index < half) {
+      int child = (index << 1) + 1;
+      int right = child + 1;
+      if (right < size && values[right] < values[child]) {
+        child = right;
+      }
+      if (value <= values[child]) {
+        break;
+      }
+      ids[index] = ids[child];
+      values[index] = values[child];
+      index = child;
+    }
+    ids[index] = id;
+    values[index] = value;
+  }
+  
+}
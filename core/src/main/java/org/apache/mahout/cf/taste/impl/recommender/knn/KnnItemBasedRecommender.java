@@ -63,11 +63,12 @@ public final class KnnItemBasedRecommender extends GenericItemBasedRecommender {
         getDefaultMostSimilarItemsCandidateItemsStrategy(), neighborhoodSize);
   }
   
-  private List<RecommendedItem> mostSimilarItems(long itemID,
-                                                 LongPrimitiveIterator possibleItemIDs,
-                                                 int howMany,
-                                                 Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(itemID, getSimilarity(), rescorer);
+  private static List<RecommendedItem> mostSimilarItems(long itemID,
+                                                        LongPrimitiveIterator possibleItemIDs,
+                                                        int howMany,
+                                                        ItemSimilarity itemSimilarity,
+                                                        Rescorer<LongPair> rescorer) throws TasteException {
+    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(itemID, itemSimilarity, rescorer);
     return TopItems.getTopItems(howMany, possibleItemIDs, null, estimator);
   }
   
@@ -126,10 +127,12 @@ public final class KnnItemBasedRecommender extends GenericItemBasedRecommender {
   }
   
   @Override
-  protected float doEstimatePreference(long theUserID, long itemID) throws TasteException {
+  protected float doEstimatePreference(long theUserID,
+                                       PreferenceArray prefs,
+                                       long itemID,
+                                       ItemSimilarity itemSimilarity) throws TasteException {
     
     DataModel dataModel = getDataModel();
-    PreferenceArray prefs = dataModel.getPreferencesFromUser(theUserID);
     int size = prefs.length();
     FastIDSet possibleItemIDs = new FastIDSet(size);
     for (int i = 0; i < size; i++) {
@@ -138,7 +141,7 @@ public final class KnnItemBasedRecommender extends GenericItemBasedRecommender {
     possibleItemIDs.remove(itemID);
     
     List<RecommendedItem> mostSimilar = mostSimilarItems(itemID, possibleItemIDs.iterator(),
-      neighborhoodSize, null);
+      neighborhoodSize, itemSimilarity, null);
     long[] theNeighborhood = new long[mostSimilar.size()];
     int nOffset = 0;
     for (RecommendedItem rec : mostSimilar) {
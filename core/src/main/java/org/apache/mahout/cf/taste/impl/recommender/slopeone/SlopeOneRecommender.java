@@ -111,9 +111,9 @@ public final class SlopeOneRecommender extends AbstractRecommender {
 
     FastIDSet possibleItemIDs = diffStorage.getRecommendableItemIDs(userID);
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID);
+    TopItems.IDEstimator estimator = new Estimator(userID, getDataModel().getPreferencesFromUser(userID));
 
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
+    List<RecommendedItem> topItems = TopItems.getTopItemsUnboxed(howMany, possibleItemIDs.iterator(), rescorer,
       estimator);
 
     log.debug("Recommendations are: {}", topItems);
@@ -127,13 +127,12 @@ public final class SlopeOneRecommender extends AbstractRecommender {
     if (actualPref != null) {
       return actualPref;
     }
-    return doEstimatePreference(userID, itemID);
+    return doEstimatePreference(userID, model.getPreferencesFromUser(userID), itemID);
   }
   
-  private float doEstimatePreference(long userID, long itemID) throws TasteException {
+  private float doEstimatePreference(long userID, PreferenceArray prefs, long itemID) throws TasteException {
     double count = 0.0;
     double totalPreference = 0.0;
-    PreferenceArray prefs = getDataModel().getPreferencesFromUser(userID);
     RunningAverage[] averages = diffStorage.getDiffs(userID, itemID, prefs);
     int size = prefs.length();
     for (int i = 0; i < size; i++) {
@@ -210,17 +209,19 @@ public final class SlopeOneRecommender extends AbstractRecommender {
            + ", diffStorage:" + diffStorage + ']';
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long userID;
+    private final PreferenceArray prefs;
     
-    private Estimator(long userID) {
+    private Estimator(long userID, PreferenceArray prefs) {
       this.userID = userID;
+      this.prefs = prefs;
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
-      return doEstimatePreference(userID, itemID);
+    public double estimate(long itemID) throws TasteException {
+      return doEstimatePreference(userID, prefs, itemID);
     }
   }
   
@@ -17,6 +17,7 @@
 
 package org.apache.mahout.cf.taste.impl.recommender.svd;
 
+import com.google.common.base.Preconditions;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
@@ -32,13 +33,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * factorizes the rating matrix using "Alternating-Least-Squares with Weighted-λ-Regularization" as described in
  * the paper "Large-scale Collaborative Filtering for the Netflix Prize" available at
  * {@see http://www.hpl.hp.com/personal/Robert_Schreiber/papers/2008%20AAIM%20Netflix/netflix_aaim08(submitted).pdf}
+ *
+ * <p>Each half-step can be computed by several threads: the users (or items) are cut into blocks which are handed out
+ * to a fixed number of workers, each of them owning its own {@link AlternateLeastSquaresSolver} and scratch buffers.
+ * As every row is solved independently from the others, the result does not depend on the number of threads.</p>
  */
 public class ALSWRFactorizer extends AbstractFactorizer {
 
@@ -50,59 +61,55 @@ public class ALSWRFactorizer extends AbstractFactorizer {
   private final double lambda;
   /** number of iterations */
   private final int numIterations;
+  /** number of threads used to solve the rows of each half-step */
+  private final int numThreads;
+
+  /** upper bound for the number of users or items handed out to a worker at once */
+  private static final int MAX_BLOCK_SIZE = 1000;
 
   private static final Logger log = LoggerFactory.getLogger(ALSWRFactorizer.class);
 
   public ALSWRFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations) throws TasteException {
+    this(dataModel, numFeatures, lambda, numIterations, 1);
+  }
+
+  public ALSWRFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations, int numThreads)
+    throws TasteException {
     super(dataModel);
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be at least 1");
     this.dataModel = dataModel;
     this.numFeatures = numFeatures;
     this.lambda = lambda;
     this.numIterations = numIterations;
+    this.numThreads = numThreads;
   }
 
   @Override
   public Factorization factorize() throws TasteException {
-    log.info("starting to compute the factorization...");
-    AlternateLeastSquaresSolver solver = new AlternateLeastSquaresSolver();
+    log.info("starting to compute the factorization using {} thread(s)...", numThreads);
+
+    long[] userIDs = toArray(dataModel.getNumUsers(), dataModel.getUserIDs());
+    long[] itemIDs = toArray(dataModel.getNumItems(), dataModel.getItemIDs());
 
     double[][] M = initializeM();
     double[][] U = null;
 
-    for (int iteration = 0; iteration < numIterations; iteration++) {
-      log.info("iteration {}", iteration);
+    ExecutorService executor = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+    try {
+      for (int iteration = 0; iteration < numIterations; iteration++) {
+        log.info("iteration {}", iteration);
 
-      /* fix M - compute U */
-      U = new double[dataModel.getNumUsers()][numFeatures];
+        /* fix M - compute U */
+        U = new double[dataModel.getNumUsers()][numFeatures];
+        solveHalfStep(executor, userIDs, true, M, U);
 
-      LongPrimitiveIterator userIDsIterator = dataModel.getUserIDs();
-      while (userIDsIterator.hasNext()) {
-        long userID = userIDsIterator.nextLong();
-        List<Vector> featureVectors = new ArrayList<Vector>();
-        LongPrimitiveIterator itemIDsFromUser = dataModel.getItemIDsFromUser(userID).iterator();
-        while (itemIDsFromUser.hasNext()) {
-          long itemID = itemIDsFromUser.nextLong();
-          featureVectors.add(new DenseVector(M[itemIndex(itemID)]));
-        }
-        PreferenceArray userPrefs = dataModel.getPreferencesFromUser(userID);
-        Vector userFeatures = solver.solve(featureVectors, ratingVector(userPrefs), lambda, numFeatures);
-        setFeatureColumn(U, userIndex(userID), userFeatures);
+        /* fix U - compute M */
+        M = new double[dataModel.getNumItems()][numFeatures];
+        solveHalfStep(executor, itemIDs, false, U, M);
       }
-
-      /* fix U - compute M */
-      M = new double[dataModel.getNumItems()][numFeatures];
-
-      LongPrimitiveIterator itemIDsIterator = dataModel.getItemIDs();
-      while (itemIDsIterator.hasNext()) {
-        long itemID = itemIDsIterator.nextLong();
-        List<Vector> featureVectors = new ArrayList<Vector>();
-        for (Preference pref : dataModel.getPreferencesForItem(itemID)) {
-          long userID = pref.getUserID();
-          featureVectors.add(new DenseVector(U[userIndex(userID)]));
-        }
-        PreferenceArray itemPrefs = dataModel.getPreferencesForItem(itemID);
-        Vector itemFeatures = solver.solve(featureVectors, ratingVector(itemPrefs), lambda, numFeatures);
-        setFeatureColumn(M, itemIndex(itemID), itemFeatures);
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
       }
     }
 
@@ -110,6 +117,39 @@ public class ALSWRFactorizer extends AbstractFactorizer {
     return createFactorization(U, M);
   }
 
+  /**
+   * computes the rows of {@code result} for all given IDs while {@code fixed} is held constant
+   *
+   * @param forUsers whether the IDs are userIDs (and {@code fixed} holds the item features) or itemIDs
+   */
+  private void solveHalfStep(ExecutorService executor, long[] ids, boolean forUsers, double[][] fixed,
+      double[][] result) throws TasteException {
+    /* use several blocks per thread so that workers that got cheap rows can help out with the remaining ones */
+    int blockSize = Math.max(1, Math.min(MAX_BLOCK_SIZE, ids.length / (numThreads * 4)));
+    AtomicInteger nextBlock = new AtomicInteger();
+    if (executor == null) {
+      new HalfStepWorker(ids, blockSize, forUsers, fixed, result, nextBlock).call();
+      return;
+    }
+    Collection<Callable<Void>> workers = new ArrayList<Callable<Void>>(numThreads);
+    for (int n = 0; n < numThreads; n++) {
+      workers.add(new HalfStepWorker(ids, blockSize, forUsers, fixed, result, nextBlock));
+    }
+    try {
+      for (Future<Void> future : executor.invokeAll(workers)) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      throw new TasteException(cause);
+    }
+  }
+
   protected double[][] initializeM() throws TasteException {
     Random random = RandomUtils.getRandom();
     double[][] M = new double[dataModel.getNumItems()][numFeatures];
@@ -149,4 +189,67 @@ public class ALSWRFactorizer extends AbstractFactorizer {
     return avg.getAverage();
   }
 
+  private static long[] toArray(int size, LongPrimitiveIterator ids) {
+    long[] array = new long[size];
+    int index = 0;
+    while (ids.hasNext()) {
+      array[index++] = ids.nextLong();
+    }
+    return array;
+  }
+
+  /**
+   * solves blocks of rows until there are none left, reusing its solver and its index and rating buffers
+   */
+  private final class HalfStepWorker implements Callable<Void> {
+
+    private final long[] ids;
+    private final int blockSize;
+    private final boolean forUsers;
+    private final double[][] fixed;
+    private final double[][] result;
+    private final AtomicInteger nextBlock;
+
+    private final AlternateLeastSquaresSolver solver = new AlternateLeastSquaresSolver();
+    private int[] rowIndexes = new int[16];
+    private double[] ratings = new double[16];
+
+    private HalfStepWorker(long[] ids, int blockSize, boolean forUsers, double[][] fixed, double[][] result,
+        AtomicInteger nextBlock) {
+      this.ids = ids;
+      this.blockSize = blockSize;
+      this.forUsers = forUsers;
+      this.fixed = fixed;
+      this.result = result;
+      this.nextBlock = nextBlock;
+    }
+
+    @Override
+    public Void call() throws TasteException {
+      int blockStart;
+      while ((blockStart = nextBlock.getAndIncrement() * blockSize) < ids.length) {
+        int blockEnd = Math.min(blockStart + blockSize, ids.length);
+        for (int n = blockStart; n < blockEnd; n++) {
+          solveRow(ids[n]);
+        }
+      }
+      return null;
+    }
+
+    private void solveRow(long id) throws TasteException {
+      PreferenceArray prefs = forUsers ? dataModel.getPreferencesFromUser(id) : dataModel.getPreferencesForItem(id);
+      int numRatings = prefs.length();
+      if (rowIndexes.length < numRatings) {
+        rowIndexes = new int[numRatings];
+        ratings = new double[numRatings];
+      }
+      for (int n = 0; n < numRatings; n++) {
+        rowIndexes[n] = forUsers ? itemIndex(prefs.getItemID(n)) : userIndex(prefs.getUserID(n));
+        ratings[n] = prefs.getValue(n);
+      }
+      Vector features = solver.solve(fixed, rowIndexes, ratings, numRatings, lambda, numFeatures);
+      setFeatureColumn(result, forUsers ? userIndex(id) : itemIndex(id), features);
+    }
+  }
+
 }
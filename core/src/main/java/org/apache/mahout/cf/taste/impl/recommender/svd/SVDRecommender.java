@@ -25,13 +25,17 @@ import com.google.common.base.Preconditions;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.BatchRecommender;
 import org.apache.mahout.cf.taste.impl.recommender.TopItems;
+import org.apache.mahout.cf.taste.impl.recommender.TopItemsHeap;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
 import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItemsSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,21 +73,44 @@ public final class SVDRecommender extends AbstractRecommender {
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
     log.debug("Recommending items for user ID '{}'", userID);
 
-    FastIDSet possibleItemIDs = getAllOtherItems(userID);
-
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
-        new Estimator(userID));
+    List<RecommendedItem> topItems = doRecommend(userID, rescorer, new TopItemsHeap(howMany));
     log.debug("Recommendations are: {}", topItems);
 
     return topItems;
   }
 
+  /**
+   * computes the top {@code howMany} recommendations for each of the given users and writes them to the given sink,
+   * using {@code numThreads} threads, see {@link BatchRecommender}
+   *
+   * @return number of users recommendations were computed for
+   */
+  public long recommend(LongPrimitiveIterator userIDs, int howMany, final IDRescorer rescorer, int numThreads,
+      RecommendedItemsSink sink) throws TasteException {
+    return BatchRecommender.recommend(userIDs, howMany, numThreads, new BatchRecommender.UserRecommender() {
+      @Override
+      public List<RecommendedItem> recommend(long userID, TopItemsHeap topItems) throws TasteException {
+        return doRecommend(userID, rescorer, topItems);
+      }
+    }, sink);
+  }
+
+  private List<RecommendedItem> doRecommend(long userID, IDRescorer rescorer, TopItemsHeap topItems)
+    throws TasteException {
+    FastIDSet possibleItemIDs = getAllOtherItems(userID);
+    return TopItems.getTopItemsUnboxed(possibleItemIDs.iterator(), rescorer,
+        new Estimator(factorization.getUserFeatures(userID)), topItems);
+  }
+
   /**
    * a preference is estimated by computing the dot-product of the user and item feature vectors
    */
   @Override
   public float estimatePreference(long userID, long itemID) throws TasteException {
-    double[] userFeatures = factorization.getUserFeatures(userID);
+    return estimatePreference(factorization.getUserFeatures(userID), itemID);
+  }
+
+  private float estimatePreference(double[] userFeatures, long itemID) throws TasteException {
     double[] itemFeatures = factorization.getItemFeatures(itemID);
     double estimate = 0;
     for (int feature = 0; feature < userFeatures.length; feature++) {
@@ -92,17 +119,20 @@ public final class SVDRecommender extends AbstractRecommender {
     return (float) estimate;
   }
 
-  private final class Estimator implements TopItems.Estimator<Long> {
+  /**
+   * looks the user's features up once and reuses them for all candidate items
+   */
+  private final class Estimator implements TopItems.IDEstimator {
 
-    private final long theUserID;
+    private final double[] userFeatures;
 
-    private Estimator(long theUserID) {
-      this.theUserID = theUserID;
+    private Estimator(double[] userFeatures) {
+      this.userFeatures = userFeatures;
     }
 
     @Override
-    public double estimate(Long itemID) throws TasteException {
-      return estimatePreference(theUserID, itemID);
+    public double estimate(long itemID) throws TasteException {
+      return estimatePreference(userFeatures, itemID);
     }
   }
 
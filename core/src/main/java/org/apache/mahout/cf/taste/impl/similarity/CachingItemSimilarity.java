@@ -23,20 +23,34 @@ import java.util.concurrent.Callable;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 import org.apache.mahout.common.LongPair;
 import com.google.common.base.Preconditions;
 
 /**
+ * <p>
  * Caches the results from an underlying {@link ItemSimilarity} implementation.
+ * </p>
+ *
+ * <p>
+ * A refresh clears the whole cache. If the similarity of two items is computed only from the preferences for those
+ * two items in a {@link DataModel} which reports its changes, register this as its
+ * {@link PreferenceChangeListener}: then a refresh during which the {@link DataModel} applied changes, and reported
+ * them from the refreshing thread, only drops the similarities of the changed items. Any other refresh still
+ * clears everything, since it cannot be known to be limited to those items.
+ * </p>
  */
-public final class CachingItemSimilarity implements ItemSimilarity {
+public final class CachingItemSimilarity implements ItemSimilarity, PreferenceChangeListener {
   
   private final Cache<LongPair,Double> similarityCache;
   private final RefreshHelper refreshHelper;
+  /** set while a thread refreshes this cache, to TRUE once changes reported meanwhile are evicted */
+  private final ThreadLocal<Boolean> changesEvicted = new ThreadLocal<Boolean>();
 
   /**
    * Creates a {@link CachingItemSimilarity} on top of the given {@link ItemSimilarity}.
@@ -56,7 +70,9 @@ public final class CachingItemSimilarity implements ItemSimilarity {
     this.refreshHelper = new RefreshHelper(new Callable<Void>() {
       @Override
       public Void call() {
-        similarityCache.clear();
+        if (!Boolean.TRUE.equals(changesEvicted.get())) {
+          similarityCache.clear();
+        }
         return null;
       }
     });
@@ -81,12 +97,36 @@ public final class CachingItemSimilarity implements ItemSimilarity {
   
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
-    refreshHelper.refresh(alreadyRefreshed);
+    changesEvicted.set(Boolean.FALSE);
+    try {
+      refreshHelper.refresh(alreadyRefreshed);
+    } finally {
+      changesEvicted.remove();
+    }
   }
 
   public void clearCacheForItem(long itemID) {
     similarityCache.removeKeysMatching(new LongPairMatchPredicate(itemID));
   }
+
+  @Override
+  public void preferencesChanged(FastIDSet userIDs, final FastIDSet itemIDs) {
+    similarityCache.removeKeysMatching(new Cache.MatchPredicate<LongPair>() {
+      @Override
+      public boolean matches(LongPair pair) {
+        return itemIDs.contains(pair.getFirst()) || itemIDs.contains(pair.getSecond());
+      }
+    });
+    // only changes applied by the refresh of a dependency, in this thread, account for that whole refresh
+    if (changesEvicted.get() != null) {
+      changesEvicted.set(Boolean.TRUE);
+    }
+  }
+
+  @Override
+  public void allPreferencesChanged() {
+    similarityCache.clear();
+  }
   
   private static final class SimilarityRetriever implements Retriever<LongPair,Double> {
     private final ItemSimilarity similarity;
@@ -0,0 +1,373 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.file;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.common.BufferedChannelWriter;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.MappedFloatArray;
+import org.apache.mahout.cf.taste.impl.common.MappedLongArray;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.Swapper;
+import org.apache.mahout.math.function.IntComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * An immutable {@link ItemSimilarity} backed by a precomputed index in a memory-mapped file. For every item, the
+ * file holds the sorted IDs of its similar items and the similarities to them as floats, so a similarity is found
+ * by two binary searches, one for the item and one among its similar items. Opening the index only maps the file,
+ * and the data is shared through the operating system's page cache instead of living on the heap, unlike
+ * {@link GenericItemSimilarity} which holds a map of maps of boxed values.
+ * </p>
+ *
+ * <p>
+ * Similarities are symmetric, the index stores each of them for both items. The similarity of an item to itself is
+ * 1.0, unknown similarities are {@link Double#NaN}.
+ * </p>
+ *
+ * <p>
+ * Indexes are written with a {@link Builder} or {@link #write(Iterable, File)}. {@link #main(String[])} converts
+ * a file in the format read by {@link FileItemSimilarity}, and
+ * {@link org.apache.mahout.cf.taste.hadoop.similarity.item.ItemSimilarityIndexBuilder} converts the output of
+ * {@link org.apache.mahout.cf.taste.hadoop.similarity.item.ItemSimilarityJob} or
+ * {@link org.apache.mahout.math.hadoop.similarity.RowSimilarityJob}.
+ * </p>
+ */
+public final class MemoryMappedItemSimilarity implements ItemSimilarity {
+
+  private static final Logger log = LoggerFactory.getLogger(MemoryMappedItemSimilarity.class);
+
+  private static final int MAGIC = 0x4D4D4953;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+
+  private final File indexFile;
+  private final int numItems;
+  private final long numSimilarities;
+  private final MappedLongArray itemIDs;
+  private final MappedLongArray offsets;
+  private final MappedLongArray similarItemIDs;
+  private final MappedFloatArray similarities;
+
+  /**
+   * @param indexFile file written by {@link Builder#write(File)}
+   * @throws FileNotFoundException if indexFile does not exist
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public MemoryMappedItemSimilarity(File indexFile) throws IOException {
+    Preconditions.checkArgument(indexFile != null, "indexFile is null");
+    if (!indexFile.exists() || indexFile.isDirectory()) {
+      throw new FileNotFoundException(indexFile.toString());
+    }
+    log.info("Mapping item similarities from {}", indexFile);
+    this.indexFile = indexFile.getAbsoluteFile();
+
+    RandomAccessFile raf = new RandomAccessFile(this.indexFile, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not an item similarity index: " + indexFile);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported file version " + version + " in " + indexFile);
+      }
+      numItems = header.getInt();
+      header.getInt(); // unused
+      numSimilarities = header.getLong();
+
+      long itemIDsPosition = HEADER_SIZE;
+      long offsetsPosition = itemIDsPosition + numItems * 8L;
+      long similarItemIDsPosition = offsetsPosition + (numItems + 1L) * 8L;
+      long similaritiesPosition = similarItemIDsPosition + numSimilarities * 8L;
+      itemIDs = new MappedLongArray(channel, itemIDsPosition, numItems);
+      offsets = new MappedLongArray(channel, offsetsPosition, numItems + 1L);
+      similarItemIDs = new MappedLongArray(channel, similarItemIDsPosition, numSimilarities);
+      similarities = new MappedFloatArray(channel, similaritiesPosition, numSimilarities);
+    } finally {
+      raf.close();
+    }
+  }
+
+  public File getIndexFile() {
+    return indexFile;
+  }
+
+  /**
+   * @return number of items which have at least one known similarity
+   */
+  public int getNumItems() {
+    return numItems;
+  }
+
+  /**
+   * @return number of stored similarities, each counted once for both of its items
+   */
+  public long getNumSimilarities() {
+    return numSimilarities;
+  }
+
+  @Override
+  public double itemSimilarity(long itemID1, long itemID2) {
+    if (itemID1 == itemID2) {
+      return 1.0;
+    }
+    long index = itemIDs.binarySearch(0, numItems, itemID1);
+    if (index < 0) {
+      return Double.NaN;
+    }
+    return similarity(offsets.get(index), offsets.get(index + 1), itemID2);
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, long[] itemID2s) {
+    int length = itemID2s.length;
+    double[] result = new double[length];
+    long index = itemIDs.binarySearch(0, numItems, itemID1);
+    long from = index < 0 ? 0L : offsets.get(index);
+    long to = index < 0 ? 0L : offsets.get(index + 1);
+    for (int i = 0; i < length; i++) {
+      long itemID2 = itemID2s[i];
+      result[i] = itemID1 == itemID2 ? 1.0 : similarity(from, to, itemID2);
+    }
+    return result;
+  }
+
+  private double similarity(long from, long to, long similarItemID) {
+    long position = similarItemIDs.binarySearch(from, to, similarItemID);
+    return position < 0 ? Double.NaN : similarities.get(position);
+  }
+
+  /**
+   * @return the IDs of all items with a known similarity to the given item, in ascending order. The iterator reads
+   *  them directly from the mapped file; nothing is copied.
+   */
+  public LongPrimitiveIterator allSimilarItemIDs(long itemID) {
+    long index = itemIDs.binarySearch(0, numItems, itemID);
+    if (index < 0) {
+      return similarItemIDs.iterator(0, 0);
+    }
+    return similarItemIDs.iterator(offsets.get(index), offsets.get(index + 1));
+  }
+
+  /**
+   * The index is immutable, so there is nothing to refresh.
+   */
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+  }
+
+  @Override
+  public String toString() {
+    return "MemoryMappedItemSimilarity[indexFile:" + indexFile + ']';
+  }
+
+  /**
+   * Writes the given similarities as an index in the format read by this class.
+   */
+  public static void write(Iterable<GenericItemSimilarity.ItemItemSimilarity> similarities, File indexFile)
+    throws IOException {
+    Builder builder = new Builder();
+    for (GenericItemSimilarity.ItemItemSimilarity similarity : similarities) {
+      builder.add(similarity.getItemID1(), similarity.getItemID2(), similarity.getValue());
+    }
+    builder.write(indexFile);
+  }
+
+  /**
+   * Converts a file in the format read by {@link FileItemSimilarity} into an index in the format read by this class.
+   * Usage: {@code MemoryMappedItemSimilarity <input file> <output file>}
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: MemoryMappedItemSimilarity <input file> <output file>");
+      return;
+    }
+    write(new FileItemItemSimilarityIterable(new File(args[0])), new File(args[1]));
+  }
+
+  /**
+   * <p>
+   * Collects similarities and writes them as an index. Similarities are buffered in primitive arrays until the
+   * index is written, which takes about 40 bytes per pair of items. If a pair is added more than once, the last
+   * similarity wins.
+   * </p>
+   */
+  public static final class Builder {
+
+    private long[] itemIDs1 = new long[16];
+    private long[] itemIDs2 = new long[16];
+    private float[] values = new float[16];
+    private int size;
+
+    /**
+     * Adds a similarity, NaN similarities and those of an item to itself are ignored.
+     */
+    public void add(long itemID1, long itemID2, double similarity) {
+      if (itemID1 == itemID2 || Double.isNaN(similarity)) {
+        return;
+      }
+      ensureCapacity(size + 2);
+      append(itemID1, itemID2, (float) similarity);
+      append(itemID2, itemID1, (float) similarity);
+    }
+
+    private void append(long itemID1, long itemID2, float value) {
+      itemIDs1[size] = itemID1;
+      itemIDs2[size] = itemID2;
+      values[size] = value;
+      size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > itemIDs1.length) {
+        int newCapacity = Math.max(capacity, itemIDs1.length + (itemIDs1.length >> 1));
+        itemIDs1 = Arrays.copyOf(itemIDs1, newCapacity);
+        itemIDs2 = Arrays.copyOf(itemIDs2, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+      }
+    }
+
+    /**
+     * Writes the collected similarities to the given file.
+     */
+    public void write(File indexFile) throws IOException {
+      sortPairs();
+      int numSimilarities = removeDuplicatePairs();
+      int numItems = 0;
+      for (int i = 0; i < numSimilarities; i++) {
+        if (i == 0 || itemIDs1[i] != itemIDs1[i - 1]) {
+          numItems++;
+        }
+      }
+      log.info("Writing {} similarities of {} items to {}", new Object[] {numSimilarities, numItems, indexFile});
+
+      RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+      try {
+        raf.setLength(0);
+        FileChannel channel = raf.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(numItems);
+        header.putInt(0);
+        header.putLong(numSimilarities);
+        header.rewind();
+        writeFully(channel, header, 0);
+
+        // each section is written sequentially through a small buffer, at long offsets
+        long itemIDsPosition = HEADER_SIZE;
+        long offsetsPosition = itemIDsPosition + numItems * 8L;
+        long similarItemIDsPosition = offsetsPosition + (numItems + 1L) * 8L;
+        long valuesPosition = similarItemIDsPosition + numSimilarities * 8L;
+        BufferedChannelWriter itemIDWriter = new BufferedChannelWriter(channel, itemIDsPosition);
+        BufferedChannelWriter offsetWriter = new BufferedChannelWriter(channel, offsetsPosition);
+        for (int i = 0; i < numSimilarities; i++) {
+          if (i == 0 || itemIDs1[i] != itemIDs1[i - 1]) {
+            itemIDWriter.writeLong(itemIDs1[i]);
+            offsetWriter.writeLong(i);
+          }
+        }
+        offsetWriter.writeLong(numSimilarities);
+        itemIDWriter.flush();
+        offsetWriter.flush();
+
+        BufferedChannelWriter similarItemIDWriter = new BufferedChannelWriter(channel, similarItemIDsPosition);
+        BufferedChannelWriter valueWriter = new BufferedChannelWriter(channel, valuesPosition);
+        for (int i = 0; i < numSimilarities; i++) {
+          similarItemIDWriter.writeLong(itemIDs2[i]);
+          valueWriter.writeFloat(values[i]);
+        }
+        similarItemIDWriter.flush();
+        valueWriter.flush();
+      } finally {
+        raf.close();
+      }
+    }
+
+    private void sortPairs() {
+      // stable, so that of duplicate pairs the one added last ends up last
+      Sorting.mergeSort(0, size, new IntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          if (itemIDs1[a] != itemIDs1[b]) {
+            return itemIDs1[a] < itemIDs1[b] ? -1 : 1;
+          }
+          return itemIDs2[a] < itemIDs2[b] ? -1 : itemIDs2[a] > itemIDs2[b] ? 1 : 0;
+        }
+      }, new Swapper() {
+        @Override
+        public void swap(int a, int b) {
+          long tmpID = itemIDs1[a];
+          itemIDs1[a] = itemIDs1[b];
+          itemIDs1[b] = tmpID;
+          tmpID = itemIDs2[a];
+          itemIDs2[a] = itemIDs2[b];
+          itemIDs2[b] = tmpID;
+          float tmpValue = values[a];
+          values[a] = values[b];
+          values[b] = tmpValue;
+        }
+      });
+    }
+
+    /**
+     * Keeps the last of every run of equal pairs, and compacts the arrays.
+     *
+     * @return number of distinct pairs
+     */
+    private int removeDuplicatePairs() {
+      int kept = 0;
+      for (int i = 0; i < size; i++) {
+        if (i + 1 < size && itemIDs1[i + 1] == itemIDs1[i] && itemIDs2[i + 1] == itemIDs2[i]) {
+          continue;
+        }
+        itemIDs1[kept] = itemIDs1[i];
+        itemIDs2[kept] = itemIDs2[i];
+        values[kept] = values[i];
+        kept++;
+      }
+      size = kept;
+      return kept;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+}
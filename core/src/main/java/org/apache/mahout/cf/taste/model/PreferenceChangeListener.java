@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.model;
+
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+
+/**
+ * <p>
+ * Is told by a {@link DataModel} which users and items were affected when it applied changed preferences
+ * incrementally, for example during a refresh. This lets caches of data derived from the
+ * {@link DataModel}, such as similarities or recommendations, drop only the entries for the affected IDs instead
+ * of everything.
+ * </p>
+ *
+ * <p>
+ * Listeners are called from the thread that refreshes the {@link DataModel}, after the changes are visible.
+ * </p>
+ *
+ * @see org.apache.mahout.cf.taste.impl.model.file.FileDataModel#addPreferenceChangeListener(PreferenceChangeListener)
+ */
+public interface PreferenceChangeListener {
+
+  /**
+   * @param userIDs users who set, changed or removed a preference
+   * @param itemIDs items for which a preference was set, changed or removed
+   */
+  void preferencesChanged(FastIDSet userIDs, FastIDSet itemIDs);
+
+  /**
+   * Called when all data was replaced, so nothing derived from the previous data can be kept.
+   */
+  void allPreferencesChanged();
+
+}
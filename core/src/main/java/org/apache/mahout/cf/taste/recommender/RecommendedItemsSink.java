@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.recommender;
+
+import java.util.List;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * <p>
+ * Receives the recommendations computed for many users in one batch, user by user, as soon as they are
+ * available. Batches may be computed by several threads, so implementations must be thread-safe.
+ * </p>
+ */
+public interface RecommendedItemsSink {
+  
+  /**
+   * @param userID
+   *          user the recommendations were computed for
+   * @param recommendedItems
+   *          recommendations, ordered from most to least recommended; possibly empty
+   * @throws TasteException
+   *           if the recommendations cannot be stored; this aborts the batch
+   */
+  void write(long userID, List<RecommendedItem> recommendedItems) throws TasteException;
+  
+}
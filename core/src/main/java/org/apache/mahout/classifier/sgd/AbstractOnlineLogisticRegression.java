@@ -22,11 +22,18 @@ import org.apache.mahout.classifier.AbstractVectorClassifier;
 import org.apache.mahout.classifier.OnlineLearner;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.NamedVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.function.Functions;
 import org.apache.mahout.math.function.DoubleFunction;
+import org.apache.mahout.math.function.IntDoubleProcedure;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Generic definition of a 1 of n logistic regression classifier that returns probabilities in
@@ -64,6 +71,15 @@ public abstract class AbstractOnlineLogisticRegression extends AbstractVectorCla
   // by default we don't do any fancy training
   private Gradient gradient = new DefaultGradient();
 
+  // the result of overridesClassify() for each class seen so far, the reflection is done once per class
+  private static final ConcurrentMap<Class<?>,Boolean> OVERRIDES_CLASSIFY = new ConcurrentHashMap<Class<?>,Boolean>();
+
+  // whether a subclass changes how classify() computes probabilities, so that DefaultGradient must call it
+  private final boolean overridesClassify = overridesClassify(getClass());
+
+  // scratch space for training, one per thread so that HogwildTrainer can share the model
+  private transient ThreadLocal<TrainingBuffer> trainingBuffers;
+
   /**
    * Chainable configuration option.
    *
@@ -155,41 +171,118 @@ public abstract class AbstractOnlineLogisticRegression extends AbstractVectorCla
 
   @Override
   public void train(long trackingKey, String groupKey, int actual, Vector instance) {
+    if (actual < 0 || actual >= numCategories) {
+      throw new IllegalArgumentException("Category must be in [0.." + numCategories + "): " + actual);
+    }
     unseal();
 
     double learningRate = currentLearningRate();
 
-    // push coefficients back to zero based on the prior
-    regularize(instance);
-
-    // update each row of coefficients according to result
-    Vector gradient = this.gradient.apply(groupKey, actual, instance, this);
-    for (int i = 0; i < numCategories - 1; i++) {
-      double gradientBase = gradient.get(i);
+    // collect the non-zero features once, they are needed three times
+    TrainingBuffer buffer = trainingBuffer();
+    buffer.load(instance);
 
-      // then we apply the gradientBase to the resulting element.
-      Iterator<Vector.Element> nonZeros = instance.iterateNonZero();
-      while (nonZeros.hasNext()) {
-        Vector.Element updateLocation = nonZeros.next();
-        int j = updateLocation.index();
+    // push coefficients back to zero based on the prior
+    regularize(buffer.indices, buffer.size);
 
-        double newValue = beta.getQuick(i, j) + gradientBase * learningRate * perTermLearningRate(j) * instance.get(j);
-        beta.setQuick(i, j, newValue);
+    // the gradient for each row of coefficients according to result
+    double[] gradient = buffer.gradient;
+    if (this.gradient.getClass() == DefaultGradient.class && !overridesClassify) {
+      defaultGradient(actual, buffer);
+    } else {
+      Vector v = this.gradient.apply(groupKey, actual, instance, this);
+      for (int i = 0; i < numCategories - 1; i++) {
+        gradient[i] = v.get(i);
       }
     }
 
-    // remember that these elements got updated
-    Iterator<Vector.Element> i = instance.iterateNonZero();
-    while (i.hasNext()) {
-      Vector.Element element = i.next();
-      int j = element.index();
-      updateSteps.setQuick(j, getStep());
+    // then we apply the gradient to each non-zero feature, and remember that it got updated
+    int currentStep = getStep();
+    for (int k = 0; k < buffer.size; k++) {
+      int j = buffer.indices[k];
+      double x = buffer.values[k];
+      double perTermLearningRate = perTermLearningRate(j);
+      for (int i = 0; i < numCategories - 1; i++) {
+        double newValue = beta.getQuick(i, j) + gradient[i] * learningRate * perTermLearningRate * x;
+        beta.setQuick(i, j, newValue);
+      }
+      updateSteps.setQuick(j, currentStep);
       updateCounts.setQuick(j, updateCounts.getQuick(j) + 1);
     }
     nextStep();
 
   }
 
+  /**
+   * Computes what {@link DefaultGradient} would, into the gradient of the buffer and without allocating: the
+   * indicator of the actual category minus the probabilities which the current model gives the example. Only used
+   * when {@link #classify(Vector)}, {@link #classifyNoLink(Vector)} and {@link #link(Vector)} are not overridden.
+   */
+  private void defaultGradient(int actual, TrainingBuffer buffer) {
+    double[] r = buffer.gradient;
+    int n = numCategories - 1;
+    for (int i = 0; i < n; i++) {
+      double sum = 0;
+      for (int k = 0; k < buffer.size; k++) {
+        sum += beta.getQuick(i, buffer.indices[k]) * buffer.values[k];
+      }
+      r[i] = sum;
+    }
+
+    // same as link(Vector), in place
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      max = Math.max(max, r[i]);
+    }
+    double offset = max >= 40 ? max : 0;
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      r[i] = Math.exp(r[i] - offset);
+      sum += r[i];
+    }
+    double norm = max >= 40 ? sum : 1 + sum;
+    for (int i = 0; i < n; i++) {
+      r[i] /= norm;
+    }
+
+    for (int i = 0; i < n; i++) {
+      r[i] = (actual == i + 1 ? 1 : 0) - r[i];
+    }
+  }
+
+  private static boolean overridesClassify(Class<?> clazz) {
+    Boolean overrides = OVERRIDES_CLASSIFY.get(clazz);
+    if (overrides == null) {
+      overrides = declaresClassify(clazz);
+      OVERRIDES_CLASSIFY.put(clazz, overrides);
+    }
+    return overrides;
+  }
+
+  private static boolean declaresClassify(Class<?> clazz) {
+    for (Class<?> c = clazz; c != AbstractOnlineLogisticRegression.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("classify", Vector.class);
+        return true;
+      } catch (NoSuchMethodException nsme) {
+        // not declared here, look further up
+      }
+      try {
+        c.getDeclaredMethod("classifyNoLink", Vector.class);
+        return true;
+      } catch (NoSuchMethodException nsme) {
+        // not declared here, look further up
+      }
+      try {
+        c.getDeclaredMethod("link", Vector.class);
+        return true;
+      } catch (NoSuchMethodException nsme) {
+        // not declared here, look further up
+      }
+    }
+    return false;
+  }
+
   @Override
   public void train(long trackingKey, int actual, Vector instance) {
     train(trackingKey, null, actual, instance);
@@ -208,23 +301,52 @@ public abstract class AbstractOnlineLogisticRegression extends AbstractVectorCla
     // anneal learning rate
     double learningRate = currentLearningRate();
 
-    // here we lazily apply the prior to make up for our neglect
-    for (int i = 0; i < numCategories - 1; i++) {
-      Iterator<Vector.Element> nonZeros = instance.iterateNonZero();
-      while (nonZeros.hasNext()) {
-        Vector.Element updateLocation = nonZeros.next();
-        int j = updateLocation.index();
-        double missingUpdates = getStep() - updateSteps.get(j);
-        if (missingUpdates > 0) {
-          double rate = getLambda() * learningRate * perTermLearningRate(j);
-          double newValue = prior.age(beta.get(i, j), missingUpdates, rate);
-          beta.set(i, j, newValue);
-          updateSteps.set(j, getStep());
-        }
+    int currentStep = getStep();
+    Iterator<Vector.Element> nonZeros = instance.iterateNonZero();
+    while (nonZeros.hasNext()) {
+      regularize(nonZeros.next().index(), currentStep, learningRate);
+    }
+  }
+
+  private void regularize(int[] indices, int size) {
+    if (updateSteps == null || isSealed()) {
+      return;
+    }
+    double learningRate = currentLearningRate();
+    int currentStep = getStep();
+    for (int k = 0; k < size; k++) {
+      regularize(indices[k], currentStep, learningRate);
+    }
+  }
+
+  private void regularize(int j, int currentStep, double learningRate) {
+    // here we lazily apply the prior to make up for our neglect.  The missing updates of a column
+    // are claimed before they are applied to every row, which also keeps concurrent trainers such
+    // as HogwildTrainer from applying them twice in most cases.
+    double missingUpdates = currentStep - updateSteps.getQuick(j);
+    if (missingUpdates > 0) {
+      updateSteps.setQuick(j, currentStep);
+      double rate = getLambda() * learningRate * perTermLearningRate(j);
+      for (int i = 0; i < numCategories - 1; i++) {
+        beta.setQuick(i, j, prior.age(beta.getQuick(i, j), missingUpdates, rate));
       }
     }
   }
 
+  private TrainingBuffer trainingBuffer() {
+    ThreadLocal<TrainingBuffer> buffers = trainingBuffers;
+    if (buffers == null) {
+      buffers = new ThreadLocal<TrainingBuffer>();
+      trainingBuffers = buffers;
+    }
+    TrainingBuffer buffer = buffers.get();
+    if (buffer == null || buffer.gradient.length != numCategories - 1) {
+      buffer = new TrainingBuffer(numCategories - 1);
+      buffers.set(buffer);
+    }
+    return buffer;
+  }
+
   // these two abstract methods are how extensions can modify the basic learning behavior of this object.
 
   public abstract double perTermLearningRate(int j);
@@ -282,9 +404,14 @@ public abstract class AbstractOnlineLogisticRegression extends AbstractVectorCla
   }
 
   private void regularizeAll() {
-    Vector all = new DenseVector(beta.numCols());
-    all.assign(1);
-    regularize(all);
+    if (updateSteps == null || isSealed()) {
+      return;
+    }
+    double learningRate = currentLearningRate();
+    int currentStep = getStep();
+    for (int j = 0; j < beta.numCols(); j++) {
+      regularize(j, currentStep, learningRate);
+    }
   }
 
   @Override
@@ -318,4 +445,54 @@ public abstract class AbstractOnlineLogisticRegression extends AbstractVectorCla
     return k < 1;
   }
 
+  /**
+   * The non-zero features of the example being trained on, and the gradient for it.  Reused from one
+   * example to the next, so that training doesn't allocate anything once the buffer is large enough.
+   */
+  private static final class TrainingBuffer implements IntDoubleProcedure {
+
+    private int[] indices = new int[16];
+    private double[] values = new double[16];
+    private int size;
+    private final double[] gradient;
+
+    private TrainingBuffer(int numRows) {
+      gradient = new double[numRows];
+    }
+
+    void load(Vector instance) {
+      size = 0;
+      Vector vector = instance instanceof NamedVector ? ((NamedVector) instance).getDelegate() : instance;
+      if (vector instanceof RandomAccessSparseVector) {
+        ((RandomAccessSparseVector) vector).forEachNonZero(this);
+      } else if (vector instanceof SequentialAccessSparseVector) {
+        ((SequentialAccessSparseVector) vector).forEachNonZero(this);
+      } else if (vector instanceof DenseVector) {
+        for (int j = 0; j < vector.size(); j++) {
+          apply(j, vector.getQuick(j));
+        }
+      } else {
+        Iterator<Vector.Element> nonZeros = vector.iterateNonZero();
+        while (nonZeros.hasNext()) {
+          Vector.Element element = nonZeros.next();
+          apply(element.index(), element.get());
+        }
+      }
+    }
+
+    @Override
+    public boolean apply(int index, double value) {
+      if (value != 0) {
+        if (size == indices.length) {
+          indices = Arrays.copyOf(indices, 2 * size);
+          values = Arrays.copyOf(values, 2 * size);
+        }
+        indices[size] = index;
+        values[size] = value;
+        size++;
+      }
+      return true;
+    }
+  }
+
 }
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sgd;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.classifier.OnlineLearner;
+import org.apache.mahout.math.Vector;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Trains one shared logistic regression with several threads at once, in the style of Hogwild! (Niu, Recht, Re and
+ * Wright, 2011): the threads update the coefficients without any locking.  With sparse examples, such as hashed
+ * text features, two threads rarely touch the same coefficient, and an occasionally lost update costs less than
+ * the synchronization that would prevent it.  Regularization stays lazy, so each update only touches the non-zero
+ * features of its example.
+ * <p/>
+ * Examples are handed to the workers in batches through a bounded queue, so the thread that calls {@code train}
+ * blocks when it is ahead of the workers.  Training is asynchronous: an instance must not be changed after it was
+ * passed to {@code train}, and the model only reflects all examples after {@link #close()}.  Only one thread should
+ * call the methods of this class.
+ * <p/>
+ * The model's {@link Gradient} must be safe to use from several threads, like {@link DefaultGradient}, and the
+ * examples are seen in a different order than they were passed in, so the result is not deterministic.
+ */
+public class HogwildTrainer implements OnlineLearner {
+
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+  // tells a worker to stop
+  private static final List<Example> END = Collections.emptyList();
+
+  private final AbstractOnlineLogisticRegression model;
+  private final int numThreads;
+  private final int batchSize;
+  private final BlockingQueue<List<Example>> queue;
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+  private ExecutorService pool;
+  private List<Future<Integer>> workers;
+  private List<Example> batch;
+  private long numExamples;
+
+  public HogwildTrainer(AbstractOnlineLogisticRegression model, int numThreads) {
+    this(model, numThreads, DEFAULT_BATCH_SIZE);
+  }
+
+  public HogwildTrainer(AbstractOnlineLogisticRegression model, int numThreads, int batchSize) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive: %s", numThreads);
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+    this.model = model;
+    this.numThreads = numThreads;
+    this.batchSize = batchSize;
+    this.queue = new ArrayBlockingQueue<List<Example>>(2 * numThreads);
+  }
+
+  public AbstractOnlineLogisticRegression getModel() {
+    return model;
+  }
+
+  /**
+   * @return number of examples the workers have trained the model with, as of the last {@link #close()}
+   */
+  public long getNumExamples() {
+    return numExamples;
+  }
+
+  @Override
+  public void train(int actual, Vector instance) {
+    train(0, null, actual, instance);
+  }
+
+  @Override
+  public void train(long trackingKey, int actual, Vector instance) {
+    train(trackingKey, null, actual, instance);
+  }
+
+  @Override
+  public void train(long trackingKey, String groupKey, int actual, Vector instance) {
+    checkFailure();
+    if (pool == null) {
+      start();
+    }
+    batch.add(new Example(trackingKey, groupKey, actual, instance));
+    if (batch.size() == batchSize) {
+      put(batch);
+      batch = Lists.newArrayListWithCapacity(batchSize);
+    }
+  }
+
+  /**
+   * Waits until the workers have trained the model with every example passed so far, stops them and closes the
+   * model.  Training can go on afterwards, with new workers.
+   *
+   * @throws IllegalStateException if training failed for any example
+   */
+  @Override
+  public void close() {
+    if (pool != null) {
+      try {
+        if (!batch.isEmpty()) {
+          put(batch);
+        }
+        for (int i = 0; i < numThreads; i++) {
+          put(END);
+        }
+        for (Future<Integer> worker : workers) {
+          numExamples += worker.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      } finally {
+        pool.shutdown();
+        pool = null;
+        workers = null;
+        batch = null;
+      }
+    }
+    checkFailure();
+    model.close();
+  }
+
+  private void start() {
+    batch = Lists.newArrayListWithCapacity(batchSize);
+    pool = Executors.newFixedThreadPool(numThreads);
+    workers = Lists.newArrayListWithCapacity(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      workers.add(pool.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws InterruptedException {
+          int trained = 0;
+          List<Example> examples;
+          while ((examples = queue.take()) != END) {
+            // after a failure, keep draining the queue so that the caller can't block forever
+            if (failure.get() == null) {
+              try {
+                for (Example example : examples) {
+                  model.train(example.trackingKey, example.groupKey, example.actual, example.instance);
+                }
+                trained += examples.size();
+              } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+              }
+            }
+          }
+          return trained;
+        }
+      }));
+    }
+  }
+
+  private void put(List<Example> examples) {
+    try {
+      queue.put(examples);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void checkFailure() {
+    RuntimeException e = failure.get();
+    if (e != null) {
+      throw new IllegalStateException("Training failed", e);
+    }
+  }
+
+  private static final class Example {
+    private final long trackingKey;
+    private final String groupKey;
+    private final int actual;
+    private final Vector instance;
+
+    private Example(long trackingKey, String groupKey, int actual, Vector instance) {
+      this.trackingKey = trackingKey;
+      this.groupKey = groupKey;
+      this.actual = actual;
+      this.instance = instance;
+    }
+  }
+
+}
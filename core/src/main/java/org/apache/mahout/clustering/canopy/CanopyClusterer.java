@@ -29,6 +29,8 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.mahout.clustering.AbstractCluster;
 import org.apache.mahout.clustering.WeightedVectorWritable;
 import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.SpatialIndex;
+import org.apache.mahout.common.distance.SpatialIndexes;
 import org.apache.mahout.math.Vector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +50,12 @@ public class CanopyClusterer {
   // the distance measure
   private DistanceMeasure measure;
 
+  // the index over the centers of the canopies last passed in, if the measure is a metric
+  private SpatialIndex<Canopy> index;
+
+  // the canopies which the index covers
+  private Collection<Canopy> indexedCanopies;
+
   // private int nextClusterId = 0;
 
   public CanopyClusterer(DistanceMeasure measure, double t1, double t2) {
@@ -79,6 +87,7 @@ public class CanopyClusterer {
     t1 = Double.parseDouble(configuration.get(CanopyConfigKeys.T1_KEY));
     t2 = Double.parseDouble(configuration.get(CanopyConfigKeys.T2_KEY));
     nextCanopyId = 0;
+    invalidateIndex();
   }
 
   /** Configure the Canopy for unit tests */
@@ -86,6 +95,7 @@ public class CanopyClusterer {
     measure = aMeasure;
     t1 = aT1;
     t2 = aT2;
+    invalidateIndex();
   }
 
   /**
@@ -94,6 +104,10 @@ public class CanopyClusterer {
    * vector and the number of points. From this a centroid can be computed.
    * <p/>
    * This method is used by the CanopyMapper, CanopyReducer and CanopyDriver.
+   * <p/>
+   * If the measure is a metric, the canopies within T1 are looked up in a {@link SpatialIndex} over their
+   * centers instead. The index is kept while the same collection is passed in, so in between canopies must only
+   * be added by this method, and {@link #invalidateIndex()} must be called once their centers are recomputed.
    * 
    * @param point
    *          the point to be added
@@ -101,19 +115,68 @@ public class CanopyClusterer {
    *          the List<Canopy> to be appended
    */
   public void addPointToCanopies(Vector point, Collection<Canopy> canopies) {
+    SpatialIndex<Canopy> canopyIndex = indexFor(canopies);
     boolean pointStronglyBound = false;
-    for (Canopy canopy : canopies) {
-      double dist = measure.distance(canopy.getCenter().getLengthSquared(), canopy.getCenter(), point);
-      if (dist < t1) {
-        log.debug("Added point: " + AbstractCluster.formatVector(point, null) + " to canopy: " + canopy.getIdentifier());
-        canopy.observe(point);
+    if (canopyIndex == null) {
+      for (Canopy canopy : canopies) {
+        double dist = measure.distance(canopy.getCenter().getLengthSquared(), canopy.getCenter(), point);
+        pointStronglyBound = observeIfCovered(point, canopy, dist) || pointStronglyBound;
+      }
+    } else {
+      for (SpatialIndex.Neighbor<Canopy> neighbor : canopyIndex.findWithin(point, Math.max(t1, t2))) {
+        pointStronglyBound = observeIfCovered(point, neighbor.getItem(), neighbor.getDistance()) || pointStronglyBound;
       }
-      pointStronglyBound = pointStronglyBound || (dist < t2);
     }
     if (!pointStronglyBound) {
       log.debug("Created new Canopy:" + nextCanopyId + " at center:" + AbstractCluster.formatVector(point, null));
-      canopies.add(new Canopy(point, nextCanopyId++, measure));
+      Canopy canopy = new Canopy(point, nextCanopyId++, measure);
+      canopies.add(canopy);
+      if (canopyIndex != null) {
+        canopyIndex.add(canopy.getCenter(), canopy);
+      }
+    }
+  }
+
+  /**
+   * Add the point to the canopy if it is within T1
+   * 
+   * @return if the point is within T2
+   */
+  private boolean observeIfCovered(Vector point, Canopy canopy, double dist) {
+    if (dist < t1) {
+      log.debug("Added point: " + AbstractCluster.formatVector(point, null) + " to canopy: " + canopy.getIdentifier());
+      canopy.observe(point);
     }
+    return dist < t2;
+  }
+
+  /**
+   * Drops the index over the centers of the canopies last passed in, so that it is rebuilt on the next call.
+   * Needs to be called after the centers of those canopies changed, for example by
+   * {@link Canopy#computeParameters()}, or canopies were added or removed other than by
+   * {@link #addPointToCanopies(Vector, Collection)}.
+   */
+  public void invalidateIndex() {
+    index = null;
+    indexedCanopies = null;
+  }
+
+  /**
+   * @return the index over the centers of the given canopies, or null if the measure is not a metric
+   */
+  private SpatialIndex<Canopy> indexFor(Iterable<Canopy> canopies) {
+    if (!SpatialIndexes.isMetric(measure) || !(canopies instanceof Collection<?>)) {
+      return null;
+    }
+    Collection<Canopy> collection = (Collection<Canopy>) canopies;
+    if (index == null || indexedCanopies != collection) {
+      index = SpatialIndexes.newIndex(measure);
+      for (Canopy canopy : collection) {
+        index.add(canopy.getCenter(), canopy);
+      }
+      indexedCanopies = collection;
+    }
+    return index;
   }
 
   /**
@@ -128,7 +191,17 @@ public class CanopyClusterer {
     context.setStatus("Emit Closest Canopy ID:" + closest.getIdentifier());
   }
 
+  /**
+   * Find the canopy whose center is closest to the point. If the measure is a metric, the canopies are looked
+   * up in a {@link SpatialIndex} as in {@link #addPointToCanopies(Vector, Collection)}, which is kept while the
+   * same collection is passed in until {@link #invalidateIndex()} is called.
+   */
   protected Canopy findClosestCanopy(Vector point, Iterable<Canopy> canopies) {
+    SpatialIndex<Canopy> canopyIndex = indexFor(canopies);
+    if (canopyIndex != null) {
+      SpatialIndex.Neighbor<Canopy> nearest = canopyIndex.findNearest(point);
+      return nearest == null ? null : nearest.getItem();
+    }
     double minDist = Double.MAX_VALUE;
     Canopy closest = null;
     // find closest canopy
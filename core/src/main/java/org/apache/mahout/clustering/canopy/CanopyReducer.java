@@ -42,6 +42,8 @@ public class CanopyReducer extends Reducer<Text, VectorWritable, Text, Canopy> {
       canopy.computeParameters();
       context.write(new Text(canopy.getIdentifier()), canopy);
     }
+    // the centers have moved
+    canopyClusterer.invalidateIndex();
   }
 
   @Override
@@ -109,6 +109,9 @@ public class DirichletClusterer {
 
   private double threshold;
 
+  // assigns the points on multiple threads, if set
+  private ParallelDirichletClusterer parallelClusterer;
+
   /**
    * Create a new instance on the sample data with the given additional parameters
    * 
@@ -139,6 +142,42 @@ public class DirichletClusterer {
 
   }
 
+  /**
+   * Create a new instance on the sample data with the given additional parameters, which assigns the points
+   * on multiple threads
+   * 
+   * @param points
+   *          the observed data to be clustered
+   * @param modelFactory
+   *          the ModelDistribution to use
+   * @param alpha0
+   *          the double value for the beta distributions
+   * @param numClusters
+   *          the int number of clusters
+   * @param thin
+   *          the int thinning interval, used to report every n iterations
+   * @param burnin
+   *          the int burnin interval, used to suppress early iterations
+   * @param numIterations
+   *          number of iterations to be performed
+   * @param numThreads
+   *          number of threads which assign points, see {@link ParallelDirichletClusterer}
+   */
+  public static List<Cluster[]> clusterPoints(List<VectorWritable> points,
+                                              ModelDistribution<VectorWritable> modelFactory,
+                                              double alpha0,
+                                              int numClusters,
+                                              int thin,
+                                              int burnin,
+                                              int numIterations,
+                                              int numThreads) {
+    DirichletClusterer clusterer = new DirichletClusterer(points, modelFactory, alpha0, numClusters, thin, burnin);
+    if (numThreads > 1) {
+      clusterer.setParallelClusterer(new ParallelDirichletClusterer(numThreads));
+    }
+    return clusterer.cluster(numIterations);
+  }
+
   /**
    * Create a new instance on the sample data with the given additional parameters
    * 
@@ -198,6 +237,14 @@ public class DirichletClusterer {
     this.burnin = 0;
   }
 
+  /**
+   * Assign the sample data to the models with the given ParallelDirichletClusterer, or on the calling thread
+   * if null
+   */
+  public void setParallelClusterer(ParallelDirichletClusterer parallelClusterer) {
+    this.parallelClusterer = parallelClusterer;
+  }
+
   /**
    * Iterate over the sample data, obtaining cluster samples periodically and returning them.
    * 
@@ -222,8 +269,17 @@ public class DirichletClusterer {
     Cluster[] newModels = (Cluster[]) modelFactory.sampleFromPosterior(state.getModels());
 
     // iterate over the samples, assigning each to a model
-    for (VectorWritable observation : sampleData) {
-      observe(newModels, observation);
+    if (parallelClusterer == null) {
+      for (VectorWritable observation : sampleData) {
+        observe(newModels, observation);
+      }
+    } else {
+      try {
+        parallelClusterer.runIteration(sampleData, state, newModels);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
     }
 
     // periodically add models to the cluster samples after the burn-in period
@@ -77,6 +77,8 @@ public class DirichletDriver extends AbstractJob {
 
   public static final String ALPHA_OPTION = "alpha";
 
+  private static final String NUM_THREADS_OPTION = "numThreads";
+
   private static final Logger log = LoggerFactory.getLogger(DirichletDriver.class);
 
   public static void main(String[] args) throws Exception {
@@ -106,6 +108,7 @@ public class DirichletDriver extends AbstractJob {
     addOption(DefaultOptionCreator.emitMostLikelyOption().create());
     addOption(DefaultOptionCreator.thresholdOption().create());
     addOption(DefaultOptionCreator.methodOption().create());
+    addOption(NUM_THREADS_OPTION, "nt", "Number of threads assigning points with the sequential method", "1");
 
     if (parseArguments(args) == null) {
       return -1;
@@ -127,6 +130,7 @@ public class DirichletDriver extends AbstractJob {
     boolean runClustering = hasOption(DefaultOptionCreator.CLUSTERING_OPTION);
     boolean runSequential =
         getOption(DefaultOptionCreator.METHOD_OPTION).equalsIgnoreCase(DefaultOptionCreator.SEQUENTIAL_METHOD);
+    int numThreads = Integer.parseInt(getOption(NUM_THREADS_OPTION));
     int prototypeSize = readPrototypeSize(input);
 
     AbstractVectorModelDistribution modelDistribution = createModelDistribution(modelFactory,
@@ -144,7 +148,8 @@ public class DirichletDriver extends AbstractJob {
         runClustering,
         emitMostLikely,
         threshold,
-        runSequential);
+        runSequential,
+        numThreads);
     return 0;
   }
 
@@ -184,8 +189,68 @@ public class DirichletDriver extends AbstractJob {
                          double threshold,
                          boolean runSequential)
     throws IOException, InstantiationException, ClassNotFoundException, InterruptedException, IllegalAccessException {
-    Path clustersOut =
-        buildClusters(conf, input, output, modelDistribution, numModels, maxIterations, alpha0, runSequential);
+    run(conf,
+        input,
+        output,
+        modelDistribution,
+        numModels,
+        maxIterations,
+        alpha0,
+        runClustering,
+        emitMostLikely,
+        threshold,
+        runSequential,
+        1);
+  }
+
+  /**
+   * Iterate over the input vectors to produce clusters and, if requested, use the
+   * results of the final iteration to cluster the input vectors.
+   * 
+   * @param conf
+   *          the Configuration to use
+   * @param input
+   *          the directory Path for input points
+   * @param output
+   *          the directory Path for output points
+   * @param modelDistribution
+   *          the String class name of the model's prototype vector
+   * @param maxIterations
+   *          the maximum number of iterations
+   * @param alpha0
+   *          the alpha_0 value for the DirichletDistribution
+   * @param runClustering 
+   *          true if clustering of points to be done after iterations
+   * @param emitMostLikely
+   *          a boolean if true emit only most likely cluster for each point
+   * @param threshold 
+   *          a double threshold value emits all clusters having greater pdf (emitMostLikely = false)
+   * @param runSequential execute sequentially if true
+   * @param numThreads
+   *          the number of threads assigning points in each iteration of the sequential algorithm
+   */
+  public static void run(Configuration conf,
+                         Path input,
+                         Path output,
+                         ModelDistribution<VectorWritable> modelDistribution,
+                         int numModels,
+                         int maxIterations,
+                         double alpha0,
+                         boolean runClustering,
+                         boolean emitMostLikely,
+                         double threshold,
+                         boolean runSequential,
+                         int numThreads)
+    throws IOException, InstantiationException, ClassNotFoundException, InterruptedException, IllegalAccessException {
+    Path clustersOut = buildClusters(conf,
+                                     input,
+                                     output,
+                                     modelDistribution,
+                                     numModels,
+                                     maxIterations,
+                                     alpha0,
+                                     runSequential,
+                                     numThreads);
     if (runClustering) {
       clusterData(conf,
                   input,
@@ -404,11 +469,52 @@ public class DirichletDriver extends AbstractJob {
                                    double alpha0,
                                    boolean runSequential)
     throws IOException, InstantiationException, ClassNotFoundException, InterruptedException, IllegalAccessException {
+    return buildClusters(conf, input, output, modelDistribution, numClusters, maxIterations, alpha0, runSequential, 1);
+  }
+
+  /**
+   * Iterate over the input vectors to produce cluster directories for each iteration
+   * @param conf 
+   * @param input
+   *          the directory Path for input points
+   * @param output
+   *          the directory Path for output points
+   * @param modelDistribution
+   *          the String class name of the model's prototype vector
+   * @param numClusters
+   *          the number of models to iterate over
+   * @param maxIterations
+   *          the maximum number of iterations
+   * @param alpha0
+   *          the alpha_0 value for the DirichletDistribution
+   * @param runSequential execute sequentially if true
+   * @param numThreads
+   *          the number of threads assigning points in each iteration of the sequential algorithm
+   * 
+   * @return the Path of the final clusters directory
+   */
+  public static Path buildClusters(Configuration conf,
+                                   Path input,
+                                   Path output,
+                                   ModelDistribution<VectorWritable> modelDistribution,
+                                   int numClusters,
+                                   int maxIterations,
+                                   double alpha0,
+                                   boolean runSequential,
+                                   int numThreads)
+    throws IOException, InstantiationException, ClassNotFoundException, InterruptedException, IllegalAccessException {
     Path clustersIn = new Path(output, Cluster.INITIAL_CLUSTERS_DIR);
     writeInitialState(output, clustersIn, modelDistribution, numClusters, alpha0);
 
     if (runSequential) {
-      clustersIn = buildClustersSeq(input, output, modelDistribution, numClusters, maxIterations, alpha0, clustersIn);
+      clustersIn = buildClustersSeq(input,
+                                    output,
+                                    modelDistribution,
+                                    numClusters,
+                                    maxIterations,
+                                    alpha0,
+                                    clustersIn,
+                                    numThreads);
     } else {
       clustersIn = buildClustersMR(conf, input, output, modelDistribution, numClusters, maxIterations, alpha0, clustersIn);
     }
@@ -421,8 +527,11 @@ public class DirichletDriver extends AbstractJob {
                                        int numClusters,
                                        int maxIterations,
                                        double alpha0,
-                                       Path clustersIn)
-    throws IOException, InstantiationException, IllegalAccessException {
+                                       Path clustersIn,
+                                       int numThreads)
+    throws IOException, InstantiationException, IllegalAccessException, InterruptedException {
+    ParallelDirichletClusterer parallelClusterer =
+        numThreads > 1 ? new ParallelDirichletClusterer(numThreads) : null;
     for (int iteration = 1; iteration <= maxIterations; iteration++) {
       log.info("Iteration {}", iteration);
       // point the output to a new directory per iteration
@@ -435,19 +544,23 @@ public class DirichletDriver extends AbstractJob {
       Cluster[] newModels = (Cluster[]) state.getModelFactory().sampleFromPosterior(state.getModels());
       DirichletClusterer clusterer = new DirichletClusterer(state);
       Configuration conf = new Configuration();
-      FileSystem fs = FileSystem.get(input.toUri(), conf);
-      FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
-      for (FileStatus s : status) {
-        SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
-        try {
-          Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
-          VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
-          while (reader.next(key, vw)) {
-            clusterer.observe(newModels, vw);
-            vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+      if (parallelClusterer != null) {
+        parallelClusterer.runIteration(conf, input, state, newModels);
+      } else {
+        FileSystem fs = FileSystem.get(input.toUri(), conf);
+        FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
+        for (FileStatus s : status) {
+          SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+          try {
+            Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+            VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+            while (reader.next(key, vw)) {
+              clusterer.observe(newModels, vw);
+              vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+            }
+          } finally {
+            reader.close();
           }
-        } finally {
-          reader.close();
         }
       }
       clusterer.updateModels(newModels);
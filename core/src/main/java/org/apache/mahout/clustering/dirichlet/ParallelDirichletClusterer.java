@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.dirichlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.clustering.Model;
+import org.apache.mahout.clustering.kmeans.OutputLogFilter;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A multi-threaded, in-memory variant of the sequential Dirichlet iteration. The points are streamed in chunks,
+ * and the points of each chunk are assigned to models on a pool of threads, which is where nearly all the time
+ * goes: it evaluates the pdf of every model for every point. The reading thread then lets the models observe
+ * the points of the chunks in the order in which they were read, just like {@link DirichletClusterer} does.
+ * Only a few chunks per thread are held in memory at any time.
+ * </p>
+ *
+ * <p>
+ * Each chunk samples its assignments with a random number generator of its own, seeded from a generator which
+ * draws one seed per chunk in order. So the result of a run depends on the seed, but neither on the number of
+ * threads nor on their scheduling.
+ * </p>
+ */
+public final class ParallelDirichletClusterer {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private final int numThreads;
+  private final int chunkSize;
+  private final Random seeds;
+
+  public ParallelDirichletClusterer(int numThreads) {
+    this(numThreads, DEFAULT_CHUNK_SIZE, RandomUtils.getRandom());
+  }
+
+  /**
+   * @param numThreads number of threads which assign points
+   * @param chunkSize number of points assigned at a time by one thread
+   * @param seeds the generator of the seeds of the chunks
+   */
+  public ParallelDirichletClusterer(int numThreads, int chunkSize, Random seeds) {
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    Preconditions.checkArgument(chunkSize >= 1, "chunkSize must be at least 1");
+    Preconditions.checkArgument(seeds != null, "seeds is null");
+    this.numThreads = numThreads;
+    this.chunkSize = chunkSize;
+    this.seeds = seeds;
+  }
+
+  /**
+   * Performs a single iteration over the points in the SequenceFiles of VectorWritables under the input path:
+   * assigns each point to one of the models of the state, and lets the new model at the same index observe
+   * it. The caller computes the new state from the new models.
+   */
+  public void runIteration(Configuration conf, Path input, DirichletState state, Model<VectorWritable>[] newModels)
+    throws IOException, InterruptedException {
+    Assignment assignment = new Assignment(state, newModels);
+    try {
+      FileSystem fs = FileSystem.get(input.toUri(), conf);
+      FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
+      for (FileStatus s : status) {
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+        try {
+          Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+          VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+          while (reader.next(key, vw)) {
+            assignment.add(vw);
+            vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+          }
+        } catch (InstantiationException ie) {
+          throw new IllegalStateException(ie);
+        } catch (IllegalAccessException iae) {
+          throw new IllegalStateException(iae);
+        } finally {
+          reader.close();
+        }
+      }
+      assignment.finish();
+    } finally {
+      assignment.shutdown();
+    }
+  }
+
+  /**
+   * Performs a single iteration over the given points: assigns each point to one of the models of the state,
+   * and lets the new model at the same index observe it. The caller computes the new state from the new models.
+   */
+  public void runIteration(Iterable<VectorWritable> points, DirichletState state, Model<VectorWritable>[] newModels)
+    throws InterruptedException {
+    Assignment assignment = new Assignment(state, newModels);
+    try {
+      for (VectorWritable point : points) {
+        assignment.add(point);
+      }
+      assignment.finish();
+    } finally {
+      assignment.shutdown();
+    }
+  }
+
+  /**
+   * Hands out chunks of points to the threads, and has the models observe them in chunk order.
+   */
+  private final class Assignment {
+
+    private final DirichletState state;
+    private final Model<VectorWritable>[] newModels;
+    private final ExecutorService executor;
+    private final LinkedList<Future<int[]>> pending;
+    private final LinkedList<List<VectorWritable>> pendingChunks;
+    private List<VectorWritable> chunk;
+
+    private Assignment(DirichletState state, Model<VectorWritable>[] newModels) {
+      Preconditions.checkArgument(newModels.length == state.getNumClusters(),
+                                  "%s new models for %s clusters", newModels.length, state.getNumClusters());
+      this.state = state;
+      this.newModels = newModels;
+      executor = Executors.newFixedThreadPool(numThreads);
+      pending = new LinkedList<Future<int[]>>();
+      pendingChunks = new LinkedList<List<VectorWritable>>();
+      chunk = new ArrayList<VectorWritable>(chunkSize);
+    }
+
+    void add(VectorWritable point) throws InterruptedException {
+      chunk.add(point);
+      if (chunk.size() == chunkSize) {
+        submitChunk();
+        // bound the number of chunks in memory
+        while (pending.size() > 2 * numThreads) {
+          observeOldest();
+        }
+      }
+    }
+
+    void finish() throws InterruptedException {
+      if (!chunk.isEmpty()) {
+        submitChunk();
+      }
+      while (!pending.isEmpty()) {
+        observeOldest();
+      }
+    }
+
+    void shutdown() {
+      executor.shutdownNow();
+    }
+
+    private void submitChunk() {
+      final List<VectorWritable> points = chunk;
+      // the generators are created here rather than by the threads, so they are seeded in chunk order
+      final Random random = RandomUtils.getRandom(seeds.nextLong());
+      pending.add(executor.submit(new Callable<int[]>() {
+        @Override
+        public int[] call() {
+          return assign(points, random);
+        }
+      }));
+      pendingChunks.add(points);
+      chunk = new ArrayList<VectorWritable>(chunkSize);
+    }
+
+    private void observeOldest() throws InterruptedException {
+      int[] assignments;
+      try {
+        assignments = pending.removeFirst().get();
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+      List<VectorWritable> points = pendingChunks.removeFirst();
+      for (int i = 0; i < assignments.length; i++) {
+        newModels[assignments[i]].observe(points.get(i));
+      }
+    }
+
+    /**
+     * Sample a model for each point, as {@link DirichletClusterer#assignToModel(VectorWritable)} does.
+     */
+    private int[] assign(List<VectorWritable> points, Random random) {
+      int numClusters = state.getNumClusters();
+      Vector pi = new DenseVector(numClusters);
+      int[] assignments = new int[points.size()];
+      for (int i = 0; i < assignments.length; i++) {
+        VectorWritable point = points.get(i);
+        for (int k = 0; k < numClusters; k++) {
+          pi.setQuick(k, state.adjustedProbability(point, k));
+        }
+        assignments[i] = UncommonDistributions.rMultinom(pi, random);
+      }
+      return assignments;
+    }
+  }
+
+}
@@ -169,9 +169,14 @@ public final class UncommonDistributions {
   
   /** Returns one sample from a multinomial. */
   public static int rMultinom(Vector probabilities) {
+    return rMultinom(probabilities, RANDOM);
+  }
+
+  /** Returns one sample from a multinomial, drawn with the given random number generator. */
+  public static int rMultinom(Vector probabilities, Random random) {
     // our probability argument are not normalized.
     double total = probabilities.zSum();
-    double nextDouble = UncommonDistributions.RANDOM.nextDouble();
+    double nextDouble = random.nextDouble();
     double p = nextDouble * total;
     for (int i = 0; i < probabilities.size(); i++) {
       double p_i = probabilities.get(i);
@@ -0,0 +1,348 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile.Writer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.mahout.clustering.ClusterObservations;
+import org.apache.mahout.clustering.WeightedVectorWritable;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.SpatialIndexes;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.list.DoubleArrayList;
+import org.apache.mahout.math.list.IntArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A {@link KMeansClusterer} which skips the distance computations that the triangle inequality proves cannot
+ * find a nearer cluster. Points are assigned as by {@link KMeansClusterer}, up to ties and rounding, but the
+ * {@link DistanceMeasure} must be a metric, see {@link #isMetric(DistanceMeasure)}.
+ * </p>
+ *
+ * <p>
+ * A cluster whose center is at least twice as far from the nearest center found so far as the point itself
+ * cannot be nearer to the point (Elkan). This only needs the distances between the centers, and is used
+ * wherever each point is seen once, as in the mappers.
+ * </p>
+ *
+ * <p>
+ * {@link #addPointToNearestCluster(Vector, Iterable)} is called for the same points in the same order in each
+ * iteration of the sequential clusterer. So for every point it also keeps an upper bound on the distance to its
+ * cluster, and a lower bound on the distance to any other cluster (Hamerly). When the centers move, the bounds
+ * are loosened by how far they moved. A point keeps its cluster without any distance computation while its
+ * upper bound stays below both its lower bound and half the distance from its center to the nearest other
+ * center.
+ * </p>
+ */
+public class AcceleratedKMeansClusterer extends KMeansClusterer {
+
+  private static final Logger log = LoggerFactory.getLogger(AcceleratedKMeansClusterer.class);
+
+  private final DistanceMeasure measure;
+
+  /** The clusters which the following geometry was computed for. */
+  private Iterable<Cluster> preparedClusters;
+  private List<Cluster> clusters;
+  private Vector[] centers;
+  private double[] centerLengthSquared;
+  private double[][] centerDistances;
+  private double[] halfNearestCenterDistance;
+
+  /** Bounds of the sequential clusterer, by point index within an iteration. */
+  private final DoubleArrayList upperBounds;
+  private final DoubleArrayList lowerBounds;
+  private final IntArrayList assignments;
+  private int pointIndex;
+  /** How far each center moved in the last update, or null before the first one. */
+  private double[] centerMoves;
+  private int maxMoveIndex;
+  private double maxMove;
+  private double secondMaxMove;
+
+  private long computedDistances;
+  private long skippedDistances;
+
+  public AcceleratedKMeansClusterer(DistanceMeasure measure) {
+    super(measure);
+    Preconditions.checkArgument(isMetric(measure), "Not a metric: %s", measure);
+    this.measure = measure;
+    upperBounds = new DoubleArrayList();
+    lowerBounds = new DoubleArrayList();
+    assignments = new IntArrayList();
+  }
+
+  /**
+   * @return true if the measure is known to satisfy the triangle inequality, which the skipped distance
+   *  computations depend on, see {@link SpatialIndexes#isMetric(DistanceMeasure)}
+   */
+  public static boolean isMetric(DistanceMeasure measure) {
+    return SpatialIndexes.isMetric(measure);
+  }
+
+  /**
+   * @return an {@link AcceleratedKMeansClusterer} if the configuration asks for it with
+   *  {@link KMeansConfigKeys#ACCELERATED_KEY} and the measure is a metric, or a plain {@link KMeansClusterer}
+   */
+  static KMeansClusterer newClusterer(Configuration conf, DistanceMeasure measure) {
+    if (conf.getBoolean(KMeansConfigKeys.ACCELERATED_KEY, false)) {
+      if (isMetric(measure)) {
+        return new AcceleratedKMeansClusterer(measure);
+      }
+      log.warn("Not accelerating k-means, since {} is not known to be a metric", measure.getClass().getName());
+    }
+    return new KMeansClusterer(measure);
+  }
+
+  /**
+   * Adds the numbers of computed and skipped distances to the job counters, if the clusterer is accelerated.
+   */
+  static void incrementCounters(KMeansClusterer clusterer, TaskInputOutputContext<?,?,?,?> context) {
+    if (clusterer instanceof AcceleratedKMeansClusterer) {
+      AcceleratedKMeansClusterer accelerated = (AcceleratedKMeansClusterer) clusterer;
+      context.getCounter("Clustering", "Computed Distances").increment(accelerated.getComputedDistances());
+      context.getCounter("Clustering", "Skipped Distances").increment(accelerated.getSkippedDistances());
+    }
+  }
+
+  /** @return number of distances from points to centers computed so far */
+  public long getComputedDistances() {
+    return computedDistances;
+  }
+
+  /** @return number of distances from points to centers which the bounds made unnecessary so far */
+  public long getSkippedDistances() {
+    return skippedDistances;
+  }
+
+  @Override
+  public void emitPointToNearestCluster(Vector point,
+                                        Iterable<Cluster> clusters,
+                                        Mapper<?,?,Text,ClusterObservations>.Context context)
+    throws IOException, InterruptedException {
+    prepare(clusters);
+    Cluster nearestCluster = this.clusters.get(nearest(point));
+    context.write(new Text(nearestCluster.getIdentifier()), new ClusterObservations(1, point, point.times(point)));
+  }
+
+  @Override
+  public void outputPointWithClusterInfo(Vector point,
+                                         Iterable<Cluster> clusters,
+                                         Mapper<?,?,IntWritable,WeightedVectorWritable>.Context context)
+    throws IOException, InterruptedException {
+    prepare(clusters);
+    Cluster nearestCluster = this.clusters.get(nearest(point));
+    context.write(new IntWritable(nearestCluster.getId()), new WeightedVectorWritable(1, point));
+  }
+
+  @Override
+  protected void emitPointToNearestCluster(Vector point, Iterable<Cluster> clusters, Writer writer)
+    throws IOException {
+    prepare(clusters);
+    Cluster nearestCluster = this.clusters.get(nearest(point));
+    writer.append(new IntWritable(nearestCluster.getId()), new WeightedVectorWritable(1, point));
+  }
+
+  @Override
+  protected void addPointToNearestCluster(Vector point, Iterable<Cluster> clusters) {
+    prepare(clusters);
+    int index = pointIndex++;
+    int nearest;
+    if (centerMoves == null || index >= assignments.size()) {
+      nearest = nearestWithBounds(point, index);
+    } else {
+      int assigned = assignments.get(index);
+      double upper = upperBounds.get(index) + centerMoves[assigned];
+      double lower = lowerBounds.get(index) - (assigned == maxMoveIndex ? secondMaxMove : maxMove);
+      double bound = Math.max(lower, halfNearestCenterDistance[assigned]);
+      if (upper <= bound) {
+        skippedDistances += centers.length;
+        nearest = assigned;
+      } else {
+        // tighten the upper bound before giving up
+        upper = measure.distance(centers[assigned], point);
+        computedDistances++;
+        if (upper <= bound) {
+          skippedDistances += centers.length - 1;
+          nearest = assigned;
+        } else {
+          nearest = -1;
+        }
+      }
+      if (nearest == assigned) {
+        upperBounds.set(index, upper);
+        lowerBounds.set(index, lower);
+      } else {
+        nearest = nearestWithBounds(point, index);
+      }
+    }
+    this.clusters.get(nearest).observe(point, 1);
+  }
+
+  @Override
+  protected boolean testConvergence(Iterable<Cluster> clusters, double distanceThreshold) {
+    prepare(clusters);
+    Vector[] oldCenters = centers;
+    boolean converged = super.testConvergence(clusters, distanceThreshold);
+    computeGeometry();
+
+    if (pointIndex == assignments.size()) {
+      int numClusters = centers.length;
+      centerMoves = new double[numClusters];
+      maxMoveIndex = -1;
+      maxMove = 0.0;
+      secondMaxMove = 0.0;
+      for (int i = 0; i < numClusters; i++) {
+        double move = measure.distance(oldCenters[i], centers[i]);
+        centerMoves[i] = move;
+        if (move > maxMove) {
+          secondMaxMove = maxMove;
+          maxMove = move;
+          maxMoveIndex = i;
+        } else if (move > secondMaxMove) {
+          secondMaxMove = move;
+        }
+      }
+    } else {
+      // not the same points as in the last iteration, so the bounds are of no use
+      centerMoves = null;
+      upperBounds.clear();
+      lowerBounds.clear();
+      assignments.clear();
+    }
+    pointIndex = 0;
+
+    log.info("Computed {} and skipped {} distances", computedDistances, skippedDistances);
+    return converged;
+  }
+
+  /**
+   * Finds the nearest center, skipping centers which are too far from the nearest one found so far.
+   */
+  private int nearest(Vector point) {
+    int numClusters = centers.length;
+    int nearest = 0;
+    double nearestDistance = distance(0, point);
+    int computed = 1;
+    for (int i = 1; i < numClusters; i++) {
+      if (centerDistances[nearest][i] < 2.0 * nearestDistance) {
+        double distance = distance(i, point);
+        computed++;
+        if (distance < nearestDistance) {
+          nearest = i;
+          nearestDistance = distance;
+        }
+      }
+    }
+    computedDistances += computed;
+    skippedDistances += numClusters - computed;
+    return nearest;
+  }
+
+  /**
+   * Computes the distances to all centers, and records the nearest one with its distance as upper bound and the
+   * second nearest distance as lower bound.
+   */
+  private int nearestWithBounds(Vector point, int index) {
+    int nearest = -1;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    double secondNearestDistance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < centers.length; i++) {
+      double distance = measure.distance(centers[i], point);
+      if (distance < nearestDistance) {
+        secondNearestDistance = nearestDistance;
+        nearest = i;
+        nearestDistance = distance;
+      } else if (distance < secondNearestDistance) {
+        secondNearestDistance = distance;
+      }
+    }
+    computedDistances += centers.length;
+    if (index < assignments.size()) {
+      assignments.set(index, nearest);
+      upperBounds.set(index, nearestDistance);
+      lowerBounds.set(index, secondNearestDistance);
+    } else {
+      assignments.add(nearest);
+      upperBounds.add(nearestDistance);
+      lowerBounds.add(secondNearestDistance);
+    }
+    return nearest;
+  }
+
+  /**
+   * Like the mappers of {@link KMeansClusterer}, uses the squared length of the centers.
+   */
+  private double distance(int cluster, Vector point) {
+    return measure.distance(centerLengthSquared[cluster], centers[cluster], point);
+  }
+
+  private void prepare(Iterable<Cluster> clusters) {
+    if (clusters != preparedClusters) {
+      List<Cluster> clusterList = new ArrayList<Cluster>();
+      for (Cluster cluster : clusters) {
+        clusterList.add(cluster);
+      }
+      Preconditions.checkArgument(!clusterList.isEmpty(), "clusters is empty");
+      preparedClusters = clusters;
+      this.clusters = clusterList;
+      computeGeometry();
+      centerMoves = null;
+      upperBounds.clear();
+      lowerBounds.clear();
+      assignments.clear();
+      pointIndex = 0;
+    }
+  }
+
+  private void computeGeometry() {
+    int numClusters = clusters.size();
+    centers = new Vector[numClusters];
+    centerLengthSquared = new double[numClusters];
+    for (int i = 0; i < numClusters; i++) {
+      centers[i] = clusters.get(i).getCenter();
+      centerLengthSquared[i] = centers[i].getLengthSquared();
+    }
+    centerDistances = new double[numClusters][numClusters];
+    halfNearestCenterDistance = new double[numClusters];
+    for (int i = 0; i < numClusters; i++) {
+      halfNearestCenterDistance[i] = Double.POSITIVE_INFINITY;
+    }
+    for (int i = 0; i < numClusters; i++) {
+      for (int j = i + 1; j < numClusters; j++) {
+        double distance = measure.distance(centers[i], centers[j]);
+        centerDistances[i][j] = distance;
+        centerDistances[j][i] = distance;
+        halfNearestCenterDistance[i] = Math.min(halfNearestCenterDistance[i], distance / 2.0);
+        halfNearestCenterDistance[j] = Math.min(halfNearestCenterDistance[j], distance / 2.0);
+      }
+    }
+  }
+
+}
@@ -47,6 +47,12 @@ public class KMeansClusterMapper extends Mapper<WritableComparable<?>,VectorWrit
     clusterer.outputPointWithClusterInfo(point.get(), clusters, context);
   }
 
+  @Override
+  protected void cleanup(Context context) throws IOException, InterruptedException {
+    AcceleratedKMeansClusterer.incrementCounters(clusterer, context);
+    super.cleanup(context);
+  }
+
   @Override
   protected void setup(Context context) throws IOException, InterruptedException {
     super.setup(context);
@@ -64,7 +70,7 @@ public class KMeansClusterMapper extends Mapper<WritableComparable<?>,VectorWrit
           throw new IllegalStateException("No clusters found. Check your -c path.");
         }
       }  
-      this.clusterer = new KMeansClusterer(measure);
+      this.clusterer = AcceleratedKMeansClusterer.newClusterer(conf, measure);
     } catch (ClassNotFoundException e) {
       throw new IllegalStateException(e);
     } catch (IllegalAccessException e) {
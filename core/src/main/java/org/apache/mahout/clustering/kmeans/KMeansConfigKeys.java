@@ -27,5 +27,13 @@ public interface KMeansConfigKeys {
   String CLUSTER_CONVERGENCE_KEY = "org.apache.mahout.clustering.kmeans.convergence";
   /** Configuration key for iteration cluster path */
   String CLUSTER_PATH_KEY = "org.apache.mahout.clustering.kmeans.path";
+  /** Configuration key for skipping distance computations by the triangle inequality */
+  String ACCELERATED_KEY = "org.apache.mahout.clustering.kmeans.accelerated";
+  /** Configuration key for the number of points in each batch of mini-batch k-means */
+  String MINI_BATCH_SIZE_KEY = "org.apache.mahout.clustering.kmeans.miniBatchSize";
+  /** Configuration key for the maximum number of batches each mini-batch k-means mapper runs */
+  String MINI_BATCH_ITERATIONS_KEY = "org.apache.mahout.clustering.kmeans.miniBatchIterations";
+  /** Configuration key for the rate at which mini-batch k-means samples its batches from the input */
+  String SAMPLE_RATE_KEY = "org.apache.mahout.clustering.kmeans.sampleRate";
   
 }
@@ -18,7 +18,8 @@ package org.apache.mahout.clustering.kmeans;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -42,6 +43,8 @@ import org.apache.mahout.common.HadoopUtil;
 import org.apache.mahout.common.commandline.DefaultOptionCreator;
 import org.apache.mahout.common.distance.DistanceMeasure;
 import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
+import org.apache.mahout.common.iterator.SamplingIterator;
+import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +53,11 @@ public class KMeansDriver extends AbstractJob {
 
   private static final Logger log = LoggerFactory.getLogger(KMeansDriver.class);
 
+  private static final String NUM_THREADS_OPTION = "numThreads";
+  private static final String ACCELERATED_OPTION = "accelerated";
+  private static final String MINI_BATCH_SIZE_OPTION = "miniBatchSize";
+  private static final String SAMPLE_RATE_OPTION = "sampleRate";
+
   public static void main(String[] args) throws Exception {
     ToolRunner.run(new Configuration(), new KMeansDriver(), args);
   }
@@ -73,6 +81,13 @@ public class KMeansDriver extends AbstractJob {
     addOption(DefaultOptionCreator.overwriteOption().create());
     addOption(DefaultOptionCreator.clusteringOption().create());
     addOption(DefaultOptionCreator.methodOption().create());
+    addOption(NUM_THREADS_OPTION, "nt", "Number of threads assigning points with the sequential method", "1");
+    addFlag(ACCELERATED_OPTION, "acc", "Skip distance computations by the triangle inequality, if the distance "
+        + "measure is a metric");
+    addOption(MINI_BATCH_SIZE_OPTION, "mb", "If positive, run mini-batch k-means with batches of this many points, "
+        + "and at most maxIter batches, instead of full iterations", "0");
+    addOption(SAMPLE_RATE_OPTION, "sr", "Fraction of the input points which mini-batch k-means samples its batches "
+        + "from", "1.0");
 
     if (parseArguments(args) == null) {
       return -1;
@@ -100,7 +115,36 @@ public class KMeansDriver extends AbstractJob {
     boolean runClustering = hasOption(DefaultOptionCreator.CLUSTERING_OPTION);
     boolean runSequential = getOption(DefaultOptionCreator.METHOD_OPTION).equalsIgnoreCase(
         DefaultOptionCreator.SEQUENTIAL_METHOD);
-    run(getConf(), input, clusters, output, measure, convergenceDelta, maxIterations, runClustering, runSequential);
+    int numThreads = Integer.parseInt(getOption(NUM_THREADS_OPTION));
+    Configuration conf = getConf() == null ? new Configuration() : getConf();
+    if (hasOption(ACCELERATED_OPTION)) {
+      conf.setBoolean(KMeansConfigKeys.ACCELERATED_KEY, true);
+    }
+    int miniBatchSize = Integer.parseInt(getOption(MINI_BATCH_SIZE_OPTION));
+    if (miniBatchSize > 0) {
+      runMiniBatch(conf,
+          input,
+          clusters,
+          output,
+          measure,
+          convergenceDelta,
+          maxIterations,
+          miniBatchSize,
+          Double.parseDouble(getOption(SAMPLE_RATE_OPTION)),
+          runClustering,
+          runSequential);
+      return 0;
+    }
+    run(conf,
+        input,
+        clusters,
+        output,
+        measure,
+        convergenceDelta,
+        maxIterations,
+        runClustering,
+        runSequential,
+        numThreads);
     return 0;
   }
 
@@ -133,6 +177,41 @@ public class KMeansDriver extends AbstractJob {
                          boolean runClustering,
                          boolean runSequential)
     throws IOException, InterruptedException, ClassNotFoundException, InstantiationException, IllegalAccessException {
+    run(conf, input, clustersIn, output, measure, convergenceDelta, maxIterations, runClustering, runSequential, 1);
+  }
+
+  /**
+   * Iterate over the input vectors to produce clusters and, if requested, use the
+   * results of the final iteration to cluster the input vectors.
+   * @param input
+   *          the directory pathname for input points
+   * @param clustersIn
+   *          the directory pathname for initial & computed clusters
+   * @param output
+   *          the directory pathname for output points
+   * @param measure 
+   *          the DistanceMeasure to use
+   * @param convergenceDelta
+   *          the convergence delta value
+   * @param maxIterations
+   *          the maximum number of iterations
+   * @param runClustering 
+   *          true if points are to be clustered after iterations are completed
+   * @param runSequential if true execute sequential algorithm
+   * @param numThreads
+   *          the number of threads assigning points in each iteration of the sequential algorithm
+   */
+  public static void run(Configuration conf,
+                         Path input,
+                         Path clustersIn,
+                         Path output,
+                         DistanceMeasure measure,
+                         double convergenceDelta,
+                         int maxIterations,
+                         boolean runClustering,
+                         boolean runSequential,
+                         int numThreads)
+    throws IOException, InterruptedException, ClassNotFoundException, InstantiationException, IllegalAccessException {
 
     // iterate until the clusters converge
     String delta = Double.toString(convergenceDelta);
@@ -142,7 +221,8 @@ public class KMeansDriver extends AbstractJob {
       log.info("convergence: {} max Iterations: {} num Reduce Tasks: {} Input Vectors: {}",
           new Object[] { convergenceDelta, maxIterations, VectorWritable.class.getName() });
     }
-    Path clustersOut = buildClusters(conf, input, clustersIn, output, measure, maxIterations, delta, runSequential);
+    Path clustersOut =
+        buildClusters(conf, input, clustersIn, output, measure, maxIterations, delta, runSequential, numThreads);
     if (runClustering) {
       log.info("Clustering data");
       clusterData(conf,
@@ -224,23 +304,63 @@ public class KMeansDriver extends AbstractJob {
                                    String delta,
                                    boolean runSequential)
     throws IOException, InterruptedException, ClassNotFoundException, InstantiationException, IllegalAccessException {
+    return buildClusters(conf, input, clustersIn, output, measure, maxIterations, delta, runSequential, 1);
+  }
+
+  /**
+   * Iterate over the input vectors to produce cluster directories for each iteration
+   * @param conf 
+   *          the Configuration to use
+   * @param input
+   *          the directory pathname for input points
+   * @param clustersIn
+   *          the directory pathname for initial & computed clusters
+   * @param output
+   *          the directory pathname for output points
+   * @param measure
+   *          the classname of the DistanceMeasure
+   * @param maxIterations
+   *          the maximum number of iterations
+   * @param delta
+   *          the convergence delta value
+   * @param runSequential if true execute sequential algorithm
+   * @param numThreads
+   *          the number of threads assigning points in each iteration of the sequential algorithm; with more
+   *          than one, points are streamed in chunks through a {@link ParallelKMeansClusterer}
+   * 
+   * @return the Path of the final clusters directory
+   */
+  public static Path buildClusters(Configuration conf,
+                                   Path input,
+                                   Path clustersIn,
+                                   Path output,
+                                   DistanceMeasure measure,
+                                   int maxIterations,
+                                   String delta,
+                                   boolean runSequential,
+                                   int numThreads)
+    throws IOException, InterruptedException, ClassNotFoundException, InstantiationException, IllegalAccessException {
     if (runSequential) {
-      return buildClustersSeq(input, clustersIn, output, measure, maxIterations, delta);
+      return buildClustersSeq(conf, input, clustersIn, output, measure, maxIterations, delta, numThreads);
     } else {
       return buildClustersMR(conf, input, clustersIn, output, measure, maxIterations, delta);
     }
   }
 
-  private static Path buildClustersSeq(Path input,
+  private static Path buildClustersSeq(Configuration conf,
+                                       Path input,
                                        Path clustersIn,
                                        Path output,
                                        DistanceMeasure measure,
                                        int maxIterations,
-                                       String delta)
-    throws InstantiationException, IllegalAccessException, IOException {
+                                       String delta,
+                                       int numThreads)
+    throws InstantiationException, IllegalAccessException, IOException, InterruptedException {
 
-    KMeansClusterer clusterer = new KMeansClusterer(measure);
-    Collection<Cluster> clusters = new ArrayList<Cluster>();
+    KMeansClusterer clusterer = AcceleratedKMeansClusterer.newClusterer(conf, measure);
+    ParallelKMeansClusterer parallelClusterer =
+        numThreads > 1 ? new ParallelKMeansClusterer(measure, numThreads) : null;
+    List<Cluster> clusters = new ArrayList<Cluster>();
 
     KMeansUtil.configureWithClusterInfo(clustersIn, clusters);
     if (clusters.isEmpty()) {
@@ -250,45 +370,53 @@ public class KMeansDriver extends AbstractJob {
     int iteration = 1;
     while (!converged && iteration <= maxIterations) {
       log.info("K-Means Iteration: " + iteration);
-      Configuration conf = new Configuration();
       FileSystem fs = FileSystem.get(input.toUri(), conf);
-      FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
-      for (FileStatus s : status) {
-        SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
-        try {
-          Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
-          VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
-          while (reader.next(key, vw)) {
-            clusterer.addPointToNearestCluster(vw.get(), clusters);
-            vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+      if (parallelClusterer != null) {
+        converged = parallelClusterer.runIteration(conf, input, clusters, Double.parseDouble(delta));
+      } else {
+        FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
+        for (FileStatus s : status) {
+          SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+          try {
+            Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+            VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+            while (reader.next(key, vw)) {
+              clusterer.addPointToNearestCluster(vw.get(), clusters);
+              vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+            }
+          } finally {
+            reader.close();
           }
-        } finally {
-          reader.close();
         }
+        converged = clusterer.testConvergence(clusters, Double.parseDouble(delta));
       }
-      converged = clusterer.testConvergence(clusters, Double.parseDouble(delta));
       Path clustersOut = new Path(output, AbstractCluster.CLUSTERS_DIR + iteration);
-      SequenceFile.Writer writer = new SequenceFile.Writer(fs,
-                                                           conf,
-                                                           new Path(clustersOut, "part-r-00000"),
-                                                           Text.class,
-                                                           Cluster.class);
-      try {
-        for (Cluster cluster : clusters) {
-          log.debug("Writing Cluster:{} center:{} numPoints:{} radius:{} to: {}", new Object[] { cluster.getId(),
-              AbstractCluster.formatVector(cluster.getCenter(), null), cluster.getNumPoints(),
-              AbstractCluster.formatVector(cluster.getRadius(), null), clustersOut.getName() });
-          writer.append(new Text(cluster.getIdentifier()), cluster);
-        }
-      } finally {
-        writer.close();
-      }
+      writeClusters(conf, fs, clusters, clustersOut);
       clustersIn = clustersOut;
       iteration++;
     }
     return clustersIn;
   }
 
+  private static void writeClusters(Configuration conf, FileSystem fs, Iterable<Cluster> clusters, Path clustersOut)
+    throws IOException {
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs,
+                                                         conf,
+                                                         new Path(clustersOut, "part-r-00000"),
+                                                         Text.class,
+                                                         Cluster.class);
+    try {
+      for (Cluster cluster : clusters) {
+        log.debug("Writing Cluster:{} center:{} numPoints:{} radius:{} to: {}", new Object[] { cluster.getId(),
+            AbstractCluster.formatVector(cluster.getCenter(), null), cluster.getNumPoints(),
+            AbstractCluster.formatVector(cluster.getRadius(), null), clustersOut.getName() });
+        writer.append(new Text(cluster.getIdentifier()), cluster);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
   private static Path buildClustersMR(Configuration conf,
                                       Path input,
                                       Path clustersIn,
@@ -311,6 +439,126 @@ public class KMeansDriver extends AbstractJob {
     return clustersIn;
   }
 
+  /**
+   * Run mini-batch k-means instead of full iterations, see {@link MiniBatchKMeansClusterer}, and, if
+   * requested, use the resulting clusters to cluster the input vectors. The batches are sampled from the
+   * input, which is read at most once, and only until the centers converge. The clusters are written to the
+   * first clusters directory of the output, as after a single k-means iteration.
+   * 
+   * @param input
+   *          the directory pathname for input points
+   * @param clustersIn
+   *          the directory pathname for initial clusters
+   * @param output
+   *          the directory pathname for output points
+   * @param measure
+   *          the DistanceMeasure to use
+   * @param convergenceDelta
+   *          the largest distance any center may move in a batch once it converged
+   * @param maxIterations
+   *          the maximum number of batches, run by each mapper with the MapReduce algorithm
+   * @param batchSize
+   *          the number of points in each batch
+   * @param sampleRate
+   *          the fraction of the input points the batches are sampled from
+   * @param runClustering
+   *          true if points are to be clustered after the clusters are computed
+   * @param runSequential if true execute sequential algorithm; otherwise every mapper runs mini-batch
+   *          k-means over its split, and the reducer averages their centers
+   */
+  public static void runMiniBatch(Configuration conf,
+                                  Path input,
+                                  Path clustersIn,
+                                  Path output,
+                                  DistanceMeasure measure,
+                                  double convergenceDelta,
+                                  int maxIterations,
+                                  int batchSize,
+                                  double sampleRate,
+                                  boolean runClustering,
+                                  boolean runSequential)
+    throws IOException, InterruptedException, ClassNotFoundException, InstantiationException, IllegalAccessException {
+    String delta = Double.toString(convergenceDelta);
+    log.info("Mini-batch k-means with batches of {} points sampled at rate {}", batchSize, sampleRate);
+    Path clustersOut = new Path(output, AbstractCluster.CLUSTERS_DIR + 1);
+    if (runSequential) {
+      List<Cluster> clusters = new ArrayList<Cluster>();
+      KMeansUtil.configureWithClusterInfo(clustersIn, clusters);
+      if (clusters.isEmpty()) {
+        throw new IllegalStateException("Clusters is empty!");
+      }
+      MiniBatchKMeansClusterer clusterer = new MiniBatchKMeansClusterer(measure, clusters);
+      SequenceFileVectorIterator vectors = new SequenceFileVectorIterator(input, conf);
+      try {
+        Iterator<Vector> points = vectors;
+        if (sampleRate < 1.0) {
+          points = new SamplingIterator<Vector>(vectors, sampleRate);
+        }
+        clusterer.run(points, batchSize, maxIterations, convergenceDelta);
+      } finally {
+        vectors.close();
+      }
+      log.info("Mini-batch k-means ran {} batches", clusterer.getIterations());
+      clusterer.testConvergence(convergenceDelta);
+      writeClusters(conf, FileSystem.get(clustersOut.toUri(), conf), clusters, clustersOut);
+    } else {
+      runMiniBatchJob(conf, input, clustersIn, clustersOut, measure.getClass().getName(), delta, maxIterations,
+          batchSize, sampleRate);
+    }
+    if (runClustering) {
+      log.info("Clustering data");
+      clusterData(conf,
+          input,
+          clustersOut,
+          new Path(output, AbstractCluster.CLUSTERED_POINTS_DIR),
+          measure,
+          delta,
+          runSequential);
+    }
+  }
+
+  private static void runMiniBatchJob(Configuration conf,
+                                      Path input,
+                                      Path clustersIn,
+                                      Path clustersOut,
+                                      String measureClass,
+                                      String convergenceDelta,
+                                      int maxIterations,
+                                      int batchSize,
+                                      double sampleRate)
+    throws IOException, InterruptedException, ClassNotFoundException {
+
+    conf.set(KMeansConfigKeys.CLUSTER_PATH_KEY, clustersIn.toString());
+    conf.set(KMeansConfigKeys.DISTANCE_MEASURE_KEY, measureClass);
+    conf.set(KMeansConfigKeys.CLUSTER_CONVERGENCE_KEY, convergenceDelta);
+    conf.set(KMeansConfigKeys.MINI_BATCH_SIZE_KEY, Integer.toString(batchSize));
+    conf.set(KMeansConfigKeys.MINI_BATCH_ITERATIONS_KEY, Integer.toString(maxIterations));
+    conf.set(KMeansConfigKeys.SAMPLE_RATE_KEY, Double.toString(sampleRate));
+
+    Job job = new Job(conf, "KMeans Driver running mini-batch k-means over clustersIn: " + clustersIn);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(ClusterObservations.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Cluster.class);
+
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    job.setMapperClass(MiniBatchKMeansMapper.class);
+    job.setCombinerClass(KMeansCombiner.class);
+    job.setReducerClass(KMeansReducer.class);
+    // the mapper keeps the points of a mini-batch, so every one of them must be read into a new vector
+    job.getConfiguration().setBoolean(VectorWritable.READS_IN_PLACE, false);
+
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, clustersOut);
+
+    job.setJarByClass(KMeansDriver.class);
+    HadoopUtil.overwriteOutput(clustersOut);
+    if (job.waitForCompletion(true) == false) {
+      throw new InterruptedException("Mini-batch K-Means failed processing " + clustersIn.toString());
+    }
+  }
+
   /**
    * Run the job using supplied arguments
    * @param conf TODO
@@ -340,6 +588,8 @@ public class KMeansDriver extends AbstractJob {
     conf.set(KMeansConfigKeys.CLUSTER_CONVERGENCE_KEY, convergenceDelta);
 
     Job job = new Job(conf, "KMeans Driver running runIteration over clustersIn: " + clustersIn);
+    // the mappers emit the observation of each point before they read the next one
+    job.getConfiguration().setBoolean(VectorWritable.READS_IN_PLACE, true);
     job.setMapOutputKeyClass(Text.class);
     job.setMapOutputValueClass(ClusterObservations.class);
     job.setOutputKeyClass(Text.class);
@@ -431,22 +681,25 @@ public class KMeansDriver extends AbstractJob {
       log.info("convergence: {} Input Vectors: {}", convergenceDelta, VectorWritable.class.getName());
     }
     if (runSequential) {
-      clusterDataSeq(input, clustersIn, output, measure);
+      clusterDataSeq(conf, input, clustersIn, output, measure);
     } else {
       clusterDataMR(conf, input, clustersIn, output, measure, convergenceDelta);
     }
   }
 
-  private static void clusterDataSeq(Path input, Path clustersIn, Path output, DistanceMeasure measure)
+  private static void clusterDataSeq(Configuration conf,
+                                     Path input,
+                                     Path clustersIn,
+                                     Path output,
+                                     DistanceMeasure measure)
     throws IOException, InstantiationException, IllegalAccessException {
 
-    KMeansClusterer clusterer = new KMeansClusterer(measure);
-    Collection<Cluster> clusters = new ArrayList<Cluster>();
+    KMeansClusterer clusterer = AcceleratedKMeansClusterer.newClusterer(conf, measure);
+    List<Cluster> clusters = new ArrayList<Cluster>();
     KMeansUtil.configureWithClusterInfo(clustersIn, clusters);
     if (clusters.isEmpty()) {
       throw new IllegalStateException("Clusters is empty!");
     }
-    Configuration conf = new Configuration();
     FileSystem fs = FileSystem.get(input.toUri(), conf);
     FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
     int part = 0;
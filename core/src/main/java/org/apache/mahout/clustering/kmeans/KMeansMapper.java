@@ -41,6 +41,12 @@ public class KMeansMapper extends Mapper<WritableComparable<?>, VectorWritable,
     this.clusterer.emitPointToNearestCluster(point.get(), this.clusters, context);
   }
 
+  @Override
+  protected void cleanup(Context context) throws IOException, InterruptedException {
+    AcceleratedKMeansClusterer.incrementCounters(clusterer, context);
+    super.cleanup(context);
+  }
+
   @Override
   protected void setup(Context context) throws IOException, InterruptedException {
     super.setup(context);
@@ -51,7 +57,7 @@ public class KMeansMapper extends Mapper<WritableComparable<?>, VectorWritable,
           .asSubclass(DistanceMeasure.class).newInstance();
       measure.configure(conf);
 
-      this.clusterer = new KMeansClusterer(measure);
+      this.clusterer = AcceleratedKMeansClusterer.newClusterer(conf, measure);
 
       String clusterPath = conf.get(KMeansConfigKeys.CLUSTER_PATH_KEY);
       if ((clusterPath != null) && (clusterPath.length() > 0)) {
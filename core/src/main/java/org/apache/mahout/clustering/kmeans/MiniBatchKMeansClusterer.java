@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.clustering.ClusterObservations;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.Functions;
+
+/**
+ * <p>
+ * Mini-batch k-means (Sculley, "Web-Scale K-Means Clustering", 2010). Instead of assigning every point to
+ * its nearest cluster before the centers move once, the centers move after each small batch of points. Each
+ * point of a batch is first assigned to the nearest center, then every center takes a step towards each of
+ * its points, with a learning rate of one over the number of points the center has seen so far. So each
+ * center is the running mean of its points, and it settles down as its count grows.
+ * </p>
+ *
+ * <p>
+ * The batches are taken in turn from an iterator, typically a {@link
+ * org.apache.mahout.common.iterator.SamplingIterator} over the input, and the clusterer stops reading it once
+ * it has run the maximum number of batches, or no center moved more than the convergence delta in a batch.
+ * The results are observed into the {@link Cluster}s the clusterer was created with, one
+ * {@link ClusterObservations} per center, as if the center had seen its points in a full k-means iteration.
+ * </p>
+ */
+public final class MiniBatchKMeansClusterer {
+
+  private final DistanceMeasure measure;
+  private final List<Cluster> clusters;
+  private final Vector[] centers;
+  /** running means of the squares of the points of each center, for the radius of the clusters */
+  private final Vector[] squares;
+  private final double[] counts;
+  private int iterations;
+
+  public MiniBatchKMeansClusterer(DistanceMeasure measure, List<Cluster> clusters) {
+    Preconditions.checkArgument(!clusters.isEmpty(), "No clusters");
+    this.measure = measure;
+    this.clusters = clusters;
+    int k = clusters.size();
+    centers = new Vector[k];
+    squares = new Vector[k];
+    counts = new double[k];
+    for (int i = 0; i < k; i++) {
+      centers[i] = clusters.get(i).getCenter().clone();
+      squares[i] = centers[i].times(centers[i]);
+    }
+  }
+
+  /**
+   * Run mini-batch iterations over the points, until they run out, the total number of batches run by this
+   * clusterer reaches maxIterations, or no center moves more than convergenceDelta in a batch.
+   *
+   * @return true if the centers converged
+   */
+  public boolean run(Iterator<Vector> points, int batchSize, int maxIterations, double convergenceDelta) {
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+    List<Vector> batch = new ArrayList<Vector>(batchSize);
+    int[] nearest = new int[batchSize];
+    while (iterations < maxIterations) {
+      batch.clear();
+      while (batch.size() < batchSize && points.hasNext()) {
+        batch.add(points.next());
+      }
+      if (batch.isEmpty()) {
+        return false;
+      }
+      iterations++;
+      if (update(batch, nearest) <= convergenceDelta) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the largest distance moved by any center
+   */
+  private double update(List<Vector> batch, int[] nearest) {
+    double[] lengthSquared = new double[centers.length];
+    for (int i = 0; i < centers.length; i++) {
+      lengthSquared[i] = centers[i].getLengthSquared();
+    }
+    for (int p = 0; p < batch.size(); p++) {
+      Vector point = batch.get(p);
+      int closest = 0;
+      double closestDistance = Double.MAX_VALUE;
+      for (int i = 0; i < centers.length; i++) {
+        double distance = measure.distance(lengthSquared[i], centers[i], point);
+        if (distance < closestDistance) {
+          closest = i;
+          closestDistance = distance;
+        }
+      }
+      nearest[p] = closest;
+    }
+    Vector[] previous = new Vector[centers.length];
+    for (int p = 0; p < batch.size(); p++) {
+      Vector point = batch.get(p);
+      int i = nearest[p];
+      if (previous[i] == null) {
+        previous[i] = centers[i].clone();
+      }
+      counts[i]++;
+      double rate = 1.0 / counts[i];
+      // step towards the point: center = (1 - rate) * center + rate * point
+      centers[i].assign(Functions.mult(1.0 - rate));
+      point.times(rate).addTo(centers[i]);
+      squares[i].assign(Functions.mult(1.0 - rate));
+      point.times(point).times(rate).addTo(squares[i]);
+    }
+    double moved = 0.0;
+    for (int i = 0; i < centers.length; i++) {
+      if (previous[i] != null) {
+        moved = Math.max(moved, measure.distance(previous[i], centers[i]));
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * @return the number of batches run so far
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * @return the observations of the points seen by the center of the ith cluster: their count, and the
+   *         center and the mean of their squares scaled by it. They are empty if the center saw no points.
+   */
+  public ClusterObservations getObservations(int i) {
+    return new ClusterObservations(counts[i], centers[i].times(counts[i]), squares[i].times(counts[i]));
+  }
+
+  /**
+   * Observe the points seen by each center into its cluster, test the clusters for convergence and compute
+   * their new parameters, as {@link KMeansClusterer#testConvergence(Iterable, double)} does after a full
+   * iteration.
+   *
+   * @return true if all the clusters converged
+   */
+  public boolean testConvergence(double convergenceDelta) {
+    for (int i = 0; i < centers.length; i++) {
+      if (counts[i] > 0) {
+        clusters.get(i).observe(getObservations(i));
+      }
+    }
+    return new KMeansClusterer(measure).testConvergence(clusters, convergenceDelta);
+  }
+
+}
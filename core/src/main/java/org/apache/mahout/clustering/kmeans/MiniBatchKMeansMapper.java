@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.clustering.ClusterObservations;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.iterator.SamplingIterator;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+/**
+ * Runs mini-batch k-means over a sample of its split, starting from the input clusters, and emits for each
+ * cluster the observations of the points its center saw. It stops reading its split once it has run the
+ * maximum number of batches or its centers converged. The {@link KMeansCombiner} and {@link KMeansReducer}
+ * then average the centers of all mappers, weighted by their counts.
+ */
+public class MiniBatchKMeansMapper
+    extends Mapper<WritableComparable<?>, VectorWritable, Text, ClusterObservations> {
+
+  private final List<Cluster> clusters = new ArrayList<Cluster>();
+  private DistanceMeasure measure;
+  private int batchSize;
+  private int maxIterations;
+  private double sampleRate;
+  private double convergenceDelta;
+
+  @Override
+  public void run(Context context) throws IOException, InterruptedException {
+    setup(context);
+    Iterator<Vector> points = new PointIterator(context);
+    if (sampleRate < 1.0) {
+      points = new SamplingIterator<Vector>(points, sampleRate);
+    }
+    MiniBatchKMeansClusterer clusterer = new MiniBatchKMeansClusterer(measure, clusters);
+    clusterer.run(points, batchSize, maxIterations, convergenceDelta);
+    context.getCounter("Clustering", "Mini-batches").increment(clusterer.getIterations());
+    // emit every cluster, even with no points, so that the reducer writes out all of them
+    for (int i = 0; i < clusters.size(); i++) {
+      context.write(new Text(clusters.get(i).getIdentifier()), clusterer.getObservations(i));
+    }
+    cleanup(context);
+  }
+
+  @Override
+  protected void setup(Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    Configuration conf = context.getConfiguration();
+    try {
+      ClassLoader ccl = Thread.currentThread().getContextClassLoader();
+      measure = ccl.loadClass(conf.get(KMeansConfigKeys.DISTANCE_MEASURE_KEY))
+          .asSubclass(DistanceMeasure.class).newInstance();
+      measure.configure(conf);
+
+      batchSize = Integer.parseInt(conf.get(KMeansConfigKeys.MINI_BATCH_SIZE_KEY));
+      maxIterations = Integer.parseInt(conf.get(KMeansConfigKeys.MINI_BATCH_ITERATIONS_KEY));
+      sampleRate = Double.parseDouble(conf.get(KMeansConfigKeys.SAMPLE_RATE_KEY));
+      convergenceDelta = Double.parseDouble(conf.get(KMeansConfigKeys.CLUSTER_CONVERGENCE_KEY));
+
+      String clusterPath = conf.get(KMeansConfigKeys.CLUSTER_PATH_KEY);
+      if ((clusterPath != null) && (clusterPath.length() > 0)) {
+        KMeansUtil.configureWithClusterInfo(new Path(clusterPath), clusters);
+        if (clusters.isEmpty()) {
+          throw new IllegalStateException("No clusters found. Check your -c path.");
+        }
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch (InstantiationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Iterates over the vectors of the split. Each vector is kept until its batch is done, so the input must
+   * not be read in place.
+   */
+  private static final class PointIterator implements Iterator<Vector> {
+
+    private final Context context;
+    private boolean fetched;
+    private boolean hasNext;
+
+    private PointIterator(Context context) {
+      this.context = context;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!fetched) {
+        try {
+          hasNext = context.nextKeyValue();
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException(e);
+        }
+        fetched = true;
+      }
+      return hasNext;
+    }
+
+    @Override
+    public Vector next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      fetched = false;
+      try {
+        return context.getCurrentValue().get();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.clustering.ClusterObservations;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A multi-threaded, in-memory variant of the sequential k-means iteration. The points are streamed in chunks,
+ * and each chunk is assigned to the nearest clusters on a pool of threads. A chunk sums up its points per
+ * cluster on its own, without touching any shared state. The reading thread then adds these partial sums to
+ * the {@link Cluster}s in the order in which the chunks were read. Only a few chunks per thread are held in
+ * memory at any time, so the input does not need to fit in memory.
+ * </p>
+ *
+ * <p>
+ * Clusters are assigned and updated just like {@link KMeansClusterer} does. The only difference is the order
+ * in which the point sums are added up, which does not depend on thread scheduling.
+ * </p>
+ */
+public final class ParallelKMeansClusterer {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private final DistanceMeasure measure;
+  private final int numThreads;
+  private final int chunkSize;
+
+  public ParallelKMeansClusterer(DistanceMeasure measure, int numThreads) {
+    this(measure, numThreads, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param measure the DistanceMeasure to use
+   * @param numThreads number of threads which assign points
+   * @param chunkSize number of points assigned at a time by one thread
+   */
+  public ParallelKMeansClusterer(DistanceMeasure measure, int numThreads, int chunkSize) {
+    Preconditions.checkArgument(measure != null, "measure is null");
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    Preconditions.checkArgument(chunkSize >= 1, "chunkSize must be at least 1");
+    this.measure = measure;
+    this.numThreads = numThreads;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Performs a single iteration over the points in the SequenceFiles of VectorWritables under the input path:
+   * assigns each point to the nearest cluster, then updates the cluster centers.
+   *
+   * @return true if all clusters converged
+   */
+  public boolean runIteration(Configuration conf, Path input, List<Cluster> clusters, double convergenceDelta)
+    throws IOException, InterruptedException {
+    Assignment assignment = new Assignment(clusters);
+    try {
+      FileSystem fs = FileSystem.get(input.toUri(), conf);
+      FileStatus[] status = fs.listStatus(input, new OutputLogFilter());
+      for (FileStatus s : status) {
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+        try {
+          Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+          VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+          while (reader.next(key, vw)) {
+            assignment.add(vw.get());
+            vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+          }
+        } catch (InstantiationException ie) {
+          throw new IllegalStateException(ie);
+        } catch (IllegalAccessException iae) {
+          throw new IllegalStateException(iae);
+        } finally {
+          reader.close();
+        }
+      }
+      assignment.finish();
+    } finally {
+      assignment.shutdown();
+    }
+    return new KMeansClusterer(measure).testConvergence(clusters, convergenceDelta);
+  }
+
+  /**
+   * Performs a single iteration over the given points: assigns each point to the nearest cluster, then updates
+   * the cluster centers.
+   *
+   * @return true if all clusters converged
+   */
+  public boolean runIteration(Iterable<Vector> points, List<Cluster> clusters, double convergenceDelta)
+    throws InterruptedException {
+    Assignment assignment = new Assignment(clusters);
+    try {
+      for (Vector point : points) {
+        assignment.add(point);
+      }
+      assignment.finish();
+    } finally {
+      assignment.shutdown();
+    }
+    return new KMeansClusterer(measure).testConvergence(clusters, convergenceDelta);
+  }
+
+  /**
+   * Hands out chunks of points to the threads, and adds up their partial sums in chunk order.
+   */
+  private final class Assignment {
+
+    private final List<Cluster> clusters;
+    private final Vector[] centers;
+    private final double[] centerLengthSquared;
+    private final ExecutorService executor;
+    private final LinkedList<Future<ClusterObservations[]>> pending;
+    private List<Vector> chunk;
+
+    private Assignment(List<Cluster> clusters) {
+      Preconditions.checkArgument(!clusters.isEmpty(), "clusters is empty");
+      this.clusters = clusters;
+      int numClusters = clusters.size();
+      centers = new Vector[numClusters];
+      centerLengthSquared = new double[numClusters];
+      for (int i = 0; i < numClusters; i++) {
+        centers[i] = clusters.get(i).getCenter();
+        centerLengthSquared[i] = centers[i].getLengthSquared();
+      }
+      executor = Executors.newFixedThreadPool(numThreads);
+      pending = new LinkedList<Future<ClusterObservations[]>>();
+      chunk = new ArrayList<Vector>(chunkSize);
+    }
+
+    void add(Vector point) throws InterruptedException {
+      chunk.add(point);
+      if (chunk.size() == chunkSize) {
+        submitChunk();
+        // bound the number of chunks in memory
+        while (pending.size() > 2 * numThreads) {
+          mergeOldest();
+        }
+      }
+    }
+
+    void finish() throws InterruptedException {
+      if (!chunk.isEmpty()) {
+        submitChunk();
+      }
+      while (!pending.isEmpty()) {
+        mergeOldest();
+      }
+    }
+
+    void shutdown() {
+      executor.shutdownNow();
+    }
+
+    private void submitChunk() {
+      final List<Vector> points = chunk;
+      pending.add(executor.submit(new Callable<ClusterObservations[]>() {
+        @Override
+        public ClusterObservations[] call() {
+          return sumByNearestCluster(points);
+        }
+      }));
+      chunk = new ArrayList<Vector>(chunkSize);
+    }
+
+    private void mergeOldest() throws InterruptedException {
+      ClusterObservations[] observations;
+      try {
+        observations = pending.removeFirst().get();
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+      for (int i = 0; i < observations.length; i++) {
+        if (observations[i] != null) {
+          clusters.get(i).observe(observations[i]);
+        }
+      }
+    }
+
+    private ClusterObservations[] sumByNearestCluster(Iterable<Vector> points) {
+      int numClusters = centers.length;
+      double[] s0 = new double[numClusters];
+      Vector[] s1 = new Vector[numClusters];
+      Vector[] s2 = new Vector[numClusters];
+      for (Vector point : points) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < numClusters; i++) {
+          double distance = measure.distance(centerLengthSquared[i], centers[i], point);
+          if (nearest < 0 || distance < nearestDistance) {
+            nearest = i;
+            nearestDistance = distance;
+          }
+        }
+        s0[nearest]++;
+        if (s1[nearest] == null) {
+          s1[nearest] = point.clone();
+          s2[nearest] = point.times(point);
+        } else {
+          point.addTo(s1[nearest]);
+          point.times(point).addTo(s2[nearest]);
+        }
+      }
+      ClusterObservations[] observations = new ClusterObservations[numClusters];
+      for (int i = 0; i < numClusters; i++) {
+        if (s0[i] > 0) {
+          observations[i] = new ClusterObservations(s0[i], s1[i], s2[i]);
+        }
+      }
+      return observations;
+    }
+  }
+
+}
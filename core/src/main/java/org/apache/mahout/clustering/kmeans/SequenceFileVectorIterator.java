@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.cf.taste.impl.common.SkippingIterator;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+/**
+ * Iterates over the vectors in the SequenceFiles of a directory, one file after the other. Skipped records
+ * are read but their vectors are not deserialized, so a {@link org.apache.mahout.common.iterator.SamplingIterator}
+ * over this iterator only pays for the vectors it returns.
+ */
+final class SequenceFileVectorIterator implements SkippingIterator<Vector>, Closeable {
+
+  private final FileSystem fs;
+  private final Configuration conf;
+  private final FileStatus[] files;
+  private int nextFile;
+  private SequenceFile.Reader reader;
+  private Writable key;
+  /** true if the reader is positioned on a record whose vector has not been returned or skipped */
+  private boolean pending;
+
+  SequenceFileVectorIterator(Path input, Configuration conf) throws IOException {
+    this.fs = FileSystem.get(input.toUri(), conf);
+    this.conf = conf;
+    this.files = fs.listStatus(input, new OutputLogFilter());
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      while (!pending) {
+        if (reader == null) {
+          if (nextFile == files.length) {
+            return false;
+          }
+          reader = new SequenceFile.Reader(fs, files[nextFile++].getPath(), conf);
+          key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+        }
+        pending = reader.next(key);
+        if (!pending) {
+          reader.close();
+          reader = null;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    } catch (InstantiationException e) {
+      throw new IllegalStateException(e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public Vector next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    VectorWritable value = new VectorWritable();
+    try {
+      reader.getCurrentValue(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    pending = false;
+    return value.get();
+  }
+
+  @Override
+  public void skip(int n) {
+    for (int i = 0; i < n && hasNext(); i++) {
+      pending = false;
+    }
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() throws IOException {
+    nextFile = files.length;
+    pending = false;
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+}
@@ -56,6 +56,8 @@ public final class LDADriver extends AbstractJob {
 
   private static final String NUM_TOPICS_OPTION = "numTopics";
 
+  private static final String NUM_THREADS_OPTION = "numThreads";
+
   static final String STATE_IN_KEY = "org.apache.mahout.clustering.lda.stateIn";
 
   static final String NUM_TOPICS_KEY = "org.apache.mahout.clustering.lda.numTopics";
@@ -132,6 +134,8 @@ public final class LDADriver extends AbstractJob {
               "The total number of words in the corpus (can be approximate, needs to exceed the actual value)");
     addOption(TOPIC_SMOOTHING_OPTION, "a", "Topic smoothing parameter. Default is 50/numTopics.", "-1.0");
     addOption(DefaultOptionCreator.maxIterationsOption().withRequired(false).create());
+    addOption(DefaultOptionCreator.methodOption().create());
+    addOption(NUM_THREADS_OPTION, "nt", "Number of threads inferring documents with the sequential method", "1");
 
     if (parseArguments(args) == null) {
       return -1;
@@ -150,18 +154,33 @@ public final class LDADriver extends AbstractJob {
       topicSmoothing = 50.0 / numTopics;
     }
 
-    run(getConf(), input, output, numTopics, numWords, topicSmoothing, maxIterations);
+    boolean runSequential =
+        getOption(DefaultOptionCreator.METHOD_OPTION).equalsIgnoreCase(DefaultOptionCreator.SEQUENTIAL_METHOD);
+    int numThreads = Integer.parseInt(getOption(NUM_THREADS_OPTION));
+
+    Configuration conf = getConf() == null ? new Configuration() : getConf();
+    run(conf, input, output, numTopics, numWords, topicSmoothing, maxIterations, runSequential, numThreads);
 
     return 0;
   }
 
-  private static void run(Configuration conf,
-                          Path input,
-                          Path output,
-                          int numTopics,
-                          int numWords,
-                          double topicSmoothing,
-                          int maxIterations)
+  /**
+   * Estimates an LDA model, writing the state of each iteration to output/state-i.
+   *
+   * @param runSequential
+   *          if true, run the iterations in this JVM with a {@link ParallelLDAEstimator} instead of MapReduce
+   * @param numThreads
+   *          the number of threads inferring documents in each iteration of the sequential method
+   */
+  public static void run(Configuration conf,
+                         Path input,
+                         Path output,
+                         int numTopics,
+                         int numWords,
+                         double topicSmoothing,
+                         int maxIterations,
+                         boolean runSequential,
+                         int numThreads)
     throws IOException, InterruptedException, ClassNotFoundException {
     Path stateIn = new Path(output, "state-0");
     writeInitialState(stateIn, numTopics, numWords);
@@ -172,7 +191,9 @@ public final class LDADriver extends AbstractJob {
       log.info("LDA Iteration {}", iteration);
       // point the output to a new directory per iteration
       Path stateOut = new Path(output, "state-" + iteration);
-      double ll = runIteration(conf, input, stateIn, stateOut, numTopics, numWords, topicSmoothing);
+      double ll = runSequential
+          ? runIterationSeq(conf, input, stateIn, stateOut, numTopics, numWords, topicSmoothing, numThreads)
+          : runIteration(conf, input, stateIn, stateOut, numTopics, numWords, topicSmoothing);
       double relChange = (oldLL - ll) / oldLL;
 
       // now point the input to the old output directory
@@ -257,10 +278,7 @@ public final class LDADriver extends AbstractJob {
                                      int numWords,
                                      double topicSmoothing)
     throws IOException, InterruptedException, ClassNotFoundException {
-    conf.set(STATE_IN_KEY, stateIn.toString());
-    conf.set(NUM_TOPICS_KEY, Integer.toString(numTopics));
-    conf.set(NUM_WORDS_KEY, Integer.toString(numWords));
-    conf.set(TOPIC_SMOOTHING_KEY, Double.toString(topicSmoothing));
+    configureState(conf, stateIn, numTopics, numWords, topicSmoothing);
 
     Job job = new Job(conf, "LDA Driver running runIteration over stateIn: " + stateIn);
     job.setOutputKeyClass(IntPairWritable.class);
@@ -280,4 +298,33 @@ public final class LDADriver extends AbstractJob {
     }
     return findLL(stateOut, conf);
   }
+
+  /**
+   * Runs an iteration in this JVM, on the given number of threads.
+   *
+   * @return the log likelihood of the corpus
+   */
+  private static double runIterationSeq(Configuration conf,
+                                        Path input,
+                                        Path stateIn,
+                                        Path stateOut,
+                                        int numTopics,
+                                        int numWords,
+                                        double topicSmoothing,
+                                        int numThreads) throws IOException, InterruptedException {
+    configureState(conf, stateIn, numTopics, numWords, topicSmoothing);
+    LDAState state = createState(conf);
+    return new ParallelLDAEstimator(numThreads).runIteration(conf, input, state, stateOut);
+  }
+
+  private static void configureState(Configuration conf,
+                                     Path stateIn,
+                                     int numTopics,
+                                     int numWords,
+                                     double topicSmoothing) {
+    conf.set(STATE_IN_KEY, stateIn.toString());
+    conf.set(NUM_TOPICS_KEY, Integer.toString(numTopics));
+    conf.set(NUM_WORDS_KEY, Integer.toString(numWords));
+    conf.set(TOPIC_SMOOTHING_KEY, Double.toString(topicSmoothing));
+  }
 }
@@ -17,53 +17,75 @@
 
 package org.apache.mahout.clustering.lda;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.apache.commons.math.special.Gamma;
-import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.DenseVector;
-import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.Vector;
-import org.apache.mahout.math.function.DoubleDoubleFunction;
 
 /**
  * Class for performing infererence on a document, which involves computing (an approximation to)
  * p(word|topic) for each word and topic, and a prior distribution p(topic) for each topic.
+ * The working memory is proportional to the number of distinct words in a document times the number of
+ * topics, independent of the size of the vocabulary. It is allocated for the largest document seen so far
+ * and reused for the following ones, so an instance is not thread safe.
  */
 public class LDAInference {
   
   private static final double E_STEP_CONVERGENCE = 1.0E-6;
   private static final int MAX_ITER = 20;
 
-  private DenseMatrix phi;
   private final LDAState state;
+  private final int numTopics;
+
+  private int[] words = new int[0]; // the distinct words of the document, sorted
+  private double[] counts = new double[0]; // counts[i] is the count of words[i]
+  private double[] logProbs = new double[0]; // log p(words[i]|k) at i * numTopics + k
+  private double[] phi = new double[0]; // log q(k|words[i]) at i * numTopics + k
+  private double[] gamma;
+  private double[] nextGamma;
+  private final double[] digammaGamma;
 
   public LDAInference(LDAState state) {
     this.state = state;
+    this.numTopics = state.getNumTopics();
+    gamma = new double[numTopics];
+    nextGamma = new double[numTopics];
+    digammaGamma = new double[numTopics];
   }
   
   /**
    * An estimate of the probabilitys for each document. Gamma(k) is the probability of seeing topic k in the
-   * document, phi(k,w) is the probability of topic k generating w in this document.
+   * document, phi(k,w) is the probability of topic k generating w in this document. It shares its state with
+   * the {@link LDAInference} which created it, and is only valid until the next document is inferred.
    */
   public static class InferredDocument {
     
     private final Vector wordCounts;
     private final Vector gamma; // p(topic)
-    private final Matrix mphi; // log p(columnMap(w)|t)
-    private final int[] columnMap; // maps words into the matrix's column map
+    private final int[] words; // maps words into the columns of phi, by their position
+    private final int numWords;
+    private final double[] phi; // log p(w|t) at column * numTopics + t
+    private final int numTopics;
     private final double logLikelihood;
 
-    InferredDocument(Vector wordCounts, Vector gamma, int[] columnMap, Matrix phi, double ll) {
+    InferredDocument(Vector wordCounts, Vector gamma, int[] words, int numWords, double[] phi, double ll) {
       this.wordCounts = wordCounts;
       this.gamma = gamma;
-      this.mphi = phi;
-      this.columnMap = columnMap;
+      this.words = words;
+      this.numWords = numWords;
+      this.phi = phi;
+      this.numTopics = gamma.size();
       this.logLikelihood = ll;
     }
 
     public double phi(int k, int w) {
-      return mphi.getQuick(k, columnMap[w]);
+      int column = Arrays.binarySearch(words, 0, numWords, w);
+      if (column < 0) {
+        throw new IllegalArgumentException("Word " + w + " does not occur in the document");
+      }
+      return phi[column * numTopics + k];
     }
     
     public Vector getWordCounts() {
@@ -83,51 +105,38 @@ public class LDAInference {
    * Performs inference on the given document, returning an InferredDocument.
    */
   public InferredDocument infer(Vector wordCounts) {
-    double docTotal = wordCounts.zSum();
-    int docLength = wordCounts.size(); // cardinality of document vectors
+    int numWords = collectWords(wordCounts);
+    double docTotal = 0.0;
+    for (int i = 0; i < numWords; i++) {
+      docTotal += counts[i];
+    }
     
     // initialize variational approximation to p(z|doc)
-    Vector gamma = new DenseVector(state.getNumTopics());
-    gamma.assign(state.getTopicSmoothing() + docTotal / state.getNumTopics());
-    Vector nextGamma = new DenseVector(state.getNumTopics());
-    createPhiMatrix(docLength);
-    
-    Vector digammaGamma = digammaGamma(gamma);
-    
-    int[] map = new int[docLength];
+    Arrays.fill(gamma, state.getTopicSmoothing() + docTotal / numTopics);
+    digammaGamma(gamma);
     
     int iteration = 0;
     
     boolean converged = false;
     double oldLL = 1;
     while (!converged && (iteration < MAX_ITER)) {
-      nextGamma.assign(state.getTopicSmoothing()); // nG := alpha, for all topics
+      Arrays.fill(nextGamma, state.getTopicSmoothing()); // nG := alpha, for all topics
       
-      int mapping = 0;
-      for (Iterator<Vector.Element> iter = wordCounts.iterateNonZero(); iter.hasNext();) {
-        Vector.Element e = iter.next();
-        int word = e.index();
-        Vector phiW = eStepForWord(word, digammaGamma);
-        phi.assignColumn(mapping, phiW);
-        if (iteration == 0) { // first iteration
-          map[word] = mapping;
+      for (int i = 0; i < numWords; i++) {
+        int offset = i * numTopics;
+        eStepForWord(offset);
+        for (int k = 0; k < numTopics; ++k) {
+          nextGamma[k] += counts[i] * Math.exp(phi[offset + k]);
         }
-        
-        for (int k = 0; k < nextGamma.size(); ++k) {
-          double g = nextGamma.getQuick(k);
-          nextGamma.setQuick(k, g + e.get() * Math.exp(phiW.getQuick(k)));
-        }
-        
-        mapping++;
       }
       
-      Vector tempG = gamma;
+      double[] tempG = gamma;
       gamma = nextGamma;
       nextGamma = tempG;
       
-      digammaGamma = digammaGamma(gamma);
+      digammaGamma(gamma);
       
-      double ll = computeLikelihood(wordCounts, map, phi, gamma, digammaGamma);
+      double ll = computeLikelihood(numWords);
       // isNotNaNAssertion(ll);
       converged = (oldLL < 0) && ((oldLL - ll) / oldLL < E_STEP_CONVERGENCE);
       
@@ -135,58 +144,99 @@ public class LDAInference {
       iteration++;
     }
     
-    return new InferredDocument(wordCounts, gamma, map, phi, oldLL);
+    return new InferredDocument(wordCounts, new DenseVector(gamma, true), words, numWords, phi, oldLL);
   }
-  
-  private Vector digammaGamma(Vector gamma) {
-    // digamma is expensive, precompute
-    Vector digammaGamma = digamma(gamma);
-    // and log normalize:
-    double digammaSumGamma = digamma(gamma.zSum());
-    for (int i = 0; i < state.getNumTopics(); i++) {
-      digammaGamma.setQuick(i, digammaGamma.getQuick(i) - digammaSumGamma);
+
+  /**
+   * Copies the non-zero words of the document and their counts into the working memory, sorted by word,
+   * and looks up their log probabilities for each topic.
+   *
+   * @return the number of distinct words in the document
+   */
+  private int collectWords(Vector wordCounts) {
+    int numWords = wordCounts.getNumNondefaultElements();
+    ensureCapacity(numWords);
+    numWords = 0;
+    boolean sorted = true;
+    for (Iterator<Vector.Element> iter = wordCounts.iterateNonZero(); iter.hasNext();) {
+      Vector.Element e = iter.next();
+      if (numWords == words.length) {
+        ensureCapacity(numWords + 1);
+      }
+      words[numWords] = e.index();
+      counts[numWords] = e.get();
+      sorted &= numWords == 0 || words[numWords - 1] < words[numWords];
+      numWords++;
+    }
+    if (!sorted) {
+      Arrays.sort(words, 0, numWords);
+      for (int i = 0; i < numWords; i++) {
+        counts[i] = wordCounts.getQuick(words[i]);
+      }
+    }
+    for (int i = 0; i < numWords; i++) {
+      int offset = i * numTopics;
+      for (int k = 0; k < numTopics; k++) {
+        logProbs[offset + k] = state.logProbWordGivenTopic(words[i], k);
+      }
+    }
+    return numWords;
+  }
+
+  private void ensureCapacity(int numWords) {
+    if (words.length < numWords) {
+      int capacity = Math.max(numWords, 2 * words.length);
+      words = Arrays.copyOf(words, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      logProbs = new double[capacity * numTopics];
+      phi = new double[capacity * numTopics];
     }
-    return digammaGamma;
   }
   
-  private void createPhiMatrix(int docLength) {
-    if (phi == null || phi.getRow(0).size() != docLength) {
-      phi = new DenseMatrix(state.getNumTopics(), docLength);
-    } else {
-      phi.assign(0);
+  /**
+   * Sets digammaGamma to the log normalized digamma of gamma.
+   */
+  private void digammaGamma(double[] gamma) {
+    // digamma is expensive, precompute
+    double gammaSum = 0.0;
+    for (int k = 0; k < numTopics; k++) {
+      digammaGamma[k] = digamma(gamma[k]);
+      gammaSum += gamma[k];
+    }
+    // and log normalize:
+    double digammaSumGamma = digamma(gammaSum);
+    for (int k = 0; k < numTopics; k++) {
+      digammaGamma[k] -= digammaSumGamma;
     }
   }
   
-  private double computeLikelihood(Vector wordCounts, int[] map, Matrix phi, Vector gamma, Vector digammaGamma) {
+  private double computeLikelihood(int numWords) {
     double ll = 0.0;
     
     // log normalizer for q(gamma);
-    ll += Gamma.logGamma(state.getTopicSmoothing() * state.getNumTopics());
-    ll -= state.getNumTopics() * Gamma.logGamma(state.getTopicSmoothing());
+    ll += Gamma.logGamma(state.getTopicSmoothing() * numTopics);
+    ll -= numTopics * Gamma.logGamma(state.getTopicSmoothing());
     // isNotNaNAssertion(ll);
     
     // now for the the rest of q(gamma);
-    for (int k = 0; k < state.getNumTopics(); ++k) {
-      double gammaK = gamma.get(k);
-      ll += (state.getTopicSmoothing() - gammaK) * digammaGamma.getQuick(k);
+    double gammaSum = 0.0;
+    for (int k = 0; k < numTopics; ++k) {
+      double gammaK = gamma[k];
+      ll += (state.getTopicSmoothing() - gammaK) * digammaGamma[k];
       ll += Gamma.logGamma(gammaK);
-      
+      gammaSum += gammaK;
     }
-    ll -= Gamma.logGamma(gamma.zSum());
+    ll -= Gamma.logGamma(gammaSum);
     // isNotNaNAssertion(ll);
     
     // for each word
-    for (Iterator<Vector.Element> iter = wordCounts.iterateNonZero(); iter.hasNext();) {
-      Vector.Element e = iter.next();
-      int w = e.index();
-      double n = e.get();
-      int mapping = map[w];
+    for (int i = 0; i < numWords; i++) {
+      double n = counts[i];
+      int offset = i * numTopics;
       // now for each topic:
-      for (int k = 0; k < state.getNumTopics(); k++) {
-        double llPart = 0.0;
-        double phiKMapping = phi.getQuick(k, mapping);
-        llPart += Math.exp(phiKMapping)
-                  * (digammaGamma.getQuick(k) - phiKMapping + state.logProbWordGivenTopic(w, k));
+      for (int k = 0; k < numTopics; k++) {
+        double phiK = phi[offset + k];
+        double llPart = Math.exp(phiK) * (digammaGamma[k] - phiK + logProbs[offset + k]);
         
         ll += llPart * n;
         
@@ -198,34 +248,22 @@ public class LDAInference {
   }
   
   /**
-   * Compute log q(k|w,doc) for each topic k, for a given word.
+   * Compute log q(k|w,doc) for each topic k, for the word whose topics start at the given offset.
    */
-  private Vector eStepForWord(int word, Vector digammaGamma) {
-    Vector phi = new DenseVector(state.getNumTopics()); // log q(k|w), for each w
+  private void eStepForWord(int offset) {
     double phiTotal = Double.NEGATIVE_INFINITY; // log Normalizer
-    for (int k = 0; k < state.getNumTopics(); ++k) { // update q(k|w)'s param phi
-      phi.setQuick(k, state.logProbWordGivenTopic(word, k) + digammaGamma.getQuick(k));
-      phiTotal = LDAUtil.logSum(phiTotal, phi.getQuick(k));
+    for (int k = 0; k < numTopics; ++k) { // update q(k|w)'s param phi
+      double phiK = logProbs[offset + k] + digammaGamma[k];
+      phi[offset + k] = phiK;
+      phiTotal = LDAUtil.logSum(phiTotal, phiK);
       
       // assertions(word, digammaGamma, phiTotal, k);
     }
-    for (int i = 0; i < state.getNumTopics(); i++) {
-      phi.setQuick(i, phi.getQuick(i) - phiTotal); // log normalize
+    for (int k = 0; k < numTopics; k++) {
+      phi[offset + k] -= phiTotal; // log normalize
     }
-    return phi;
   }
   
-  private static Vector digamma(Vector v) {
-    Vector digammaGamma = new DenseVector(v.size());
-    digammaGamma.assign(v, new DoubleDoubleFunction() {
-      @Override
-      public double apply(double unused, double g) {
-        return digamma(g);
-      }
-    });
-    return digammaGamma;
-  }
-
   /**
    * Approximation to the digamma function, from Radford Neal.
    * 
@@ -243,7 +281,7 @@ public class LDAInference {
    * Ported to Java for Mahout.
    * 
    */
-  private static double digamma(double x) {
+  static double digamma(double x) {
     double r = 0.0;
     
     while (x <= 5) {
@@ -37,6 +37,9 @@ public class LDAMapper extends Mapper<WritableComparable<?>,VectorWritable,IntPa
   
   private LDAState state;
   private LDAInference infer;
+  private double[] logTotals;
+  private final IntPairWritable kw = new IntPairWritable();
+  private final DoubleWritable v = new DoubleWritable();
   
   @Override
   protected void map(WritableComparable<?> key,
@@ -53,19 +56,17 @@ public class LDAMapper extends Mapper<WritableComparable<?>,VectorWritable,IntPa
          + "\tlarger if some storage inefficiency can be tolerated.", e1);
     }
     
-    double[] logTotals = new double[state.getNumTopics()];
     Arrays.fill(logTotals, Double.NEGATIVE_INFINITY);
     
     // Output sufficient statistics for each word. == pseudo-log counts.
-    DoubleWritable v = new DoubleWritable();
     for (Iterator<Vector.Element> iter = wordCounts.iterateNonZero(); iter.hasNext();) {
       Vector.Element e = iter.next();
       int w = e.index();
+      double logCount = Math.log(e.get());
       
       for (int k = 0; k < state.getNumTopics(); ++k) {
-        v.set(doc.phi(k, w) + Math.log(e.get()));
-        
-        IntPairWritable kw = new IntPairWritable(k, w);
+        v.set(doc.phi(k, w) + logCount);
+        kw.set(k, w);
         
         // ouput (topic, word)'s logProb contribution
         context.write(kw, v);
@@ -76,20 +77,21 @@ public class LDAMapper extends Mapper<WritableComparable<?>,VectorWritable,IntPa
     // Output the totals for the statistics. This is to make
     // normalizing a lot easier.
     for (int k = 0; k < state.getNumTopics(); ++k) {
-      IntPairWritable kw = new IntPairWritable(k, LDADriver.TOPIC_SUM_KEY);
+      kw.set(k, LDADriver.TOPIC_SUM_KEY);
       v.set(logTotals[k]);
       assert !Double.isNaN(v.get());
       context.write(kw, v);
     }
-    IntPairWritable llk = new IntPairWritable(LDADriver.LOG_LIKELIHOOD_KEY, LDADriver.LOG_LIKELIHOOD_KEY);
+    kw.set(LDADriver.LOG_LIKELIHOOD_KEY, LDADriver.LOG_LIKELIHOOD_KEY);
     // Output log-likelihoods.
     v.set(doc.getLogLikelihood());
-    context.write(llk, v);
+    context.write(kw, v);
   }
   
   public void configure(LDAState myState) {
     this.state = myState;
     this.infer = new LDAInference(state);
+    this.logTotals = new double[state.getNumTopics()];
   }
   
   public void configure(Configuration job) {
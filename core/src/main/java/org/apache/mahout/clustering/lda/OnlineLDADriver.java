@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.OutputLogFilter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.common.HadoopUtil;
+import org.apache.mahout.common.IntPairWritable;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.commandline.DefaultOptionCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Estimates an LDA model from a corpus of documents, which are SparseVectors of word counts, with online
+ * variational Bayes (see {@link OnlineLDATrainer}). Where {@link LDADriver} needs a pass over the corpus for each
+ * of its many iterations, the model is updated after each mini-batch of documents, so one or a few passes are
+ * usually enough. After each pass, the model is written to output/state-i in the same format as the states of
+ * {@link LDADriver}, so LDAPrintTopics can print its topics.
+ * </p>
+ *
+ * <p>
+ * The sequential method trains a single model in this JVM, inferring the documents of each mini-batch on
+ * several threads. The MapReduce method trains a copy of the model on each split, and averages the copies into
+ * the model of the next pass.
+ * </p>
+ */
+public final class OnlineLDADriver extends AbstractJob {
+
+  private static final String NUM_TOPICS_OPTION = "numTopics";
+  private static final String NUM_WORDS_OPTION = "numWords";
+  private static final String TOPIC_SMOOTHING_OPTION = "topicSmoothing";
+  private static final String TOPIC_WORD_SMOOTHING_OPTION = "topicWordSmoothing";
+  private static final String CORPUS_SIZE_OPTION = "corpusSize";
+  private static final String BATCH_SIZE_OPTION = "batchSize";
+  private static final String TAU0_OPTION = "tau0";
+  private static final String KAPPA_OPTION = "kappa";
+  private static final String NUM_THREADS_OPTION = "numThreads";
+
+  static final String TOPIC_WORD_SMOOTHING_KEY = "org.apache.mahout.clustering.lda.topicWordSmoothing";
+  static final String CORPUS_SIZE_KEY = "org.apache.mahout.clustering.lda.corpusSize";
+  static final String BATCH_SIZE_KEY = "org.apache.mahout.clustering.lda.batchSize";
+  static final String TAU0_KEY = "org.apache.mahout.clustering.lda.tau0";
+  static final String KAPPA_KEY = "org.apache.mahout.clustering.lda.kappa";
+  static final String NUM_UPDATES_KEY = "org.apache.mahout.clustering.lda.numUpdates";
+
+  static final int DECAY_KEY = -3;
+
+  private static final Logger log = LoggerFactory.getLogger(OnlineLDADriver.class);
+
+  private OnlineLDADriver() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new Configuration(), new OnlineLDADriver(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws IOException, ClassNotFoundException, InterruptedException {
+    addInputOption();
+    addOutputOption();
+    addOption(DefaultOptionCreator.overwriteOption().create());
+    addOption(NUM_TOPICS_OPTION, "k", "The total number of topics in the corpus", true);
+    addOption(NUM_WORDS_OPTION,
+              "v",
+              "The total number of words in the corpus (can be approximate, needs to exceed the actual value)",
+              true);
+    addOption(TOPIC_SMOOTHING_OPTION, "a", "Topic smoothing parameter. Default is 1/numTopics.", "-1.0");
+    addOption(TOPIC_WORD_SMOOTHING_OPTION, "e", "Topic-word smoothing parameter. Default is 1/numTopics.", "-1.0");
+    addOption(CORPUS_SIZE_OPTION, "D", "The number of documents in the corpus. Counted if not specified.");
+    addOption(BATCH_SIZE_OPTION, "b", "The number of documents in a mini-batch",
+              String.valueOf(OnlineLDATrainer.DEFAULT_BATCH_SIZE));
+    addOption(TAU0_OPTION, "t0", "Slows down the early updates, at least 1",
+              String.valueOf(OnlineLDATrainer.DEFAULT_TAU0));
+    addOption(KAPPA_OPTION, "kp", "The rate at which old mini-batches are forgotten, in (0.5,1]",
+              String.valueOf(OnlineLDATrainer.DEFAULT_KAPPA));
+    addOption(DefaultOptionCreator.maxIterationsOption().withRequired(false)
+        .withDescription("The number of passes over the corpus. Default is 1.").create());
+    addOption(DefaultOptionCreator.methodOption().create());
+    addOption(NUM_THREADS_OPTION, "nt", "Number of threads inferring documents with the sequential method", "1");
+
+    if (parseArguments(args) == null) {
+      return -1;
+    }
+
+    Path input = getInputPath();
+    Path output = getOutputPath();
+    if (hasOption(DefaultOptionCreator.OVERWRITE_OPTION)) {
+      HadoopUtil.overwriteOutput(output);
+    }
+    int numTopics = Integer.parseInt(getOption(NUM_TOPICS_OPTION));
+    int numWords = Integer.parseInt(getOption(NUM_WORDS_OPTION));
+    double topicSmoothing = Double.parseDouble(getOption(TOPIC_SMOOTHING_OPTION));
+    if (topicSmoothing <= 0) {
+      topicSmoothing = 1.0 / numTopics;
+    }
+    double topicWordSmoothing = Double.parseDouble(getOption(TOPIC_WORD_SMOOTHING_OPTION));
+    if (topicWordSmoothing <= 0) {
+      topicWordSmoothing = 1.0 / numTopics;
+    }
+    long corpusSize = hasOption(CORPUS_SIZE_OPTION) ? Long.parseLong(getOption(CORPUS_SIZE_OPTION)) : -1;
+    int batchSize = Integer.parseInt(getOption(BATCH_SIZE_OPTION));
+    double tau0 = Double.parseDouble(getOption(TAU0_OPTION));
+    double kappa = Double.parseDouble(getOption(KAPPA_OPTION));
+    int numPasses = hasOption(DefaultOptionCreator.MAX_ITERATIONS_OPTION)
+        ? Integer.parseInt(getOption(DefaultOptionCreator.MAX_ITERATIONS_OPTION)) : 1;
+    boolean runSequential =
+        getOption(DefaultOptionCreator.METHOD_OPTION).equalsIgnoreCase(DefaultOptionCreator.SEQUENTIAL_METHOD);
+    int numThreads = Integer.parseInt(getOption(NUM_THREADS_OPTION));
+
+    Configuration conf = getConf() == null ? new Configuration() : getConf();
+    conf.set(LDADriver.NUM_TOPICS_KEY, Integer.toString(numTopics));
+    conf.set(LDADriver.NUM_WORDS_KEY, Integer.toString(numWords));
+    conf.set(LDADriver.TOPIC_SMOOTHING_KEY, Double.toString(topicSmoothing));
+    conf.set(TOPIC_WORD_SMOOTHING_KEY, Double.toString(topicWordSmoothing));
+    conf.setInt(BATCH_SIZE_KEY, batchSize);
+    conf.set(TAU0_KEY, Double.toString(tau0));
+    conf.set(KAPPA_KEY, Double.toString(kappa));
+    run(conf, input, output, corpusSize, numPasses, runSequential, numThreads);
+    return 0;
+  }
+
+  /**
+   * Estimates an online LDA model, writing the model after each pass to output/state-i.
+   *
+   * @param conf
+   *          the configuration, with the number of topics and words, the smoothing parameters, the batch size and
+   *          the learning rate parameters set
+   * @param corpusSize
+   *          the number of documents in the corpus, or a negative number to count them
+   * @param numPasses
+   *          the number of passes over the corpus
+   * @param runSequential
+   *          if true, train in this JVM instead of with MapReduce
+   * @param numThreads
+   *          the number of threads inferring documents with the sequential method
+   * @return the path of the final state
+   */
+  public static Path run(Configuration conf,
+                         Path input,
+                         Path output,
+                         long corpusSize,
+                         int numPasses,
+                         boolean runSequential,
+                         int numThreads) throws IOException, InterruptedException, ClassNotFoundException {
+    if (corpusSize <= 0) {
+      corpusSize = countDocuments(conf, input);
+      log.info("Corpus has {} documents", corpusSize);
+    }
+    conf.setLong(CORPUS_SIZE_KEY, corpusSize);
+    int numTopics = Integer.parseInt(conf.get(LDADriver.NUM_TOPICS_KEY));
+    int numWords = Integer.parseInt(conf.get(LDADriver.NUM_WORDS_KEY));
+    double topicWordSmoothing = Double.parseDouble(conf.get(TOPIC_WORD_SMOOTHING_KEY));
+
+    OnlineLDAModel model = new OnlineLDAModel(numTopics, numWords, topicWordSmoothing, RandomUtils.getRandom());
+    Path stateIn = new Path(output, "state-0");
+    model.write(conf, stateIn, 0.0);
+    if (runSequential) {
+      return runSequential(conf, input, output, model, corpusSize, numPasses, numThreads);
+    }
+    long numUpdates = 0;
+    for (int pass = 1; pass <= numPasses; pass++) {
+      Path stateOut = new Path(output, "state-" + pass);
+      numUpdates = runPass(conf, input, stateIn, stateOut, model, numUpdates);
+      stateIn = stateOut;
+    }
+    return stateIn;
+  }
+
+  private static Path runSequential(Configuration conf,
+                                    Path input,
+                                    Path output,
+                                    OnlineLDAModel model,
+                                    long corpusSize,
+                                    int numPasses,
+                                    int numThreads) throws IOException, InterruptedException {
+    OnlineLDATrainer trainer =
+        new OnlineLDATrainer(model, Double.parseDouble(conf.get(LDADriver.TOPIC_SMOOTHING_KEY)), corpusSize);
+    trainer.setBatchSize(conf.getInt(BATCH_SIZE_KEY, OnlineLDATrainer.DEFAULT_BATCH_SIZE));
+    trainer.setLearningRate(Double.parseDouble(conf.get(TAU0_KEY)), Double.parseDouble(conf.get(KAPPA_KEY)));
+    trainer.setNumThreads(numThreads);
+    Path stateOut = new Path(output, "state-0");
+    try {
+      for (int pass = 1; pass <= numPasses; pass++) {
+        double oldLL = trainer.getLogLikelihood();
+        double oldNumWords = trainer.getNumWordsSeen();
+        trainer.train(conf, input);
+        double ll = trainer.getLogLikelihood() - oldLL;
+        log.info("Pass {} finished. Log Likelihood: {} Perplexity: {}",
+                 new Object[] {pass, ll, Math.exp(-ll / (trainer.getNumWordsSeen() - oldNumWords))});
+        stateOut = new Path(output, "state-" + pass);
+        model.write(conf, stateOut, ll);
+      }
+    } finally {
+      trainer.close();
+    }
+    return stateOut;
+  }
+
+  /**
+   * Runs a pass with MapReduce, and merges the changes of the mappers' copies into the model.
+   *
+   * @return the average number of updates per mapper so far
+   */
+  private static long runPass(Configuration conf,
+                              Path input,
+                              Path stateIn,
+                              Path stateOut,
+                              OnlineLDAModel model,
+                              long numUpdates) throws IOException, InterruptedException, ClassNotFoundException {
+    conf.set(LDADriver.STATE_IN_KEY, stateIn.toString());
+    conf.setLong(NUM_UPDATES_KEY, numUpdates);
+
+    Path updates = new Path(stateOut.getParent(), "updates-" + stateOut.getName());
+    Job job = new Job(conf, "Online LDA Driver running a pass over stateIn: " + stateIn);
+    job.setOutputKeyClass(IntPairWritable.class);
+    job.setOutputValueClass(DoubleWritable.class);
+    FileInputFormat.addInputPaths(job, input.toString());
+    FileOutputFormat.setOutputPath(job, updates);
+
+    job.setMapperClass(OnlineLDAMapper.class);
+    job.setCombinerClass(OnlineLDAReducer.class);
+    job.setReducerClass(OnlineLDAReducer.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setJarByClass(OnlineLDADriver.class);
+
+    if (!job.waitForCompletion(true)) {
+      throw new InterruptedException("Online LDA pass failed processing " + stateIn);
+    }
+    long numMappers = job.getCounters().findCounter(OnlineLDAMapper.Count.MAPPERS).getValue();
+    long numBatches = job.getCounters().findCounter(OnlineLDAMapper.Count.MINI_BATCHES).getValue();
+    long numWords = job.getCounters().findCounter(OnlineLDAMapper.Count.WORDS).getValue();
+
+    // the next model is the average of the mappers' copies
+    double decay = 0.0;
+    double ll = 0.0;
+    Map<Integer,double[]> increments = new HashMap<Integer,double[]>();
+    FileSystem fs = updates.getFileSystem(conf);
+    IntPairWritable key = new IntPairWritable();
+    DoubleWritable value = new DoubleWritable();
+    for (FileStatus status : fs.globStatus(new Path(updates, "part-*"))) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+      try {
+        while (reader.next(key, value)) {
+          int topic = key.getFirst();
+          int word = key.getSecond();
+          if (topic == DECAY_KEY) {
+            decay = value.get();
+          } else if (topic == LDADriver.LOG_LIKELIHOOD_KEY) {
+            ll = value.get();
+          } else {
+            double[] wordIncrements = increments.get(word);
+            if (wordIncrements == null) {
+              wordIncrements = new double[model.getNumTopics()];
+              increments.put(word, wordIncrements);
+            }
+            wordIncrements[topic] = value.get() / numMappers;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    model.scale(decay / numMappers);
+    for (Map.Entry<Integer,double[]> entry : increments.entrySet()) {
+      model.add(entry.getKey(), entry.getValue());
+    }
+    model.write(conf, stateOut, ll);
+    log.info("Pass over {} finished with {} mappers. Log Likelihood: {} Perplexity: {}",
+             new Object[] {stateIn, numMappers, ll, Math.exp(-ll / numWords)});
+    return numUpdates + numBatches / numMappers;
+  }
+
+  private static long countDocuments(Configuration conf, Path input) throws IOException {
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    long count = 0;
+    for (FileStatus s : fs.listStatus(input, new OutputLogFilter())) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+      try {
+        Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+        while (reader.next(key)) {
+          count++;
+        }
+      } catch (InstantiationException ie) {
+        throw new IllegalStateException(ie);
+      } catch (IllegalAccessException iae) {
+        throw new IllegalStateException(iae);
+      } finally {
+        reader.close();
+      }
+    }
+    return count;
+  }
+
+}
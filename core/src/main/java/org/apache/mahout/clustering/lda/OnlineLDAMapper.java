@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.common.IntPairWritable;
+import org.apache.mahout.math.VectorWritable;
+
+/**
+ * Trains a copy of the current {@link OnlineLDAModel} on the documents of its split, with online variational
+ * Bayes, and outputs how its copy changed: the decay of lambda, and the increments of lambda(k,w) for each word
+ * w of the split. {@link OnlineLDADriver} averages the changes of all copies into the next model.
+ */
+public class OnlineLDAMapper extends Mapper<WritableComparable<?>,VectorWritable,IntPairWritable,DoubleWritable> {
+
+  public enum Count {
+    MAPPERS,
+    MINI_BATCHES,
+    DOCUMENTS,
+    WORDS
+  }
+
+  private OnlineLDATrainer trainer;
+  private long numDocuments;
+
+  @Override
+  protected void setup(Context context) throws IOException {
+    configure(context.getConfiguration());
+  }
+
+  void configure(Configuration conf) throws IOException {
+    int numTopics = Integer.parseInt(conf.get(LDADriver.NUM_TOPICS_KEY));
+    int numWords = Integer.parseInt(conf.get(LDADriver.NUM_WORDS_KEY));
+    double topicSmoothing = Double.parseDouble(conf.get(LDADriver.TOPIC_SMOOTHING_KEY));
+    double topicWordSmoothing = Double.parseDouble(conf.get(OnlineLDADriver.TOPIC_WORD_SMOOTHING_KEY));
+    OnlineLDAModel model = OnlineLDAModel.read(conf, new Path(conf.get(LDADriver.STATE_IN_KEY)),
+                                               numTopics, numWords, topicWordSmoothing);
+    model.mark();
+    trainer = new OnlineLDATrainer(model, topicSmoothing, conf.getLong(OnlineLDADriver.CORPUS_SIZE_KEY, 1));
+    trainer.setBatchSize(conf.getInt(OnlineLDADriver.BATCH_SIZE_KEY, OnlineLDATrainer.DEFAULT_BATCH_SIZE));
+    trainer.setLearningRate(Double.parseDouble(conf.get(OnlineLDADriver.TAU0_KEY)),
+                            Double.parseDouble(conf.get(OnlineLDADriver.KAPPA_KEY)));
+    trainer.setNumUpdates(conf.getLong(OnlineLDADriver.NUM_UPDATES_KEY, 0));
+  }
+
+  @Override
+  protected void map(WritableComparable<?> key, VectorWritable document, Context context)
+    throws IOException, InterruptedException {
+    trainer.train(document.get());
+    numDocuments++;
+  }
+
+  @Override
+  protected void cleanup(Context context) throws IOException, InterruptedException {
+    long numUpdates = trainer.getNumUpdates();
+    trainer.flush();
+    OnlineLDAModel model = trainer.getModel();
+
+    IntPairWritable kw = new IntPairWritable();
+    DoubleWritable v = new DoubleWritable();
+    for (Map.Entry<Integer,double[]> entry : model.getIncrementsSinceMark().entrySet()) {
+      double[] increments = entry.getValue();
+      for (int k = 0; k < increments.length; k++) {
+        kw.set(k, entry.getKey());
+        v.set(increments[k]);
+        context.write(kw, v);
+      }
+    }
+    kw.set(OnlineLDADriver.DECAY_KEY, OnlineLDADriver.DECAY_KEY);
+    v.set(model.getDecaySinceMark());
+    context.write(kw, v);
+    kw.set(LDADriver.LOG_LIKELIHOOD_KEY, LDADriver.LOG_LIKELIHOOD_KEY);
+    v.set(trainer.getLogLikelihood());
+    context.write(kw, v);
+
+    context.getCounter(Count.MAPPERS).increment(1);
+    context.getCounter(Count.MINI_BATCHES).increment(trainer.getNumUpdates() - numUpdates);
+    context.getCounter(Count.DOCUMENTS).increment(numDocuments);
+    context.getCounter(Count.WORDS).increment(Math.round(trainer.getNumWordsSeen()));
+  }
+
+}
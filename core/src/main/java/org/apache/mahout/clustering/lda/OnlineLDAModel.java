@@ -0,0 +1,328 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.mahout.common.IntPairWritable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * The variational parameters lambda(k,w) of the topic-word distributions of an online LDA model, see
+ * Hoffman, Blei and Bach: "Online Learning for Latent Dirichlet Allocation". An update decays all of lambda
+ * towards the prior and adds the statistics of a mini-batch. To make an update cost as much as the mini-batch
+ * and not as much as the vocabulary, lambda(k,w) is kept as eta + scale * mu(k,w), so the decay only changes
+ * the scale.
+ * </p>
+ *
+ * <p>
+ * The model is written in the same format as the states of {@link LDADriver}, with log lambda(k,w) as the log
+ * pseudo count of word w in topic k, so it can be read by {@link LDADriver#createState(Configuration)} and by
+ * LDAPrintTopics.
+ * </p>
+ */
+public class OnlineLDAModel {
+
+  /** rescale mu before the scale underflows */
+  private static final double MIN_SCALE = 1.0E-100;
+
+  private final int numTopics;
+  private final int numWords;
+  private final double topicWordSmoothing; // eta
+  private final double[][] mu; // (lambda(k,w) - eta) / scale at [k][w]
+  private final double[] muSums; // \sum_w mu(k,w)
+  private final double[] digammaLambdaSums; // digamma(\sum_w lambda(k,w))
+  private double scale;
+
+  private Map<Integer,double[]> marked; // \sum mu(.,w) added since mark(), for each word w
+  private double decaySinceMark;
+
+  /**
+   * Creates a model whose pseudo counts are initialized with a small amount of random noise.
+   */
+  public OnlineLDAModel(int numTopics, int numWords, double topicWordSmoothing, Random random) {
+    this(numTopics, numWords, topicWordSmoothing);
+    for (int k = 0; k < numTopics; k++) {
+      for (int w = 0; w < numWords; w++) {
+        mu[k][w] = random.nextDouble() + 1.0E-8;
+      }
+    }
+    computeSums();
+  }
+
+  private OnlineLDAModel(int numTopics, int numWords, double topicWordSmoothing) {
+    Preconditions.checkArgument(numTopics > 0, "numTopics must be positive");
+    Preconditions.checkArgument(numWords > 0, "numWords must be positive");
+    Preconditions.checkArgument(topicWordSmoothing > 0, "topicWordSmoothing must be positive");
+    this.numTopics = numTopics;
+    this.numWords = numWords;
+    this.topicWordSmoothing = topicWordSmoothing;
+    mu = new double[numTopics][numWords];
+    muSums = new double[numTopics];
+    digammaLambdaSums = new double[numTopics];
+    scale = 1.0;
+  }
+
+  public int getNumTopics() {
+    return numTopics;
+  }
+
+  public int getNumWords() {
+    return numWords;
+  }
+
+  public double getTopicWordSmoothing() {
+    return topicWordSmoothing;
+  }
+
+  /**
+   * @return lambda(k,w)
+   */
+  public double getLambda(int topic, int word) {
+    return topicWordSmoothing + scale * mu[topic][word];
+  }
+
+  /**
+   * @return exp(E[log p(w|k)]) under the variational distribution
+   */
+  public double expectedProbWordGivenTopic(int topic, int word) {
+    return Math.exp(LDAInference.digamma(getLambda(topic, word)) - digammaLambdaSums[topic]);
+  }
+
+  /**
+   * @return the mean p(w|k) under the variational distribution
+   */
+  public double probWordGivenTopic(int topic, int word) {
+    return getLambda(topic, word) / lambdaSum(topic);
+  }
+
+  private double lambdaSum(int topic) {
+    return numWords * topicWordSmoothing + scale * muSums[topic];
+  }
+
+  /**
+   * Moves lambda towards eta + weight * statistics: lambda := (1 - rho) * lambda + rho * (eta + weight *
+   * statistics).
+   *
+   * @param statistics the expected word counts of each topic of a mini-batch, for the words in the mini-batch
+   * @param rho the step size, in (0,1]
+   * @param weight the number of documents in the corpus divided by the number of documents in the mini-batch
+   */
+  public void update(Map<Integer,double[]> statistics, double rho, double weight) {
+    Preconditions.checkArgument(rho > 0 && rho <= 1, "rho must be in (0,1]");
+    scale(1.0 - rho);
+    for (Map.Entry<Integer,double[]> entry : statistics.entrySet()) {
+      int w = entry.getKey();
+      double[] counts = entry.getValue();
+      for (int k = 0; k < numTopics; k++) {
+        add(k, w, rho * weight * counts[k]);
+      }
+    }
+    updateSums();
+  }
+
+  /**
+   * Multiplies lambda - eta by the given factor. A factor of 0 resets lambda to eta, and the decay since the mark
+   * to 0, so that the model at the time of the mark is forgotten when the changes are merged into another copy.
+   */
+  public void scale(double factor) {
+    Preconditions.checkArgument(factor >= 0, "factor must not be negative");
+    if (factor == 0.0) {
+      // forget everything
+      for (double[] topicMu : mu) {
+        Arrays.fill(topicMu, 0.0);
+      }
+      Arrays.fill(muSums, 0.0);
+      scale = 1.0;
+      decaySinceMark = 0.0;
+      if (marked != null) {
+        marked.clear();
+      }
+      updateSums();
+      return;
+    }
+    scale *= factor;
+    decaySinceMark *= factor;
+    if (scale < MIN_SCALE) {
+      // recompute the sums as well, which have accumulated rounding errors by now
+      for (int k = 0; k < numTopics; k++) {
+        double sum = 0.0;
+        for (int w = 0; w < numWords; w++) {
+          mu[k][w] *= scale;
+          sum += mu[k][w];
+        }
+        muSums[k] = sum;
+      }
+      if (marked != null) {
+        for (double[] wordMu : marked.values()) {
+          for (int k = 0; k < numTopics; k++) {
+            wordMu[k] *= scale;
+          }
+        }
+      }
+      scale = 1.0;
+    }
+    updateSums();
+  }
+
+  /**
+   * Adds the given amount to lambda(k,w). {@link #updateSums()} needs to be called after the last addition.
+   */
+  private void add(int topic, int word, double amount) {
+    double added = amount / scale;
+    mu[topic][word] += added;
+    muSums[topic] += added;
+    if (marked != null) {
+      double[] wordMu = marked.get(word);
+      if (wordMu == null) {
+        wordMu = new double[numTopics];
+        marked.put(word, wordMu);
+      }
+      wordMu[topic] += added;
+    }
+  }
+
+  /**
+   * Adds the given amounts to lambda(k,w), for each topic k.
+   */
+  public void add(int word, double[] amounts) {
+    for (int k = 0; k < numTopics; k++) {
+      add(k, word, amounts[k]);
+    }
+    updateSums();
+  }
+
+  private void computeSums() {
+    for (int k = 0; k < numTopics; k++) {
+      double sum = 0.0;
+      for (double m : mu[k]) {
+        sum += m;
+      }
+      muSums[k] = sum;
+    }
+    updateSums();
+  }
+
+  private void updateSums() {
+    for (int k = 0; k < numTopics; k++) {
+      digammaLambdaSums[k] = LDAInference.digamma(lambdaSum(k));
+    }
+  }
+
+  /**
+   * Starts tracking the changes of the model, so that they can be merged into another copy of it: after any
+   * number of updates, lambda = eta + {@link #getDecaySinceMark()} * (lambda' - eta) +
+   * {@link #getIncrementsSinceMark()}, where lambda' is the model at the time of the mark.
+   */
+  public void mark() {
+    marked = new HashMap<Integer,double[]>();
+    decaySinceMark = 1.0;
+  }
+
+  public double getDecaySinceMark() {
+    return decaySinceMark;
+  }
+
+  /**
+   * @return the amounts added to lambda(.,w) since {@link #mark()}, decayed by the later updates, for each word
+   *         w which has been updated
+   */
+  public Map<Integer,double[]> getIncrementsSinceMark() {
+    Map<Integer,double[]> increments = new HashMap<Integer,double[]>();
+    for (Map.Entry<Integer,double[]> entry : marked.entrySet()) {
+      double[] increment = entry.getValue().clone();
+      for (int k = 0; k < numTopics; k++) {
+        increment[k] *= scale;
+      }
+      increments.put(entry.getKey(), increment);
+    }
+    return increments;
+  }
+
+  /**
+   * Writes the model as an LDA state: log lambda(k,w) for each topic and word, the log of the sum over the words
+   * for each topic, and the given log likelihood.
+   */
+  public void write(Configuration conf, Path statePath, double logLikelihood) throws IOException {
+    FileSystem fs = statePath.getFileSystem(conf);
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, new Path(statePath, "part-r-00000"),
+                                                         IntPairWritable.class, DoubleWritable.class);
+    try {
+      IntPairWritable kw = new IntPairWritable();
+      DoubleWritable v = new DoubleWritable();
+      for (int k = 0; k < numTopics; k++) {
+        for (int w = 0; w < numWords; w++) {
+          kw.set(k, w);
+          v.set(Math.log(getLambda(k, w)));
+          writer.append(kw, v);
+        }
+        kw.set(k, LDADriver.TOPIC_SUM_KEY);
+        v.set(Math.log(lambdaSum(k)));
+        writer.append(kw, v);
+      }
+      kw.set(LDADriver.LOG_LIKELIHOOD_KEY, LDADriver.LOG_LIKELIHOOD_KEY);
+      v.set(logLikelihood);
+      writer.append(kw, v);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Reads a model written by {@link #write(Configuration, Path, double)}.
+   */
+  public static OnlineLDAModel read(Configuration conf,
+                                    Path statePath,
+                                    int numTopics,
+                                    int numWords,
+                                    double topicWordSmoothing) throws IOException {
+    OnlineLDAModel model = new OnlineLDAModel(numTopics, numWords, topicWordSmoothing);
+    FileSystem fs = statePath.getFileSystem(conf);
+    IntPairWritable key = new IntPairWritable();
+    DoubleWritable value = new DoubleWritable();
+    for (FileStatus status : fs.globStatus(new Path(statePath, "part-*"))) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+      try {
+        while (reader.next(key, value)) {
+          int topic = key.getFirst();
+          int word = key.getSecond();
+          if (topic >= 0 && word >= 0) {
+            model.mu[topic][word] = Math.max(0.0, Math.exp(value.get()) - topicWordSmoothing);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    model.computeSums();
+    return model;
+  }
+
+}
@@ -0,0 +1,428 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.OutputLogFilter;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Trains an {@link OnlineLDAModel} with online variational Bayes: documents are collected into mini-batches, the
+ * topic proportions of each document of a mini-batch are inferred with the current model, and the model is then
+ * moved towards the expected word counts of the mini-batch, by a step size of (tau0 + t)^-kappa for the t-th
+ * mini-batch. A single pass over the corpus usually gets close to the model which batch LDA converges to.
+ * </p>
+ *
+ * <p>
+ * The documents of a mini-batch can be inferred on several threads, each of which gets a contiguous part of the
+ * mini-batch. Their statistics are added up in the order of the parts, so the model does not depend on thread
+ * scheduling. After each mini-batch, an estimate of the per-word perplexity of the mini-batch under the model
+ * before the update is logged; it uses the topic proportions inferred for the documents, so it is optimistic
+ * compared to the perplexity of held out documents, but shows the progress of the training.
+ * </p>
+ */
+public class OnlineLDATrainer {
+
+  private static final Logger log = LoggerFactory.getLogger(OnlineLDATrainer.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 256;
+  public static final double DEFAULT_TAU0 = 1024.0;
+  public static final double DEFAULT_KAPPA = 0.7;
+
+  private static final int MAX_ITER = 100;
+  private static final double GAMMA_CONVERGENCE = 1.0E-3;
+
+  private final OnlineLDAModel model;
+  private final double topicSmoothing;
+  private final long corpusSize;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private double tau0 = DEFAULT_TAU0;
+  private double kappa = DEFAULT_KAPPA;
+  private int numThreads = 1;
+
+  private ExecutorService executor;
+  private DocumentInference[] inferences;
+  private final List<Vector> batch = new ArrayList<Vector>();
+  private long numUpdates;
+  private double logLikelihood;
+  private double numWordsSeen;
+
+  /**
+   * @param model the model to train
+   * @param topicSmoothing the prior alpha of the topic proportions of a document
+   * @param corpusSize the number of documents in the corpus, which the statistics of a mini-batch are scaled to
+   */
+  public OnlineLDATrainer(OnlineLDAModel model, double topicSmoothing, long corpusSize) {
+    Preconditions.checkArgument(topicSmoothing > 0, "topicSmoothing must be positive");
+    Preconditions.checkArgument(corpusSize > 0, "corpusSize must be positive");
+    this.model = model;
+    this.topicSmoothing = topicSmoothing;
+    this.corpusSize = corpusSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Sets the step size (tau0 + t)^-kappa of the t-th update.
+   *
+   * @param tau0 at least 1, slows down the early updates
+   * @param kappa in (0.5,1], the rate at which old mini-batches are forgotten
+   */
+  public void setLearningRate(double tau0, double kappa) {
+    Preconditions.checkArgument(tau0 >= 1.0, "tau0 must be at least 1");
+    Preconditions.checkArgument(kappa > 0.5 && kappa <= 1.0, "kappa must be in (0.5,1]");
+    this.tau0 = tau0;
+    this.kappa = kappa;
+  }
+
+  public void setNumThreads(int numThreads) {
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Sets the number of updates made so far, which determines the next step size.
+   */
+  public void setNumUpdates(long numUpdates) {
+    this.numUpdates = numUpdates;
+  }
+
+  public long getNumUpdates() {
+    return numUpdates;
+  }
+
+  public OnlineLDAModel getModel() {
+    return model;
+  }
+
+  /**
+   * @return the log likelihood estimate of all documents trained so far
+   */
+  public double getLogLikelihood() {
+    return logLikelihood;
+  }
+
+  /**
+   * @return the number of words of all documents trained so far
+   */
+  public double getNumWordsSeen() {
+    return numWordsSeen;
+  }
+
+  /**
+   * @return the per-word perplexity estimate of all documents trained so far
+   */
+  public double getPerplexity() {
+    return Math.exp(-logLikelihood / numWordsSeen);
+  }
+
+  /**
+   * Adds a document to the current mini-batch, and updates the model when the mini-batch is full.
+   */
+  public void train(Vector document) throws InterruptedException {
+    batch.add(document);
+    if (batch.size() == batchSize) {
+      update();
+    }
+  }
+
+  /**
+   * Trains on all documents in the SequenceFiles of VectorWritables under the input path, including the last,
+   * partial mini-batch.
+   */
+  public void train(Configuration conf, Path input) throws IOException, InterruptedException {
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    for (FileStatus s : fs.listStatus(input, new OutputLogFilter())) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+      try {
+        Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+        VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+        while (reader.next(key, vw)) {
+          train(vw.get());
+          vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+        }
+      } catch (InstantiationException ie) {
+        throw new IllegalStateException(ie);
+      } catch (IllegalAccessException iae) {
+        throw new IllegalStateException(iae);
+      } finally {
+        reader.close();
+      }
+    }
+    flush();
+  }
+
+  /**
+   * Updates the model with the current mini-batch, even if it is not full.
+   */
+  public void flush() throws InterruptedException {
+    if (!batch.isEmpty()) {
+      update();
+    }
+  }
+
+  /**
+   * Stops the threads.
+   */
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private void update() throws InterruptedException {
+    int numParts = Math.min(numThreads, batch.size());
+    if (inferences == null || inferences.length < numParts) {
+      inferences = new DocumentInference[numThreads];
+      for (int i = 0; i < numThreads; i++) {
+        inferences[i] = new DocumentInference();
+      }
+    }
+
+    BatchStatistics statistics;
+    if (numParts == 1) {
+      statistics = inferences[0].infer(batch);
+    } else {
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(numThreads);
+      }
+      List<Future<BatchStatistics>> parts = new ArrayList<Future<BatchStatistics>>(numParts);
+      for (int i = 0; i < numParts; i++) {
+        final DocumentInference inference = inferences[i];
+        final List<Vector> part = batch.subList(batch.size() * i / numParts, batch.size() * (i + 1) / numParts);
+        parts.add(executor.submit(new Callable<BatchStatistics>() {
+          @Override
+          public BatchStatistics call() {
+            return inference.infer(part);
+          }
+        }));
+      }
+      statistics = get(parts.get(0));
+      for (int i = 1; i < numParts; i++) {
+        statistics.add(get(parts.get(i)));
+      }
+    }
+
+    double rho = Math.pow(tau0 + numUpdates, -kappa);
+    model.update(statistics.wordCounts, rho, (double) corpusSize / batch.size());
+    numUpdates++;
+    logLikelihood += statistics.logLikelihood;
+    numWordsSeen += statistics.numWords;
+    log.info("Mini-batch {}: {} documents, step size {}, perplexity {}",
+             new Object[] {numUpdates, batch.size(), rho, Math.exp(-statistics.logLikelihood / statistics.numWords)});
+    batch.clear();
+  }
+
+  private static <T> T get(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * The expected word counts of each topic of some documents, their log likelihood and their number of words.
+   */
+  private static final class BatchStatistics {
+
+    private final Map<Integer,double[]> wordCounts = new HashMap<Integer,double[]>();
+    private double logLikelihood;
+    private double numWords;
+
+    void add(BatchStatistics other) {
+      for (Map.Entry<Integer,double[]> entry : other.wordCounts.entrySet()) {
+        double[] counts = wordCounts.get(entry.getKey());
+        if (counts == null) {
+          wordCounts.put(entry.getKey(), entry.getValue());
+        } else {
+          double[] otherCounts = entry.getValue();
+          for (int k = 0; k < counts.length; k++) {
+            counts[k] += otherCounts[k];
+          }
+        }
+      }
+      logLikelihood += other.logLikelihood;
+      numWords += other.numWords;
+    }
+  }
+
+  /**
+   * The E-step for the documents of a mini-batch. The working memory is proportional to the number of distinct
+   * words of a document times the number of topics, and reused for the following documents.
+   */
+  private final class DocumentInference {
+
+    private final int numTopics = model.getNumTopics();
+    private int[] words = new int[0];
+    private double[] counts = new double[0];
+    private double[] expElogBeta = new double[0]; // exp(E[log p(words[i]|k)]) at i * numTopics + k
+    private double[] phiNorm = new double[0];
+    private final double[] gamma = new double[numTopics];
+    private final double[] lastGamma = new double[numTopics];
+    private final double[] expElogTheta = new double[numTopics];
+
+    BatchStatistics infer(Iterable<Vector> documents) {
+      BatchStatistics statistics = new BatchStatistics();
+      for (Vector document : documents) {
+        infer(document, statistics);
+      }
+      return statistics;
+    }
+
+    private void infer(Vector document, BatchStatistics statistics) {
+      int numWords = collectWords(document);
+      double docTotal = 0.0;
+      for (int i = 0; i < numWords; i++) {
+        docTotal += counts[i];
+      }
+
+      Arrays.fill(gamma, topicSmoothing + docTotal / numTopics);
+      expElogTheta();
+      phiNorm(numWords);
+      for (int iteration = 0; iteration < MAX_ITER; iteration++) {
+        System.arraycopy(gamma, 0, lastGamma, 0, numTopics);
+        Arrays.fill(gamma, 0.0);
+        for (int i = 0; i < numWords; i++) {
+          double c = counts[i] / phiNorm[i];
+          int offset = i * numTopics;
+          for (int k = 0; k < numTopics; k++) {
+            gamma[k] += c * expElogBeta[offset + k];
+          }
+        }
+        double change = 0.0;
+        for (int k = 0; k < numTopics; k++) {
+          gamma[k] = topicSmoothing + expElogTheta[k] * gamma[k];
+          change += Math.abs(gamma[k] - lastGamma[k]);
+        }
+        expElogTheta();
+        phiNorm(numWords);
+        if (change / numTopics < GAMMA_CONVERGENCE) {
+          break;
+        }
+      }
+
+      // expected counts: n(w) * q(k|w), with q(k|w) proportional to exp(E[log theta(k)] + E[log p(w|k)])
+      for (int i = 0; i < numWords; i++) {
+        double[] wordCounts = statistics.wordCounts.get(words[i]);
+        if (wordCounts == null) {
+          wordCounts = new double[numTopics];
+          statistics.wordCounts.put(words[i], wordCounts);
+        }
+        double c = counts[i] / phiNorm[i];
+        int offset = i * numTopics;
+        for (int k = 0; k < numTopics; k++) {
+          wordCounts[k] += c * expElogTheta[k] * expElogBeta[offset + k];
+        }
+      }
+
+      // log p(w|doc) = log \sum_k p(k|doc) p(w|k), with the means of theta and beta
+      double gammaSum = 0.0;
+      for (int k = 0; k < numTopics; k++) {
+        gammaSum += gamma[k];
+      }
+      for (int i = 0; i < numWords; i++) {
+        double p = 0.0;
+        for (int k = 0; k < numTopics; k++) {
+          p += gamma[k] * model.probWordGivenTopic(k, words[i]);
+        }
+        statistics.logLikelihood += counts[i] * Math.log(p / gammaSum);
+      }
+      statistics.numWords += docTotal;
+    }
+
+    private int collectWords(Vector document) {
+      int numWords = 0;
+      for (Iterator<Vector.Element> iter = document.iterateNonZero(); iter.hasNext();) {
+        Vector.Element e = iter.next();
+        if (numWords == words.length) {
+          int capacity = Math.max(16, 2 * words.length);
+          words = Arrays.copyOf(words, capacity);
+          counts = Arrays.copyOf(counts, capacity);
+          expElogBeta = new double[capacity * numTopics];
+          phiNorm = new double[capacity];
+        }
+        words[numWords] = e.index();
+        counts[numWords] = e.get();
+        numWords++;
+      }
+      for (int i = 0; i < numWords; i++) {
+        int offset = i * numTopics;
+        for (int k = 0; k < numTopics; k++) {
+          expElogBeta[offset + k] = model.expectedProbWordGivenTopic(k, words[i]);
+        }
+      }
+      return numWords;
+    }
+
+    private void expElogTheta() {
+      double gammaSum = 0.0;
+      for (int k = 0; k < numTopics; k++) {
+        gammaSum += gamma[k];
+      }
+      double digammaGammaSum = LDAInference.digamma(gammaSum);
+      for (int k = 0; k < numTopics; k++) {
+        expElogTheta[k] = Math.exp(LDAInference.digamma(gamma[k]) - digammaGammaSum);
+      }
+    }
+
+    private void phiNorm(int numWords) {
+      for (int i = 0; i < numWords; i++) {
+        int offset = i * numTopics;
+        double norm = 1.0E-100;
+        for (int k = 0; k < numTopics; k++) {
+          norm += expElogTheta[k] * expElogBeta[offset + k];
+        }
+        phiNorm[i] = norm;
+      }
+    }
+  }
+
+}
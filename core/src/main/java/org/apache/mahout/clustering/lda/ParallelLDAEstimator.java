@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.OutputLogFilter;
+import org.apache.mahout.common.IntPairWritable;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Runs an LDA iteration over a corpus in SequenceFiles of VectorWritables in a single JVM, without MapReduce.
+ * The documents are streamed in chunks, and the documents of each chunk are inferred on a pool of threads. A
+ * chunk log sums the sufficient statistics of its documents on its own; the reading thread then merges them in
+ * the order in which the chunks were read, so that the result does not depend on thread scheduling. Only a few
+ * chunks per thread are held in memory at any time.
+ * </p>
+ *
+ * <p>
+ * The new state is written in the same format as {@link LDAReducer} writes it, so it can be read by
+ * {@link LDADriver#createState(Configuration)} and by the tools which read the output of {@link LDADriver}.
+ * </p>
+ */
+public final class ParallelLDAEstimator {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private final int numThreads;
+  private final int chunkSize;
+
+  public ParallelLDAEstimator(int numThreads) {
+    this(numThreads, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param numThreads number of threads which infer documents
+   * @param chunkSize number of documents inferred at a time by one thread
+   */
+  public ParallelLDAEstimator(int numThreads, int chunkSize) {
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    Preconditions.checkArgument(chunkSize >= 1, "chunkSize must be at least 1");
+    this.numThreads = numThreads;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Infers the topics of all documents under the input path with the given state, and writes the sufficient
+   * statistics for the next state to stateOut.
+   *
+   * @return the log likelihood of the corpus
+   */
+  public double runIteration(Configuration conf, Path input, LDAState state, Path stateOut)
+    throws IOException, InterruptedException {
+    Estimation estimation = new Estimation(state);
+    try {
+      FileSystem fs = FileSystem.get(input.toUri(), conf);
+      for (FileStatus s : fs.listStatus(input, new OutputLogFilter())) {
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, s.getPath(), conf);
+        try {
+          Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+          VectorWritable vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+          while (reader.next(key, vw)) {
+            estimation.add(vw.get());
+            vw = reader.getValueClass().asSubclass(VectorWritable.class).newInstance();
+          }
+        } catch (InstantiationException ie) {
+          throw new IllegalStateException(ie);
+        } catch (IllegalAccessException iae) {
+          throw new IllegalStateException(iae);
+        } finally {
+          reader.close();
+        }
+      }
+      estimation.finish();
+    } finally {
+      estimation.shutdown();
+    }
+    estimation.write(conf, stateOut);
+    return estimation.logLikelihood;
+  }
+
+  /**
+   * Infers the topics of the given documents with the given state, and writes the sufficient statistics for the
+   * next state to stateOut.
+   *
+   * @return the log likelihood of the documents
+   */
+  public double runIteration(Configuration conf, Iterable<Vector> documents, LDAState state, Path stateOut)
+    throws IOException, InterruptedException {
+    Estimation estimation = new Estimation(state);
+    try {
+      for (Vector document : documents) {
+        estimation.add(document);
+      }
+      estimation.finish();
+    } finally {
+      estimation.shutdown();
+    }
+    estimation.write(conf, stateOut);
+    return estimation.logLikelihood;
+  }
+
+  /**
+   * The statistics of a chunk of documents: log \sum p(w|t) for each word w which occurs in the chunk.
+   */
+  private static final class ChunkStatistics {
+    private final Map<Integer,double[]> logCounts = new HashMap<Integer,double[]>();
+    private double logLikelihood;
+  }
+
+  /**
+   * Hands out chunks of documents to the threads, and merges their statistics in chunk order.
+   */
+  private final class Estimation {
+
+    private final LDAState state;
+    private final int numTopics;
+    private final double[][] logCounts; // log \sum p(w|t) at [t][w], over all documents
+    private double logLikelihood;
+    private final ExecutorService executor;
+    private final LinkedList<Future<ChunkStatistics>> pending;
+    private List<Vector> chunk;
+
+    private Estimation(LDAState state) {
+      this.state = state;
+      numTopics = state.getNumTopics();
+      logCounts = new double[numTopics][state.getNumWords()];
+      for (double[] topicLogCounts : logCounts) {
+        Arrays.fill(topicLogCounts, Double.NEGATIVE_INFINITY);
+      }
+      executor = Executors.newFixedThreadPool(numThreads);
+      pending = new LinkedList<Future<ChunkStatistics>>();
+      chunk = new ArrayList<Vector>(chunkSize);
+    }
+
+    void add(Vector document) throws InterruptedException {
+      chunk.add(document);
+      if (chunk.size() == chunkSize) {
+        submitChunk();
+        // bound the number of chunks in memory
+        while (pending.size() > 2 * numThreads) {
+          mergeOldest();
+        }
+      }
+    }
+
+    void finish() throws InterruptedException {
+      if (!chunk.isEmpty()) {
+        submitChunk();
+      }
+      while (!pending.isEmpty()) {
+        mergeOldest();
+      }
+    }
+
+    void shutdown() {
+      executor.shutdownNow();
+    }
+
+    private void submitChunk() {
+      final List<Vector> documents = chunk;
+      pending.add(executor.submit(new Callable<ChunkStatistics>() {
+        @Override
+        public ChunkStatistics call() {
+          return infer(documents);
+        }
+      }));
+      chunk = new ArrayList<Vector>(chunkSize);
+    }
+
+    private void mergeOldest() throws InterruptedException {
+      ChunkStatistics statistics;
+      try {
+        statistics = pending.removeFirst().get();
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+      for (Map.Entry<Integer,double[]> entry : statistics.logCounts.entrySet()) {
+        int w = entry.getKey();
+        double[] wordLogCounts = entry.getValue();
+        for (int k = 0; k < numTopics; k++) {
+          logCounts[k][w] = LDAUtil.logSum(logCounts[k][w], wordLogCounts[k]);
+        }
+      }
+      logLikelihood += statistics.logLikelihood;
+    }
+
+    private ChunkStatistics infer(Iterable<Vector> documents) {
+      LDAInference inference = new LDAInference(state);
+      ChunkStatistics statistics = new ChunkStatistics();
+      for (Vector wordCounts : documents) {
+        LDAInference.InferredDocument doc = inference.infer(wordCounts);
+        for (Iterator<Vector.Element> iter = wordCounts.iterateNonZero(); iter.hasNext();) {
+          Vector.Element e = iter.next();
+          int w = e.index();
+          double logCount = Math.log(e.get());
+          double[] wordLogCounts = statistics.logCounts.get(w);
+          if (wordLogCounts == null) {
+            wordLogCounts = new double[numTopics];
+            Arrays.fill(wordLogCounts, Double.NEGATIVE_INFINITY);
+            statistics.logCounts.put(w, wordLogCounts);
+          }
+          for (int k = 0; k < numTopics; k++) {
+            wordLogCounts[k] = LDAUtil.logSum(wordLogCounts[k], doc.phi(k, w) + logCount);
+          }
+        }
+        statistics.logLikelihood += doc.getLogLikelihood();
+      }
+      return statistics;
+    }
+
+    /**
+     * Writes the statistics of the words which occurred in the corpus, the topic totals and the log likelihood.
+     */
+    void write(Configuration conf, Path stateOut) throws IOException {
+      FileSystem fs = stateOut.getFileSystem(conf);
+      SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, new Path(stateOut, "part-r-00000"),
+                                                           IntPairWritable.class, DoubleWritable.class);
+      try {
+        IntPairWritable kw = new IntPairWritable();
+        DoubleWritable v = new DoubleWritable();
+        for (int k = 0; k < numTopics; k++) {
+          double logTotal = Double.NEGATIVE_INFINITY;
+          for (int w = 0; w < logCounts[k].length; w++) {
+            if (logCounts[k][w] != Double.NEGATIVE_INFINITY) {
+              kw.set(k, w);
+              v.set(logCounts[k][w]);
+              writer.append(kw, v);
+              logTotal = LDAUtil.logSum(logTotal, logCounts[k][w]);
+            }
+          }
+          kw.set(k, LDADriver.TOPIC_SUM_KEY);
+          v.set(logTotal);
+          writer.append(kw, v);
+        }
+        kw.set(LDADriver.LOG_LIKELIHOOD_KEY, LDADriver.LOG_LIKELIHOOD_KEY);
+        v.set(logLikelihood);
+        writer.append(kw, v);
+      } finally {
+        writer.close();
+      }
+    }
+  }
+
+}
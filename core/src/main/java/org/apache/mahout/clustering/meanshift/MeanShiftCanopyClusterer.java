@@ -24,6 +24,8 @@ import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.SpatialIndex;
+import org.apache.mahout.common.distance.SpatialIndexes;
 import org.apache.mahout.math.Vector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,12 @@ public class MeanShiftCanopyClusterer {
   // the distance measure
   private final DistanceMeasure measure;
 
+  // the index over the centers of the canopies last passed in, if the measure is a metric
+  private SpatialIndex<MeanShiftCanopy> index;
+
+  // the canopies which the index covers
+  private Collection<MeanShiftCanopy> indexedCanopies;
+
   public MeanShiftCanopyClusterer(Configuration configuration) {
     try {
       measure = Class.forName(configuration.get(MeanShiftCanopyConfigKeys.DISTANCE_MEASURE_KEY))
@@ -82,6 +90,10 @@ public class MeanShiftCanopyClusterer {
    * center of each to the other. If it covers any other canopies (norm<T2), then merge the given canopy with
    * the closest covering canopy. If the given canopy does not cover any other canopies, add it to the
    * canopies list.
+   * <p/>
+   * If the measure is a metric, the canopies within T1 are looked up in a {@link SpatialIndex} over their
+   * centers instead. The index is kept while the same collection is passed in, until {@link #shiftToMean} or
+   * {@link #invalidateIndex()} is called, so in between canopies must only be added by this method.
    * 
    * @param aCanopy
    *          a MeanShiftCanopy to be merged
@@ -91,23 +103,68 @@ public class MeanShiftCanopyClusterer {
   public void mergeCanopy(MeanShiftCanopy aCanopy, Collection<MeanShiftCanopy> canopies) {
     MeanShiftCanopy closestCoveringCanopy = null;
     double closestNorm = Double.MAX_VALUE;
-    for (MeanShiftCanopy canopy : canopies) {
-      double norm = measure.distance(canopy.getCenter(), aCanopy.getCenter());
-      if (norm < t1) {
-        aCanopy.touch(canopy);
+    SpatialIndex<MeanShiftCanopy> canopyIndex = indexFor(canopies);
+    if (canopyIndex == null) {
+      for (MeanShiftCanopy canopy : canopies) {
+        double norm = measure.distance(canopy.getCenter(), aCanopy.getCenter());
+        if (norm < t1) {
+          aCanopy.touch(canopy);
+        }
+        if (norm < t2 && ((closestCoveringCanopy == null) || (norm < closestNorm))) {
+          closestNorm = norm;
+          closestCoveringCanopy = canopy;
+        }
       }
-      if (norm < t2 && ((closestCoveringCanopy == null) || (norm < closestNorm))) {
-        closestNorm = norm;
-        closestCoveringCanopy = canopy;
+    } else {
+      for (SpatialIndex.Neighbor<MeanShiftCanopy> neighbor
+           : canopyIndex.findWithin(aCanopy.getCenter(), Math.max(t1, t2))) {
+        double norm = neighbor.getDistance();
+        if (norm < t1) {
+          aCanopy.touch(neighbor.getItem());
+        }
+        if (norm < t2 && ((closestCoveringCanopy == null) || (norm < closestNorm))) {
+          closestNorm = norm;
+          closestCoveringCanopy = neighbor.getItem();
+        }
       }
     }
     if (closestCoveringCanopy == null) {
       canopies.add(aCanopy);
+      if (canopyIndex != null) {
+        canopyIndex.add(aCanopy.getCenter(), aCanopy);
+      }
     } else {
       closestCoveringCanopy.merge(aCanopy);
     }
   }
 
+  /**
+   * @return the index over the centers of the given canopies, or null if the measure is not a metric
+   */
+  private SpatialIndex<MeanShiftCanopy> indexFor(Collection<MeanShiftCanopy> canopies) {
+    if (!SpatialIndexes.isMetric(measure)) {
+      return null;
+    }
+    if (index == null || indexedCanopies != canopies) {
+      index = SpatialIndexes.newIndex(measure);
+      for (MeanShiftCanopy canopy : canopies) {
+        index.add(canopy.getCenter(), canopy);
+      }
+      indexedCanopies = canopies;
+    }
+    return index;
+  }
+
+  /**
+   * Drops the index over the centers of the canopies last passed to {@link #mergeCanopy}, so that it is rebuilt
+   * on the next call. Needs to be called after those canopies changed other than by {@link #mergeCanopy} or
+   * {@link #shiftToMean}.
+   */
+  public void invalidateIndex() {
+    index = null;
+    indexedCanopies = null;
+  }
+
   /**
    * Shift the center to the new centroid of the cluster
    * 
@@ -116,6 +173,12 @@ public class MeanShiftCanopyClusterer {
    * @return if the cluster is converged
    */
   public boolean shiftToMean(MeanShiftCanopy canopy) {
+    // the canopy may be indexed at its old center
+    invalidateIndex();
+    return shift(canopy);
+  }
+
+  private boolean shift(MeanShiftCanopy canopy) {
     canopy.computeConvergence(measure, convergenceDelta);
     canopy.computeParameters();
     return canopy.isConverged();
@@ -184,7 +247,8 @@ public class MeanShiftCanopyClusterer {
     converged[0] = true;
     List<MeanShiftCanopy> migratedCanopies = new ArrayList<MeanShiftCanopy>();
     for (MeanShiftCanopy canopy : canopies) {
-      converged[0] = shiftToMean(canopy) && converged[0];
+      // the canopies are merged into a new collection, which gets a new index
+      converged[0] = shift(canopy) && converged[0];
       mergeCanopy(canopy, migratedCanopies);
     }
     return migratedCanopies;
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.common.distance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * A {@link SpatialIndex} which computes the distance to every point. It works with any {@link DistanceMeasure}.
+ */
+public class BruteForceSpatialIndex<T> implements SpatialIndex<T> {
+
+  private final DistanceMeasure measure;
+  private final List<Vector> points = new ArrayList<Vector>();
+  private final List<T> items = new ArrayList<T>();
+
+  public BruteForceSpatialIndex(DistanceMeasure measure) {
+    this.measure = measure;
+  }
+
+  @Override
+  public void add(Vector point, T item) {
+    points.add(point);
+    items.add(item);
+  }
+
+  @Override
+  public int size() {
+    return points.size();
+  }
+
+  @Override
+  public List<Neighbor<T>> findWithin(Vector query, double radius) {
+    List<Neighbor<T>> result = new ArrayList<Neighbor<T>>();
+    for (int i = 0; i < points.size(); i++) {
+      double distance = measure.distance(points.get(i), query);
+      if (distance < radius) {
+        result.add(new Neighbor<T>(items.get(i), distance));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Neighbor<T> findNearest(Vector query) {
+    int nearest = -1;
+    double minDistance = Double.MAX_VALUE;
+    for (int i = 0; i < points.size(); i++) {
+      double distance = measure.distance(points.get(i), query);
+      if (nearest < 0 || distance < minDistance) {
+        nearest = i;
+        minDistance = distance;
+      }
+    }
+    return nearest < 0 ? null : new Neighbor<T>(items.get(nearest), minDistance);
+  }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.common.distance;
+
+import java.util.List;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * Answers range and nearest neighbor queries over a growing set of points, each of which carries an item.
+ * Results never depend on the implementation: they are reported in the order in which the points were added,
+ * and ties go to the point added first, exactly as a linear scan over the points would find them.
+ *
+ * @see SpatialIndexes#newIndex(DistanceMeasure)
+ */
+public interface SpatialIndex<T> {
+
+  /**
+   * Add a point. The point must not be changed afterwards.
+   */
+  void add(Vector point, T item);
+
+  /** @return the number of points added */
+  int size();
+
+  /**
+   * @return the items of all points whose distance from the query is less than the radius, in the order in
+   *  which they were added
+   */
+  List<Neighbor<T>> findWithin(Vector query, double radius);
+
+  /**
+   * @return the item of the point nearest to the query, or null if the index is empty
+   */
+  Neighbor<T> findNearest(Vector query);
+
+  /** An item found by a query, with the distance of its point from the query point. */
+  final class Neighbor<T> {
+
+    private final T item;
+    private final double distance;
+
+    public Neighbor(T item, double distance) {
+      this.item = item;
+      this.distance = distance;
+    }
+
+    public T getItem() {
+      return item;
+    }
+
+    public double getDistance() {
+      return distance;
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.common.distance;
+
+/**
+ * Chooses a {@link SpatialIndex} for a {@link DistanceMeasure}.
+ */
+public final class SpatialIndexes {
+
+  private SpatialIndexes() {
+  }
+
+  /**
+   * @return true if the measure is known to satisfy the triangle inequality, which the pruning of a
+   *  {@link VPTreeSpatialIndex} depends on. Note that {@link SquaredEuclideanDistanceMeasure} and
+   *  {@link CosineDistanceMeasure} do not. Only these exact classes count, since a subclass may override the
+   *  distance with one which does not.
+   */
+  public static boolean isMetric(DistanceMeasure measure) {
+    Class<?> measureClass = measure.getClass();
+    return measureClass == EuclideanDistanceMeasure.class
+        || measureClass == ManhattanDistanceMeasure.class
+        || measureClass == WeightedEuclideanDistanceMeasure.class
+        || measureClass == WeightedManhattanDistanceMeasure.class;
+  }
+
+  /**
+   * @return a {@link VPTreeSpatialIndex} if the measure is a metric, a {@link BruteForceSpatialIndex} otherwise
+   */
+  public static <T> SpatialIndex<T> newIndex(DistanceMeasure measure) {
+    if (isMetric(measure)) {
+      return new VPTreeSpatialIndex<T>(measure);
+    }
+    return new BruteForceSpatialIndex<T>(measure);
+  }
+
+}
@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.common.distance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.math.Vector;
+
+/**
+ * <p>
+ * A {@link SpatialIndex} made of vantage point trees, which prune their search with the triangle inequality,
+ * so the {@link DistanceMeasure} must be a metric, see {@link SpatialIndexes#isMetric(DistanceMeasure)}. Each
+ * node of a tree splits its points at the median distance from a vantage point: those nearer than the median
+ * and those farther away. A query needs to search only the side(s) which can hold points within its radius.
+ * </p>
+ *
+ * <p>
+ * A vantage point tree is built at once, so the points added are first scanned linearly, and turned into a
+ * tree when there are enough of them. Trees of similar sizes are merged into one, so there are never more than
+ * a logarithmic number of trees, and every point is part of a rebuild a logarithmic number of times.
+ * </p>
+ *
+ * <p>
+ * The pruning only pays off where the points are spread out relative to the query radius. In many dimensions
+ * nearly all points are at about the same distance from each other, and the search degrades to visiting every
+ * node, at a small cost over a linear scan.
+ * </p>
+ */
+public class VPTreeSpatialIndex<T> implements SpatialIndex<T> {
+
+  /** number of points which are scanned linearly before they are turned into a tree */
+  private static final int BUFFER_SIZE = 64;
+
+  /** number of points below which a node does not split them any further */
+  private static final int LEAF_SIZE = 8;
+
+  /** relative slack on the pruning bounds, so that rounding errors never prune away a point */
+  private static final double SLACK = 1.0e-9;
+
+  private static final Comparator<Hit<?>> IN_ADDED_ORDER = new Comparator<Hit<?>>() {
+    @Override
+    public int compare(Hit<?> a, Hit<?> b) {
+      return a.entry.order < b.entry.order ? -1 : a.entry.order > b.entry.order ? 1 : 0;
+    }
+  };
+
+  private final DistanceMeasure measure;
+  private final List<Entry<T>> buffer = new ArrayList<Entry<T>>();
+  /** the trees in decreasing order of size */
+  private final List<Tree<T>> trees = new ArrayList<Tree<T>>();
+  private int size;
+
+  public VPTreeSpatialIndex(DistanceMeasure measure) {
+    Preconditions.checkArgument(SpatialIndexes.isMetric(measure), "Not a metric: %s", measure);
+    this.measure = measure;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void add(Vector point, T item) {
+    buffer.add(new Entry<T>(point, item, size++));
+    if (buffer.size() < BUFFER_SIZE) {
+      return;
+    }
+    List<Entry<T>> entries = new ArrayList<Entry<T>>(buffer);
+    buffer.clear();
+    while (!trees.isEmpty() && trees.get(trees.size() - 1).entries.length <= entries.size()) {
+      entries.addAll(Arrays.asList(trees.remove(trees.size() - 1).entries));
+    }
+    // arrays of a generic type can only be created with a wildcard type
+    @SuppressWarnings("unchecked")
+    Entry<T>[] merged = (Entry<T>[]) new Entry<?>[entries.size()];
+    trees.add(new Tree<T>(entries.toArray(merged), measure));
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public List<Neighbor<T>> findWithin(Vector query, double radius) {
+    List<Hit<T>> hits = new ArrayList<Hit<T>>();
+    for (Tree<T> tree : trees) {
+      tree.findWithin(query, radius, tree.root, hits);
+    }
+    for (Entry<T> entry : buffer) {
+      double distance = measure.distance(entry.point, query);
+      if (distance < radius) {
+        hits.add(new Hit<T>(entry, distance));
+      }
+    }
+    Collections.sort(hits, IN_ADDED_ORDER);
+    List<Neighbor<T>> result = new ArrayList<Neighbor<T>>(hits.size());
+    for (Hit<T> hit : hits) {
+      result.add(new Neighbor<T>(hit.entry.item, hit.distance));
+    }
+    return result;
+  }
+
+  @Override
+  public Neighbor<T> findNearest(Vector query) {
+    Hit<T> nearest = new Hit<T>(null, Double.MAX_VALUE);
+    for (Tree<T> tree : trees) {
+      tree.findNearest(query, tree.root, nearest);
+    }
+    for (Entry<T> entry : buffer) {
+      nearest.offer(entry, measure.distance(entry.point, query));
+    }
+    return nearest.entry == null ? null : new Neighbor<T>(nearest.entry.item, nearest.distance);
+  }
+
+  private static final class Entry<T> {
+
+    private final Vector point;
+    private final T item;
+    /** the position in which the point was added */
+    private final int order;
+
+    Entry(Vector point, T item, int order) {
+      this.point = point;
+      this.item = item;
+      this.order = order;
+    }
+  }
+
+  private static final class Hit<T> {
+
+    private Entry<T> entry;
+    private double distance;
+
+    Hit(Entry<T> entry, double distance) {
+      this.entry = entry;
+      this.distance = distance;
+    }
+
+    /** keep the given entry if it is nearer, or as near and added earlier */
+    void offer(Entry<T> candidate, double candidateDistance) {
+      if (entry == null || candidateDistance < distance
+          || (candidateDistance == distance && candidate.order < entry.order)) {
+        entry = candidate;
+        distance = candidateDistance;
+      }
+    }
+  }
+
+  /**
+   * A node covers a range of the entries array: the vantage point first, then the points nearer to it than
+   * the median distance, then the others. Leaves have no vantage point and are scanned.
+   */
+  private static final class Node {
+
+    private final int from;
+    private final int to;
+    /** the median distance from the vantage point at from */
+    private double median;
+    private Node inside;
+    private Node outside;
+
+    Node(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    boolean isLeaf() {
+      return inside == null;
+    }
+  }
+
+  private static final class Tree<T> {
+
+    private final Entry<T>[] entries;
+    private final DistanceMeasure measure;
+    private final Node root;
+
+    Tree(Entry<T>[] entries, DistanceMeasure measure) {
+      this.entries = entries;
+      this.measure = measure;
+      this.root = build(0, entries.length, new double[entries.length]);
+    }
+
+    private Node build(int from, int to, double[] distances) {
+      Node node = new Node(from, to);
+      if (to - from <= LEAF_SIZE) {
+        return node;
+      }
+      // take the middle point as vantage point, which avoids the worst case on input sorted along a line
+      swap(from, (from + to) >>> 1, distances);
+      Vector vantage = entries[from].point;
+      for (int i = from + 1; i < to; i++) {
+        distances[i] = measure.distance(vantage, entries[i].point);
+      }
+      int middle = (from + 1 + to) >>> 1;
+      select(from + 1, to, middle, distances);
+      node.median = distances[middle];
+      node.inside = build(from + 1, middle, distances);
+      node.outside = build(middle, to, distances);
+      return node;
+    }
+
+    /**
+     * Reorder the entries in [from, to) by partitioning them around their distances (quickselect), until the
+     * one at nth is in sorted position, with no farther entries before it and no nearer ones after it.
+     */
+    private void select(int from, int to, int nth, double[] distances) {
+      int lo = from;
+      int hi = to - 1;
+      while (lo < hi) {
+        double pivot = distances[(lo + hi) >>> 1];
+        int i = lo;
+        int j = hi;
+        while (i <= j) {
+          while (distances[i] < pivot) {
+            i++;
+          }
+          while (distances[j] > pivot) {
+            j--;
+          }
+          if (i <= j) {
+            swap(i++, j--, distances);
+          }
+        }
+        if (nth <= j) {
+          hi = j;
+        } else if (nth >= i) {
+          lo = i;
+        } else {
+          return;
+        }
+      }
+    }
+
+    private void swap(int i, int j, double[] distances) {
+      Entry<T> entry = entries[i];
+      entries[i] = entries[j];
+      entries[j] = entry;
+      double distance = distances[i];
+      distances[i] = distances[j];
+      distances[j] = distance;
+    }
+
+    void findWithin(Vector query, double radius, Node node, List<Hit<T>> hits) {
+      if (node.isLeaf()) {
+        for (int i = node.from; i < node.to; i++) {
+          double distance = measure.distance(entries[i].point, query);
+          if (distance < radius) {
+            hits.add(new Hit<T>(entries[i], distance));
+          }
+        }
+        return;
+      }
+      double distance = measure.distance(entries[node.from].point, query);
+      if (distance < radius) {
+        hits.add(new Hit<T>(entries[node.from], distance));
+      }
+      double slack = SLACK * (distance + node.median);
+      // points inside are at least distance - median away from the query, those outside median - distance
+      if (distance - node.median < radius + slack) {
+        findWithin(query, radius, node.inside, hits);
+      }
+      if (node.median - distance < radius + slack) {
+        findWithin(query, radius, node.outside, hits);
+      }
+    }
+
+    void findNearest(Vector query, Node node, Hit<T> nearest) {
+      if (node.isLeaf()) {
+        for (int i = node.from; i < node.to; i++) {
+          nearest.offer(entries[i], measure.distance(entries[i].point, query));
+        }
+        return;
+      }
+      double distance = measure.distance(entries[node.from].point, query);
+      nearest.offer(entries[node.from], distance);
+      double slack = SLACK * (distance + node.median);
+      // search the side of the query first, it is more likely to shrink the bound for the other side
+      if (distance < node.median) {
+        findNearest(query, node.inside, nearest);
+        if (node.median - distance <= nearest.distance + slack) {
+          findNearest(query, node.outside, nearest);
+        }
+      } else {
+        findNearest(query, node.outside, nearest);
+        if (distance - node.median <= nearest.distance + slack) {
+          findNearest(query, node.inside, nearest);
+        }
+      }
+    }
+  }
+
+}
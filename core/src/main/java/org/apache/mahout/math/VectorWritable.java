@@ -17,11 +17,10 @@
 
 package org.apache.mahout.math;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.io.Writable;
 
-import com.google.common.base.Preconditions;
-
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -33,10 +32,35 @@ public final class VectorWritable extends Configured implements Writable {
   public static final int FLAG_SEQUENTIAL = 0x02;
   public static final int FLAG_NAMED = 0x04;
   public static final int FLAG_LAX_PRECISION = 0x08;
-  public static final int NUM_FLAGS = 4;
+  public static final int FLAG_DICTIONARY = 0x10;
+  public static final int NUM_FLAGS = 5;
+
+  /**
+   * Configuration key which makes every {@link VectorWritable} created by Hadoop read in place, see
+   * {@link #setReadsInPlace(boolean)}. Only for jobs whose mappers and reducers use each vector they are given
+   * before they are given the next one.
+   */
+  public static final String READS_IN_PLACE = VectorWritable.class.getName() + ".readsInPlace";
+
+  /**
+   * Sparse vectors with at most this many distinct non-zero values may be written with a dictionary, so that every
+   * element refers to its value with one byte.
+   */
+  private static final int MAX_DICTIONARY_SIZE = 128;
+
+  private static final ThreadLocal<ValueDictionary> DICTIONARIES = new ThreadLocal<ValueDictionary>() {
+    @Override
+    protected ValueDictionary initialValue() {
+      return new ValueDictionary();
+    }
+  };
 
   private Vector vector;
   private boolean writesLaxPrecision;
+  private boolean writesDictionary;
+  private boolean readsInPlace;
+  /** values of the last dictionary coded vector read */
+  private double[] dictionary;
 
   public VectorWritable() {
   }
@@ -70,46 +94,120 @@ public final class VectorWritable extends Configured implements Writable {
     this.writesLaxPrecision = writesLaxPrecision;
   }
 
+  /**
+   * @return true if this {@link VectorWritable} writes sparse vectors with only a few distinct values with a
+   *  dictionary of their values, where that is smaller
+   */
+  public boolean isWritesDictionary() {
+    return writesDictionary;
+  }
+
+  /**
+   * Lets {@link #write(DataOutput)} write sparse vectors with only a few distinct values, like co-occurrence counts
+   * or boolean preferences, with a dictionary of their values, see {@link #writeVector(DataOutput, Vector, boolean,
+   * boolean)}. Off by default, since readers before {@link #FLAG_DICTIONARY} was introduced reject such vectors.
+   * There is no configuration key for this: Hadoop only configures the instances it reads into, so writers of
+   * intermediate data which only this version reads turn it on themselves.
+   */
+  public void setWritesDictionary(boolean writesDictionary) {
+    this.writesDictionary = writesDictionary;
+  }
+
+  /**
+   * @return true if {@link #readFields(DataInput)} overwrites the {@link Vector} returned by {@link #get()} instead
+   *  of creating a new one
+   */
+  public boolean isReadsInPlace() {
+    return readsInPlace;
+  }
+
+  /**
+   * Makes {@link #readFields(DataInput)} overwrite the {@link Vector} returned by {@link #get()}, if it is a
+   * {@link DenseVector} or a {@link SequentialAccessSparseVector} (possibly named) of the same type and size as the
+   * vector which is read, so that reading many vectors into the same {@link VectorWritable}, as Hadoop does for the
+   * input of a mapper, does not allocate a new vector for each one. Other vectors are read as usual.
+   * Callers must not keep references to the vectors they get.
+   */
+  public void setReadsInPlace(boolean readsInPlace) {
+    this.readsInPlace = readsInPlace;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+    if (conf != null) {
+      readsInPlace = conf.getBoolean(READS_IN_PLACE, false);
+    }
+  }
+
   @Override
   public void write(DataOutput out) throws IOException {
-    writeVector(out, this.vector, this.writesLaxPrecision);
+    writeVector(out, this.vector, this.writesLaxPrecision, this.writesDictionary);
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
     int flags = in.readByte();
-    Preconditions.checkArgument(flags >> NUM_FLAGS == 0, "Unknown flags set: %d", Integer.toString(flags, 2));
+    if (flags >> NUM_FLAGS != 0) {
+      // not checked with Preconditions, which would format the flags for every vector
+      throw new IllegalArgumentException("Unknown flags set: " + Integer.toString(flags, 2));
+    }
     boolean dense = (flags & FLAG_DENSE) != 0;
     boolean sequential = (flags & FLAG_SEQUENTIAL) != 0;
     boolean named = (flags & FLAG_NAMED) != 0;
     boolean laxPrecision = (flags & FLAG_LAX_PRECISION) != 0;
+    boolean dictionaryCoded = (flags & FLAG_DICTIONARY) != 0;
 
     int size = Varint.readUnsignedVarInt(in);
     Vector v;
     if (dense) {
-      double[] values = new double[size];
-      for (int i = 0; i < size; i++) {
-        values[i] = laxPrecision ? in.readFloat() : in.readDouble();
+      v = reusableVector(DenseVector.class, size);
+      if (v == null) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+          values[i] = laxPrecision ? in.readFloat() : in.readDouble();
+        }
+        v = new DenseVector(values);
+      } else {
+        for (int i = 0; i < size; i++) {
+          v.setQuick(i, laxPrecision ? in.readFloat() : in.readDouble());
+        }
       }
-      v = new DenseVector(values);
     } else {
       int numNonDefaultElements = Varint.readUnsignedVarInt(in);
-      v = sequential
-          ? new SequentialAccessSparseVector(size, numNonDefaultElements)
-          : new RandomAccessSparseVector(size, numNonDefaultElements);
+      int dictionarySize = 0;
+      if (dictionaryCoded) {
+        dictionarySize = Varint.readUnsignedVarInt(in);
+        if (dictionary == null || dictionary.length < dictionarySize) {
+          dictionary = new double[dictionarySize];
+        }
+        for (int i = 0; i < dictionarySize; i++) {
+          dictionary[i] = laxPrecision ? in.readFloat() : in.readDouble();
+        }
+      }
+      if (sequential) {
+        v = reusableVector(SequentialAccessSparseVector.class, size);
+        if (v == null) {
+          v = new SequentialAccessSparseVector(size, numNonDefaultElements);
+        } else {
+          v.assign(0.0);
+        }
+      } else {
+        v = new RandomAccessSparseVector(size, numNonDefaultElements);
+      }
       if (sequential) {
         int lastIndex = 0;
         for (int i = 0; i < numNonDefaultElements; i++) {
           int delta = Varint.readUnsignedVarInt(in);
           int index = lastIndex + delta;
           lastIndex = index;
-          double value = laxPrecision ? in.readFloat() : in.readDouble();
+          double value = readValue(in, laxPrecision, dictionarySize);
           v.setQuick(index, value);
         }
       } else {
         for (int i = 0; i < numNonDefaultElements; i++) {
           int index = Varint.readUnsignedVarInt(in);
-          double value = laxPrecision ? in.readFloat() : in.readDouble();
+          double value = readValue(in, laxPrecision, dictionarySize);
           v.setQuick(index, value);
         }
       }
@@ -121,32 +219,75 @@ public final class VectorWritable extends Configured implements Writable {
     vector = v;
   }
 
+  /**
+   * @return the vector read last, or its delegate, if vectors are read in place and it has the given type and size
+   */
+  private Vector reusableVector(Class<? extends Vector> type, int size) {
+    if (!readsInPlace) {
+      return null;
+    }
+    Vector v = vector instanceof NamedVector ? ((NamedVector) vector).getDelegate() : vector;
+    return v != null && v.getClass() == type && v.size() == size ? v : null;
+  }
+
+  private double readValue(DataInput in, boolean laxPrecision, int dictionarySize) throws IOException {
+    if (dictionarySize == 0) {
+      return laxPrecision ? in.readFloat() : in.readDouble();
+    }
+    return dictionarySize == 1 ? dictionary[0] : dictionary[in.readUnsignedByte()];
+  }
+
   /** Write the vector to the output */
   public static void writeVector(DataOutput out, Vector vector) throws IOException {
     writeVector(out, vector, false);
   }
   
+  /**
+   * Writes the vector to the output. The indices of sparse vectors are written as variable length integers, deltas
+   * of consecutive indices for sequential access vectors.
+   *
+   * @param laxPrecision whether to write values as floats instead of doubles
+   */
   public static void writeVector(DataOutput out, Vector vector, boolean laxPrecision) throws IOException {
+    writeVector(out, vector, laxPrecision, false);
+  }
+
+  /**
+   * Writes the vector like {@link #writeVector(DataOutput, Vector, boolean)}. If allowed, sparse vectors with only a
+   * few distinct values, like the co-occurrence counts or boolean preferences of the recommender jobs, are written
+   * with a dictionary of their values if that is smaller, so that every element takes one byte for its value, or
+   * none if all values are equal.
+   *
+   * @param laxPrecision whether to write values as floats instead of doubles
+   * @param dictionaryCoding whether sparse vectors may be written with a dictionary, which readers before
+   *  {@link #FLAG_DICTIONARY} was introduced cannot read
+   */
+  public static void writeVector(DataOutput out, Vector vector, boolean laxPrecision, boolean dictionaryCoding)
+    throws IOException {
     boolean dense = vector.isDense();
     boolean sequential = vector.isSequentialAccess();
     boolean named = vector instanceof NamedVector;
+    ValueDictionary dictionary = dense || !dictionaryCoding ? null : DICTIONARIES.get();
+    boolean dictionaryCoded = dictionary != null && dictionary.build(vector, laxPrecision);
 
     out.writeByte((dense ? FLAG_DENSE : 0)
         | (sequential ? FLAG_SEQUENTIAL : 0)
         | (named ? FLAG_NAMED : 0)
-        | (laxPrecision ? FLAG_LAX_PRECISION : 0));
+        | (laxPrecision ? FLAG_LAX_PRECISION : 0)
+        | (dictionaryCoded ? FLAG_DICTIONARY : 0));
 
     Varint.writeUnsignedVarInt(vector.size(), out);
     if (dense) {
       for (Vector.Element element : vector) {
-        if (laxPrecision) {
-          out.writeFloat((float) element.get());
-        } else {
-          out.writeDouble(element.get());
-        }
+        writeValue(out, element.get(), laxPrecision);
       }
     } else {
       Varint.writeUnsignedVarInt(vector.getNumNondefaultElements(), out);
+      if (dictionaryCoded) {
+        dictionary.writeValues(out, laxPrecision);
+      } else {
+        dictionary = null;
+      }
       Iterator<Vector.Element> iter = vector.iterateNonZero();
       if (sequential) {
         int lastIndex = 0;
@@ -156,21 +297,13 @@ public final class VectorWritable extends Configured implements Writable {
           // Delta-code indices:
           Varint.writeUnsignedVarInt(thisIndex - lastIndex, out);
           lastIndex = thisIndex;
-          if (laxPrecision) {
-            out.writeFloat((float) element.get());
-          } else {
-            out.writeDouble(element.get());
-          }
+          writeValue(out, element.get(), laxPrecision, dictionary);
         }
       } else {
         while (iter.hasNext()) {
           Vector.Element element = iter.next();
           Varint.writeUnsignedVarInt(element.index(), out);
-          if (laxPrecision) {
-            out.writeFloat((float) element.get());
-          } else {
-            out.writeDouble(element.get());
-          }
+          writeValue(out, element.get(), laxPrecision, dictionary);
         }
       }
     }
@@ -179,9 +312,136 @@ public final class VectorWritable extends Configured implements Writable {
     }
   }
 
+  private static void writeValue(DataOutput out, double value, boolean laxPrecision) throws IOException {
+    if (laxPrecision) {
+      out.writeFloat((float) value);
+    } else {
+      out.writeDouble(value);
+    }
+  }
+
+  private static void writeValue(DataOutput out, double value, boolean laxPrecision, ValueDictionary dictionary)
+    throws IOException {
+    if (dictionary == null) {
+      writeValue(out, value, laxPrecision);
+    } else if (dictionary.size() > 1) {
+      out.writeByte(dictionary.code(value, laxPrecision));
+    }
+  }
+
   public static Vector readVector(DataInput in) throws IOException {
     VectorWritable v = new VectorWritable();
     v.readFields(in);
     return v.get();
   }
+
+  /**
+   * The distinct non-zero values of a vector, in the order they first occur, found with an open addressing hash
+   * table over the bits of the values. Reused by the writing thread.
+   */
+  private static final class ValueDictionary {
+
+    private static final int TABLE_SIZE = 2 * MAX_DICTIONARY_SIZE;
+    private static final int MIN_SAMPLE_SIZE = 16;
+
+    private final long[] keys = new long[TABLE_SIZE];
+    private final byte[] codes = new byte[TABLE_SIZE];
+    private final boolean[] used = new boolean[TABLE_SIZE];
+    private final int[] usedSlots = new int[MAX_DICTIONARY_SIZE];
+    private final double[] values = new double[MAX_DICTIONARY_SIZE];
+    private int size;
+
+    /**
+     * @return true if the vector has at most {@link #MAX_DICTIONARY_SIZE} distinct values and writing it with a
+     *  dictionary is smaller than writing every value; false if more than half of the first
+     *  {@link #MIN_SAMPLE_SIZE} values are distinct
+     */
+    boolean build(Vector vector, boolean laxPrecision) {
+      clear();
+      int numNonDefaultElements = vector.getNumNondefaultElements();
+      if (numNonDefaultElements < 2) {
+        return false;
+      }
+      Iterator<Vector.Element> iter = vector.iterateNonZero();
+      int seen = 0;
+      while (iter.hasNext()) {
+        double value = iter.next().get();
+        if (find(value, laxPrecision) < 0) {
+          if (size == MAX_DICTIONARY_SIZE) {
+            return false;
+          }
+          add(value, laxPrecision);
+        }
+        seen++;
+        // give up early on vectors of mostly distinct values, like TF-IDF weights
+        if (seen == MIN_SAMPLE_SIZE && size > seen / 2) {
+          return false;
+        }
+      }
+      int valueSize = laxPrecision ? 4 : 8;
+      long dictionarySize = 1 + (long) size * valueSize + (size > 1 ? numNonDefaultElements : 0);
+      return dictionarySize < (long) numNonDefaultElements * valueSize;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void writeValues(DataOutput out, boolean laxPrecision) throws IOException {
+      Varint.writeUnsignedVarInt(size, out);
+      for (int i = 0; i < size; i++) {
+        writeValue(out, values[i], laxPrecision);
+      }
+    }
+
+    int code(double value, boolean laxPrecision) {
+      return codes[find(value, laxPrecision)];
+    }
+
+    private void clear() {
+      for (int i = 0; i < size; i++) {
+        used[usedSlots[i]] = false;
+      }
+      size = 0;
+    }
+
+    /**
+     * @return the slot of the value, or -1 if it is not in the dictionary
+     */
+    private int find(double value, boolean laxPrecision) {
+      long key = key(value, laxPrecision);
+      int slot = slot(key);
+      while (used[slot]) {
+        if (keys[slot] == key) {
+          return slot;
+        }
+        slot = (slot + 1) & (TABLE_SIZE - 1);
+      }
+      return -1;
+    }
+
+    private void add(double value, boolean laxPrecision) {
+      long key = key(value, laxPrecision);
+      int slot = slot(key);
+      while (used[slot]) {
+        slot = (slot + 1) & (TABLE_SIZE - 1);
+      }
+      used[slot] = true;
+      keys[slot] = key;
+      codes[slot] = (byte) size;
+      usedSlots[size] = slot;
+      values[size] = value;
+      size++;
+    }
+
+    private static long key(double value, boolean laxPrecision) {
+      // values which are written as the same float must share a code
+      return laxPrecision ? Float.floatToIntBits((float) value) : Double.doubleToLongBits(value);
+    }
+
+    private static int slot(long key) {
+      long hash = (key ^ (key >>> 32)) * 0x9E3779B97F4A7C15L;
+      return (int) (hash >>> 56) & (TABLE_SIZE - 1);
+    }
+  }
 }
@@ -171,34 +171,63 @@ public class DistributedRowMatrix implements VectorIterable, Configurable {
 
   @Override
   public Vector times(Vector v) {
+    return times(new Vector[] {v})[0];
+  }
+
+  @Override
+  public Vector timesSquared(Vector v) {
+    return timesSquared(new Vector[] {v})[0];
+  }
+
+  /**
+   * Computes {@link #times(Vector)} for several vectors in one pass over the matrix.
+   */
+  public Vector[] times(Vector[] vectors) {
     try {
       Configuration conf =
-          TimesSquaredJob.createTimesJobConf(v,
-                                             numRows,
-                                             rowPath,
-                                             new Path(outputTmpPath, Long.toString(System.nanoTime())));
+          TimesSquaredJob.createTimesSquaredJobConf(vectors,
+                                                    numRows,
+                                                    getNumOutputPartitions(),
+                                                    rowPath,
+                                                    new Path(outputTmpPath, Long.toString(System.nanoTime())),
+                                                    TimesSquaredJob.TimesMapper.class,
+                                                    TimesSquaredJob.VectorSummingReducer.class);
       JobClient.runJob(new JobConf(conf));
-      return TimesSquaredJob.retrieveTimesSquaredOutputVector(conf);
+      return TimesSquaredJob.retrieveTimesSquaredOutputVectors(conf);
     } catch (IOException ioe) {
       throw new IllegalStateException(ioe);
     }
   }
 
-  @Override
-  public Vector timesSquared(Vector v) {
+  /**
+   * Computes {@link #timesSquared(Vector)} for several vectors in one pass over the matrix.
+   */
+  public Vector[] timesSquared(Vector[] vectors) {
     try {
       Configuration conf =
-          TimesSquaredJob.createTimesSquaredJobConf(v,
+          TimesSquaredJob.createTimesSquaredJobConf(vectors,
+                                                    vectors[0].size(),
+                                                    getNumOutputPartitions(),
                                                     rowPath,
                                                     new Path(outputTmpBasePath,
-                                                             new Path(Long.toString(System.nanoTime()))));
+                                                             new Path(Long.toString(System.nanoTime()))),
+                                                    TimesSquaredJob.TIMES_SQUARED_MAPPER_CLASS,
+                                                    TimesSquaredJob.VectorSummingReducer.class);
       JobClient.runJob(new JobConf(conf));
-      return TimesSquaredJob.retrieveTimesSquaredOutputVector(conf);
+      return TimesSquaredJob.retrieveTimesSquaredOutputVectors(conf);
     } catch (IOException ioe) {
       throw new IllegalStateException(ioe);
     }
   }
-  
+
+  /**
+   * @return the number of reducers which sum up the result of {@link #times(Vector)} and
+   * {@link #timesSquared(Vector)}, configured by {@link TimesSquaredJob#NUM_OUTPUT_PARTITIONS}
+   */
+  private int getNumOutputPartitions() {
+    return conf == null ? 1 : conf.getInt(TimesSquaredJob.NUM_OUTPUT_PARTITIONS, 1);
+  }
+
   @Override
   public Iterator<MatrixSlice> iterator() {
     return iterateAll();
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.hadoop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.OutputLogFilter;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.math.DoubleBufferMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixWritable;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Converts sequence files of {@link VectorWritable}s or {@link MatrixWritable}s into a file on the local file
+ * system which {@link DoubleBufferMatrix#map(File, boolean)} maps without copying it onto the heap, e.g. the
+ * eigenvectors found by {@link org.apache.mahout.math.hadoop.decomposer.DistributedLanczosSolver} for a serving
+ * process. Vectors keyed by {@link IntWritable} become the rows with these indices, like the rows of a
+ * {@link DistributedRowMatrix}; other vectors and the rows of matrices are numbered in the order they are read. A
+ * single vector becomes a matrix with one row, which {@link DoubleBufferMatrix#getRow(int)} returns as a vector.
+ * The input is read twice, first to find the size of the matrix.</p>
+ *
+ * <p>Command line arguments specific to this class are:</p>
+ *
+ * <ol>
+ * <li>-Dmapred.input.dir=(path): Directory or file containing the vectors or matrices</li>
+ * <li>--outputFile (path): local file to write the matrix to</li>
+ * </ol>
+ *
+ * <p>General command line options are documented in {@link AbstractJob}.</p>
+ */
+public final class DoubleBufferMatrixConverter extends AbstractJob {
+
+  private static final Logger log = LoggerFactory.getLogger(DoubleBufferMatrixConverter.class);
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new DoubleBufferMatrixConverter(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws IOException {
+
+    addInputOption();
+    addOption("outputFile", "of", "local file to write the matrix to", true);
+
+    Map<String,String> parsedArgs = parseArguments(args);
+    if (parsedArgs == null) {
+      return -1;
+    }
+
+    convert(getInputPath(), getConf(), new File(parsedArgs.get("--outputFile")));
+    return 0;
+  }
+
+  /**
+   * @return the written matrix, mapped writable
+   */
+  public static DoubleBufferMatrix convert(Path input, Configuration conf, File outputFile) throws IOException {
+    final int[] size = new int[2];
+    readRows(input, conf, new RowProcessor() {
+      @Override
+      public void process(int row, Vector vector) {
+        size[0] = Math.max(size[0], row + 1);
+        size[1] = Math.max(size[1], vector.size());
+      }
+    });
+    log.info("Writing {} x {} matrix to {}", new Object[] {size[0], size[1], outputFile});
+    final DoubleBufferMatrix result = DoubleBufferMatrix.create(outputFile, size[0], size[1]);
+    readRows(input, conf, new RowProcessor() {
+      @Override
+      public void process(int row, Vector vector) {
+        result.assignNonZeros(row, vector);
+      }
+    });
+    result.force();
+    return result;
+  }
+
+  private static void readRows(Path input, Configuration conf, RowProcessor processor) throws IOException {
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    int nextRow = 0;
+    for (FileStatus status : fs.listStatus(input, new OutputLogFilter())) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+      try {
+        Writable key = reader.getKeyClass().asSubclass(Writable.class).newInstance();
+        Writable value = reader.getValueClass().asSubclass(Writable.class).newInstance();
+        while (reader.next(key, value)) {
+          if (value instanceof VectorWritable) {
+            int row = key instanceof IntWritable ? ((IntWritable) key).get() : nextRow;
+            processor.process(row, ((VectorWritable) value).get());
+            nextRow = Math.max(nextRow, row + 1);
+          } else if (value instanceof MatrixWritable) {
+            Matrix matrix = ((MatrixWritable) value).get();
+            for (int row = 0; row < matrix.rowSize(); row++) {
+              processor.process(nextRow++, matrix.getRow(row));
+            }
+          } else {
+            throw new IOException("Expected vectors or matrices in " + status.getPath() + " but found "
+                + reader.getValueClass().getName());
+          }
+        }
+      } catch (InstantiationException ie) {
+        throw new IllegalStateException(ie);
+      } catch (IllegalAccessException iae) {
+        throw new IllegalStateException(iae);
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  private interface RowProcessor {
+    void process(int row, Vector vector);
+  }
+
+}
@@ -39,13 +39,23 @@ import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
+/**
+ * Computes A<sup>t</sup>B for two matrices with the same number of rows, joined on the row index.  Each pair of rows
+ * a and b contributes a<sub>i</sub> * b to row i of the result.  The mappers add up these partial rows in memory and
+ * only emit them when they hold more than {@link #MAX_BUFFERED_ENTRIES} entries, or when they are closed, so that
+ * each mapper shuffles each row of the result about once, instead of once per non-zero element of A.
+ */
 public class MatrixMultiplicationJob extends AbstractJob {
 
   private static final String OUT_CARD = "output.vector.cardinality";
 
+  public static final String MAX_BUFFERED_ENTRIES = "MatrixMultiplicationJob.maxBufferedEntries";
+  private static final int DEFAULT_MAX_BUFFERED_ENTRIES = 1 << 20;
+
   public static Configuration createMatrixMultiplyJobConf(Path aPath, Path bPath, Path outPath, int outCardinality) {
     JobConf conf = new JobConf(MatrixMultiplicationJob.class);
     conf.setInputFormat(CompositeInputFormat.class);
@@ -104,11 +114,16 @@ public class MatrixMultiplicationJob extends AbstractJob {
       implements Mapper<IntWritable,TupleWritable,IntWritable,VectorWritable> {
 
     private int outCardinality;
+    private int maxBufferedEntries;
     private final IntWritable row = new IntWritable();
+    private final Map<Integer,Vector> partialRows = new HashMap<Integer,Vector>();
+    private int numBufferedEntries;
+    private OutputCollector<IntWritable,VectorWritable> out;
 
     @Override
     public void configure(JobConf conf) {
       outCardinality = conf.getInt(OUT_CARD, Integer.MAX_VALUE);
+      maxBufferedEntries = conf.getInt(MAX_BUFFERED_ENTRIES, DEFAULT_MAX_BUFFERED_ENTRIES);
     }
 
     @Override
@@ -116,6 +131,7 @@ public class MatrixMultiplicationJob extends AbstractJob {
                     TupleWritable v,
                     OutputCollector<IntWritable,VectorWritable> out,
                     Reporter reporter) throws IOException {
+      this.out = out;
       boolean firstIsOutFrag =  ((VectorWritable)v.get(0)).get().size() == outCardinality;
       Vector outFrag = firstIsOutFrag ? ((VectorWritable)v.get(0)).get() : ((VectorWritable)v.get(1)).get();
       Vector multiplier = firstIsOutFrag ? ((VectorWritable)v.get(1)).get() : ((VectorWritable)v.get(0)).get();
@@ -123,9 +139,41 @@ public class MatrixMultiplicationJob extends AbstractJob {
       Iterator<Vector.Element> it = multiplier.iterateNonZero();
       while (it.hasNext()) {
         Vector.Element e = it.next();
-        row.set(e.index());
-        VectorWritable outVector = new VectorWritable(outFrag.times(e.get()));
-        out.collect(row, outVector);
+        Vector partialRow = partialRows.get(e.index());
+        if (partialRow == null) {
+          partialRow = new RandomAccessSparseVector(outCardinality, outFrag.getNumNondefaultElements());
+          partialRows.put(e.index(), partialRow);
+        }
+        int numEntries = partialRow.getNumNondefaultElements();
+        double factor = e.get();
+        Iterator<Vector.Element> fragElements = outFrag.iterateNonZero();
+        while (fragElements.hasNext()) {
+          Vector.Element fragElement = fragElements.next();
+          int column = fragElement.index();
+          partialRow.setQuick(column, partialRow.getQuick(column) + factor * fragElement.get());
+        }
+        numBufferedEntries += partialRow.getNumNondefaultElements() - numEntries;
+      }
+      if (numBufferedEntries > maxBufferedEntries) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      VectorWritable partialRowWritable = new VectorWritable();
+      for (Map.Entry<Integer,Vector> partialRow : partialRows.entrySet()) {
+        row.set(partialRow.getKey());
+        partialRowWritable.set(partialRow.getValue());
+        out.collect(row, partialRowWritable);
+      }
+      partialRows.clear();
+      numBufferedEntries = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out != null) {
+        flush();
       }
     }
   }
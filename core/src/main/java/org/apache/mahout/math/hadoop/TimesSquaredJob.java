@@ -19,6 +19,7 @@ package org.apache.mahout.math.hadoop;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
@@ -47,16 +48,34 @@ import com.google.common.base.Preconditions;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Iterator;
 
+/**
+ * Computes A<sup>t</sup>A v, or A v, for a matrix A stored as rows of {@link VectorWritable}s in one pass over A.  The
+ * job can be given several input vectors, which are all multiplied in the same pass; the output vector then holds
+ * the results one after the other, and {@link #retrieveTimesSquaredOutputVectors} splits it up again.
+ * <p>
+ * Every mapper sums up the products for all of its rows into one output vector, which it emits when it is closed.
+ * With more than one {@link #NUM_OUTPUT_PARTITIONS output partition}, the output vector is split into as many
+ * ranges of indices, each of which is summed up by its own reducer, instead of the whole vector going through one.
+ * </p>
+ */
 public final class TimesSquaredJob {
 
   public static final String INPUT_VECTOR = "DistributedMatrix.times.inputVector";
   public static final String IS_SPARSE_OUTPUT = "DistributedMatrix.times.outputVector.sparse";
   public static final String OUTPUT_VECTOR_DIMENSION = "DistributedMatrix.times.output.dimension";
+  public static final String NUM_INPUT_VECTORS = "DistributedMatrix.times.inputVectors";
+  public static final String NUM_OUTPUT_PARTITIONS = "DistributedMatrix.times.outputPartitions";
 
   public static final String OUTPUT_VECTOR_FILENAME = "DistributedMatrix.times.outputVector";
 
+  /** {@link TimesSquaredMapper} itself, typed for the job factory methods as its class literal is raw */
+  @SuppressWarnings("unchecked")
+  public static final Class<? extends TimesSquaredMapper<?>> TIMES_SQUARED_MAPPER_CLASS =
+      (Class<? extends TimesSquaredMapper<?>>) (Class<?>) TimesSquaredMapper.class;
+
   private TimesSquaredJob() { }
 
   public static Configuration createTimesSquaredJobConf(Vector v,
@@ -65,7 +84,7 @@ public final class TimesSquaredJob {
     return createTimesSquaredJobConf(v,
                                      matrixInputPath,
                                      outputVectorPath,
-                                     TimesSquaredMapper.class,
+                                     TIMES_SQUARED_MAPPER_CLASS,
                                      VectorSummingReducer.class);
   }
 
@@ -85,7 +104,7 @@ public final class TimesSquaredJob {
   public static Configuration createTimesSquaredJobConf(Vector v,
                                                         Path matrixInputPath,
                                                         Path outputVectorPathBase,
-                                                        Class<? extends TimesSquaredMapper> mapClass,
+                                                        Class<? extends TimesSquaredMapper<?>> mapClass,
                                                         Class<? extends VectorSummingReducer> redClass)
     throws IOException {
     return createTimesSquaredJobConf(v, v.size(), matrixInputPath, outputVectorPathBase, mapClass, redClass);
@@ -95,9 +114,71 @@ public final class TimesSquaredJob {
                                                         int outputVectorDim,
                                                         Path matrixInputPath,
                                                         Path outputVectorPathBase,
-                                                        Class<? extends TimesSquaredMapper> mapClass,
+                                                        Class<? extends TimesSquaredMapper<?>> mapClass,
+                                                        Class<? extends VectorSummingReducer> redClass)
+    throws IOException {
+    return createTimesSquaredJobConf(new Vector[] {v},
+                                     outputVectorDim,
+                                     matrixInputPath,
+                                     outputVectorPathBase,
+                                     mapClass,
+                                     redClass);
+  }
+
+  public static Configuration createTimesSquaredJobConf(Vector[] vectors,
+                                                        Path matrixInputPath,
+                                                        Path outputVectorPath) throws IOException {
+    return createTimesSquaredJobConf(vectors,
+                                     vectors[0].size(),
+                                     matrixInputPath,
+                                     outputVectorPath,
+                                     TIMES_SQUARED_MAPPER_CLASS,
+                                     VectorSummingReducer.class);
+  }
+
+  public static Configuration createTimesJobConf(Vector[] vectors,
+                                                 int outDim,
+                                                 Path matrixInputPath,
+                                                 Path outputVectorPath) throws IOException {
+    return createTimesSquaredJobConf(vectors,
+                                     outDim,
+                                     matrixInputPath,
+                                     outputVectorPath,
+                                     TimesMapper.class,
+                                     VectorSummingReducer.class);
+  }
+
+  public static Configuration createTimesSquaredJobConf(Vector[] vectors,
+                                                        int outputVectorDim,
+                                                        Path matrixInputPath,
+                                                        Path outputVectorPathBase,
+                                                        Class<? extends TimesSquaredMapper<?>> mapClass,
+                                                        Class<? extends VectorSummingReducer> redClass)
+    throws IOException {
+    return createTimesSquaredJobConf(vectors,
+                                     outputVectorDim,
+                                     1,
+                                     matrixInputPath,
+                                     outputVectorPathBase,
+                                     mapClass,
+                                     redClass);
+  }
+
+  /**
+   * @param vectors the vectors to multiply in the same pass over the matrix
+   * @param outputVectorDim the dimension of the result for one of the vectors
+   * @param numOutputPartitions the number of reducers, each of which sums up one range of the output
+   */
+  public static Configuration createTimesSquaredJobConf(Vector[] vectors,
+                                                        int outputVectorDim,
+                                                        int numOutputPartitions,
+                                                        Path matrixInputPath,
+                                                        Path outputVectorPathBase,
+                                                        Class<? extends TimesSquaredMapper<?>> mapClass,
                                                         Class<? extends VectorSummingReducer> redClass)
     throws IOException {
+    Preconditions.checkArgument(vectors.length > 0, "no input vectors");
+    Preconditions.checkArgument(numOutputPartitions > 0, "numOutputPartitions must be positive");
     JobConf conf = new JobConf(TimesSquaredJob.class);
     conf.setJobName("TimesSquaredJob: " + matrixInputPath);
     FileSystem fs = FileSystem.get(conf);
@@ -108,50 +189,121 @@ public final class TimesSquaredJob {
     Path inputVectorPath = new Path(outputVectorPathBase, INPUT_VECTOR + '/' + now);
     SequenceFile.Writer inputVectorPathWriter = new SequenceFile.Writer(fs,
             conf, inputVectorPath, NullWritable.class, VectorWritable.class);
-    Writable inputVW = new VectorWritable(v);
-    inputVectorPathWriter.append(NullWritable.get(), inputVW);
+    for (Vector v : vectors) {
+      Writable inputVW = new VectorWritable(v);
+      inputVectorPathWriter.append(NullWritable.get(), inputVW);
+    }
     inputVectorPathWriter.close();
     URI ivpURI = inputVectorPath.toUri();
     DistributedCache.setCacheFiles(new URI[] {ivpURI}, conf);
     fs.deleteOnExit(inputVectorPath);
 
     conf.set(INPUT_VECTOR, ivpURI.toString());
-    conf.setBoolean(IS_SPARSE_OUTPUT, !(v instanceof DenseVector));
+    conf.setBoolean(IS_SPARSE_OUTPUT, !(vectors[0] instanceof DenseVector));
     conf.setInt(OUTPUT_VECTOR_DIMENSION, outputVectorDim);
+    conf.setInt(NUM_INPUT_VECTORS, vectors.length);
+    // every partition needs at least one index
+    numOutputPartitions = Math.min(numOutputPartitions, outputVectorDim * vectors.length);
+    conf.setInt(NUM_OUTPUT_PARTITIONS, numOutputPartitions);
+    conf.setNumReduceTasks(numOutputPartitions);
     FileInputFormat.addInputPath(conf, matrixInputPath);
     conf.setInputFormat(SequenceFileInputFormat.class);
     FileOutputFormat.setOutputPath(conf, new Path(outputVectorPathBase, OUTPUT_VECTOR_FILENAME));
     conf.setMapperClass(mapClass);
-    conf.setMapOutputKeyClass(NullWritable.class);
+    // a single output vector keeps the NullWritable key, partitioned slices are keyed by their partition
+    Class<? extends Writable> keyClass = numOutputPartitions == 1 ? NullWritable.class : IntWritable.class;
+    conf.setMapOutputKeyClass(keyClass);
     conf.setMapOutputValueClass(VectorWritable.class);
     conf.setReducerClass(redClass);
     conf.setCombinerClass(redClass);
     conf.setOutputFormat(SequenceFileOutputFormat.class);
-    conf.setOutputKeyClass(NullWritable.class);
+    conf.setOutputKeyClass(keyClass);
     conf.setOutputValueClass(VectorWritable.class);
+    // mappers and reducers only add up the vectors they are given
+    conf.setBoolean(VectorWritable.READS_IN_PLACE, true);
     return conf;
   }
 
   public static Vector retrieveTimesSquaredOutputVector(Configuration conf) throws IOException {
     Path outputPath = FileOutputFormat.getOutputPath(new JobConf(conf));
     FileSystem fs = FileSystem.get(conf);
-    Path outputFile = new Path(outputPath, "part-00000");
-    SequenceFile.Reader reader = new SequenceFile.Reader(fs, outputFile, conf);
-    NullWritable n = NullWritable.get();
-    VectorWritable v = new VectorWritable();
-    reader.next(n,v);
-    Vector vector = v.get();
-    reader.close();
-    fs.deleteOnExit(outputFile);
+    int numPartitions = conf.getInt(NUM_OUTPUT_PARTITIONS, 1);
+    int dimension = conf.getInt(OUTPUT_VECTOR_DIMENSION, Integer.MAX_VALUE);
+    int numInputVectors = conf.getInt(NUM_INPUT_VECTORS, 1);
+    if (numInputVectors > 1) {
+      dimension *= numInputVectors;
+    }
+    Vector vector = null;
+    for (FileStatus status : fs.globStatus(new Path(outputPath, "part-*"))) {
+      Path outputFile = status.getPath();
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, outputFile, conf);
+      try {
+        Writable key = numPartitions == 1 ? NullWritable.get() : new IntWritable();
+        VectorWritable v = new VectorWritable();
+        while (reader.next(key, v)) {
+          Vector slice = v.get();
+          if (numPartitions == 1) {
+            vector = slice;
+            continue;
+          }
+          if (vector == null) {
+            vector = slice.isDense() ? new DenseVector(dimension) : new RandomAccessSparseVector(dimension);
+          }
+          int offset = partitionStart(((IntWritable) key).get(), dimension, numPartitions);
+          Iterator<Vector.Element> nonZeros = slice.iterateNonZero();
+          while (nonZeros.hasNext()) {
+            Vector.Element element = nonZeros.next();
+            vector.setQuick(offset + element.index(), element.get());
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      fs.deleteOnExit(outputFile);
+    }
     return vector;
   }
 
+  /**
+   * @return the first index of the output vector which belongs to the given partition
+   */
+  static int partitionStart(int partition, int dimension, int numPartitions) {
+    return (int) ((long) dimension * partition / numPartitions);
+  }
+
+  /**
+   * @return the results for each of the input vectors of a job created with several of them
+   */
+  public static Vector[] retrieveTimesSquaredOutputVectors(Configuration conf) throws IOException {
+    Vector vector = retrieveTimesSquaredOutputVector(conf);
+    int dimension = conf.getInt(OUTPUT_VECTOR_DIMENSION, vector.size());
+    Vector[] vectors = new Vector[conf.getInt(NUM_INPUT_VECTORS, 1)];
+    if (vectors.length == 1) {
+      vectors[0] = vector;
+      return vectors;
+    }
+    for (int k = 0; k < vectors.length; k++) {
+      vectors[k] = vector.isDense() ? new DenseVector(dimension) : new RandomAccessSparseVector(dimension);
+    }
+    Iterator<Vector.Element> nonZeros = vector.iterateNonZero();
+    while (nonZeros.hasNext()) {
+      Vector.Element element = nonZeros.next();
+      int index = element.index();
+      vectors[index / dimension].setQuick(index % dimension, element.get());
+    }
+    return vectors;
+  }
+
   public static class TimesSquaredMapper<T extends WritableComparable> extends MapReduceBase
-      implements Mapper<T,VectorWritable, NullWritable,VectorWritable> {
+      implements Mapper<T,VectorWritable,WritableComparable<?>,VectorWritable> {
 
     Vector outputVector;
-    OutputCollector<NullWritable,VectorWritable> out;
+    OutputCollector<WritableComparable<?>,VectorWritable> out;
     private Vector inputVector;
+    /** all the input vectors, if there are several; their results are stored one after the other */
+    Vector[] inputVectors;
+    int outputDimension;
+    private int numOutputPartitions;
 
     @Override
     public void configure(JobConf conf) {
@@ -163,18 +315,24 @@ public final class TimesSquaredJob {
         FileSystem fs = inputVectorPath.getFileSystem(conf);
 
         SequenceFile.Reader reader = new SequenceFile.Reader(fs, inputVectorPath, conf);
-        VectorWritable val = new VectorWritable();
+        inputVectors = new Vector[conf.getInt(NUM_INPUT_VECTORS, 1)];
         NullWritable nw = NullWritable.get();
-        reader.next(nw, val);
-        reader.close();
-        inputVector = val.get();
-        if (!(inputVector instanceof SequentialAccessSparseVector || inputVector instanceof DenseVector)) {
-          inputVector = new SequentialAccessSparseVector(inputVector);
+        for (int k = 0; k < inputVectors.length; k++) {
+          VectorWritable val = new VectorWritable();
+          reader.next(nw, val);
+          inputVectors[k] = val.get();
+          if (!(inputVectors[k] instanceof SequentialAccessSparseVector || inputVectors[k] instanceof DenseVector)) {
+            inputVectors[k] = new SequentialAccessSparseVector(inputVectors[k]);
+          }
         }
-        int outDim = conf.getInt(OUTPUT_VECTOR_DIMENSION, Integer.MAX_VALUE);
+        reader.close();
+        inputVector = inputVectors[0];
+        outputDimension = conf.getInt(OUTPUT_VECTOR_DIMENSION, Integer.MAX_VALUE);
+        int outDim = inputVectors.length == 1 ? outputDimension : inputVectors.length * outputDimension;
         outputVector = conf.getBoolean(IS_SPARSE_OUTPUT, false)
                      ? new RandomAccessSparseVector(outDim, 10)
                      : new DenseVector(outDim);
+        numOutputPartitions = conf.getInt(NUM_OUTPUT_PARTITIONS, 1);
       } catch (IOException ioe) {
         throw new IllegalStateException(ioe);
       }
@@ -183,9 +341,24 @@ public final class TimesSquaredJob {
     @Override
     public void map(T rowNum,
                     VectorWritable v,
-                    OutputCollector<NullWritable,VectorWritable> out,
+                    OutputCollector<WritableComparable<?>,VectorWritable> out,
                     Reporter rep) throws IOException {
       this.out = out;
+      if (inputVectors.length > 1) {
+        for (int k = 0; k < inputVectors.length; k++) {
+          double d = v.get().dot(inputVectors[k]);
+          if (d != 0.0) {
+            int offset = k * outputDimension;
+            Iterator<Vector.Element> nonZeros = v.get().iterateNonZero();
+            while (nonZeros.hasNext()) {
+              Vector.Element element = nonZeros.next();
+              int index = offset + element.index();
+              outputVector.setQuick(index, outputVector.getQuick(index) + d * element.get());
+            }
+          }
+        }
+        return;
+      }
       double d = scale(v);
       if (d == 1.0) {
         outputVector.assign(v.get(), Functions.PLUS);
@@ -200,7 +373,41 @@ public final class TimesSquaredJob {
 
     @Override
     public void close() throws IOException {
-      out.collect(NullWritable.get(), new VectorWritable(outputVector));
+      if (out == null) {
+        // no rows in this split
+        return;
+      }
+      if (numOutputPartitions == 1) {
+        out.collect(NullWritable.get(), new VectorWritable(outputVector));
+        return;
+      }
+      int dimension = outputVector.size();
+      int[] starts = new int[numOutputPartitions + 1];
+      Vector[] slices = new Vector[numOutputPartitions];
+      for (int p = 0; p <= numOutputPartitions; p++) {
+        starts[p] = partitionStart(p, dimension, numOutputPartitions);
+        if (p > 0) {
+          int length = starts[p] - starts[p - 1];
+          slices[p - 1] = outputVector.isDense() ? new DenseVector(length) : new RandomAccessSparseVector(length, 10);
+        }
+      }
+      Iterator<Vector.Element> nonZeros = outputVector.iterateNonZero();
+      while (nonZeros.hasNext()) {
+        Vector.Element element = nonZeros.next();
+        int index = element.index();
+        int p = Arrays.binarySearch(starts, index);
+        if (p < 0) {
+          p = -p - 2;
+        }
+        slices[p].setQuick(index - starts[p], element.get());
+      }
+      IntWritable partition = new IntWritable();
+      VectorWritable slice = new VectorWritable();
+      for (int p = 0; p < numOutputPartitions; p++) {
+        partition.set(p);
+        slice.set(slices[p]);
+        out.collect(partition, slice);
+      }
     }
 
   }
@@ -209,9 +416,18 @@ public final class TimesSquaredJob {
     @Override
     public void map(IntWritable rowNum,
                     VectorWritable v,
-                    OutputCollector<NullWritable,VectorWritable> out,
+                    OutputCollector<WritableComparable<?>,VectorWritable> out,
                     Reporter rep) {
       this.out = out;
+      if (inputVectors.length > 1) {
+        for (int k = 0; k < inputVectors.length; k++) {
+          double d = v.get().dot(inputVectors[k]);
+          if (d != 0.0) {
+            outputVector.setQuick(k * outputDimension + rowNum.get(), d);
+          }
+        }
+        return;
+      }
       double d = scale(v);
       if (d != 0.0) {
         outputVector.setQuick(rowNum.get(), d);
@@ -220,30 +436,35 @@ public final class TimesSquaredJob {
   }
 
   public static class VectorSummingReducer extends MapReduceBase
-      implements Reducer<NullWritable,VectorWritable,NullWritable,VectorWritable> {
+      implements Reducer<WritableComparable<?>,VectorWritable,WritableComparable<?>,VectorWritable> {
 
-    private Vector outputVector;
+    private boolean sparseOutput;
 
     @Override
     public void configure(JobConf conf) {
-      int outputDimension = conf.getInt(OUTPUT_VECTOR_DIMENSION, Integer.MAX_VALUE);
-      outputVector = conf.getBoolean(IS_SPARSE_OUTPUT, false)
-                   ? new RandomAccessSparseVector(outputDimension, 10)
-                   : new DenseVector(outputDimension);
+      sparseOutput = conf.getBoolean(IS_SPARSE_OUTPUT, false);
     }
 
     @Override
-    public void reduce(NullWritable n,
+    public void reduce(WritableComparable<?> key,
                        Iterator<VectorWritable> vectors,
-                       OutputCollector<NullWritable,VectorWritable> out,
+                       OutputCollector<WritableComparable<?>,VectorWritable> out,
                        Reporter reporter) throws IOException {
+      // the vectors may all be read into the same instance, so they are added up into a separate one
+      Vector outputVector = null;
       while (vectors.hasNext()) {
         VectorWritable v = vectors.next();
         if (v != null) {
+          if (outputVector == null) {
+            int dimension = v.get().size();
+            outputVector = sparseOutput ? new RandomAccessSparseVector(dimension, 10) : new DenseVector(dimension);
+          }
           v.get().addTo(outputVector);
         }
       }
-      out.collect(NullWritable.get(), new VectorWritable(outputVector));
+      if (outputVector != null) {
+        out.collect(key, new VectorWritable(outputVector));
+      }
     }
   }
 
@@ -62,6 +62,18 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
     initialVector.assign(1.0 / Math.sqrt(corpus.numCols()));
     return initialVector;
   }
+
+  /**
+   * Multiplies all the vectors of a block in the same pass over a {@link DistributedRowMatrix}.
+   */
+  @Override
+  protected Vector[] multiply(VectorIterable corpus, Vector[] vectors, boolean isSymmetric) {
+    if (vectors.length > 1 && corpus instanceof DistributedRowMatrix) {
+      DistributedRowMatrix matrix = (DistributedRowMatrix) corpus;
+      return isSymmetric ? matrix.times(vectors) : matrix.timesSquared(vectors);
+    }
+    return super.multiply(corpus, vectors, isSymmetric);
+  }
   
   /**
    * Factored-out LanczosSolver for the purpose of invoking it programmatically
@@ -89,6 +101,7 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
     int numCols = Integer.parseInt(parsedArgs.get("--numCols"));
     boolean isSymmetric = Boolean.parseBoolean(parsedArgs.get("--symmetric"));
     int desiredRank = Integer.parseInt(parsedArgs.get("--rank"));
+    setBlockSize(Integer.parseInt(parsedArgs.get("--blockSize")));
 
     boolean cleansvd = Boolean.parseBoolean(parsedArgs.get("--cleansvd"));
     if (cleansvd) {
@@ -239,6 +252,7 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
       addOption("rank", "r", "Desired decomposition rank (note: only roughly 1/4 to 1/3 "
           + "of these will have the top portion of the spectrum)");
       addOption("symmetric", "sym", "Is the input matrix square and symmetric?");
+      addOption("blockSize", "bs", "Number of vectors to multiply with the input matrix in one pass over it", "1");
       // options required to run cleansvd job
       addOption("cleansvd", "cl", "Run the EigenVerificationJob to clean the eigenvectors after SVD", false);
       addOption("maxError", "err", "Maximum acceptable error", "0.05");
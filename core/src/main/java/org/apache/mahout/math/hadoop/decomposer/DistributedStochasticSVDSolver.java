@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.hadoop.decomposer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorIterable;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.decomposer.stochastic.StochasticSVDSolver;
+import org.apache.mahout.math.hadoop.DistributedRowMatrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link StochasticSVDSolver} for a {@link DistributedRowMatrix}: every pass over the matrix is a single
+ * {@link org.apache.mahout.math.hadoop.TimesSquaredJob} which multiplies all the rank + oversampling vectors.  The
+ * singular vectors are written in the same format as the raw eigenvectors of {@link DistributedLanczosSolver}, so
+ * that they can be cleaned up with the {@link EigenVerificationJob}.
+ */
+public class DistributedStochasticSVDSolver extends StochasticSVDSolver {
+
+  private static final Logger log = LoggerFactory.getLogger(DistributedStochasticSVDSolver.class);
+
+  @Override
+  protected Vector[] multiply(VectorIterable corpus, Vector[] vectors) {
+    if (corpus instanceof DistributedRowMatrix) {
+      return ((DistributedRowMatrix) corpus).timesSquared(vectors);
+    }
+    return super.multiply(corpus, vectors);
+  }
+
+  /**
+   * Runs the solver and writes the right singular vectors to outputPath/{@value DistributedLanczosSolver#RAW_EIGENVECTORS}
+   */
+  public int run(Path inputPath,
+                 Path outputPath,
+                 Path outputTmpPath,
+                 int numRows,
+                 int numCols,
+                 int rank,
+                 Configuration conf) throws IOException {
+    Matrix singularVectors = new DenseMatrix(rank, numCols);
+    List<Double> singularValues = new ArrayList<Double>();
+
+    DistributedRowMatrix matrix = new DistributedRowMatrix(inputPath, outputTmpPath, numRows, numCols);
+    matrix.setConf(new Configuration(conf));
+    solve(matrix, rank, singularVectors, singularValues);
+
+    Path outputSingularVectorPath = new Path(outputPath, DistributedLanczosSolver.RAW_EIGENVECTORS);
+    log.info("Persisting {} singular vectors to: {}", singularValues.size(), outputSingularVectorPath);
+    FileSystem fs = FileSystem.get(outputSingularVectorPath.toUri(), conf);
+    SequenceFile.Writer writer =
+        new SequenceFile.Writer(fs, conf, outputSingularVectorPath, IntWritable.class, VectorWritable.class);
+    try {
+      IntWritable iw = new IntWritable();
+      VectorWritable vw = new VectorWritable();
+      for (int i = 0; i < singularValues.size(); i++) {
+        iw.set(i);
+        vw.set(singularVectors.getRow(i));
+        writer.append(iw, vw);
+      }
+    } finally {
+      writer.close();
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new DistributedStochasticSVDSolverJob(), args);
+  }
+
+  public static class DistributedStochasticSVDSolverJob extends AbstractJob {
+    @Override
+    public int run(String[] args) throws Exception {
+      addInputOption();
+      addOutputOption();
+      addOption("numRows", "nr", "Number of rows of the input matrix");
+      addOption("numCols", "nc", "Number of columns of the input matrix");
+      addOption("rank", "r", "Number of singular vectors to find");
+      addOption("oversampling", "p", "Number of random projections in addition to the rank", "10");
+      addOption("powerIterations", "q", "Number of extra passes over the input to refine the result", "1");
+
+      Map<String, String> parsedArgs = parseArguments(args);
+      if (parsedArgs == null) {
+        return -1;
+      }
+      DistributedStochasticSVDSolver solver = new DistributedStochasticSVDSolver();
+      solver.setOversampling(Integer.parseInt(parsedArgs.get("--oversampling")));
+      solver.setPowerIterations(Integer.parseInt(parsedArgs.get("--powerIterations")));
+      return solver.run(getInputPath(),
+                        getOutputPath(),
+                        new Path(parsedArgs.get("--tempDir")),
+                        Integer.parseInt(parsedArgs.get("--numRows")),
+                        Integer.parseInt(parsedArgs.get("--numCols")),
+                        Integer.parseInt(parsedArgs.get("--rank")),
+                        getConf() != null ? getConf() : new Configuration());
+    }
+  }
+
+}
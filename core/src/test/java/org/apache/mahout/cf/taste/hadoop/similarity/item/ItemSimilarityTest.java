@@ -38,6 +38,8 @@ import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.mahout.cf.taste.hadoop.EntityEntityWritable;
 import org.apache.mahout.cf.taste.hadoop.TasteHadoopUtils;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.similarity.file.MemoryMappedItemSimilarity;
 import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.VarIntWritable;
 import org.apache.mahout.math.VarLongWritable;
@@ -343,4 +345,51 @@ public final class ItemSimilarityTest extends TasteTestCase {
     assertEquals(2, linesWritten);
   }
 
+  @Test
+  public void testBuildIndexFromJobOutput() throws Exception {
+
+    File inputFile = getTestTempFile("prefsForIndex.txt");
+    File outputDir = getTestTempDir("output");
+    outputDir.delete();
+    File tmpDir = getTestTempDir("tmp");
+
+    writeLines(inputFile,
+        "2,1,1",
+        "1,2,1",
+        "3,4,1",
+        "1,3,2",
+        "2,3,1");
+
+    ItemSimilarityJob similarityJob = new ItemSimilarityJob();
+
+    Configuration conf = new Configuration();
+    conf.set("mapred.input.dir", inputFile.getAbsolutePath());
+    conf.set("mapred.output.dir", outputDir.getAbsolutePath());
+    conf.setBoolean("mapred.output.compress", false);
+
+    similarityJob.setConf(conf);
+
+    similarityJob.run(new String[] { "--tempDir", tmpDir.getAbsolutePath(), "--similarityClassname",
+       DistributedUncenteredZeroAssumingCosineVectorSimilarity.class.getName() });
+
+    File pairsIndexFile = getTestTempFile("pairs.index");
+    ItemSimilarityIndexBuilder.fromItemPairs(new Path(outputDir.getAbsolutePath()), conf, pairsIndexFile);
+    File matrixIndexFile = getTestTempFile("matrix.index");
+    ItemSimilarityIndexBuilder.fromSimilarityMatrix(new Path(new File(tmpDir, "similarityMatrix").getAbsolutePath()),
+        new Path(new File(tmpDir, "itemIDIndex").getAbsolutePath()), conf, matrixIndexFile);
+
+    for (File indexFile : new File[] { pairsIndexFile, matrixIndexFile }) {
+      MemoryMappedItemSimilarity similarity = new MemoryMappedItemSimilarity(indexFile);
+      assertEquals(0.45, similarity.itemSimilarity(1L, 3L), 0.01);
+      assertEquals(0.45, similarity.itemSimilarity(3L, 1L), 0.01);
+      assertEquals(0.89, similarity.itemSimilarity(2L, 3L), 0.01);
+      assertTrue(Double.isNaN(similarity.itemSimilarity(1L, 4L)));
+
+      LongPrimitiveIterator similarToThree = similarity.allSimilarItemIDs(3L);
+      assertEquals(1L, similarToThree.nextLong());
+      assertEquals(2L, similarToThree.nextLong());
+      assertFalse(similarToThree.hasNext());
+    }
+  }
+
 }
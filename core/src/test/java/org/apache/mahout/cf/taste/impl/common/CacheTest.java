@@ -22,7 +22,18 @@ import org.apache.mahout.cf.taste.impl.TasteTestCase;
 import org.apache.mahout.common.RandomUtils;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class CacheTest extends TasteTestCase {
 
@@ -52,6 +63,154 @@ public final class CacheTest extends TasteTestCase {
     }
   }
   
+  @Test
+  public void testNullValuesAreCached() throws TasteException {
+    CountingRetriever retriever = new CountingRetriever(null, 0L);
+    Cache<Object,Object> cache = new Cache<Object,Object>(retriever);
+    assertNull(cache.get(1));
+    assertNull(cache.get(1));
+    assertEquals(1, retriever.getCount());
+  }
+
+  @Test
+  public void testRemoveRetrievesAgain() throws TasteException {
+    CountingRetriever retriever = new CountingRetriever("value", 0L);
+    Cache<Object,Object> cache = new Cache<Object,Object>(retriever, FastMap.NO_MAX_SIZE, 4);
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value", cache.get(i));
+    }
+    cache.remove(42);
+    cache.removeKeysMatching(new Cache.MatchPredicate<Object>() {
+      @Override
+      public boolean matches(Object thing) {
+        return ((Integer) thing) < 10;
+      }
+    });
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value", cache.get(i));
+    }
+    assertEquals(111, retriever.getCount());
+  }
+
+  @Test
+  public void testConcurrentMissesRetrieveOnce() throws Exception {
+    final CountingRetriever retriever = new CountingRetriever("value", 50L);
+    final Cache<Object,Object> cache = new Cache<Object,Object>(retriever, 1000);
+    int numThreads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    Collection<Callable<Object>> lookups = new ArrayList<Callable<Object>>();
+    for (int i = 0; i < numThreads; i++) {
+      lookups.add(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          start.await();
+          return cache.get("key");
+        }
+      });
+    }
+    List<Future<Object>> results = new ArrayList<Future<Object>>();
+    for (Callable<Object> lookup : lookups) {
+      results.add(executor.submit(lookup));
+    }
+    start.countDown();
+    for (Future<Object> result : results) {
+      assertEquals("value", result.get());
+    }
+    executor.shutdown();
+    assertEquals(1, retriever.getCount());
+  }
+
+  @Test
+  public void testFailedRetrievalIsNotCached() throws TasteException {
+    Cache<Object,Object> cache = new Cache<Object,Object>(new Retriever<Object,Object>() {
+      private boolean failed;
+      @Override
+      public Object get(Object key) throws TasteException {
+        if (!failed) {
+          failed = true;
+          throw new TasteException("expected");
+        }
+        return key;
+      }
+    });
+    try {
+      cache.get(1);
+      fail();
+    } catch (TasteException te) {
+      // expected
+    }
+    assertEquals(1, cache.get(1));
+  }
+
+  @Test
+  public void testErrorDuringRetrievalReleasesWaitingThreads() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final Cache<Object,Object> cache = new Cache<Object,Object>(new Retriever<Object,Object>() {
+      @Override
+      public Object get(Object key) throws TasteException {
+        if (calls.incrementAndGet() == 1) {
+          try {
+            Thread.sleep(50L);
+          } catch (InterruptedException ie) {
+            throw new TasteException(ie);
+          }
+          throw new AssertionError("expected");
+        }
+        return key;
+      }
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<Object>> results = new ArrayList<Future<Object>>();
+    for (int i = 0; i < 2; i++) {
+      results.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return cache.get(1);
+        }
+      }));
+    }
+    for (Future<Object> result : results) {
+      try {
+        result.get(10L, TimeUnit.SECONDS);
+        // a thread which asked after the failure retrieves the value again
+        assertEquals(2, calls.get());
+      } catch (ExecutionException ee) {
+        assertTrue(ee.getCause() instanceof AssertionError);
+      }
+    }
+    executor.shutdown();
+    assertEquals(1, cache.get(1));
+  }
+
+  private static class CountingRetriever implements Retriever<Object,Object> {
+    private final Object value;
+    private final long delayMillis;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private CountingRetriever(Object value, long delayMillis) {
+      this.value = value;
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public Object get(Object key) throws TasteException {
+      count.incrementAndGet();
+      if (delayMillis > 0) {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException ie) {
+          throw new TasteException(ie);
+        }
+      }
+      return value;
+    }
+
+    int getCount() {
+      return count.get();
+    }
+  }
+
   private static class IdentityRetriever implements Retriever<Object,Object> {
     @Override
     public Object get(Object key) throws TasteException {
@@ -20,6 +20,7 @@ package org.apache.mahout.cf.taste.impl.model.file;
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
@@ -27,6 +28,7 @@ import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.Preference;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
 import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.apache.mahout.cf.taste.similarity.UserSimilarity;
@@ -181,6 +183,96 @@ public final class FileDataModelTest extends TasteTestCase {
     assertEquals(5.0f, dataModel.getPreferenceValue(123L, 456L), EPSILON);
   }
 
+  @Test
+  public void testIncrementalRefreshFromUpdateFile() throws Exception {
+    FileDataModel dataModel = new FileDataModel(testFile, false, 0L);
+    RecordingListener listener = new RecordingListener();
+    dataModel.addPreferenceChangeListener(listener);
+    PreferenceArray oldPrefs = dataModel.getPreferencesFromUser(123);
+
+    writeUpdateFile("test.1.txt", 1, "123,456,0.9", "123,789,", "456,456,", "999,111,0.3");
+    dataModel.refresh(null);
+
+    assertEquals(0.9f, dataModel.getPreferenceValue(123, 456), EPSILON);
+    assertNull(dataModel.getPreferenceValue(123, 789));
+    assertEquals(0.3f, dataModel.getPreferenceValue(999, 111), EPSILON);
+    assertEquals(5, dataModel.getNumUsers());
+    assertEquals(7, dataModel.getNumItems());
+    assertEquals(1, dataModel.getNumUsersWithPreferenceFor(456));
+    assertEquals(0.1f, oldPrefs.getValue(0), EPSILON);
+    assertEquals(3, oldPrefs.length());
+
+    assertEquals(0, listener.reloads);
+    assertEquals(3, listener.userIDs.size());
+    assertTrue(listener.userIDs.contains(123));
+    assertTrue(listener.userIDs.contains(999));
+    assertEquals(3, listener.itemIDs.size());
+    assertTrue(listener.itemIDs.contains(111));
+
+    // a fresh load of the data file and the update file must give the same data
+    assertSameData(new FileDataModel(testFile), dataModel);
+
+    writeUpdateFile("test.2.txt", 2, "999,111,");
+    dataModel.refresh(null);
+    assertEquals(4, dataModel.getNumUsers());
+    assertEquals(6, dataModel.getNumItems());
+    assertSameData(new FileDataModel(testFile), dataModel);
+    assertEquals(0, listener.reloads);
+  }
+
+  @Test
+  public void testIncrementalRefreshWithoutPreferenceValues() throws Exception {
+    File file = getTestTempFile("boolean.txt");
+    writeLines(file, "1,10", "1,5", "2,10", "3,7");
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    RecordingListener listener = new RecordingListener();
+    dataModel.addPreferenceChangeListener(listener);
+
+    File updateFile = getTestTempFile("boolean.1.txt");
+    writeLines(updateFile, "1,5,", "3,10", "4,5");
+    updateFile.setLastModified(file.lastModified() + 1000L);
+    dataModel.refresh(null);
+
+    assertNull(dataModel.getPreferenceValue(1, 5));
+    assertEquals(1.0f, dataModel.getPreferenceValue(3, 10), EPSILON);
+    assertEquals(3, dataModel.getNumUsersWithPreferenceFor(10));
+    assertEquals(1, dataModel.getNumUsersWithPreferenceFor(5));
+    assertEquals(4, dataModel.getNumUsers());
+    assertEquals(3, listener.userIDs.size());
+    assertSameData(new FileDataModel(file), dataModel);
+  }
+
+  private void writeUpdateFile(String name, int generation, String... lines) throws Exception {
+    File updateFile = getTestTempFile(name);
+    writeLines(updateFile, lines);
+    // update files must look newer than the data file and any earlier update file
+    updateFile.setLastModified(testFile.lastModified() + 1000L * generation);
+  }
+
+  private static void assertSameData(DataModel expected, DataModel actual) throws TasteException {
+    assertEquals(expected.getNumUsers(), actual.getNumUsers());
+    assertEquals(expected.getNumItems(), actual.getNumItems());
+    LongPrimitiveIterator userIDs = actual.getUserIDs();
+    LongPrimitiveIterator expectedUserIDs = expected.getUserIDs();
+    while (expectedUserIDs.hasNext()) {
+      long userID = expectedUserIDs.nextLong();
+      assertEquals(userID, userIDs.nextLong());
+      assertEquals(expected.getItemIDsFromUser(userID), actual.getItemIDsFromUser(userID));
+      LongPrimitiveIterator itemIDs = expected.getItemIDsFromUser(userID).iterator();
+      while (itemIDs.hasNext()) {
+        long itemID = itemIDs.nextLong();
+        assertEquals(expected.getPreferenceValue(userID, itemID), actual.getPreferenceValue(userID, itemID));
+      }
+    }
+    LongPrimitiveIterator itemIDs = actual.getItemIDs();
+    LongPrimitiveIterator expectedItemIDs = expected.getItemIDs();
+    while (expectedItemIDs.hasNext()) {
+      long itemID = expectedItemIDs.nextLong();
+      assertEquals(itemID, itemIDs.nextLong());
+      assertEquals(expected.getNumUsersWithPreferenceFor(itemID), actual.getNumUsersWithPreferenceFor(itemID));
+    }
+  }
+
   @Test
   public void testToString() {
     assertTrue(model.toString().length() > 0);
@@ -197,4 +289,23 @@ public final class FileDataModelTest extends TasteTestCase {
       // good
     }
   }
+
+  private static final class RecordingListener implements PreferenceChangeListener {
+
+    private final FastIDSet userIDs = new FastIDSet();
+    private final FastIDSet itemIDs = new FastIDSet();
+    private int reloads;
+
+    @Override
+    public void preferencesChanged(FastIDSet changedUserIDs, FastIDSet changedItemIDs) {
+      userIDs.addAll(changedUserIDs);
+      itemIDs.addAll(changedItemIDs);
+    }
+
+    @Override
+    public void allPreferencesChanged() {
+      reloads++;
+    }
+  }
+
 }
@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.eval.IRStatistics;
+import org.apache.mahout.cf.taste.eval.RecommenderBuilder;
+import org.apache.mahout.cf.taste.eval.RecommenderIRStatsEvaluator;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.eval.GenericRecommenderIRStatsEvaluator;
+import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.slopeone.SlopeOneRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+/** <p>Tests {@link MemoryMappedDataModel}.</p> */
+public final class MemoryMappedDataModelTest extends TasteTestCase {
+
+  private static final String[] DATA = {
+      "345,789,0.6",
+      "123,456,0.1",
+      "123,789,0.6",
+      "123,654,0.7",
+      "234,123,0.5",
+      "234,234,1.0",
+      "234,999,0.9",
+      "345,654,0.7",
+      "345,123,1.0",
+      "345,234,0.5",
+      "345,999,0.5",
+      "456,456,0.1",
+      "456,999,0.2",
+      "456,789,0.5",
+      "456,654,0.0",};
+
+  private DataModel fileModel;
+  private DataModel model;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    File testFile = getTestTempFile("test.txt");
+    writeLines(testFile, DATA);
+    fileModel = new FileDataModel(testFile);
+    File binaryFile = getTestTempFile("test.bin");
+    MemoryMappedDataModel.write(fileModel, binaryFile);
+    model = new MemoryMappedDataModel(binaryFile);
+  }
+
+  @Test
+  public void testSameContentAsFileDataModel() throws Exception {
+    assertSameContent(fileModel, model);
+  }
+
+  @Test
+  public void testConvertWithUpdateFile() throws Exception {
+    File testFile = getTestTempFile("convert.txt");
+    writeLines(testFile, DATA);
+    // changes one preference, removes the only preference of user 123 for 456, and adds a user
+    writeLines(getTestTempFile("convert.1.txt"), "345,654,0.3", "123,456,", "567,123,0.8");
+    File binaryFile = getTestTempFile("model.bin");
+    MemoryMappedDataModelConverter.convert(testFile, binaryFile);
+    DataModel convertedModel = new MemoryMappedDataModel(binaryFile);
+
+    assertSameContent(new FileDataModel(testFile), convertedModel);
+    assertEquals(0.3f, convertedModel.getPreferenceValue(345, 654), EPSILON);
+    assertNull(convertedModel.getPreferenceValue(123, 456));
+    assertEquals(5, convertedModel.getNumUsers());
+  }
+
+  @Test
+  public void testConvertBooleanPreferences() throws Exception {
+    File testFile = getTestTempFile("convertBoolean.txt");
+    writeLines(testFile, "1,10", "1,5", "2,10", "3,7", "1,5");
+    File binaryFile = getTestTempFile("booleanModel.bin");
+    MemoryMappedDataModelConverter.convert(testFile, binaryFile);
+    DataModel booleanModel = new MemoryMappedDataModel(binaryFile);
+
+    assertFalse(booleanModel.hasPreferenceValues());
+    assertEquals(3, booleanModel.getNumUsers());
+    assertEquals(3, booleanModel.getNumItems());
+    PreferenceArray prefs = booleanModel.getPreferencesFromUser(1);
+    assertEquals(2, prefs.length());
+    assertEquals(5, prefs.getItemID(0));
+    assertEquals(10, prefs.getItemID(1));
+    assertEquals(2, booleanModel.getNumUsersWithPreferenceFor(10));
+  }
+
+  @Test
+  public void testPreferencesAreSorted() throws Exception {
+    PreferenceArray prefs = model.getPreferencesFromUser(456);
+    assertEquals(4, prefs.length());
+    assertEquals(456, prefs.getItemID(0));
+    assertEquals(654, prefs.getItemID(1));
+    assertEquals(789, prefs.getItemID(2));
+    assertEquals(999, prefs.getItemID(3));
+    assertEquals(0.2f, prefs.getValue(3), EPSILON);
+    assertTrue(prefs.hasPrefWithItemID(789));
+    assertFalse(prefs.hasPrefWithItemID(123));
+  }
+
+  @Test
+  public void testSortByValue() throws Exception {
+    PreferenceArray prefs = model.getPreferencesFromUser(456);
+    prefs.sortByValueReversed();
+    assertEquals(789, prefs.getItemID(0));
+    assertEquals(0.5f, prefs.getValue(0), EPSILON);
+    assertEquals(999, prefs.getItemID(1));
+    assertEquals(456, prefs.getItemID(2));
+    assertEquals(654, prefs.getItemID(3));
+    assertEquals(0.0f, prefs.getValue(3), EPSILON);
+    assertEquals(456, prefs.getIDs()[2]);
+    prefs.sortByValue();
+    assertEquals(654, prefs.getItemID(0));
+    assertEquals(789, prefs.getItemID(3));
+    prefs.sortByItem();
+    assertEquals(456, prefs.getItemID(0));
+    assertEquals(999, prefs.getItemID(3));
+  }
+
+  @Test
+  public void testIRStatsEvaluator() throws Exception {
+    RecommenderBuilder builder = new RecommenderBuilder() {
+      @Override
+      public Recommender buildRecommender(DataModel dataModel) throws TasteException {
+        return new SlopeOneRecommender(dataModel);
+      }
+    };
+    // the evaluator sorts each user's preferences by value
+    RandomUtils.useTestSeed();
+    RecommenderIRStatsEvaluator evaluator = new GenericRecommenderIRStatsEvaluator();
+    IRStatistics expected = evaluator.evaluate(builder, null, fileModel, null, 1, 0.2, 1.0);
+    RandomUtils.useTestSeed();
+    evaluator = new GenericRecommenderIRStatsEvaluator();
+    IRStatistics actual = evaluator.evaluate(builder, null, model, null, 1, 0.2, 1.0);
+    assertEquals(expected.getPrecision(), actual.getPrecision(), EPSILON);
+    assertEquals(expected.getRecall(), actual.getRecall(), EPSILON);
+  }
+
+  @Test
+  public void testPreferenceValue() throws Exception {
+    assertEquals(0.7f, model.getPreferenceValue(345, 654), EPSILON);
+    assertNull(model.getPreferenceValue(345, 456));
+    try {
+      model.getPreferenceValue(111, 456);
+      fail("Should throw NoSuchUserException");
+    } catch (NoSuchUserException nsue) {
+      // good
+    }
+  }
+
+  @Test
+  public void testNumUsersPreferring() throws Exception {
+    assertEquals(2, model.getNumUsersWithPreferenceFor(456));
+    assertEquals(0, model.getNumUsersWithPreferenceFor(111));
+    assertEquals(0, model.getNumUsersWithPreferenceFor(111, 456));
+    assertEquals(2, model.getNumUsersWithPreferenceFor(123, 234));
+    assertEquals(3, model.getNumUsersWithPreferenceFor(654, 789));
+  }
+
+  @Test
+  public void testSameRecommendations() throws Exception {
+    for (long userID : new long[] { 123, 234, 345, 456 }) {
+      List<RecommendedItem> expected = recommender(fileModel).recommend(userID, 3);
+      List<RecommendedItem> actual = recommender(model).recommend(userID, 3);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getItemID(), actual.get(i).getItemID());
+        assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void testBooleanPreferences() throws Exception {
+    File testFile = getTestTempFile("boolean.txt");
+    writeLines(testFile, "1,10", "1,5", "2,10", "3,7");
+    File binaryFile = getTestTempFile("boolean.bin");
+    MemoryMappedDataModel.write(new FileDataModel(testFile), binaryFile);
+    DataModel booleanModel = new MemoryMappedDataModel(binaryFile);
+
+    assertFalse(booleanModel.hasPreferenceValues());
+    PreferenceArray prefs = booleanModel.getPreferencesFromUser(1);
+    assertEquals(2, prefs.length());
+    assertEquals(5, prefs.getItemID(0));
+    assertEquals(10, prefs.getItemID(1));
+    assertEquals(1.0f, prefs.getValue(0), EPSILON);
+    assertEquals(2, booleanModel.getNumUsersWithPreferenceFor(10));
+  }
+
+  @Test
+  public void testReadOnly() throws Exception {
+    PreferenceArray prefs = model.getPreferencesFromUser(123);
+    try {
+      prefs.setValue(0, 1.0f);
+      fail("Should throw UnsupportedOperationException");
+    } catch (UnsupportedOperationException uoe) {
+      // good
+    }
+    PreferenceArray copy = prefs.clone();
+    copy.setValue(0, 1.0f);
+    assertEquals(1.0f, copy.getValue(0), EPSILON);
+    assertEquals(0.1f, prefs.getValue(0), EPSILON);
+  }
+
+  private static Recommender recommender(DataModel dataModel) throws Exception {
+    UserSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
+    return new GenericUserBasedRecommender(dataModel,
+        new NearestNUserNeighborhood(3, similarity, dataModel), similarity);
+  }
+
+  private static void assertSameContent(DataModel fileModel, DataModel model) throws Exception {
+    assertEquals(fileModel.getNumUsers(), model.getNumUsers());
+    assertEquals(fileModel.getNumItems(), model.getNumItems());
+    assertEquals(fileModel.getMinPreference(), model.getMinPreference(), EPSILON);
+    assertEquals(fileModel.getMaxPreference(), model.getMaxPreference(), EPSILON);
+
+    LongPrimitiveIterator userIDs = model.getUserIDs();
+    LongPrimitiveIterator expectedUserIDs = fileModel.getUserIDs();
+    while (expectedUserIDs.hasNext()) {
+      long userID = expectedUserIDs.nextLong();
+      assertEquals(userID, userIDs.nextLong());
+      assertSamePreferences(fileModel.getPreferencesFromUser(userID), model.getPreferencesFromUser(userID));
+      assertEquals(fileModel.getItemIDsFromUser(userID), model.getItemIDsFromUser(userID));
+    }
+    assertFalse(userIDs.hasNext());
+
+    LongPrimitiveIterator itemIDs = model.getItemIDs();
+    LongPrimitiveIterator expectedItemIDs = fileModel.getItemIDs();
+    while (expectedItemIDs.hasNext()) {
+      long itemID = expectedItemIDs.nextLong();
+      assertEquals(itemID, itemIDs.nextLong());
+      assertSamePreferences(fileModel.getPreferencesForItem(itemID), model.getPreferencesForItem(itemID));
+    }
+    assertFalse(itemIDs.hasNext());
+  }
+
+  private static void assertSamePreferences(PreferenceArray expected, PreferenceArray actual) {
+    assertEquals(expected.length(), actual.length());
+    for (int i = 0; i < expected.length(); i++) {
+      assertEquals(expected.getUserID(i), actual.getUserID(i));
+      assertEquals(expected.getItemID(i), actual.getItemID(i));
+      assertEquals(expected.getValue(i), actual.getValue(i), EPSILON);
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ package org.apache.mahout.cf.taste.impl.recommender;
 
 import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.junit.Test;
@@ -75,4 +76,35 @@ public final class CachingRecommenderTest extends TasteTestCase {
     assertEquals(11, recommendCount.intValue());
   }
 
+  @Test
+  public void testChangesEvictChangedUsersRightAway() throws Exception {
+    MutableInt recommendCount = new MutableInt();
+    CachingRecommender cachingRecommender = new CachingRecommender(new MockRecommender(recommendCount));
+    cachingRecommender.recommend(1, 1);
+    cachingRecommender.recommend(2, 1);
+    cachingRecommender.estimatePreference(2, 5);
+    cachingRecommender.estimatePreference(2, 6);
+    assertEquals(4, recommendCount.intValue());
+
+    FastIDSet changedUserIDs = new FastIDSet();
+    changedUserIDs.add(1);
+    FastIDSet changedItemIDs = new FastIDSet();
+    changedItemIDs.add(5);
+    cachingRecommender.preferencesChanged(changedUserIDs, changedItemIDs);
+
+    cachingRecommender.recommend(2, 1);
+    cachingRecommender.estimatePreference(2, 6);
+    assertEquals(4, recommendCount.intValue());
+    cachingRecommender.recommend(1, 1);
+    assertEquals(5, recommendCount.intValue());
+    cachingRecommender.estimatePreference(2, 5);
+    assertEquals(6, recommendCount.intValue());
+
+    // other users' recommendations may depend on the changes as well, so a refresh drops everything
+    cachingRecommender.refresh(null);
+    cachingRecommender.recommend(2, 1);
+    cachingRecommender.estimatePreference(2, 6);
+    assertEquals(8, recommendCount.intValue());
+  }
+
 }
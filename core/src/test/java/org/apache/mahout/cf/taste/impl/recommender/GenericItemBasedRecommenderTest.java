@@ -17,18 +17,27 @@
 
 package org.apache.mahout.cf.taste.impl.recommender;
 
+import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.recommender.ItemBasedRecommender;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItemsSink;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.common.RandomUtils;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /** <p>Tests {@link GenericItemBasedRecommender}.</p> */
 public final class GenericItemBasedRecommenderTest extends TasteTestCase {
@@ -209,6 +218,71 @@ public final class GenericItemBasedRecommenderTest extends TasteTestCase {
     assertEquals(0.2f, third.getValue(), EPSILON);
   }
 
+  @Test
+  public void testBatchRecommendMatchesSingleUserRecommend() throws Exception {
+    Random random = RandomUtils.getRandom();
+    int numUsers = 250;
+    long[] userIDs = new long[numUsers];
+    Double[][] prefValues = new Double[numUsers][20];
+    for (int i = 0; i < numUsers; i++) {
+      userIDs[i] = i;
+      for (int j = 0; j < prefValues[i].length; j++) {
+        if (random.nextDouble() < 0.3) {
+          prefValues[i][j] = (double) (1 + random.nextInt(5));
+        }
+      }
+    }
+    DataModel dataModel = getDataModel(userIDs, prefValues);
+    GenericItemBasedRecommender recommender =
+        new GenericItemBasedRecommender(dataModel, new PearsonCorrelationSimilarity(dataModel));
+
+    final Map<Long,List<RecommendedItem>> batchRecommendations =
+        Collections.synchronizedMap(new HashMap<Long,List<RecommendedItem>>());
+    // a cache much smaller than the number of item pairs, so that similarities are evicted during the batch
+    long numRecommended = recommender.recommend(dataModel.getUserIDs(), 3, null, 4, 20, new RecommendedItemsSink() {
+      @Override
+      public void write(long userID, List<RecommendedItem> recommendedItems) {
+        assertNull(batchRecommendations.put(userID, recommendedItems));
+      }
+    });
+
+    assertEquals(dataModel.getNumUsers(), numRecommended);
+    assertEquals(dataModel.getNumUsers(), batchRecommendations.size());
+    LongPrimitiveIterator it = dataModel.getUserIDs();
+    while (it.hasNext()) {
+      long userID = it.nextLong();
+      assertEquals(recommender.recommend(userID, 3), batchRecommendations.get(userID));
+    }
+  }
+
+  @Test
+  public void testRecommendUsesOverriddenEstimate() throws Exception {
+    DataModel dataModel = getDataModel();
+    ItemSimilarity similarity = ((GenericItemBasedRecommender) buildRecommender()).getSimilarity();
+    Recommender recommender = new GenericItemBasedRecommender(dataModel, similarity) {
+      @Override
+      protected float doEstimatePreference(long userID, long itemID) {
+        return itemID;
+      }
+    };
+    List<RecommendedItem> recommended = recommender.recommend(1, 1);
+    assertEquals(1, recommended.size());
+    assertEquals(2, recommended.get(0).getItemID());
+    assertEquals(2.0f, recommended.get(0).getValue(), EPSILON);
+  }
+
+  @Test(expected = TasteException.class)
+  public void testBatchRecommendStopsOnSinkFailure() throws Exception {
+    ItemBasedRecommender recommender = buildRecommender();
+    ((GenericItemBasedRecommender) recommender).recommend(recommender.getDataModel().getUserIDs(), 1, null, 2,
+        new RecommendedItemsSink() {
+          @Override
+          public void write(long userID, List<RecommendedItem> recommendedItems) throws TasteException {
+            throw new TasteException("sink failed");
+          }
+        });
+  }
+
   private static ItemBasedRecommender buildRecommender() {
     DataModel dataModel = getDataModel();
     Collection<GenericItemSimilarity.ItemItemSimilarity> similarities =
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link TopItemsHeap}.</p> */
+public final class TopItemsHeapTest extends TasteTestCase {
+
+  @Test
+  public void testKeepsHighestValues() {
+    TopItemsHeap heap = new TopItemsHeap(3);
+    assertTrue(heap.isEmpty());
+    assertTrue(heap.offer(1, 0.5));
+    assertTrue(heap.offer(2, 0.1));
+    assertTrue(heap.offer(3, 0.9));
+    assertTrue(heap.offer(4, 0.7));
+    assertFalse(heap.offer(5, 0.2));
+    assertEquals(3, heap.size());
+
+    List<RecommendedItem> items = heap.toRecommendedItems();
+    assertEquals(3, items.size());
+    assertEquals(3, items.get(0).getItemID());
+    assertEquals(0.9f, items.get(0).getValue(), EPSILON);
+    assertEquals(4, items.get(1).getItemID());
+    assertEquals(1, items.get(2).getItemID());
+    assertTrue(heap.isEmpty());
+  }
+
+  @Test
+  public void testEmpty() {
+    TopItemsHeap heap = new TopItemsHeap(2);
+    assertTrue(heap.toRecommendedItems().isEmpty());
+    assertEquals(0, heap.toIDs().length);
+  }
+
+  @Test
+  public void testMatchesSortingAndCanBeReused() {
+    Random random = RandomUtils.getRandom();
+    TopItemsHeap heap = new TopItemsHeap(10);
+    for (int round = 0; round < 20; round++) {
+      int count = random.nextInt(50);
+      double[] values = new double[count];
+      heap.clear();
+      for (int i = 0; i < count; i++) {
+        values[i] = random.nextDouble();
+        heap.offer(i, values[i]);
+      }
+      double[] sorted = values.clone();
+      Arrays.sort(sorted);
+      long[] ids = heap.toIDs();
+      assertEquals(Math.min(10, count), ids.length);
+      for (int i = 0; i < ids.length; i++) {
+        assertEquals(sorted[count - 1 - i], values[(int) ids[i]], 0.0);
+      }
+    }
+  }
+
+}
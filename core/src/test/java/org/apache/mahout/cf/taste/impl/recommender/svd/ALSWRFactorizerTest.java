@@ -28,12 +28,16 @@ import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.Preference;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 public class ALSWRFactorizerTest extends TasteTestCase {
 
@@ -146,4 +150,37 @@ public class ALSWRFactorizerTest extends TasteTestCase {
     double rmse = Math.sqrt(avg.getAverage());
     assertTrue(rmse < 0.2d);
   }
+
+  @Test
+  public void multithreadedFactorizationMatchesSequential() throws Exception {
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    Random random = RandomUtils.getRandom();
+    for (long userID = 1; userID <= 100; userID++) {
+      List<Preference> prefs = new ArrayList<Preference>();
+      for (long itemID = 1; itemID <= 30; itemID++) {
+        if (random.nextDouble() < 0.3) {
+          prefs.add(new GenericPreference(userID, itemID, 1 + random.nextInt(5)));
+        }
+      }
+      prefs.add(new GenericPreference(userID, 1 + userID % 30, 3f));
+      userData.put(userID, new GenericUserPreferenceArray(prefs));
+    }
+    DataModel largerDataModel = new GenericDataModel(userData);
+
+    RandomUtils.useTestSeed();
+    Factorization sequential = new ALSWRFactorizer(largerDataModel, 5, 0.065, 3).factorize();
+    RandomUtils.useTestSeed();
+    Factorization multithreaded = new ALSWRFactorizer(largerDataModel, 5, 0.065, 3, 4).factorize();
+
+    LongPrimitiveIterator userIDs = largerDataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      assertTrue(Arrays.equals(sequential.getUserFeatures(userID), multithreaded.getUserFeatures(userID)));
+    }
+    LongPrimitiveIterator itemIDs = largerDataModel.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      assertTrue(Arrays.equals(sequential.getItemFeatures(itemID), multithreaded.getItemFeatures(itemID)));
+    }
+  }
 }
@@ -18,10 +18,14 @@
 package org.apache.mahout.cf.taste.impl.recommender.svd;
 
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.recommender.AllUnknownItemsCandidateItemsStrategy;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItemsSink;
 import org.easymock.classextension.EasyMock;
 import org.junit.Test;
 
@@ -63,7 +67,6 @@ public class SVDRecommenderTest extends TasteTestCase {
     EasyMock.expect(candidateItemsStrategy.getCandidateItems(1L, dataModel)).andReturn(candidateItems);
     EasyMock.expect(factorization.getUserFeatures(1L)).andReturn(new double[] { 0.4, 2 });
     EasyMock.expect(factorization.getItemFeatures(5L)).andReturn(new double[] { 1, 0.3 });
-    EasyMock.expect(factorization.getUserFeatures(1L)).andReturn(new double[] { 0.4, 2 });
     EasyMock.expect(factorization.getItemFeatures(3L)).andReturn(new double[] { 2, 0.6 });
 
     EasyMock.replay(dataModel, candidateItemsStrategy, factorizer, factorization);
@@ -79,4 +82,28 @@ public class SVDRecommenderTest extends TasteTestCase {
 
     EasyMock.verify(dataModel, candidateItemsStrategy, factorizer, factorization);
   }
+
+  @Test
+  public void batchRecommendMatchesSingleUserRecommend() throws Exception {
+    DataModel dataModel = getDataModel();
+    SVDRecommender svdRecommender = new SVDRecommender(dataModel, new ALSWRFactorizer(dataModel, 2, 0.065, 5),
+        new AllUnknownItemsCandidateItemsStrategy());
+
+    final FastByIDMap<List<RecommendedItem>> batchRecommendations = new FastByIDMap<List<RecommendedItem>>();
+    long numRecommended = svdRecommender.recommend(dataModel.getUserIDs(), 2, null, 2, new RecommendedItemsSink() {
+      @Override
+      public void write(long userID, List<RecommendedItem> recommendedItems) {
+        synchronized (batchRecommendations) {
+          batchRecommendations.put(userID, recommendedItems);
+        }
+      }
+    });
+
+    assertEquals(dataModel.getNumUsers(), numRecommended);
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      assertEquals(svdRecommender.recommend(userID, 2), batchRecommendations.get(userID));
+    }
+  }
 }
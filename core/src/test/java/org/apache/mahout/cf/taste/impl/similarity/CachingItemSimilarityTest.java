@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity;
+
+import java.util.Collection;
+
+import org.apache.commons.lang.mutable.MutableInt;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.junit.Test;
+
+/** <p>Tests {@link CachingItemSimilarity}.</p> */
+public final class CachingItemSimilarityTest extends TasteTestCase {
+
+  @Test
+  public void testRefreshClearsCache() throws Exception {
+    MutableInt computations = new MutableInt();
+    CachingItemSimilarity similarity = new CachingItemSimilarity(new CountingItemSimilarity(computations), 100);
+    similarity.itemSimilarity(1, 2);
+    similarity.itemSimilarity(2, 1);
+    assertEquals(1, computations.intValue());
+    similarity.refresh(null);
+    similarity.itemSimilarity(1, 2);
+    assertEquals(2, computations.intValue());
+  }
+
+  @Test
+  public void testChangesDuringRefreshEvictChangedItemsOnly() throws Exception {
+    MutableInt computations = new MutableInt();
+    CountingItemSimilarity counting = new CountingItemSimilarity(computations);
+    CachingItemSimilarity similarity = new CachingItemSimilarity(counting, 100);
+    similarity.itemSimilarity(1, 2);
+    similarity.itemSimilarity(3, 4);
+    assertEquals(2, computations.intValue());
+
+    // like a DataModel which applies changes while the cache refreshes its dependencies
+    FastIDSet changedItemIDs = new FastIDSet();
+    changedItemIDs.add(2);
+    counting.reportOnRefresh(similarity, changedItemIDs);
+    similarity.refresh(null);
+    similarity.itemSimilarity(3, 4);
+    assertEquals(2, computations.intValue());
+    similarity.itemSimilarity(1, 2);
+    assertEquals(3, computations.intValue());
+
+    // without changes reported, a refresh clears everything again
+    counting.reportOnRefresh(null, null);
+    similarity.refresh(null);
+    similarity.itemSimilarity(3, 4);
+    assertEquals(4, computations.intValue());
+  }
+
+  @Test
+  public void testChangesOutsideRefreshDoNotLimitTheNextRefresh() throws Exception {
+    MutableInt computations = new MutableInt();
+    CachingItemSimilarity similarity = new CachingItemSimilarity(new CountingItemSimilarity(computations), 100);
+    similarity.itemSimilarity(1, 2);
+    similarity.itemSimilarity(3, 4);
+    assertEquals(2, computations.intValue());
+
+    FastIDSet changedItemIDs = new FastIDSet();
+    changedItemIDs.add(2);
+    similarity.preferencesChanged(new FastIDSet(), changedItemIDs);
+    similarity.itemSimilarity(3, 4);
+    assertEquals(2, computations.intValue());
+    similarity.itemSimilarity(1, 2);
+    assertEquals(3, computations.intValue());
+
+    // the refresh may have other causes than the reported changes
+    similarity.refresh(null);
+    similarity.itemSimilarity(3, 4);
+    assertEquals(4, computations.intValue());
+  }
+
+  private static final class CountingItemSimilarity implements ItemSimilarity {
+
+    private final MutableInt computations;
+    private PreferenceChangeListener listener;
+    private FastIDSet changedItemIDs;
+
+    private CountingItemSimilarity(MutableInt computations) {
+      this.computations = computations;
+    }
+
+    void reportOnRefresh(PreferenceChangeListener listener, FastIDSet changedItemIDs) {
+      this.listener = listener;
+      this.changedItemIDs = changedItemIDs;
+    }
+
+    @Override
+    public double itemSimilarity(long itemID1, long itemID2) {
+      computations.increment();
+      return 1.0 / (itemID1 + itemID2);
+    }
+
+    @Override
+    public double[] itemSimilarities(long itemID1, long[] itemID2s) {
+      double[] result = new double[itemID2s.length];
+      for (int i = 0; i < itemID2s.length; i++) {
+        result[i] = itemSimilarity(itemID1, itemID2s[i]);
+      }
+      return result;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+      if (listener != null) {
+        listener.preferencesChanged(new FastIDSet(), changedItemIDs);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity.ItemItemSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link MemoryMappedItemSimilarity}.</p> */
+public final class MemoryMappedItemSimilarityTest extends TasteTestCase {
+
+  @Test
+  public void testLookups() throws Exception {
+    File indexFile = getTestTempFile("similarities.index");
+    MemoryMappedItemSimilarity.Builder builder = new MemoryMappedItemSimilarity.Builder();
+    builder.add(1L, 5L, 0.125);
+    builder.add(7L, 1L, 0.5);
+    builder.add(1L, 1L, 0.3);
+    builder.add(7L, 8L, Double.NaN);
+    builder.write(indexFile);
+    MemoryMappedItemSimilarity similarity = new MemoryMappedItemSimilarity(indexFile);
+
+    assertEquals(3, similarity.getNumItems());
+    assertEquals(4L, similarity.getNumSimilarities());
+    assertEquals(0.125, similarity.itemSimilarity(1L, 5L), EPSILON);
+    assertEquals(0.125, similarity.itemSimilarity(5L, 1L), EPSILON);
+    assertEquals(0.5, similarity.itemSimilarity(1L, 7L), EPSILON);
+    assertEquals(1.0, similarity.itemSimilarity(1L, 1L), EPSILON);
+    assertTrue(Double.isNaN(similarity.itemSimilarity(7L, 8L)));
+    assertTrue(Double.isNaN(similarity.itemSimilarity(2L, 5L)));
+
+    double[] valuesForOne = similarity.itemSimilarities(1L, new long[] { 5L, 7L, 8L });
+    assertEquals(3, valuesForOne.length);
+    assertEquals(0.125, valuesForOne[0], EPSILON);
+    assertEquals(0.5, valuesForOne[1], EPSILON);
+    assertTrue(Double.isNaN(valuesForOne[2]));
+  }
+
+  @Test
+  public void testAllSimilarItemIDs() throws Exception {
+    File indexFile = getTestTempFile("similarities.index");
+    MemoryMappedItemSimilarity.Builder builder = new MemoryMappedItemSimilarity.Builder();
+    builder.add(1L, 9L, 0.1);
+    builder.add(1L, 5L, 0.2);
+    builder.add(3L, 1L, 0.3);
+    builder.write(indexFile);
+    MemoryMappedItemSimilarity similarity = new MemoryMappedItemSimilarity(indexFile);
+
+    LongPrimitiveIterator similarToOne = similarity.allSimilarItemIDs(1L);
+    assertEquals(3L, similarToOne.nextLong());
+    assertEquals(5L, similarToOne.peek());
+    assertEquals(5L, similarToOne.nextLong());
+    assertEquals(9L, similarToOne.nextLong());
+    assertFalse(similarToOne.hasNext());
+    assertFalse(similarity.allSimilarItemIDs(2L).hasNext());
+  }
+
+  @Test
+  public void testLastDuplicateWins() throws Exception {
+    File indexFile = getTestTempFile("similarities.index");
+    MemoryMappedItemSimilarity.Builder builder = new MemoryMappedItemSimilarity.Builder();
+    builder.add(1L, 2L, 0.1);
+    builder.add(2L, 1L, 0.7);
+    builder.write(indexFile);
+    MemoryMappedItemSimilarity similarity = new MemoryMappedItemSimilarity(indexFile);
+
+    assertEquals(1L, similarity.getNumSimilarities() / 2);
+    assertEquals(0.7, similarity.itemSimilarity(1L, 2L), EPSILON);
+    assertEquals(0.7, similarity.itemSimilarity(2L, 1L), EPSILON);
+  }
+
+  @Test
+  public void testSameAsGenericItemSimilarity() throws Exception {
+    Random random = RandomUtils.getRandom();
+    List<ItemItemSimilarity> similarities = new ArrayList<ItemItemSimilarity>();
+    // enough similarities that each section of the index spans several write buffers
+    for (long itemID1 = 0; itemID1 < 300; itemID1++) {
+      for (long itemID2 = itemID1 + 1; itemID2 < 300; itemID2++) {
+        if (random.nextDouble() < 0.2) {
+          similarities.add(new ItemItemSimilarity(itemID1, itemID2, (float) (2.0 * random.nextDouble() - 1.0)));
+        }
+      }
+    }
+    File indexFile = getTestTempFile("similarities.index");
+    MemoryMappedItemSimilarity.write(similarities, indexFile);
+    MemoryMappedItemSimilarity similarity = new MemoryMappedItemSimilarity(indexFile);
+    GenericItemSimilarity expected = new GenericItemSimilarity(similarities);
+
+    for (long itemID1 = 0; itemID1 < 302; itemID1++) {
+      for (long itemID2 = 0; itemID2 < 302; itemID2++) {
+        assertEquals(expected.itemSimilarity(itemID1, itemID2), similarity.itemSimilarity(itemID1, itemID2), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testConvertFile() throws Exception {
+    File textFile = getTestTempFile("similarities.txt");
+    writeLines(textFile, "1,5,0.125", "1,7,0.5");
+    File indexFile = getTestTempFile("similarities.index");
+    MemoryMappedItemSimilarity.main(new String[] { textFile.getAbsolutePath(), indexFile.getAbsolutePath() });
+    MemoryMappedItemSimilarity similarity = new MemoryMappedItemSimilarity(indexFile);
+
+    assertEquals(0.125, similarity.itemSimilarity(5L, 1L), EPSILON);
+    assertEquals(0.5, similarity.itemSimilarity(7L, 1L), EPSILON);
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sgd;
+
+import org.apache.mahout.classifier.evaluation.Auc;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+import java.util.Random;
+
+public final class HogwildTrainerTest extends MahoutTestCase {
+
+  private static final int NUM_FEATURES = 1000;
+  private static final int FEATURES_PER_EXAMPLE = 20;
+
+  @Test
+  public void testParallelTrainingLearnsAsWellAsSequential() {
+    Random random = RandomUtils.getRandom();
+    Vector weights = new DenseVector(NUM_FEATURES);
+    for (int j = 0; j < NUM_FEATURES; j++) {
+      weights.setQuick(j, random.nextGaussian());
+    }
+    Vector[] instances = new Vector[20000];
+    int[] targets = new int[instances.length];
+    for (int n = 0; n < instances.length; n++) {
+      instances[n] = randomInstance(random);
+      targets[n] = random.nextDouble() < link(weights.dot(instances[n])) ? 1 : 0;
+    }
+
+    OnlineLogisticRegression sequential = newModel();
+    for (int n = 0; n < 15000; n++) {
+      sequential.train(targets[n], instances[n]);
+    }
+    sequential.close();
+
+    HogwildTrainer trainer = new HogwildTrainer(newModel(), 4, 50);
+    for (int n = 0; n < 15000; n++) {
+      trainer.train(targets[n], instances[n]);
+    }
+    trainer.close();
+    assertEquals(15000, trainer.getNumExamples());
+
+    double sequentialAuc = auc(sequential, instances, targets);
+    double parallelAuc = auc(trainer.getModel(), instances, targets);
+    assertTrue(sequentialAuc > 0.7);
+    assertEquals(sequentialAuc, parallelAuc, 0.03);
+    assertTrue(trainer.getModel().validModel());
+  }
+
+  @Test
+  public void testTrainingContinuesAfterClose() {
+    Random random = RandomUtils.getRandom();
+    HogwildTrainer trainer = new HogwildTrainer(newModel(), 2, 7);
+    for (int n = 0; n < 30; n++) {
+      trainer.train(n % 2, randomInstance(random));
+    }
+    trainer.close();
+    assertEquals(30, trainer.getNumExamples());
+    for (int n = 0; n < 10; n++) {
+      trainer.train(n % 2, randomInstance(random));
+    }
+    trainer.close();
+    assertEquals(40, trainer.getNumExamples());
+    assertTrue(trainer.getModel().isSealed());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFailureIsReported() {
+    Random random = RandomUtils.getRandom();
+    HogwildTrainer trainer = new HogwildTrainer(newModel(), 2, 1);
+    trainer.train(0, randomInstance(random));
+    // there are only two categories
+    trainer.train(5, randomInstance(random));
+    for (int n = 0; n < 10; n++) {
+      trainer.train(0, randomInstance(random));
+    }
+    trainer.close();
+  }
+
+  private static OnlineLogisticRegression newModel() {
+    return new OnlineLogisticRegression(2, NUM_FEATURES, new L1()).lambda(1.0e-5).learningRate(1);
+  }
+
+  private static Vector randomInstance(Random random) {
+    Vector instance = new RandomAccessSparseVector(NUM_FEATURES, FEATURES_PER_EXAMPLE);
+    for (int k = 0; k < FEATURES_PER_EXAMPLE; k++) {
+      instance.setQuick(random.nextInt(NUM_FEATURES), 1);
+    }
+    return instance;
+  }
+
+  private static double link(double r) {
+    return 1 / (1 + Math.exp(-r));
+  }
+
+  private static double auc(AbstractOnlineLogisticRegression model, Vector[] instances, int[] targets) {
+    Auc auc = new Auc();
+    for (int n = 15000; n < instances.length; n++) {
+      auc.add(targets[n], model.classifyScalar(instances[n]));
+    }
+    return auc.auc();
+  }
+
+}
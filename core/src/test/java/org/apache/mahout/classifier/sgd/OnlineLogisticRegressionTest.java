@@ -165,6 +165,41 @@ public final class OnlineLogisticRegressionTest extends MahoutTestCase {
     test(input, target, lr);
   }
 
+  @Test
+  public void testTrainMatchesDefaultGradient() throws Exception {
+    Vector target = readStandardData();
+    // large features push the scores past 40, where link(Vector) shifts them by their maximum
+    Matrix scaled = input.times(100);
+    for (int numCategories : new int[] {2, 3}) {
+      OnlineLogisticRegression fast = new OnlineLogisticRegression(numCategories, 8, new L1()).learningRate(50);
+      OnlineLogisticRegression viaClassify = new OnlineLogisticRegression(numCategories, 8, new L1()).learningRate(50);
+      viaClassify.setGradient(new Gradient() {
+        @Override
+        public Vector apply(String groupKey, int actual, Vector instance, AbstractVectorClassifier classifier) {
+          return new DefaultGradient().apply(groupKey, actual, instance, classifier);
+        }
+      });
+      train(scaled, target, fast);
+      train(scaled, target, viaClassify);
+      assertEquals(0, fast.getBeta().minus(viaClassify.getBeta()).aggregate(Functions.MAX, Functions.ABS), 1.0e-9);
+    }
+  }
+
+  @Test
+  public void testTrainUsesOverriddenLink() throws Exception {
+    Vector target = readStandardData();
+    final int[] linkCalls = new int[1];
+    OnlineLogisticRegression lr = new OnlineLogisticRegression(2, 8, new L1()) {
+      @Override
+      public Vector link(Vector v) {
+        linkCalls[0]++;
+        return super.link(v);
+      }
+    };
+    train(input, target, lr);
+    assertEquals(60, linkCalls[0]);
+  }
+
   private Vector readStandardData() throws IOException {
     // 60 test samples.  First column is constant.  Second and third are normally distributed from
     // either N([2,2], 1) (rows 0...29) or N([-2,-2], 1) (rows 30...59).  The first 30 rows have a
@@ -19,8 +19,10 @@ package org.apache.mahout.clustering.canopy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.Map.Entry;
 
@@ -40,11 +42,14 @@ import org.apache.mahout.clustering.ClusteringTestUtils;
 import org.apache.mahout.clustering.WeightedVectorWritable;
 import org.apache.mahout.common.DummyRecordWriter;
 import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.common.commandline.DefaultOptionCreator;
 import org.apache.mahout.common.distance.DistanceMeasure;
 import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
 import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
 import org.apache.mahout.common.distance.UserDefinedDistanceMeasure;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
@@ -588,4 +593,41 @@ public final class TestCanopyCreation extends MahoutTestCase {
     assertFalse("more to come", reader.next(key, value));
     reader.close();
   }
+
+  /**
+   * Story: The canopies found through the spatial index of a metric are the same as those found by a linear
+   * scan, here with the squared euclidean distance, which is not a metric, and squared thresholds.
+   */
+  @Test
+  public void testIndexedCanopiesMatchLinearScan() throws Exception {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = new ArrayList<Vector>();
+    for (int i = 0; i < 2000; i++) {
+      points.add(new DenseVector(new double[] {random.nextDouble() * 20, random.nextDouble() * 20}));
+    }
+    CanopyClusterer indexed = new CanopyClusterer(euclideanDistanceMeasure, 3.1, 2.1);
+    CanopyClusterer scanned = new CanopyClusterer(new SquaredEuclideanDistanceMeasure(), 3.1 * 3.1, 2.1 * 2.1);
+    Collection<Canopy> expected = new ArrayList<Canopy>();
+    Collection<Canopy> actual = new ArrayList<Canopy>();
+    for (Vector point : points) {
+      scanned.addPointToCanopies(point, expected);
+      indexed.addPointToCanopies(point, actual);
+    }
+    assertEquals("number of canopies", expected.size(), actual.size());
+    CanopyClusterer.updateCentroids(expected);
+    CanopyClusterer.updateCentroids(actual);
+    Iterator<Canopy> actualIterator = actual.iterator();
+    for (Canopy canopy : expected) {
+      Canopy actualCanopy = actualIterator.next();
+      assertEquals("canopy id", canopy.getId(), actualCanopy.getId());
+      assertEquals("number of points", canopy.getNumPoints(), actualCanopy.getNumPoints());
+      assertEquals("center", 0.0, canopy.getCenter().getDistanceSquared(actualCanopy.getCenter()), EPSILON);
+    }
+    // the centers have moved, so the index must be rebuilt
+    indexed.invalidateIndex();
+    for (Vector point : points) {
+      assertEquals("closest canopy",
+                   scanned.findClosestCanopy(point, expected).getId(), indexed.findClosestCanopy(point, actual).getId());
+    }
+  }
 }
@@ -253,6 +253,39 @@ public final class TestMapReduce extends MahoutTestCase {
     printResults(clusters, 0);
   }
 
+  /** Test the Driver in sequential execution mode with multiple threads assigning the points */
+  @Test
+  public void testDriverIterationsSeqMultiThreaded() throws Exception {
+    generateSamples(100, 0, 0, 0.5);
+    generateSamples(100, 2, 0, 0.2);
+    generateSamples(100, 0, 2, 0.3);
+    generateSamples(100, 2, 2, 1);
+    ClusteringTestUtils.writePointsToFile(sampleData, getTestTempFilePath("input/data.txt"), fs, conf);
+    Integer maxIterations = 5;
+    AbstractVectorModelDistribution modelDistribution = new SampledNormalDistribution(new VectorWritable(new DenseVector(2)));
+    String[] args = { optKey(DefaultOptionCreator.INPUT_OPTION), getTestTempDirPath("input").toString(),
+        optKey(DefaultOptionCreator.OUTPUT_OPTION), getTestTempDirPath("output").toString(),
+        optKey(DirichletDriver.MODEL_DISTRIBUTION_CLASS_OPTION), modelDistribution.getClass().getName(),
+        optKey(DirichletDriver.MODEL_PROTOTYPE_CLASS_OPTION), modelDistribution.getModelPrototype().get().getClass().getName(),
+        optKey(DefaultOptionCreator.NUM_CLUSTERS_OPTION), "20", optKey(DefaultOptionCreator.MAX_ITERATIONS_OPTION),
+        maxIterations.toString(), optKey(DirichletDriver.ALPHA_OPTION), "1.0", optKey(DefaultOptionCreator.OVERWRITE_OPTION),
+        optKey(DefaultOptionCreator.METHOD_OPTION), DefaultOptionCreator.SEQUENTIAL_METHOD, "--numThreads", "3" };
+    new DirichletDriver().run(args);
+    // every iteration assigns all the points, and the total counts add up over the iterations
+    Configuration conf = new Configuration();
+    conf.set(DirichletDriver.MODEL_DISTRIBUTION_KEY, modelDistribution.asJsonString());
+    conf.set(DirichletDriver.NUM_CLUSTERS_KEY, "20");
+    conf.set(DirichletDriver.ALPHA_0_KEY, "1.0");
+    for (int i = 1; i <= maxIterations; i++) {
+      conf.set(DirichletDriver.STATE_IN_KEY, new Path(getTestTempDirPath("output"), "clusters-" + i).toString());
+      int total = 0;
+      for (DirichletCluster cluster : DirichletMapper.getDirichletState(conf).getClusters()) {
+        total += (int) cluster.getTotalCount();
+      }
+      assertEquals(i * sampleData.size(), total);
+    }
+  }
+
   /** Test the Mapper and Reducer using the Driver in mapreduce mode */
   @Test
   public void testDriverIterationsMR() throws Exception {
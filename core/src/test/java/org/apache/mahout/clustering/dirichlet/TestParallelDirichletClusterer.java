@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.dirichlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mahout.clustering.Cluster;
+import org.apache.mahout.clustering.Model;
+import org.apache.mahout.clustering.dirichlet.models.NormalModel;
+import org.apache.mahout.clustering.dirichlet.models.NormalModelDistribution;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestParallelDirichletClusterer extends MahoutTestCase {
+
+  private static final int NUM_CLUSTERS = 10;
+
+  @Test
+  public void testIterationDoesNotDependOnThreads() throws Exception {
+    List<VectorWritable> points = samples();
+    DirichletState state =
+        new DirichletState(new NormalModelDistribution(new VectorWritable(new DenseVector(2))), NUM_CLUSTERS, 1.0);
+    // sampling from the posterior of a NormalModel copies it
+    Model<VectorWritable>[] expected = state.getModelFactory().sampleFromPosterior(state.getModels());
+    Model<VectorWritable>[] actual = state.getModelFactory().sampleFromPosterior(state.getModels());
+
+    new ParallelDirichletClusterer(1, 37, RandomUtils.getRandom(42)).runIteration(points, state, expected);
+    new ParallelDirichletClusterer(4, 37, RandomUtils.getRandom(42)).runIteration(points, state, actual);
+
+    int total = 0;
+    for (int k = 0; k < NUM_CLUSTERS; k++) {
+      assertEquals(expected[k].count(), actual[k].count());
+      total += actual[k].count();
+      expected[k].computeParameters();
+      actual[k].computeParameters();
+      NormalModel expectedModel = (NormalModel) expected[k];
+      NormalModel actualModel = (NormalModel) actual[k];
+      assertEquals(0.0, expectedModel.getMean().getDistanceSquared(actualModel.getMean()), EPSILON);
+      assertEquals(expectedModel.getStdDev(), actualModel.getStdDev(), EPSILON);
+    }
+    assertEquals(points.size(), total);
+  }
+
+  @Test
+  public void testClusterPoints() {
+    List<VectorWritable> points = samples();
+    List<Cluster[]> result = DirichletClusterer.clusterPoints(points,
+        new NormalModelDistribution(new VectorWritable(new DenseVector(2))), 1.0, NUM_CLUSTERS, 1, 0, 10, 3);
+    assertEquals(10, result.size());
+    for (Cluster[] sample : result) {
+      int total = 0;
+      for (Cluster model : sample) {
+        total += model.count();
+      }
+      assertEquals(points.size(), total);
+    }
+  }
+
+  private static List<VectorWritable> samples() {
+    List<VectorWritable> points = new ArrayList<VectorWritable>();
+    double[][] means = { {0, 0}, {3, 0}, {0, 3} };
+    for (double[] mean : means) {
+      for (int i = 0; i < 300; i++) {
+        points.add(new VectorWritable(new DenseVector(new double[] {
+            UncommonDistributions.rNorm(mean[0], 0.5), UncommonDistributions.rNorm(mean[1], 0.5) })));
+      }
+    }
+    return points;
+  }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.clustering.ClusterObservations;
+import org.apache.mahout.common.DummyRecordWriter;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.CosineDistanceMeasure;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestAcceleratedKMeansClusterer extends MahoutTestCase {
+
+  private static final int NUM_CLUSTERS = 10;
+
+  @Test
+  public void testSequentialIterationsMatchKMeansClusterer() throws Exception {
+    List<Vector> points = randomPoints(3000, 4);
+    DistanceMeasure measure = new EuclideanDistanceMeasure();
+    List<Cluster> expected = initialClusters(points, measure);
+    List<Cluster> actual = initialClusters(points, measure);
+    KMeansClusterer plain = new KMeansClusterer(measure);
+    AcceleratedKMeansClusterer accelerated = new AcceleratedKMeansClusterer(measure);
+
+    int iterations = 8;
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      for (Vector point : points) {
+        plain.addPointToNearestCluster(point, expected);
+        accelerated.addPointToNearestCluster(point, actual);
+      }
+      assertEquals(plain.testConvergence(expected, 0.001), accelerated.testConvergence(actual, 0.001));
+      for (int i = 0; i < NUM_CLUSTERS; i++) {
+        assertEquals(expected.get(i).getNumPoints(), actual.get(i).getNumPoints());
+        assertEquals(0.0, expected.get(i).getCenter().getDistanceSquared(actual.get(i).getCenter()), EPSILON);
+      }
+    }
+
+    long allDistances = (long) iterations * points.size() * NUM_CLUSTERS;
+    assertTrue(accelerated.getSkippedDistances() > allDistances / 2);
+    assertTrue(accelerated.getComputedDistances() < allDistances / 2);
+  }
+
+  @Test
+  public void testMapperAssignsLikeKMeansClusterer() throws Exception {
+    List<Vector> points = randomPoints(1000, 3);
+    DistanceMeasure measure = new ManhattanDistanceMeasure();
+    List<Cluster> clusters = initialClusters(points, measure);
+    KMeansClusterer plain = new KMeansClusterer(measure);
+    AcceleratedKMeansClusterer accelerated = new AcceleratedKMeansClusterer(measure);
+
+    Configuration conf = new Configuration();
+    DummyRecordWriter<Text,ClusterObservations> expectedWriter = new DummyRecordWriter<Text,ClusterObservations>();
+    Mapper<WritableComparable<?>,VectorWritable,Text,ClusterObservations>.Context expectedContext =
+        DummyRecordWriter.build(new KMeansMapper(), conf, expectedWriter);
+    DummyRecordWriter<Text,ClusterObservations> actualWriter = new DummyRecordWriter<Text,ClusterObservations>();
+    Mapper<WritableComparable<?>,VectorWritable,Text,ClusterObservations>.Context actualContext =
+        DummyRecordWriter.build(new KMeansMapper(), conf, actualWriter);
+    for (Vector point : points) {
+      plain.emitPointToNearestCluster(point, clusters, expectedContext);
+      accelerated.emitPointToNearestCluster(point, clusters, actualContext);
+    }
+
+    assertEquals(expectedWriter.getKeys(), actualWriter.getKeys());
+    for (Text key : expectedWriter.getKeys()) {
+      assertEquals(expectedWriter.getValue(key).size(), actualWriter.getValue(key).size());
+    }
+    assertEquals(points.size(), accelerated.getComputedDistances() + accelerated.getSkippedDistances(),
+        points.size() * NUM_CLUSTERS);
+    assertTrue(accelerated.getSkippedDistances() > 0);
+  }
+
+  @Test
+  public void testOnlyMetrics() {
+    assertTrue(AcceleratedKMeansClusterer.isMetric(new EuclideanDistanceMeasure()));
+    assertTrue(AcceleratedKMeansClusterer.isMetric(new ManhattanDistanceMeasure()));
+    assertFalse(AcceleratedKMeansClusterer.isMetric(new SquaredEuclideanDistanceMeasure()));
+    assertFalse(AcceleratedKMeansClusterer.isMetric(new CosineDistanceMeasure()));
+
+    Configuration conf = new Configuration();
+    conf.setBoolean(KMeansConfigKeys.ACCELERATED_KEY, true);
+    assertTrue(AcceleratedKMeansClusterer.newClusterer(conf, new EuclideanDistanceMeasure())
+        instanceof AcceleratedKMeansClusterer);
+    assertFalse(AcceleratedKMeansClusterer.newClusterer(conf, new SquaredEuclideanDistanceMeasure())
+        instanceof AcceleratedKMeansClusterer);
+    try {
+      new AcceleratedKMeansClusterer(new CosineDistanceMeasure());
+      fail("Should throw IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // good
+    }
+  }
+
+  private static List<Vector> randomPoints(int numPoints, int numFeatures) {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = new ArrayList<Vector>(numPoints);
+    for (int i = 0; i < numPoints; i++) {
+      Vector point = new DenseVector(numFeatures);
+      for (int j = 0; j < numFeatures; j++) {
+        point.set(j, (i % 5) * 4 + random.nextGaussian());
+      }
+      points.add(point);
+    }
+    return points;
+  }
+
+  private static List<Cluster> initialClusters(List<Vector> points, DistanceMeasure measure) {
+    List<Cluster> clusters = new ArrayList<Cluster>();
+    for (int i = 0; i < NUM_CLUSTERS; i++) {
+      clusters.add(new Cluster(points.get(i), i, measure));
+    }
+    return clusters;
+  }
+
+}
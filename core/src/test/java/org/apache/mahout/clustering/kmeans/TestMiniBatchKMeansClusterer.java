@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.clustering.AbstractCluster;
+import org.apache.mahout.clustering.ClusterObservations;
+import org.apache.mahout.clustering.ClusteringTestUtils;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestMiniBatchKMeansClusterer extends MahoutTestCase {
+
+  private static final int NUM_BLOBS = 4;
+
+  @Test
+  public void testCentersAreMeansOfTheirPoints() {
+    DistanceMeasure measure = new EuclideanDistanceMeasure();
+    List<Cluster> clusters = new ArrayList<Cluster>();
+    clusters.add(new Cluster(new DenseVector(new double[] {0, 0}), 0, measure));
+    clusters.add(new Cluster(new DenseVector(new double[] {10, 10}), 1, measure));
+    clusters.add(new Cluster(new DenseVector(new double[] {50, 50}), 2, measure));
+    List<Vector> points = Arrays.<Vector>asList(new DenseVector(new double[] {1, 2}),
+                                                new DenseVector(new double[] {9, 11}),
+                                                new DenseVector(new double[] {2, 0}),
+                                                new DenseVector(new double[] {11, 12}),
+                                                new DenseVector(new double[] {3, 1}));
+    MiniBatchKMeansClusterer clusterer = new MiniBatchKMeansClusterer(measure, clusters);
+    assertFalse(clusterer.run(points.iterator(), 10, 5, 0.001));
+    assertEquals(1, clusterer.getIterations());
+
+    ClusterObservations observations = clusterer.getObservations(0);
+    assertEquals(3, observations.getS0(), EPSILON);
+    assertEquals(0.0, observations.getS1().getDistanceSquared(new DenseVector(new double[] {6, 3})), EPSILON);
+    assertEquals(0.0, observations.getS2().getDistanceSquared(new DenseVector(new double[] {14, 5})), EPSILON);
+    assertEquals(2, clusterer.getObservations(1).getS0(), EPSILON);
+    assertEquals(0, clusterer.getObservations(2).getS0(), EPSILON);
+
+    clusterer.testConvergence(0.001);
+    assertEquals(0.0, clusters.get(0).getCenter().getDistanceSquared(new DenseVector(new double[] {2, 1})), EPSILON);
+    assertEquals(0.0, clusters.get(1).getCenter().getDistanceSquared(new DenseVector(new double[] {10, 11.5})),
+        EPSILON);
+    assertEquals(0.0, clusters.get(2).getCenter().getDistanceSquared(new DenseVector(new double[] {50, 50})),
+        EPSILON);
+    assertEquals(3, clusters.get(0).getNumPoints());
+    assertEquals(0.0, clusters.get(1).getRadius().getDistanceSquared(new DenseVector(new double[] {1, 0.5})),
+        EPSILON);
+  }
+
+  @Test
+  public void testStopsReadingOnceConverged() {
+    DistanceMeasure measure = new EuclideanDistanceMeasure();
+    List<Vector> points = randomPoints(10000, 3);
+    List<Cluster> clusters = initialClusters(points, measure);
+    MiniBatchKMeansClusterer clusterer = new MiniBatchKMeansClusterer(measure, clusters);
+    assertTrue(clusterer.run(points.iterator(), 100, 1000, 0.1));
+    assertTrue(clusterer.getIterations() < points.size() / 100);
+    clusterer.testConvergence(0.1);
+    assertBlobCenters(clusters);
+  }
+
+  @Test
+  public void testSequentialJob() throws Exception {
+    runJob(true);
+  }
+
+  @Test
+  public void testMapReduceJob() throws Exception {
+    runJob(false);
+  }
+
+  private void runJob(boolean runSequential) throws Exception {
+    DistanceMeasure measure = new EuclideanDistanceMeasure();
+    List<VectorWritable> points = new ArrayList<VectorWritable>();
+    for (Vector point : randomPoints(2000, 3)) {
+      points.add(new VectorWritable(point));
+    }
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Path pointsPath = getTestTempDirPath("points");
+    ClusteringTestUtils.writePointsToFile(points.subList(0, 1200), new Path(pointsPath, "file1"), fs, conf);
+    ClusteringTestUtils.writePointsToFile(points.subList(1200, 2000), new Path(pointsPath, "file2"), fs, conf);
+    Path clustersPath = getTestTempDirPath("clusters");
+    SequenceFile.Writer writer =
+        new SequenceFile.Writer(fs, conf, new Path(clustersPath, "part-00000"), Text.class, Cluster.class);
+    try {
+      for (int i = 0; i < NUM_BLOBS; i++) {
+        Cluster cluster = new Cluster(points.get(i).get(), i, measure);
+        writer.append(new Text(cluster.getIdentifier()), cluster);
+      }
+    } finally {
+      writer.close();
+    }
+
+    Path output = getTestTempDirPath("output");
+    KMeansDriver.runMiniBatch(conf, pointsPath, clustersPath, output, measure, 0.001, 10, 50, 0.5, true,
+        runSequential);
+
+    List<Cluster> clusters = new ArrayList<Cluster>();
+    KMeansUtil.configureWithClusterInfo(new Path(output, AbstractCluster.CLUSTERS_DIR + 1), clusters);
+    assertEquals(NUM_BLOBS, clusters.size());
+    assertBlobCenters(clusters);
+    assertTrue(fs.exists(new Path(output, AbstractCluster.CLUSTERED_POINTS_DIR)));
+  }
+
+  /** the points of blob i are spread around i * 3 in every dimension */
+  private static List<Vector> randomPoints(int numPoints, int numFeatures) {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = new ArrayList<Vector>(numPoints);
+    for (int i = 0; i < numPoints; i++) {
+      Vector point = new DenseVector(numFeatures);
+      for (int j = 0; j < numFeatures; j++) {
+        point.set(j, (i % NUM_BLOBS) * 3 + random.nextGaussian() * 0.3);
+      }
+      points.add(point);
+    }
+    return points;
+  }
+
+  private static List<Cluster> initialClusters(List<Vector> points, DistanceMeasure measure) {
+    List<Cluster> clusters = new ArrayList<Cluster>();
+    for (int i = 0; i < NUM_BLOBS; i++) {
+      clusters.add(new Cluster(points.get(i), i, measure));
+    }
+    return clusters;
+  }
+
+  private static void assertBlobCenters(Iterable<Cluster> clusters) {
+    for (Cluster cluster : clusters) {
+      Vector center = cluster.getCenter();
+      for (int j = 0; j < center.size(); j++) {
+        assertEquals(cluster.getId() * 3, center.get(j), 0.2);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.clustering.ClusteringTestUtils;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestParallelKMeansClusterer extends MahoutTestCase {
+
+  private static final int NUM_CLUSTERS = 7;
+
+  @Test
+  public void testIterationsMatchSequentialIterations() throws Exception {
+    List<Vector> points = randomPoints(2000, 5);
+    DistanceMeasure measure = new ManhattanDistanceMeasure();
+    List<Cluster> expected = initialClusters(points, measure);
+    List<Cluster> actual = initialClusters(points, measure);
+    ParallelKMeansClusterer clusterer = new ParallelKMeansClusterer(measure, 4, 37);
+
+    for (int iteration = 0; iteration < 5; iteration++) {
+      boolean expectedConverged = KMeansClusterer.runKMeansIteration(points, expected, measure, 0.001);
+      boolean converged = clusterer.runIteration(points, actual, 0.001);
+      assertEquals(expectedConverged, converged);
+      assertSameClusters(expected, actual);
+    }
+  }
+
+  @Test
+  public void testSequentialJobWithThreads() throws Exception {
+    List<VectorWritable> points = new ArrayList<VectorWritable>();
+    for (Vector point : randomPoints(500, 3)) {
+      points.add(new VectorWritable(point));
+    }
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Path pointsPath = getTestTempDirPath("points");
+    ClusteringTestUtils.writePointsToFile(points.subList(0, 300), new Path(pointsPath, "file1"), fs, conf);
+    ClusteringTestUtils.writePointsToFile(points.subList(300, 500), new Path(pointsPath, "file2"), fs, conf);
+
+    DistanceMeasure measure = new EuclideanDistanceMeasure();
+    Path clustersPath = getTestTempDirPath("clusters");
+    SequenceFile.Writer writer =
+        new SequenceFile.Writer(fs, conf, new Path(clustersPath, "part-00000"), Text.class, Cluster.class);
+    try {
+      for (int i = 0; i < NUM_CLUSTERS; i++) {
+        Cluster cluster = new Cluster(points.get(i).get(), i, measure);
+        writer.append(new Text(cluster.getIdentifier()), cluster);
+      }
+    } finally {
+      writer.close();
+    }
+
+    Path sequentialOut = KMeansDriver.buildClusters(conf, pointsPath, clustersPath, getTestTempDirPath("sequential"),
+        measure, 4, "0.001", true, 1);
+    Path parallelOut = KMeansDriver.buildClusters(conf, pointsPath, clustersPath, getTestTempDirPath("parallel"),
+        measure, 4, "0.001", true, 3);
+    assertEquals(sequentialOut.getName(), parallelOut.getName());
+
+    List<Cluster> expected = new ArrayList<Cluster>();
+    KMeansUtil.configureWithClusterInfo(sequentialOut, expected);
+    List<Cluster> actual = new ArrayList<Cluster>();
+    KMeansUtil.configureWithClusterInfo(parallelOut, actual);
+    assertSameClusters(expected, actual);
+  }
+
+  private static List<Vector> randomPoints(int numPoints, int numFeatures) {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = new ArrayList<Vector>(numPoints);
+    for (int i = 0; i < numPoints; i++) {
+      Vector point = new DenseVector(numFeatures);
+      for (int j = 0; j < numFeatures; j++) {
+        // a few blobs, so that the clusters have something to find
+        point.set(j, (i % 4) * 3 + random.nextGaussian());
+      }
+      points.add(point);
+    }
+    return points;
+  }
+
+  private static List<Cluster> initialClusters(List<Vector> points, DistanceMeasure measure) {
+    List<Cluster> clusters = new ArrayList<Cluster>();
+    for (int i = 0; i < NUM_CLUSTERS; i++) {
+      clusters.add(new Cluster(points.get(i), i, measure));
+    }
+    return clusters;
+  }
+
+  private static void assertSameClusters(List<Cluster> expected, List<Cluster> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getId(), actual.get(i).getId());
+      assertEquals(expected.get(i).getNumPoints(), actual.get(i).getNumPoints());
+      assertEquals(expected.get(i).isConverged(), actual.get(i).isConverged());
+      assertEquals(0.0, expected.get(i).getCenter().getDistanceSquared(actual.get(i).getCenter()), EPSILON);
+    }
+  }
+
+}
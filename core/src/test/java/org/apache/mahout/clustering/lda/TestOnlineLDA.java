@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestOnlineLDA extends MahoutTestCase {
+
+  private static final int NUM_TOPICS = 4;
+  private static final int WORDS_PER_TOPIC = 10;
+  private static final int NUM_WORDS = NUM_TOPICS * WORDS_PER_TOPIC;
+
+  @Test
+  public void testTrainerFindsTopics() throws Exception {
+    Random random = RandomUtils.getRandom();
+    List<Vector> documents = randomDocuments(random, 400);
+    OnlineLDAModel model = new OnlineLDAModel(NUM_TOPICS, NUM_WORDS, 1.0 / NUM_TOPICS, random);
+    OnlineLDATrainer trainer = new OnlineLDATrainer(model, 1.0 / NUM_TOPICS, documents.size());
+    trainer.setBatchSize(20);
+    trainer.setLearningRate(1.0, 0.7);
+
+    double[] perplexities = new double[3];
+    for (int pass = 0; pass < perplexities.length; pass++) {
+      double oldLL = trainer.getLogLikelihood();
+      double oldNumWords = trainer.getNumWordsSeen();
+      for (Vector document : documents) {
+        trainer.train(document);
+      }
+      trainer.flush();
+      perplexities[pass] = Math.exp(-(trainer.getLogLikelihood() - oldLL) / (trainer.getNumWordsSeen() - oldNumWords));
+    }
+    assertEquals(3 * documents.size() / 20, trainer.getNumUpdates());
+    assertTrue(perplexities[2] < perplexities[0]);
+    // a document draws from a single topic, which has 10 equally likely words
+    assertTrue("perplexity " + perplexities[2], perplexities[2] < 12.0);
+    assertFindsTopics(model);
+  }
+
+  @Test
+  public void testThreadsMatchSingleThread() throws Exception {
+    Random random = RandomUtils.getRandom();
+    List<Vector> documents = randomDocuments(random, 200);
+    OnlineLDAModel single = new OnlineLDAModel(NUM_TOPICS, NUM_WORDS, 0.1, RandomUtils.getRandom(11));
+    OnlineLDAModel parallel = new OnlineLDAModel(NUM_TOPICS, NUM_WORDS, 0.1, RandomUtils.getRandom(11));
+    OnlineLDATrainer singleTrainer = new OnlineLDATrainer(single, 0.25, documents.size());
+    OnlineLDATrainer parallelTrainer = new OnlineLDATrainer(parallel, 0.25, documents.size());
+    singleTrainer.setBatchSize(32);
+    parallelTrainer.setBatchSize(32);
+    parallelTrainer.setNumThreads(3);
+    try {
+      for (Vector document : documents) {
+        singleTrainer.train(document);
+        parallelTrainer.train(document);
+      }
+      singleTrainer.flush();
+      parallelTrainer.flush();
+    } finally {
+      parallelTrainer.close();
+    }
+    assertEquals(singleTrainer.getLogLikelihood(), parallelTrainer.getLogLikelihood(), EPSILON);
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      for (int w = 0; w < NUM_WORDS; w++) {
+        assertEquals(single.getLambda(k, w), parallel.getLambda(k, w), EPSILON * single.getLambda(k, w));
+      }
+    }
+  }
+
+  @Test
+  public void testIncrementsSinceMark() throws Exception {
+    Configuration conf = new Configuration();
+    Random random = RandomUtils.getRandom();
+    OnlineLDAModel model = new OnlineLDAModel(NUM_TOPICS, NUM_WORDS, 0.1, random);
+    Path statePath = getTestTempDirPath("state");
+    model.write(conf, statePath, 0.0);
+    OnlineLDAModel copy = OnlineLDAModel.read(conf, statePath, NUM_TOPICS, NUM_WORDS, 0.1);
+
+    model.mark();
+    for (int update = 0; update < 300; update++) {
+      Map<Integer,double[]> statistics = new HashMap<Integer,double[]>();
+      double[] counts = new double[NUM_TOPICS];
+      for (int k = 0; k < NUM_TOPICS; k++) {
+        counts[k] = random.nextDouble();
+      }
+      statistics.put(random.nextInt(NUM_WORDS), counts);
+      // small steps, so that the scale underflows and the model is rescaled
+      model.update(statistics, 0.9, 10.0);
+    }
+    copy.scale(model.getDecaySinceMark());
+    for (Map.Entry<Integer,double[]> entry : model.getIncrementsSinceMark().entrySet()) {
+      copy.add(entry.getKey(), entry.getValue());
+    }
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      for (int w = 0; w < NUM_WORDS; w++) {
+        assertEquals(model.getLambda(k, w), copy.getLambda(k, w), 1.0e-6 * model.getLambda(k, w));
+        assertEquals(model.expectedProbWordGivenTopic(k, w), copy.expectedProbWordGivenTopic(k, w), 1.0e-6);
+      }
+    }
+  }
+
+  @Test
+  public void testDriver() throws Exception {
+    Random random = RandomUtils.getRandom();
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Path input = getTestTempDirPath("documents");
+    writeDocuments(randomDocuments(random, 300), new Path(input, "file1"), fs, conf);
+    writeDocuments(randomDocuments(random, 100), new Path(input, "file2"), fs, conf);
+
+    for (String method : new String[] {"sequential", "mapreduce"}) {
+      Path output = getTestTempDirPath(method);
+      OnlineLDADriver.main(new String[] {
+        "--input", input.toString(), "--output", output.toString(),
+        "--numTopics", String.valueOf(NUM_TOPICS), "--numWords", String.valueOf(NUM_WORDS),
+        "--batchSize", "20", "--tau0", "1", "--maxIter", "2", "--method", method, "--numThreads", "2"});
+
+      conf.set(LDADriver.STATE_IN_KEY, new Path(output, "state-2").toString());
+      conf.set(LDADriver.NUM_TOPICS_KEY, String.valueOf(NUM_TOPICS));
+      conf.set(LDADriver.NUM_WORDS_KEY, String.valueOf(NUM_WORDS));
+      conf.set(LDADriver.TOPIC_SMOOTHING_KEY, String.valueOf(1.0 / NUM_TOPICS));
+      LDAState state = LDADriver.createState(conf);
+      assertTrue(state.getLogLikelihood() < 0.0);
+      assertFindsTopics(OnlineLDAModel.read(conf, new Path(output, "state-2"), NUM_TOPICS, NUM_WORDS, 0.25));
+      for (int k = 0; k < NUM_TOPICS; k++) {
+        double total = 0.0;
+        for (int w = 0; w < NUM_WORDS; w++) {
+          total += Math.exp(state.logProbWordGivenTopic(w, k));
+        }
+        assertEquals(1.0, total, EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void testFirstStepForgetsInitialModelWithMapReduce() throws Exception {
+    Random random = RandomUtils.getRandom();
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Path input = getTestTempDirPath("documents");
+    writeDocuments(randomDocuments(random, 100), new Path(input, "file1"), fs, conf);
+
+    // with tau0 = 1 the only mini-batch takes a step of 1, which replaces the initial model completely
+    Path output = getTestTempDirPath("mapreduce");
+    OnlineLDADriver.main(new String[] {
+      "--input", input.toString(), "--output", output.toString(),
+      "--numTopics", String.valueOf(NUM_TOPICS), "--numWords", String.valueOf(NUM_WORDS),
+      "--batchSize", "100", "--tau0", "1", "--maxIter", "1", "--method", "mapreduce"});
+
+    double topicWordSmoothing = 1.0 / NUM_TOPICS;
+    OnlineLDAModel expected =
+        OnlineLDAModel.read(conf, new Path(output, "state-0"), NUM_TOPICS, NUM_WORDS, topicWordSmoothing);
+    OnlineLDATrainer trainer = new OnlineLDATrainer(expected, 1.0 / NUM_TOPICS, 100);
+    trainer.setBatchSize(100);
+    trainer.setLearningRate(1.0, OnlineLDATrainer.DEFAULT_KAPPA);
+    trainer.train(conf, input);
+    trainer.close();
+
+    OnlineLDAModel model =
+        OnlineLDAModel.read(conf, new Path(output, "state-1"), NUM_TOPICS, NUM_WORDS, topicWordSmoothing);
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      for (int w = 0; w < NUM_WORDS; w++) {
+        assertEquals(expected.getLambda(k, w), model.getLambda(k, w), 1.0e-6 * expected.getLambda(k, w));
+      }
+    }
+  }
+
+  /**
+   * Asserts that the most likely words of each topic belong to a single block of words, and that each block is
+   * found by a topic.
+   */
+  private static void assertFindsTopics(OnlineLDAModel model) {
+    Set<Integer> blocks = new HashSet<Integer>();
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      int best = 0;
+      for (int w = 1; w < NUM_WORDS; w++) {
+        if (model.getLambda(k, w) > model.getLambda(k, best)) {
+          best = w;
+        }
+      }
+      int block = best / WORDS_PER_TOPIC;
+      double blockMass = 0.0;
+      double total = 0.0;
+      for (int w = 0; w < NUM_WORDS; w++) {
+        total += model.probWordGivenTopic(k, w);
+        if (w / WORDS_PER_TOPIC == block) {
+          blockMass += model.probWordGivenTopic(k, w);
+        }
+      }
+      assertTrue("topic " + k + " has " + blockMass / total + " in block " + block, blockMass / total > 0.8);
+      blocks.add(block);
+    }
+    assertEquals(NUM_TOPICS, blocks.size());
+  }
+
+  /**
+   * Each document draws 20 to 40 words from the 10 words of one topic, and a few from anywhere.
+   */
+  private static List<Vector> randomDocuments(Random random, int numDocuments) {
+    List<Vector> documents = new ArrayList<Vector>(numDocuments);
+    for (int i = 0; i < numDocuments; i++) {
+      Vector document = new RandomAccessSparseVector(NUM_WORDS);
+      int topic = random.nextInt(NUM_TOPICS);
+      int length = 20 + random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        int word = random.nextDouble() < 0.95
+            ? topic * WORDS_PER_TOPIC + random.nextInt(WORDS_PER_TOPIC)
+            : random.nextInt(NUM_WORDS);
+        document.setQuick(word, document.getQuick(word) + 1);
+      }
+      documents.add(document);
+    }
+    return documents;
+  }
+
+  private static void writeDocuments(List<Vector> documents, Path path, FileSystem fs, Configuration conf)
+    throws Exception {
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, path, IntWritable.class, VectorWritable.class);
+    try {
+      int i = 0;
+      for (Vector document : documents) {
+        writer.append(new IntWritable(i++), new VectorWritable(document));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestParallelLDAEstimator extends MahoutTestCase {
+
+  private static final int NUM_TOPICS = 5;
+  private static final int NUM_WORDS = 50;
+
+  @Test
+  public void testIterationMatchesMapReduceStatistics() throws Exception {
+    Random random = RandomUtils.getRandom();
+    LDAState state = randomState(random);
+    List<Vector> documents = randomDocuments(random, 100);
+
+    // what LDAMapper and LDAReducer compute
+    double[][] expected = new double[NUM_TOPICS][NUM_WORDS];
+    for (double[] row : expected) {
+      Arrays.fill(row, Double.NEGATIVE_INFINITY);
+    }
+    double expectedLL = 0.0;
+    LDAInference inference = new LDAInference(state);
+    for (Vector document : documents) {
+      LDAInference.InferredDocument doc = inference.infer(document);
+      for (Iterator<Vector.Element> iter = document.iterateNonZero(); iter.hasNext();) {
+        Vector.Element e = iter.next();
+        for (int k = 0; k < NUM_TOPICS; k++) {
+          expected[k][e.index()] = LDAUtil.logSum(expected[k][e.index()], doc.phi(k, e.index()) + Math.log(e.get()));
+        }
+      }
+      expectedLL += doc.getLogLikelihood();
+    }
+
+    Configuration conf = new Configuration();
+    Path stateOut = getTestTempDirPath("state");
+    double ll = new ParallelLDAEstimator(3, 7).runIteration(conf, documents, state, stateOut);
+    assertEquals(expectedLL, ll, EPSILON * Math.abs(expectedLL));
+
+    LDAState next = readState(conf, stateOut);
+    assertEquals(expectedLL, next.getLogLikelihood(), EPSILON * Math.abs(expectedLL));
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      double logTotal = Double.NEGATIVE_INFINITY;
+      for (int w = 0; w < NUM_WORDS; w++) {
+        logTotal = LDAUtil.logSum(logTotal, expected[k][w]);
+      }
+      for (int w = 0; w < NUM_WORDS; w++) {
+        if (expected[k][w] != Double.NEGATIVE_INFINITY) {
+          assertEquals(expected[k][w] - logTotal, next.logProbWordGivenTopic(w, k), EPSILON);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testThreadsMatchSingleThread() throws Exception {
+    Random random = RandomUtils.getRandom();
+    LDAState state = randomState(random);
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Path input = getTestTempDirPath("documents");
+    writeDocuments(randomDocuments(random, 60), new Path(input, "file1"), fs, conf);
+    writeDocuments(randomDocuments(random, 45), new Path(input, "file2"), fs, conf);
+
+    Path singleOut = getTestTempDirPath("single");
+    double singleLL = new ParallelLDAEstimator(1).runIteration(conf, input, state, singleOut);
+    Path parallelOut = getTestTempDirPath("parallel");
+    double parallelLL = new ParallelLDAEstimator(4, 10).runIteration(conf, input, state, parallelOut);
+    assertEquals(singleLL, parallelLL, EPSILON * Math.abs(singleLL));
+
+    LDAState single = readState(conf, singleOut);
+    LDAState parallel = readState(conf, parallelOut);
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      for (int w = 0; w < NUM_WORDS; w++) {
+        assertEquals(single.logProbWordGivenTopic(w, k), parallel.logProbWordGivenTopic(w, k), EPSILON);
+      }
+    }
+  }
+
+  private static LDAState readState(Configuration conf, Path statePath) throws Exception {
+    conf.set(LDADriver.STATE_IN_KEY, statePath.toString());
+    conf.set(LDADriver.NUM_TOPICS_KEY, Integer.toString(NUM_TOPICS));
+    conf.set(LDADriver.NUM_WORDS_KEY, Integer.toString(NUM_WORDS));
+    conf.set(LDADriver.TOPIC_SMOOTHING_KEY, Double.toString(50.0 / NUM_TOPICS));
+    return LDADriver.createState(conf);
+  }
+
+  private static LDAState randomState(Random random) {
+    Matrix m = new DenseMatrix(NUM_TOPICS, NUM_WORDS);
+    double[] logTotals = new double[NUM_TOPICS];
+    for (int k = 0; k < NUM_TOPICS; k++) {
+      double total = 0.0;
+      for (int w = 0; w < NUM_WORDS; w++) {
+        double pseudocount = random.nextDouble() + 1.0E-10;
+        total += pseudocount;
+        m.setQuick(k, w, Math.log(pseudocount));
+      }
+      logTotals[k] = Math.log(total);
+    }
+    return new LDAState(NUM_TOPICS, NUM_WORDS, 50.0 / NUM_TOPICS, m, logTotals, Double.NEGATIVE_INFINITY);
+  }
+
+  private static List<Vector> randomDocuments(Random random, int numDocuments) {
+    List<Vector> documents = new ArrayList<Vector>(numDocuments);
+    for (int i = 0; i < numDocuments; i++) {
+      Vector document = new RandomAccessSparseVector(NUM_WORDS);
+      int length = 1 + random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        int word = random.nextInt(NUM_WORDS);
+        document.setQuick(word, document.getQuick(word) + 1);
+      }
+      documents.add(document);
+    }
+    return documents;
+  }
+
+  private static void writeDocuments(List<Vector> documents, Path path, FileSystem fs, Configuration conf)
+    throws Exception {
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, path, IntWritable.class, VectorWritable.class);
+    try {
+      int i = 0;
+      for (Vector document : documents) {
+        writer.append(new IntWritable(i++), new VectorWritable(document));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+}
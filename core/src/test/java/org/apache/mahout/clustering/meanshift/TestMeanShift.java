@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -37,9 +38,11 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.mahout.clustering.ClusteringTestUtils;
 import org.apache.mahout.common.DummyRecordWriter;
 import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.common.commandline.DefaultOptionCreator;
 import org.apache.mahout.common.distance.DistanceMeasure;
 import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
@@ -156,6 +159,28 @@ public final class TestMeanShift extends MahoutTestCase {
     printImage(canopies);
   }
 
+  /**
+   * Test that the canopies merged through the spatial index of a metric are the same as those merged by a
+   * linear scan, here with the squared euclidean distance, which is not a metric, and squared thresholds.
+   */
+  @Test
+  public void testIndexedClustererMatchesLinearScan() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = new ArrayList<Vector>();
+    for (int i = 0; i < 1000; i++) {
+      points.add(new DenseVector(new double[] {random.nextDouble() * 20, random.nextDouble() * 20}));
+    }
+    List<MeanShiftCanopy> expected =
+        MeanShiftCanopyClusterer.clusterPoints(points, new SquaredEuclideanDistanceMeasure(), 0.25, 16, 1, 10);
+    List<MeanShiftCanopy> actual = MeanShiftCanopyClusterer.clusterPoints(points, euclideanDistanceMeasure, 0.5, 4, 1, 10);
+    assertEquals("number of canopies", expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals("canopy id", expected.get(i).getId(), actual.get(i).getId());
+      assertEquals("bound points", expected.get(i).getBoundPoints(), actual.get(i).getBoundPoints());
+      assertEquals("center", 0.0, expected.get(i).getCenter().getDistanceSquared(actual.get(i).getCenter()), EPSILON);
+    }
+  }
+
   /**
    * Story: User can produce initial canopy centers using a EuclideanDistanceMeasure and a
    * CanopyMapper/Combiner which clusters input points to produce an output set of canopies.
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.common.distance;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+public final class TestSpatialIndex extends MahoutTestCase {
+
+  @Test
+  public void testVPTreeMatchesBruteForce() {
+    for (DistanceMeasure measure : new DistanceMeasure[] {
+        new EuclideanDistanceMeasure(), new ManhattanDistanceMeasure() }) {
+      Random random = RandomUtils.getRandom();
+      SpatialIndex<Integer> expected = new BruteForceSpatialIndex<Integer>(measure);
+      SpatialIndex<Integer> actual = new VPTreeSpatialIndex<Integer>(measure);
+      for (int i = 0; i < 3000; i++) {
+        Vector point = randomPoint(random);
+        expected.add(point, i);
+        actual.add(point, i);
+        assertEquals(expected.size(), actual.size());
+        // query after each step early on, where the trees are merged most often
+        if (i < 300 || i % 50 == 0) {
+          Vector query = randomPoint(random);
+          assertSameNeighbors(expected.findWithin(query, 2.0), actual.findWithin(query, 2.0));
+          assertSameNeighbor(expected.findNearest(query), actual.findNearest(query));
+          // a point which was added, so that there are ties
+          assertSameNeighbor(expected.findNearest(point), actual.findNearest(point));
+          assertSameNeighbors(expected.findWithin(point, 0.5), actual.findWithin(point, 0.5));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyIndex() {
+    SpatialIndex<Integer> index = new VPTreeSpatialIndex<Integer>(new EuclideanDistanceMeasure());
+    Vector query = new DenseVector(new double[] {1, 2});
+    assertNull(index.findNearest(query));
+    assertTrue(index.findWithin(query, 10).isEmpty());
+  }
+
+  @Test
+  public void testNewIndex() {
+    assertTrue(SpatialIndexes.newIndex(new ManhattanDistanceMeasure()) instanceof VPTreeSpatialIndex<?>);
+    assertTrue(SpatialIndexes.newIndex(new CosineDistanceMeasure()) instanceof BruteForceSpatialIndex<?>);
+    assertTrue(SpatialIndexes.newIndex(new SquaredEuclideanDistanceMeasure()) instanceof BruteForceSpatialIndex<?>);
+  }
+
+  @Test
+  public void testSubclassesAreNotKnownMetrics() {
+    DistanceMeasure squared = new EuclideanDistanceMeasure() {
+      @Override
+      public double distance(Vector v1, Vector v2) {
+        return v1.getDistanceSquared(v2);
+      }
+    };
+    assertFalse(SpatialIndexes.isMetric(squared));
+    assertTrue(SpatialIndexes.newIndex(squared) instanceof BruteForceSpatialIndex<?>);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testVPTreeRejectsNonMetric() {
+    new VPTreeSpatialIndex<Integer>(new SquaredEuclideanDistanceMeasure());
+  }
+
+  /** a point on a coarse grid, so that some points coincide */
+  private static Vector randomPoint(Random random) {
+    Vector point = new DenseVector(3);
+    for (int i = 0; i < point.size(); i++) {
+      point.set(i, random.nextInt(20) * 0.5);
+    }
+    return point;
+  }
+
+  private static void assertSameNeighbors(List<SpatialIndex.Neighbor<Integer>> expected,
+                                          List<SpatialIndex.Neighbor<Integer>> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSameNeighbor(expected.get(i), actual.get(i));
+    }
+  }
+
+  private static void assertSameNeighbor(SpatialIndex.Neighbor<Integer> expected,
+                                         SpatialIndex.Neighbor<Integer> actual) {
+    assertEquals(expected.getItem(), actual.getItem());
+    assertEquals(expected.getDistance(), actual.getDistance(), 0.0);
+  }
+
+}
@@ -54,6 +54,180 @@ public final class VectorWritableTest extends MahoutTestCase {
     doTestVectorWritableEquals(v);
   }
 
+  @Test
+  public void testDictionaryCodedValues() throws Exception {
+    Vector v = new SequentialAccessSparseVector(1000);
+    for (int i = 0; i < 100; i++) {
+      v.set(7 * i, i % 3 + 1);
+    }
+    byte[] bytes = write(v, false, true);
+    assertEquals(VectorWritable.FLAG_SEQUENTIAL | VectorWritable.FLAG_DICTIONARY, bytes[0]);
+    // flags, size, number of elements, dictionary, indices and codes
+    assertEquals(1 + 2 + 1 + (1 + 3 * 8) + 100 + 100, bytes.length);
+    assertEquals(v, read(bytes));
+  }
+
+  @Test
+  public void testSingleValueNeedsNoCodes() throws Exception {
+    Vector v = new RandomAccessSparseVector(100);
+    v.set(3, 1.0);
+    v.set(50, 1.0);
+    v.set(99, 1.0);
+    byte[] bytes = write(v, false, true);
+    assertEquals(VectorWritable.FLAG_DICTIONARY, bytes[0]);
+    assertEquals(1 + 1 + 1 + (1 + 8) + 3, bytes.length);
+    assertEquals(v, read(bytes));
+  }
+
+  @Test
+  public void testLaxPrecisionDictionary() throws Exception {
+    Vector v = new SequentialAccessSparseVector(10);
+    v.set(1, 0.1);
+    v.set(2, 0.1 + 1.0e-12);
+    v.set(5, 0.1);
+    v.set(9, 0.1);
+    byte[] bytes = write(v, true, true);
+    assertEquals(VectorWritable.FLAG_SEQUENTIAL | VectorWritable.FLAG_LAX_PRECISION | VectorWritable.FLAG_DICTIONARY,
+                 bytes[0]);
+    Vector v2 = read(bytes);
+    for (int i = 0; i < v.size(); i++) {
+      assertEquals((float) v.get(i), v2.get(i), 0.0);
+    }
+  }
+
+  @Test
+  public void testDistinctValuesAreWrittenAsTheyAre() throws Exception {
+    Vector v = new SequentialAccessSparseVector(1000);
+    for (int i = 0; i < 200; i++) {
+      v.set(5 * i, i + 0.5);
+    }
+    byte[] bytes = write(v, false, true);
+    assertEquals(VectorWritable.FLAG_SEQUENTIAL, bytes[0]);
+    assertEquals(1 + 2 + 2 + 200 * (1 + 8), bytes.length);
+    assertEquals(v, read(bytes));
+  }
+
+  @Test
+  public void testNoDictionaryByDefault() throws Exception {
+    Vector v = new RandomAccessSparseVector(100);
+    v.set(3, 1.0);
+    v.set(50, 1.0);
+    assertEquals(0, write(v, false)[0]);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    VectorWritable.writeVector(dos, v, false);
+    dos.close();
+    assertEquals(0, baos.toByteArray()[0]);
+  }
+
+  @Test
+  public void testWritesDictionary() throws Exception {
+    Vector v = new RandomAccessSparseVector(100);
+    v.set(3, 1.0);
+    v.set(50, 1.0);
+    VectorWritable vectorWritable = new VectorWritable(v);
+    assertFalse(vectorWritable.isWritesDictionary());
+    vectorWritable.setWritesDictionary(true);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    vectorWritable.write(dos);
+    dos.close();
+    assertEquals(VectorWritable.FLAG_DICTIONARY, baos.toByteArray()[0]);
+    assertEquals(v, read(baos.toByteArray()));
+  }
+
+  @Test
+  public void testReadsInPlace() throws Exception {
+    Vector first = new SequentialAccessSparseVector(10);
+    first.set(1, 1.0);
+    first.set(8, 2.0);
+    Vector second = new SequentialAccessSparseVector(10);
+    second.set(3, 3.0);
+    Vector dense = new DenseVector(new double[] {1.0, 2.0});
+
+    VectorWritable vectorWritable = new VectorWritable();
+    vectorWritable.setReadsInPlace(true);
+    readFields(vectorWritable, write(first, false));
+    Vector read = vectorWritable.get();
+    assertEquals(first, read);
+    readFields(vectorWritable, write(second, false));
+    assertSame(read, vectorWritable.get());
+    assertEquals(second, read);
+    assertEquals(9.0, read.getLengthSquared(), EPSILON);
+
+    readFields(vectorWritable, write(dense, false));
+    assertNotSame(read, vectorWritable.get());
+    read = vectorWritable.get();
+    readFields(vectorWritable, write(new DenseVector(new double[] {3.0, 4.0}), true));
+    assertSame(read, vectorWritable.get());
+    assertEquals(new DenseVector(new double[] {3.0, 4.0}), read);
+  }
+
+  @Test
+  public void testReadsNamedVectorsInPlace() throws Exception {
+    Vector first = new NamedVector(new SequentialAccessSparseVector(10), "first");
+    first.set(1, 1.0);
+    Vector second = new NamedVector(new SequentialAccessSparseVector(10), "second");
+    second.set(2, 1.0);
+
+    VectorWritable vectorWritable = new VectorWritable();
+    vectorWritable.setReadsInPlace(true);
+    readFields(vectorWritable, write(first, false));
+    Vector delegate = ((NamedVector) vectorWritable.get()).getDelegate();
+    readFields(vectorWritable, write(second, false));
+    assertSame(delegate, ((NamedVector) vectorWritable.get()).getDelegate());
+    assertEquals("second", ((NamedVector) vectorWritable.get()).getName());
+    assertEquals(second, vectorWritable.get());
+  }
+
+  @Test
+  public void testDoesNotReadInPlaceByDefault() throws Exception {
+    Vector v = new SequentialAccessSparseVector(10);
+    v.set(1, 1.0);
+    VectorWritable vectorWritable = new VectorWritable();
+    readFields(vectorWritable, write(v, false));
+    Vector read = vectorWritable.get();
+    readFields(vectorWritable, write(v, false));
+    assertNotSame(read, vectorWritable.get());
+  }
+
+  private static void readFields(VectorWritable vectorWritable, byte[] bytes) throws IOException {
+    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+    try {
+      vectorWritable.readFields(dis);
+    } finally {
+      dis.close();
+    }
+  }
+
+  private static byte[] write(Vector v, boolean laxPrecision) throws IOException {
+    return write(v, laxPrecision, false);
+  }
+
+  private static byte[] write(Vector v, boolean laxPrecision, boolean dictionary) throws IOException {
+    VectorWritable vectorWritable = new VectorWritable(v);
+    vectorWritable.setWritesLaxPrecision(laxPrecision);
+    vectorWritable.setWritesDictionary(dictionary);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    try {
+      vectorWritable.write(dos);
+    } finally {
+      dos.close();
+    }
+    return baos.toByteArray();
+  }
+
+  private static Vector read(byte[] bytes) throws IOException {
+    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return VectorWritable.readVector(dis);
+    } finally {
+      dis.close();
+    }
+  }
+
   private static void doTestVectorWritableEquals(Vector v) throws IOException {
     Writable vectorWritable = new VectorWritable(v);
     VectorWritable vectorWritable2 = new VectorWritable();
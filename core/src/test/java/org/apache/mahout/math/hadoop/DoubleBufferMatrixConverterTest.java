@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.hadoop;
+
+import java.io.File;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DoubleBufferMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixWritable;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+public final class DoubleBufferMatrixConverterTest extends MahoutTestCase {
+
+  @Test
+  public void testRowsKeyedByIndex() throws Exception {
+    Configuration conf = new Configuration();
+    Path input = getTestTempDirPath("rows");
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    SequenceFile.Writer writer =
+        new SequenceFile.Writer(fs, conf, new Path(input, "part-00000"), IntWritable.class, VectorWritable.class);
+    try {
+      Vector row = new RandomAccessSparseVector(4);
+      row.setQuick(3, 1.0);
+      writer.append(new IntWritable(2), new VectorWritable(row));
+      row = new RandomAccessSparseVector(4);
+      row.setQuick(0, 2.0);
+      writer.append(new IntWritable(0), new VectorWritable(row));
+    } finally {
+      writer.close();
+    }
+
+    File outputFile = getTestTempFile("rows.bin");
+    DoubleBufferMatrixConverter.convert(input, conf, outputFile);
+
+    Matrix matrix = DoubleBufferMatrix.map(outputFile, false);
+    assertEquals(3, matrix.rowSize());
+    assertEquals(4, matrix.columnSize());
+    assertEquals(2.0, matrix.getQuick(0, 0), EPSILON);
+    assertEquals(0.0, matrix.getRow(1).norm(1), EPSILON);
+    assertEquals(1.0, matrix.getQuick(2, 3), EPSILON);
+    assertEquals(3.0, matrix.zSum(), EPSILON);
+  }
+
+  @Test
+  public void testMatrix() throws Exception {
+    Configuration conf = new Configuration();
+    Path input = getTestTempFilePath("matrix");
+    FileSystem fs = FileSystem.get(input.toUri(), conf);
+    Matrix expected = new DenseMatrix(new double[][] {{1.0, 2.0}, {3.0, 4.0}, {5.0, 6.0}});
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, input, Text.class, MatrixWritable.class);
+    try {
+      writer.append(new Text("m"), new MatrixWritable(expected));
+    } finally {
+      writer.close();
+    }
+
+    File outputFile = getTestTempFile("matrix.bin");
+    Matrix matrix = DoubleBufferMatrixConverter.convert(input, conf, outputFile);
+    assertEquals(0.0, matrix.minus(expected).aggregate(Functions.PLUS, Functions.ABS), EPSILON);
+    matrix = DoubleBufferMatrix.map(outputFile, false);
+    assertEquals(0.0, matrix.minus(expected).aggregate(Functions.PLUS, Functions.ABS), EPSILON);
+  }
+
+}
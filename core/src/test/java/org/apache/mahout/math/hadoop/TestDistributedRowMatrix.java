@@ -20,8 +20,11 @@ package org.apache.mahout.math.hadoop;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.mahout.clustering.ClusteringTestUtils;
 import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.MatrixSlice;
 import org.apache.mahout.math.RandomAccessSparseVector;
@@ -95,6 +98,44 @@ public final class TestDistributedRowMatrix extends MahoutTestCase {
     assertEquals(0.0, expected.getDistanceSquared(actual), 1.0e-9);
   }
 
+  @Test
+  public void testMatrixTimesSeveralVectors() throws Exception {
+    Vector[] vectors = new Vector[3];
+    for (int k = 0; k < vectors.length; k++) {
+      vectors[k] = new DenseVector(50);
+      vectors[k].assign(k + 1.0);
+      vectors[k].setQuick(k, -1.0);
+    }
+    Matrix m = SolverTest.randomSequentialAccessSparseMatrix(100, 90, 50, 20, 1.0);
+    DistributedRowMatrix dm = randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+
+    Vector[] times = dm.times(vectors);
+    Vector[] timesSquared = dm.timesSquared(vectors);
+    assertEquals(vectors.length, times.length);
+    assertEquals(vectors.length, timesSquared.length);
+    for (int k = 0; k < vectors.length; k++) {
+      assertEquals(0.0, m.times(vectors[k]).getDistanceSquared(times[k]), EPSILON);
+      assertEquals(0.0, m.timesSquared(vectors[k]).getDistanceSquared(timesSquared[k]), 1.0e-6);
+    }
+  }
+
+  @Test
+  public void testMatrixTimesVectorWithPartitionedOutput() throws Exception {
+    Vector v = new DenseVector(50);
+    v.assign(1.0);
+    v.setQuick(7, -2.0);
+    Matrix m = SolverTest.randomSequentialAccessSparseMatrix(100, 90, 50, 20, 1.0);
+    DistributedRowMatrix dm = randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+    dm.getConf().setInt(TimesSquaredJob.NUM_OUTPUT_PARTITIONS, 3);
+
+    assertEquals(0.0, m.times(v).getDistanceSquared(dm.times(v)), EPSILON);
+    assertEquals(0.0, m.timesSquared(v).getDistanceSquared(dm.timesSquared(v)), 1.0e-9);
+    Vector sparse = new RandomAccessSparseVector(v);
+    Vector[] timesSquared = dm.timesSquared(new Vector[] {v, sparse});
+    assertEquals(0.0, m.timesSquared(v).getDistanceSquared(timesSquared[0]), 1.0e-9);
+    assertEquals(0.0, m.timesSquared(sparse).getDistanceSquared(timesSquared[1]), 1.0e-9);
+  }
+
   @Test
   public void testMatrixTimesMatrix() throws Exception {
     Matrix inputA = SolverTest.randomSequentialAccessSparseMatrix(20, 19, 15, 5, 10.0);
@@ -108,6 +149,26 @@ public final class TestDistributedRowMatrix extends MahoutTestCase {
     assertEquals(expected, product, EPSILON);
   }
 
+  @Test
+  public void testMatrixTimesMatrixFlushingPartialRows() throws Exception {
+    Matrix inputA = SolverTest.randomSequentialAccessSparseMatrix(20, 19, 15, 5, 10.0);
+    Matrix inputB = SolverTest.randomSequentialAccessSparseMatrix(20, 13, 25, 10, 5.0);
+    Matrix expected = inputA.transpose().times(inputB);
+
+    DistributedRowMatrix distA = randomDistributedMatrix(20, 19, 15, 5, 10.0, false, "distA");
+    DistributedRowMatrix distB = randomDistributedMatrix(20, 13, 25, 10, 5.0, false, "distB");
+    Path outPath = new Path(distA.getOutputTempPath().getParent(), "product");
+    Configuration conf =
+        MatrixMultiplicationJob.createMatrixMultiplyJobConf(distA.getRowPath(), distB.getRowPath(), outPath, 25);
+    // emit the partial rows every few entries
+    conf.setInt(MatrixMultiplicationJob.MAX_BUFFERED_ENTRIES, 10);
+    JobClient.runJob(new JobConf(conf));
+    DistributedRowMatrix product = new DistributedRowMatrix(outPath, distA.getOutputTempPath(), 15, 25);
+    product.setConf(conf);
+
+    assertEquals(expected, product, EPSILON);
+  }
+
   public DistributedRowMatrix randomDistributedMatrix(int numRows,
                                                       int nonNullRows,
                                                       int numCols,
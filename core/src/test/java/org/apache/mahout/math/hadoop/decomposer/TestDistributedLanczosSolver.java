@@ -33,17 +33,24 @@ import java.util.List;
 public final class TestDistributedLanczosSolver extends SolverTest {
 
   private void doTestDistributedLanczosSolver(boolean symmetric) throws IOException {
+    doTestDistributedLanczosSolver(symmetric, 1, 2);
+  }
+
+  private void doTestDistributedLanczosSolver(boolean symmetric, int blockSize, int fractionToCheck)
+    throws IOException {
     File testData = getTestTempDir("testdata");
     DistributedRowMatrix corpus = new TestDistributedRowMatrix().randomDistributedMatrix(500,
         450, 400, 10, 10.0, symmetric, testData.getAbsolutePath());
     corpus.setConf(new Configuration());
     DistributedLanczosSolver solver = new DistributedLanczosSolver();
+    solver.setBlockSize(blockSize);
     int desiredRank = 30;
     Matrix eigenVectors = new DenseMatrix(desiredRank, corpus.numCols());
     List<Double> eigenValues = new ArrayList<Double>();
     solver.solve(corpus, desiredRank, eigenVectors, eigenValues, symmetric);
+    assertEquals((desiredRank + blockSize - 2) / blockSize, solver.getNumCorpusPasses());
     assertOrthonormal(eigenVectors);
-    assertEigen(eigenVectors, corpus, eigenVectors.numRows() / 2, 0.01, symmetric);
+    assertEigen(eigenVectors, corpus, eigenVectors.numRows() / fractionToCheck, 0.01, symmetric);
   }
 
   @Test
@@ -51,4 +58,10 @@ public final class TestDistributedLanczosSolver extends SolverTest {
     doTestDistributedLanczosSolver(true);
   }
 
+  @Test
+  public void testDistributedBlockLanczosSolver() throws Exception {
+    // a block Krylov space of the same dimension has fewer of the top eigenvectors converged
+    doTestDistributedLanczosSolver(true, 3, 4);
+  }
+
 }
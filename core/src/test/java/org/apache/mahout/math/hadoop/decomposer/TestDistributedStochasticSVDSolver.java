@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.hadoop.decomposer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.decomposer.SolverTest;
+import org.apache.mahout.math.hadoop.DistributedRowMatrix;
+import org.apache.mahout.math.hadoop.TestDistributedRowMatrix;
+import org.junit.Test;
+
+public final class TestDistributedStochasticSVDSolver extends SolverTest {
+
+  @Test
+  public void testDistributedStochasticSVDSolver() throws Exception {
+    File testData = getTestTempDir("testdata");
+    DistributedRowMatrix corpus = new TestDistributedRowMatrix().randomDistributedMatrix(500,
+        450, 400, 10, 10.0, false, testData.getAbsolutePath());
+    corpus.setConf(new Configuration());
+    DistributedStochasticSVDSolver solver = new DistributedStochasticSVDSolver();
+    int rank = 10;
+    Matrix singularVectors = new DenseMatrix(rank, corpus.numCols());
+    List<Double> singularValues = new ArrayList<Double>();
+    solver.solve(corpus, rank, singularVectors, singularValues);
+    assertEquals(3, solver.getNumCorpusPasses());
+    assertEquals(rank, singularValues.size());
+    assertOrthonormal(singularVectors);
+    assertEigen(singularVectors, corpus, 0.1, false);
+  }
+
+  @Test
+  public void testDistributedStochasticSVDSolverCLI() throws Exception {
+    Path testData = new Path(getTestTempDir("testdata").getAbsolutePath());
+    new TestDistributedRowMatrix().randomDistributedMatrix(500, 450, 400, 10, 10.0, false, testData.toString());
+    Path output = new Path(getTestTempDir("output").getAbsolutePath());
+    String[] args = {
+        "-i", new Path(testData, "distMatrix").toString(),
+        "-o", output.toString(),
+        "--tempDir", getTestTempDir("tmp").getAbsolutePath(),
+        "--numRows", "500",
+        "--numCols", "400",
+        "--rank", "10",
+        "--oversampling", "5"
+    };
+    assertEquals(0, new DistributedStochasticSVDSolver.DistributedStochasticSVDSolverJob().run(args));
+
+    Configuration conf = new Configuration();
+    Path rawEigenvectors = new Path(output, DistributedLanczosSolver.RAW_EIGENVECTORS);
+    SequenceFile.Reader reader =
+        new SequenceFile.Reader(FileSystem.get(rawEigenvectors.toUri(), conf), rawEigenvectors, conf);
+    try {
+      IntWritable key = new IntWritable();
+      VectorWritable value = new VectorWritable();
+      int i = 0;
+      while (reader.next(key, value)) {
+        assertEquals(i, key.get());
+        assertEquals(400, value.get().size());
+        assertEquals(1.0, value.get().norm(2), 1.0e-9);
+        i++;
+      }
+      assertEquals("number of singular vectors", 10, i);
+    } finally {
+      reader.close();
+    }
+  }
+
+}
@@ -43,6 +43,27 @@ public class DenseMatrix extends AbstractMatrix {
     initSize();
   }
   
+  /**
+   * Construct a matrix from the given values, which are used as they are if shallowCopy is true.
+   *
+   * @param values
+   *          a double[][] of rows that all have the same length
+   * @param shallowCopy
+   *          whether the matrix may use the given arrays instead of copies of them
+   */
+  public DenseMatrix(double[][] values, boolean shallowCopy) {
+    if (shallowCopy) {
+      this.values = values;
+      initSize();
+    } else {
+      this.values = new double[values.length][];
+      for (int i = 0; i < values.length; i++) {
+        this.values[i] = values[i].clone();
+      }
+      initSize();
+    }
+  }
+
   /**
    * Constructs an empty matrix of the given size.
    * @param rows  The number of rows in the result.
@@ -160,6 +181,62 @@ public class DenseMatrix extends AbstractMatrix {
     return this;
   }
   
+  /**
+   * Multiplies by another dense matrix with a cache-blocked kernel, otherwise like {@link AbstractMatrix}.
+   */
+  @Override
+  public Matrix times(Matrix other) {
+    if (other instanceof DenseMatrix) {
+      return times((DenseMatrix) other, 1);
+    }
+    return super.times(other);
+  }
+
+  /**
+   * Multiplies by another dense matrix, splitting the rows of the result between up to {@code numThreads} threads.
+   * Small products are computed in the calling thread.
+   */
+  public DenseMatrix times(DenseMatrix other, int numThreads) {
+    if (columnSize() != other.rowSize()) {
+      throw new CardinalityException(columnSize(), other.rowSize());
+    }
+    return new DenseMatrix(MatrixKernels.times(values, other.values, columnSize(), other.columnSize(), numThreads),
+                           true);
+  }
+
+  /**
+   * Computes {@code this.transpose().times(other)} without building the transpose.
+   */
+  public Matrix transposeTimes(Matrix other) {
+    if (other instanceof DenseMatrix) {
+      return transposeTimes((DenseMatrix) other, 1);
+    }
+    return transpose().times(other);
+  }
+
+  /**
+   * Computes {@code this.transpose().times(other)} without building the transpose, splitting the rows of the result
+   * between up to {@code numThreads} threads.
+   */
+  public DenseMatrix transposeTimes(DenseMatrix other, int numThreads) {
+    if (rowSize() != other.rowSize()) {
+      throw new CardinalityException(rowSize(), other.rowSize());
+    }
+    return new DenseMatrix(
+        MatrixKernels.transposeTimes(values, other.values, columnSize(), other.columnSize(), numThreads), true);
+  }
+
+  @Override
+  public Vector times(Vector v) {
+    if (columnSize() != v.size()) {
+      throw new CardinalityException(columnSize(), v.size());
+    }
+    if (!VectorKernels.isSupported(v)) {
+      return super.times(v);
+    }
+    return new DenseVector(VectorKernels.times(values, v), true);
+  }
+
   public Vector getColumn(int column) {
     if (column < 0 || column >= columnSize()) {
       throw new IndexException(column, columnSize());
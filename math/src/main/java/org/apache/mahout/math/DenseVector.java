@@ -235,22 +235,25 @@ public class DenseVector extends AbstractVector {
     if (this == x) {
       return dotSelf();
     }
-    
+    if (VectorKernels.isSupported(x)) {
+      return VectorKernels.dotProduct(this, x);
+    }
+
+    // Try to get the speed boost associated fast/normal seq access on x and quick lookup on this
     double result = 0;
-    if (x instanceof DenseVector) {
-      for (int i = 0; i < x.size(); i++) {
-        result += this.values[i] * x.getQuick(i);
-      }
-      return result;
-    } else {
-      // Try to get the speed boost associated fast/normal seq access on x and quick lookup on this
-      Iterator<Element> iter = x.iterateNonZero();
-      while (iter.hasNext()) {
-        Element element = iter.next();
-        result += element.get() * this.values[element.index()];
-      }
-      return result;
+    Iterator<Element> iter = x.iterateNonZero();
+    while (iter.hasNext()) {
+      Element element = iter.next();
+      result += element.get() * this.values[element.index()];
     }
+    return result;
+  }
+
+  /**
+   * @return the array backing this vector, for the kernels in this package
+   */
+  double[] getValues() {
+    return values;
   }
 
 
@@ -0,0 +1,348 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A dense matrix which keeps its values outside of the Java heap, either in direct buffers or in a memory-mapped
+ * file, so that big matrices like the factors of a decomposition neither inflate the heap nor slow down garbage
+ * collection. Mapping a file takes about the same time regardless of its size, and processes which map the same
+ * file share its pages through the operating system's page cache. The rows returned by {@link #getRow(int)} are
+ * {@link DoubleBufferVector}s which read from the same memory, without copying.
+ * </p>
+ *
+ * <p>
+ * Files are written by {@link #write(Matrix, File)} or {@link #create(File, int, int)} and have a fixed layout: a
+ * header of 32 bytes with a magic number, a version, the number of rows and the number of columns as ints followed
+ * by unused bytes, then all values as big-endian doubles, row after row. A buffer can't hold more than 2GB, so the
+ * rows are spread over several buffers.
+ * </p>
+ */
+public class DoubleBufferMatrix extends AbstractMatrix {
+
+  private static final int MAGIC = 0x4D444258;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+
+  private final DoubleBuffer[] buffers;
+  /** non-null if the buffers are mapped from a file */
+  private final MappedByteBuffer[] mappedBuffers;
+  /** every buffer but the last holds 2^rowShift rows */
+  private final int rowShift;
+  private final int rowMask;
+
+  /**
+   * Constructs an empty matrix of the given size in direct buffers.
+   * @param rows  The number of rows in the result.
+   * @param columns The number of columns in the result.
+   */
+  public DoubleBufferMatrix(int rows, int columns) {
+    this(rows, columns, null);
+  }
+
+  private DoubleBufferMatrix(int rows, int columns, MappedByteBuffer[] mappedBuffers) {
+    cardinality[ROW] = rows;
+    cardinality[COL] = columns;
+    rowShift = rowShift(rows, columns);
+    rowMask = (1 << rowShift) - 1;
+    this.mappedBuffers = mappedBuffers;
+    buffers = new DoubleBuffer[numBuffers(rows, rowShift)];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = mappedBuffers == null
+          ? DoubleBufferVector.allocateDirect(rowsInBuffer(i, rows, rowShift) * columns)
+          : mappedBuffers[i].asDoubleBuffer();
+    }
+  }
+
+  private static int rowShift(int rows, int columns) {
+    Preconditions.checkArgument(rows > 0 && columns > 0, "Illegal size %s x %s", rows, columns);
+    Preconditions.checkArgument(columns <= Integer.MAX_VALUE / 8, "Too many columns: %s", columns);
+    return 31 - Integer.numberOfLeadingZeros(Integer.MAX_VALUE / 8 / columns);
+  }
+
+  private static int numBuffers(int rows, int rowShift) {
+    return ((rows - 1) >>> rowShift) + 1;
+  }
+
+  private static int rowsInBuffer(int buffer, int rows, int rowShift) {
+    return Math.min(rows - (buffer << rowShift), 1 << rowShift);
+  }
+
+  /**
+   * Maps a file written by {@link #write(Matrix, File)} or {@link #create(File, int, int)}.
+   *
+   * @param writable if false, the matrix throws a {@link java.nio.ReadOnlyBufferException} when it is modified;
+   *  if true, modifications are written to the file
+   * @throws FileNotFoundException if the file does not exist
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public static DoubleBufferMatrix map(File file, boolean writable) throws IOException {
+    if (!file.exists() || file.isDirectory()) {
+      throw new FileNotFoundException(file.toString());
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Not a matrix file: " + file);
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a matrix file: " + file);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported file version " + version + " in " + file);
+      }
+      int rows = header.getInt();
+      int columns = header.getInt();
+      if (rows <= 0 || columns <= 0 || channel.size() != HEADER_SIZE + (long) rows * columns * 8) {
+        throw new IOException("Expected " + rows + " x " + columns + " values in " + file);
+      }
+      FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+      int rowShift = rowShift(rows, columns);
+      MappedByteBuffer[] mappedBuffers = new MappedByteBuffer[numBuffers(rows, rowShift)];
+      for (int i = 0; i < mappedBuffers.length; i++) {
+        long position = HEADER_SIZE + ((long) i << rowShift) * columns * 8;
+        mappedBuffers[i] = channel.map(mode, position, rowsInBuffer(i, rows, rowShift) * columns * 8L);
+      }
+      return new DoubleBufferMatrix(rows, columns, mappedBuffers);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Creates a file for a matrix of the given size, with all values 0, and maps it writable.
+   */
+  public static DoubleBufferMatrix create(File file, int rows, int columns) throws IOException {
+    rowShift(rows, columns);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      raf.setLength(HEADER_SIZE + (long) rows * columns * 8);
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+      raf.writeInt(rows);
+      raf.writeInt(columns);
+    } finally {
+      raf.close();
+    }
+    return map(file, true);
+  }
+
+  /**
+   * Writes the given matrix to a file in the format read by {@link #map(File, boolean)}.
+   */
+  public static void write(Matrix matrix, File file) throws IOException {
+    DoubleBufferMatrix result = create(file, matrix.rowSize(), matrix.columnSize());
+    for (int row = 0; row < matrix.rowSize(); row++) {
+      result.assignNonZeros(row, matrix.getRow(row));
+    }
+    result.force();
+  }
+
+  /**
+   * Assigns the non-zero values of the given vector to a row, leaving the other values as they are. This is faster
+   * than {@link #assignRow(int, Vector)} for sparse vectors, e.g. to fill a newly created matrix.
+   */
+  public void assignNonZeros(int row, Vector other) {
+    if (columnSize() != other.size()) {
+      throw new CardinalityException(columnSize(), other.size());
+    }
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    DoubleBuffer buffer = buffers[row >>> rowShift];
+    int offset = (row & rowMask) * columnSize();
+    Iterator<Vector.Element> it = other.iterateNonZero();
+    while (it.hasNext()) {
+      Vector.Element e = it.next();
+      buffer.put(offset + e.index(), e.get());
+    }
+  }
+
+  /**
+   * Writes modifications of a matrix mapped from a file to the storage device; does nothing for direct buffers.
+   */
+  public void force() {
+    if (mappedBuffers != null) {
+      for (MappedByteBuffer buffer : mappedBuffers) {
+        buffer.force();
+      }
+    }
+  }
+
+  /**
+   * @return true if the values are mapped from a file
+   */
+  public boolean isMapped() {
+    return mappedBuffers != null;
+  }
+
+  /**
+   * @return a copy of this matrix in direct buffers
+   */
+  @Override
+  public Matrix clone() {
+    DoubleBufferMatrix clone = new DoubleBufferMatrix(rowSize(), columnSize());
+    for (int i = 0; i < buffers.length; i++) {
+      clone.buffers[i].put(buffers[i].duplicate());
+      clone.buffers[i].rewind();
+    }
+    if (rowLabelBindings != null) {
+      clone.setRowLabelBindings(rowLabelBindings);
+    }
+    if (columnLabelBindings != null) {
+      clone.setColumnLabelBindings(columnLabelBindings);
+    }
+    return clone;
+  }
+
+  /**
+   * Encodes this matrix like a {@link DenseMatrix}, which it is decoded as.
+   */
+  @Override
+  public String asFormatString() {
+    Matrix copy = new DenseMatrix(rowSize(), columnSize()).assign(this);
+    copy.setRowLabelBindings(rowLabelBindings);
+    copy.setColumnLabelBindings(columnLabelBindings);
+    return copy.asFormatString();
+  }
+
+  public double getQuick(int row, int column) {
+    return buffers[row >>> rowShift].get((row & rowMask) * columnSize() + column);
+  }
+
+  public void setQuick(int row, int column, double value) {
+    buffers[row >>> rowShift].put((row & rowMask) * columnSize() + column, value);
+  }
+
+  /**
+   * @return a new matrix of the same size in direct buffers
+   */
+  public Matrix like() {
+    return like(rowSize(), columnSize());
+  }
+
+  /**
+   * @return a new matrix of the given size in direct buffers
+   */
+  public Matrix like(int rows, int columns) {
+    return new DoubleBufferMatrix(rows, columns);
+  }
+
+  public int[] getNumNondefaultElements() {
+    return size();
+  }
+
+  public Matrix viewPart(int[] offset, int[] size) {
+    return viewPart(offset[ROW], size[ROW], offset[COL], size[COL]);
+  }
+
+  @Override
+  public Matrix viewPart(int rowOffset, int rowsRequested, int columnOffset, int columnsRequested) {
+    if (rowOffset < 0) {
+      throw new IndexException(rowOffset, rowSize());
+    }
+    if (rowOffset + rowsRequested > rowSize()) {
+      throw new IndexException(rowOffset + rowsRequested, rowSize());
+    }
+    if (columnOffset < 0) {
+      throw new IndexException(columnOffset, columnSize());
+    }
+    if (columnOffset + columnsRequested > columnSize()) {
+      throw new IndexException(columnOffset + columnsRequested, columnSize());
+    }
+    return new MatrixView(this, new int[]{rowOffset, columnOffset}, new int[]{rowsRequested, columnsRequested});
+  }
+
+  public Matrix assignColumn(int column, Vector other) {
+    if (rowSize() != other.size()) {
+      throw new CardinalityException(rowSize(), other.size());
+    }
+    if (column < 0 || column >= columnSize()) {
+      throw new IndexException(column, columnSize());
+    }
+    for (int row = 0; row < rowSize(); row++) {
+      setQuick(row, column, other.getQuick(row));
+    }
+    return this;
+  }
+
+  public Matrix assignRow(int row, Vector other) {
+    if (columnSize() != other.size()) {
+      throw new CardinalityException(columnSize(), other.size());
+    }
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    DoubleBuffer buffer = buffers[row >>> rowShift];
+    int offset = (row & rowMask) * columnSize();
+    for (int col = 0; col < columnSize(); col++) {
+      buffer.put(offset + col, other.getQuick(col));
+    }
+    return this;
+  }
+
+  @Override
+  public Vector times(Vector v) {
+    if (columnSize() != v.size()) {
+      throw new CardinalityException(columnSize(), v.size());
+    }
+    Vector w = new DenseVector(rowSize());
+    for (int row = 0; row < rowSize(); row++) {
+      w.setQuick(row, getRow(row).dot(v));
+    }
+    return w;
+  }
+
+  public Vector getColumn(int column) {
+    if (column < 0 || column >= columnSize()) {
+      throw new IndexException(column, columnSize());
+    }
+    return new TransposeViewVector(this, column);
+  }
+
+  /**
+   * @return the row, backed by the same memory as this matrix
+   */
+  public Vector getRow(int row) {
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    DoubleBuffer buffer = buffers[row >>> rowShift].duplicate();
+    int offset = (row & rowMask) * columnSize();
+    buffer.limit(offset + columnSize());
+    buffer.position(offset);
+    return new DoubleBufferVector(buffer);
+  }
+
+}
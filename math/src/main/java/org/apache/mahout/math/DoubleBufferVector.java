@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A dense vector which keeps its values in a {@link DoubleBuffer} instead of an array, so that they can live
+ * outside of the Java heap: in a direct buffer, or in a memory-mapped file like the rows of a
+ * {@link DoubleBufferMatrix}. The buffer is used as it is, not copied. Modifying a vector which is backed by a
+ * read-only buffer throws a {@link java.nio.ReadOnlyBufferException}.
+ */
+public class DoubleBufferVector extends AbstractVector {
+
+  private final DoubleBuffer values;
+
+  /** Construct a new instance of the given cardinality, backed by a direct buffer */
+  public DoubleBufferVector(int cardinality) {
+    this(allocateDirect(cardinality));
+  }
+
+  /**
+   * Construct a new instance backed by the values between the position and the limit of the given buffer.
+   */
+  public DoubleBufferVector(DoubleBuffer values) {
+    super(values.remaining());
+    this.values = values.slice();
+  }
+
+  /**
+   * Copy-constructor, which copies the given vector into a direct buffer
+   */
+  public DoubleBufferVector(Vector vector) {
+    this(vector.size());
+    Iterator<Element> it = vector.iterateNonZero();
+    while (it.hasNext()) {
+      Element e = it.next();
+      values.put(e.index(), e.get());
+    }
+  }
+
+  static DoubleBuffer allocateDirect(int size) {
+    return ByteBuffer.allocateDirect(size * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+  }
+
+  @Override
+  protected Matrix matrixLike(int rows, int columns) {
+    return new DenseMatrix(rows, columns);
+  }
+
+  /**
+   * @return a copy of this vector in a new direct buffer, which is writable even if this vector is not
+   */
+  @Override
+  public DoubleBufferVector clone() {
+    DoubleBuffer copy = allocateDirect(size());
+    copy.put(values.duplicate());
+    copy.rewind();
+    return new DoubleBufferVector(copy);
+  }
+
+  /**
+   * @return true
+   */
+  public boolean isDense() {
+    return true;
+  }
+
+  /**
+   * @return true
+   */
+  public boolean isSequentialAccess() {
+    return true;
+  }
+
+  /**
+   * @return true if the values can't be modified
+   */
+  public boolean isReadOnly() {
+    return values.isReadOnly();
+  }
+
+  public double getQuick(int index) {
+    return values.get(index);
+  }
+
+  public void setQuick(int index, double value) {
+    lengthSquared = -1.0;
+    values.put(index, value);
+  }
+
+  /**
+   * @return a new vector of the same size, backed by a direct buffer
+   */
+  public DoubleBufferVector like() {
+    return new DoubleBufferVector(size());
+  }
+
+  public int getNumNondefaultElements() {
+    return size();
+  }
+
+  @Override
+  public double dot(Vector x) {
+    if (size() != x.size()) {
+      throw new CardinalityException(size(), x.size());
+    }
+    if (this == x) {
+      return dotSelf();
+    }
+    if (!x.isDense()) {
+      return super.dot(x);
+    }
+    double result = 0.0;
+    int max = size();
+    for (int i = 0; i < max; i++) {
+      result += values.get(i) * x.getQuick(i);
+    }
+    return result;
+  }
+
+  @Override
+  public double dotSelf() {
+    double result = 0.0;
+    int max = size();
+    for (int i = 0; i < max; i++) {
+      double value = values.get(i);
+      result += value * value;
+    }
+    return result;
+  }
+
+  @Override
+  public double getLengthSquared() {
+    if (lengthSquared >= 0.0) {
+      return lengthSquared;
+    }
+    lengthSquared = dotSelf();
+    return lengthSquared;
+  }
+
+  /**
+   * Encodes this vector like a {@link DenseVector}, which it is decoded as.
+   */
+  @Override
+  public String asFormatString() {
+    return new DenseVector(this).asFormatString();
+  }
+
+  /**
+   * Returns an iterator that traverses the non-zero elements of this Vector in the order of their indices.
+   */
+  public Iterator<Element> iterateNonZero() {
+    return new NonDefaultIterator();
+  }
+
+  public Iterator<Element> iterator() {
+    return new AllIterator();
+  }
+
+  private final class NonDefaultIterator implements Iterator<Element> {
+
+    private final BufferElement element = new BufferElement();
+    private int index = 0;
+
+    private NonDefaultIterator() {
+      goToNext();
+    }
+
+    private void goToNext() {
+      while (index < size() && values.get(index) == 0.0) {
+        index++;
+      }
+    }
+
+    public boolean hasNext() {
+      return index < size();
+    }
+
+    public Element next() {
+      if (index >= size()) {
+        throw new NoSuchElementException();
+      }
+      element.index = index;
+      index++;
+      goToNext();
+      return element;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final class AllIterator implements Iterator<Element> {
+
+    private final BufferElement element = new BufferElement();
+
+    private AllIterator() {
+      element.index = -1;
+    }
+
+    public boolean hasNext() {
+      return element.index + 1 < size();
+    }
+
+    public Element next() {
+      if (element.index + 1 >= size()) {
+        throw new NoSuchElementException();
+      }
+      element.index++;
+      return element;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final class BufferElement implements Element {
+
+    int index;
+
+    public double get() {
+      return values.get(index);
+    }
+
+    public int index() {
+      return index;
+    }
+
+    public void set(double value) {
+      lengthSquared = -1.0;
+      values.put(index, value);
+    }
+  }
+
+}
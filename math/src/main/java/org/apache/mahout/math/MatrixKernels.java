@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cache-blocked products of dense matrices stored as arrays of rows.  The result is computed in blocks of rows;
+ * within a block, a tile of the right hand side is multiplied with all rows before the next tile is loaded, so that
+ * the tile stays in the cache.  The innermost loop runs along a row of the right hand side and of the result, which
+ * the JIT compiler can vectorize.  Every element of the result is summed up in the same order as by the naive triple
+ * loop, so the results are exactly the same.
+ * <p>
+ * {@link #timesSquared(Vector[], Vector[], int)} computes A<sup>t</sup>A v for a sparse A in one pass over its rows,
+ * for several vectors v at once.  Every thread sums up the rows of its own range into its own result, and the partial
+ * results are added up at the end.
+ */
+final class MatrixKernels {
+
+  /** rows of the result computed by one task */
+  private static final int ROW_BLOCK = 64;
+  /** rows of the right hand side in one tile */
+  private static final int INNER_BLOCK = 128;
+  /** columns of the right hand side in one tile */
+  private static final int COLUMN_BLOCK = 512;
+  /** products with fewer multiply-adds than this are not worth splitting between threads */
+  private static final long MIN_PARALLEL_WORK = 1L << 22;
+
+  private MatrixKernels() {
+  }
+
+  /**
+   * @return a times b, where a has {@code inner} columns and b has {@code inner} rows of {@code columns} values
+   */
+  static double[][] times(final double[][] a, final double[][] b, final int inner, final int columns,
+                          int numThreads) {
+    final double[][] c = new double[a.length][columns];
+    run(a.length, (long) a.length * inner * columns, numThreads, new RowBlock() {
+      public void compute(int rowStart, int rowEnd) {
+        for (int kStart = 0; kStart < inner; kStart += INNER_BLOCK) {
+          int kEnd = Math.min(kStart + INNER_BLOCK, inner);
+          for (int jStart = 0; jStart < columns; jStart += COLUMN_BLOCK) {
+            int jEnd = Math.min(jStart + COLUMN_BLOCK, columns);
+            for (int i = rowStart; i < rowEnd; i++) {
+              double[] ai = a[i];
+              double[] ci = c[i];
+              for (int k = kStart; k < kEnd; k++) {
+                double aik = ai[k];
+                double[] bk = b[k];
+                for (int j = jStart; j < jEnd; j++) {
+                  ci[j] += aik * bk[j];
+                }
+              }
+            }
+          }
+        }
+      }
+    });
+    return c;
+  }
+
+  /**
+   * @return the transpose of a times b, where a has {@code rows} columns, b has {@code columns} columns and both have
+   * the same number of rows; the transpose of a is never built
+   */
+  static double[][] transposeTimes(final double[][] a, final double[][] b, int rows, final int columns,
+                                   int numThreads) {
+    final double[][] c = new double[rows][columns];
+    final int inner = a.length;
+    run(rows, (long) rows * inner * columns, numThreads, new RowBlock() {
+      public void compute(int rowStart, int rowEnd) {
+        for (int kStart = 0; kStart < inner; kStart += INNER_BLOCK) {
+          int kEnd = Math.min(kStart + INNER_BLOCK, inner);
+          for (int jStart = 0; jStart < columns; jStart += COLUMN_BLOCK) {
+            int jEnd = Math.min(jStart + COLUMN_BLOCK, columns);
+            for (int i = rowStart; i < rowEnd; i++) {
+              double[] ci = c[i];
+              for (int k = kStart; k < kEnd; k++) {
+                double aki = a[k][i];
+                double[] bk = b[k];
+                for (int j = jStart; j < jEnd; j++) {
+                  ci[j] += aki * bk[j];
+                }
+              }
+            }
+          }
+        }
+      }
+    });
+    return c;
+  }
+
+  /**
+   * @return for every one of the {@code vectors}, the sum over all non-null rows r of (r . v) * r, as an array of
+   * {@code columns} values
+   */
+  static double[][] timesSquared(final Vector[] rows, final Vector[] vectors, final int columns, int numThreads) {
+    long work = 0;
+    for (Vector row : rows) {
+      if (row != null) {
+        work += row.getNumNondefaultElements();
+      }
+    }
+    work *= 2L * vectors.length;
+    int numPartitions = Math.min(numThreads, rows.length);
+    if (numPartitions <= 1 || work < MIN_PARALLEL_WORK) {
+      return timesSquared(rows, 0, rows.length, vectors, columns);
+    }
+
+    List<Callable<double[][]>> tasks = new ArrayList<Callable<double[][]>>(numPartitions);
+    for (int partition = 0; partition < numPartitions; partition++) {
+      final int start = (int) ((long) rows.length * partition / numPartitions);
+      final int end = (int) ((long) rows.length * (partition + 1) / numPartitions);
+      tasks.add(new Callable<double[][]>() {
+        public double[][] call() {
+          return timesSquared(rows, start, end, vectors, columns);
+        }
+      });
+    }
+    List<double[][]> partials = invokeAll(tasks, numPartitions);
+    double[][] result = partials.get(0);
+    for (int partition = 1; partition < partials.size(); partition++) {
+      double[][] partial = partials.get(partition);
+      for (int k = 0; k < result.length; k++) {
+        double[] rk = result[k];
+        double[] pk = partial[k];
+        for (int j = 0; j < columns; j++) {
+          rk[j] += pk[j];
+        }
+      }
+    }
+    return result;
+  }
+
+  private static double[][] timesSquared(Vector[] rows, int start, int end, Vector[] vectors, int columns) {
+    double[][] result = new double[vectors.length][columns];
+    for (int i = start; i < end; i++) {
+      Vector row = rows[i];
+      if (row == null) {
+        continue;
+      }
+      boolean supported = VectorKernels.isSupported(row);
+      for (int k = 0; k < vectors.length; k++) {
+        double d = supported ? VectorKernels.dotProduct(row, vectors[k]) : row.dot(vectors[k]);
+        if (d != 0.0) {
+          VectorKernels.addTo(row, d, result[k]);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void run(int rows, long work, int numThreads, final RowBlock block) {
+    if (numThreads <= 1 || rows <= ROW_BLOCK || work < MIN_PARALLEL_WORK) {
+      for (int rowStart = 0; rowStart < rows; rowStart += ROW_BLOCK) {
+        block.compute(rowStart, Math.min(rowStart + ROW_BLOCK, rows));
+      }
+      return;
+    }
+
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int rowStart = 0; rowStart < rows; rowStart += ROW_BLOCK) {
+      final int start = rowStart;
+      final int end = Math.min(rowStart + ROW_BLOCK, rows);
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          block.compute(start, end);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks, numThreads);
+  }
+
+  private static <T> List<T> invokeAll(List<Callable<T>> tasks, int numThreads) {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<T> results = new ArrayList<T>(tasks.size());
+      for (Future<T> result : executor.invokeAll(tasks)) {
+        results.add(result.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private interface RowBlock {
+    void compute(int rowStart, int rowEnd);
+  }
+
+}
@@ -56,6 +56,13 @@ final class OrderedIntDoubleMapping implements Serializable, Cloneable {
     return numMappings;
   }
   
+  /**
+   * Removes all mappings, but keeps the arrays.
+   */
+  void clear() {
+    numMappings = 0;
+  }
+
   private void growTo(int newCapacity) {
     if (newCapacity > indices.length) {
       int[] newIndices = new int[newCapacity];
@@ -90,6 +97,16 @@ final class OrderedIntDoubleMapping implements Serializable, Cloneable {
   }
 
   public void set(int index, double value) {
+    if (value != DEFAULT_VALUE && (numMappings == 0 || index > indices[numMappings - 1])) {
+      // appending in order of the indices needs no search
+      if (numMappings >= indices.length) {
+        growTo(Math.max((int) (1.2 * numMappings), numMappings + 1));
+      }
+      indices[numMappings] = index;
+      values[numMappings] = value;
+      numMappings++;
+      return;
+    }
     int offset = find(index);
     if (offset >= 0) {
       if (value == DEFAULT_VALUE) {
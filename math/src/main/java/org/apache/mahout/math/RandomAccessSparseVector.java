@@ -158,6 +158,17 @@ public class RandomAccessSparseVector extends AbstractVector {
     return new AllIterator();
   }
 
+  /**
+   * Applies a procedure to each non-default element, in no particular order, without allocating an iterator or
+   * a copy of the keys like {@link #iterateNonZero()} does.
+   *
+   * @param procedure the procedure to apply, which should not change this vector
+   * @return false if the procedure returned false for some element, which stops the iteration; true otherwise
+   */
+  public boolean forEachNonZero(IntDoubleProcedure procedure) {
+    return values.forEachPair(procedure);
+  }
+
   @Override
   public void addTo(Vector v) {
     if (v.size() != size()) {
@@ -175,22 +186,10 @@ public class RandomAccessSparseVector extends AbstractVector {
       return dotSelf();
     }
     
-    double result = 0;
-    if (x instanceof SequentialAccessSparseVector) {
-      Iterator<Element> iter = x.iterateNonZero();
-      while (iter.hasNext()) {
-        Element element = iter.next();
-        result += element.get() * getQuick(element.index());
-      }
-      return result;
-    } else { 
-      Iterator<Element> iter = iterateNonZero();
-      while (iter.hasNext()) {
-        Element element = iter.next();
-        result += element.get() * x.getQuick(element.index());
-      }
-      return result;
+    if (VectorKernels.isSupported(x)) {
+      return VectorKernels.dotProduct(this, x);
     }
+    return VectorKernels.dot(this, x);
   }
 
 
@@ -18,6 +18,7 @@
 package org.apache.mahout.math;
 
 import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.IntDoubleProcedure;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -115,6 +116,19 @@ public class SequentialAccessSparseVector extends AbstractVector {
     return this;
   }
 
+  /**
+   * Assigning 0 removes all non-zero elements at once, and keeps the allocated capacity for new ones.
+   */
+  @Override
+  public Vector assign(double value) {
+    if (value != OrderedIntDoubleMapping.DEFAULT_VALUE) {
+      return super.assign(value);
+    }
+    lengthSquared = -1;
+    values.clear();
+    return this;
+  }
+
   @Override
   public String toString() {
     StringBuilder result = new StringBuilder();
@@ -172,6 +186,25 @@ public class SequentialAccessSparseVector extends AbstractVector {
     return new AllIterator();
   }
 
+  /**
+   * Applies a procedure to each non-default element, in order of increasing index, without allocating an
+   * iterator.
+   *
+   * @param procedure the procedure to apply, which should not change this vector
+   * @return false if the procedure returned false for some element, which stops the iteration; true otherwise
+   */
+  public boolean forEachNonZero(IntDoubleProcedure procedure) {
+    int[] indices = values.getIndices();
+    double[] vals = values.getValues();
+    int numMappings = values.getNumMappings();
+    for (int i = 0; i < numMappings; i++) {
+      if (!procedure.apply(indices[i], vals[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public double dot(Vector x) {
     if (size() != x.size()) {
@@ -180,46 +213,18 @@ public class SequentialAccessSparseVector extends AbstractVector {
     if (this == x) {
       return dotSelf();
     }
-    
-    if (x instanceof SequentialAccessSparseVector) {
-      // For sparse SeqAccVectors. do dot product without lookup in a linear fashion
-      Iterator<Element> myIter = iterateNonZero();
-      Iterator<Element> otherIter = x.iterateNonZero();
-      if (!myIter.hasNext() || !otherIter.hasNext()) {
-        return 0.0;
-      }
-      Element myCurrent = myIter.next();
-      Element otherCurrent = otherIter.next();
-      double result = 0.0;
-      while (true) {
-        int myIndex = myCurrent.index();
-        int otherIndex = otherCurrent.index();
-        if (myIndex == otherIndex) {
-          result += myCurrent.get() * otherCurrent.get();
-        }
-        if (myIndex <= otherIndex) {
-          if (!myIter.hasNext()) {
-            break;
-          }
-          myCurrent = myIter.next();
-        }
-        if (myIndex >= otherIndex) {
-          if (!otherIter.hasNext()) {
-            break;
-          }
-          otherCurrent = otherIter.next();
-        }
-      }
-      return result;
-    } else { // seq.rand. seq.dense
-      double result = 0.0;      
-      Iterator<Element> iter = iterateNonZero();
-      while (iter.hasNext()) {
-        Element element = iter.next();
-        result += element.get() * x.getQuick(element.index());
-      }
-      return result;
+    if (VectorKernels.isSupported(x)) {
+      // merge-joins with another SequentialAccessSparseVector, otherwise looks up each of our elements in x
+      return VectorKernels.dotProduct(this, x);
     }
+    return VectorKernels.dot(values, x);
+  }
+
+  /**
+   * @return the mapping backing this vector, for the kernels in this package
+   */
+  OrderedIntDoubleMapping getMapping() {
+    return values;
   }
 
   @Override
@@ -17,6 +17,8 @@
 
 package org.apache.mahout.math;
 
+import java.util.Iterator;
+
 /**
  * sparse matrix with general element values whose columns are accessible quickly. Implemented as a column array of
  * SparseVectors.
@@ -156,6 +158,27 @@ public class SparseColumnMatrix extends AbstractMatrix {
     return this;
   }
 
+  /**
+   * Computes the product as the sum of the columns weighted by the elements of v, so that no rows have to be
+   * assembled from the columns.
+   */
+  @Override
+  public Vector times(Vector v) {
+    if (cardinality[COL] != v.size()) {
+      throw new CardinalityException(cardinality[COL], v.size());
+    }
+    double[] w = new double[cardinality[ROW]];
+    Iterator<Vector.Element> nonZeros = v.iterateNonZero();
+    while (nonZeros.hasNext()) {
+      Vector.Element element = nonZeros.next();
+      Vector column = columns[element.index()];
+      if (column != null) {
+        VectorKernels.addTo(column, element.get(), w);
+      }
+    }
+    return new DenseVector(w, true);
+  }
+
   public Vector getColumn(int column) {
     if (column < 0 || column >= cardinality[COL]) {
       throw new IndexException(column, cardinality[COL]);
@@ -149,6 +149,61 @@ public class SparseRowMatrix extends AbstractMatrix {
     return this;
   }
 
+  @Override
+  public Vector times(Vector v) {
+    if (cardinality[COL] != v.size()) {
+      throw new CardinalityException(cardinality[COL], v.size());
+    }
+    if (!VectorKernels.isSupported(v)) {
+      return super.times(v);
+    }
+    double[] w = new double[cardinality[ROW]];
+    for (int row = 0; row < cardinality[ROW]; row++) {
+      Vector r = rows[row];
+      if (r != null) {
+        // iterates the sparse row and looks up the elements of v
+        w[row] = VectorKernels.isSupported(r) ? VectorKernels.dotProduct(r, v) : r.dot(v);
+      }
+    }
+    return new DenseVector(w, true);
+  }
+
+  @Override
+  public Vector timesSquared(Vector v) {
+    return timesSquared(v, 1);
+  }
+
+  /**
+   * Computes {@link #timesSquared(Vector)} with the rows split into up to {@code numThreads} ranges, which are summed
+   * up in parallel.
+   */
+  public Vector timesSquared(Vector v, int numThreads) {
+    return timesSquared(new Vector[] {v}, numThreads)[0];
+  }
+
+  /**
+   * Computes {@link #timesSquared(Vector)} for several vectors in a single pass over the rows, with the rows split
+   * into up to {@code numThreads} ranges, which are summed up in parallel.
+   *
+   * @param vectors vectors with cardinality equal to getNumCols() of the recipient
+   * @return new DenseVectors, one for each of the vectors
+   */
+  public Vector[] timesSquared(Vector[] vectors, int numThreads) {
+    Vector[] supported = new Vector[vectors.length];
+    for (int k = 0; k < vectors.length; k++) {
+      if (cardinality[COL] != vectors[k].size()) {
+        throw new CardinalityException(cardinality[COL], vectors[k].size());
+      }
+      supported[k] = VectorKernels.isSupported(vectors[k]) ? vectors[k] : new DenseVector(vectors[k]);
+    }
+    double[][] w = MatrixKernels.timesSquared(rows, supported, cardinality[COL], numThreads);
+    Vector[] result = new Vector[vectors.length];
+    for (int k = 0; k < vectors.length; k++) {
+      result[k] = new DenseVector(w[k], true);
+    }
+    return result;
+  }
+
   /**
    *
    * @param column an int column index
@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Iterator;
+
+import org.apache.mahout.math.function.IntDoubleProcedure;
+
+/**
+ * Type specific implementations of the dot product and of matrix times vector, which work directly on the
+ * storage of {@link DenseVector}, {@link RandomAccessSparseVector} and {@link SequentialAccessSparseVector}
+ * instead of going through {@link Vector#getQuick(int)} and {@link Vector#iterateNonZero()} for every element.
+ * The sparse operand is always the one that is iterated, and two sequential access vectors are merge-joined.
+ */
+final class VectorKernels {
+
+  private VectorKernels() {
+  }
+
+  /**
+   * @return true if {@link #dotProduct(Vector, Vector)} has a specific implementation for this vector
+   */
+  static boolean isSupported(Vector v) {
+    Vector u = unwrap(v);
+    return u instanceof DenseVector || u instanceof RandomAccessSparseVector
+        || u instanceof SequentialAccessSparseVector;
+  }
+
+  /**
+   * Computes the dot product of two vectors of the same size, both of which must be {@link #isSupported supported}.
+   */
+  static double dotProduct(Vector x, Vector y) {
+    Vector a = unwrap(x);
+    Vector b = unwrap(y);
+    if (a instanceof DenseVector) {
+      double[] values = ((DenseVector) a).getValues();
+      if (b instanceof DenseVector) {
+        return dot(values, ((DenseVector) b).getValues());
+      } else if (b instanceof SequentialAccessSparseVector) {
+        return dot(((SequentialAccessSparseVector) b).getMapping(), values);
+      } else {
+        return dot((RandomAccessSparseVector) b, values);
+      }
+    } else if (a instanceof SequentialAccessSparseVector) {
+      OrderedIntDoubleMapping mapping = ((SequentialAccessSparseVector) a).getMapping();
+      if (b instanceof DenseVector) {
+        return dot(mapping, ((DenseVector) b).getValues());
+      } else if (b instanceof SequentialAccessSparseVector) {
+        return dot(mapping, ((SequentialAccessSparseVector) b).getMapping());
+      } else {
+        return dot(mapping, b);
+      }
+    } else {
+      RandomAccessSparseVector randomAccess = (RandomAccessSparseVector) a;
+      if (b instanceof DenseVector) {
+        return dot(randomAccess, ((DenseVector) b).getValues());
+      } else if (b instanceof SequentialAccessSparseVector) {
+        return dot(((SequentialAccessSparseVector) b).getMapping(), randomAccess);
+      } else {
+        // iterate the smaller one, look up in the larger one
+        RandomAccessSparseVector other = (RandomAccessSparseVector) b;
+        if (randomAccess.getNumNondefaultElements() <= other.getNumNondefaultElements()) {
+          return dot(randomAccess, other);
+        } else {
+          return dot(other, randomAccess);
+        }
+      }
+    }
+  }
+
+  static double dot(double[] a, double[] b) {
+    // four independent sums, so that the additions don't all wait for each other
+    double sum0 = 0.0;
+    double sum1 = 0.0;
+    double sum2 = 0.0;
+    double sum3 = 0.0;
+    int end = a.length & ~3;
+    int i = 0;
+    for (; i < end; i += 4) {
+      sum0 += a[i] * b[i];
+      sum1 += a[i + 1] * b[i + 1];
+      sum2 += a[i + 2] * b[i + 2];
+      sum3 += a[i + 3] * b[i + 3];
+    }
+    for (; i < a.length; i++) {
+      sum0 += a[i] * b[i];
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+  static double dot(OrderedIntDoubleMapping a, double[] b) {
+    int[] indices = a.getIndices();
+    double[] values = a.getValues();
+    int numMappings = a.getNumMappings();
+    double result = 0.0;
+    for (int i = 0; i < numMappings; i++) {
+      result += values[i] * b[indices[i]];
+    }
+    return result;
+  }
+
+  static double dot(OrderedIntDoubleMapping a, Vector b) {
+    int[] indices = a.getIndices();
+    double[] values = a.getValues();
+    int numMappings = a.getNumMappings();
+    double result = 0.0;
+    for (int i = 0; i < numMappings; i++) {
+      result += values[i] * b.getQuick(indices[i]);
+    }
+    return result;
+  }
+
+  static double dot(OrderedIntDoubleMapping a, OrderedIntDoubleMapping b) {
+    int[] aIndices = a.getIndices();
+    double[] aValues = a.getValues();
+    int aNumMappings = a.getNumMappings();
+    int[] bIndices = b.getIndices();
+    double[] bValues = b.getValues();
+    int bNumMappings = b.getNumMappings();
+    double result = 0.0;
+    int i = 0;
+    int j = 0;
+    while (i < aNumMappings && j < bNumMappings) {
+      int aIndex = aIndices[i];
+      int bIndex = bIndices[j];
+      if (aIndex == bIndex) {
+        result += aValues[i++] * bValues[j++];
+      } else if (aIndex < bIndex) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return result;
+  }
+
+  static double dot(RandomAccessSparseVector a, final double[] b) {
+    DotProcedure dot = new DotProcedure() {
+      public boolean apply(int index, double value) {
+        sum += value * b[index];
+        return true;
+      }
+    };
+    a.forEachNonZero(dot);
+    return dot.sum;
+  }
+
+  static double dot(RandomAccessSparseVector a, final Vector b) {
+    DotProcedure dot = new DotProcedure() {
+      public boolean apply(int index, double value) {
+        sum += value * b.getQuick(index);
+        return true;
+      }
+    };
+    a.forEachNonZero(dot);
+    return dot.sum;
+  }
+
+  /**
+   * Multiplies the rows of a dense matrix with a vector that is {@link #isSupported supported}.
+   */
+  static double[] times(double[][] rows, Vector v) {
+    double[] result = new double[rows.length];
+    Vector u = unwrap(v);
+    if (u instanceof DenseVector) {
+      double[] values = ((DenseVector) u).getValues();
+      for (int row = 0; row < rows.length; row++) {
+        result[row] = dot(rows[row], values);
+      }
+    } else {
+      // gather the non-zero elements once, then each row is a sparse times dense product
+      int[] indices;
+      double[] values;
+      int numNonZeros;
+      if (u instanceof SequentialAccessSparseVector) {
+        OrderedIntDoubleMapping mapping = ((SequentialAccessSparseVector) u).getMapping();
+        indices = mapping.getIndices();
+        values = mapping.getValues();
+        numNonZeros = mapping.getNumMappings();
+      } else {
+        final int[] gatheredIndices = new int[u.getNumNondefaultElements()];
+        final double[] gatheredValues = new double[gatheredIndices.length];
+        ((RandomAccessSparseVector) u).forEachNonZero(new IntDoubleProcedure() {
+          private int i;
+          public boolean apply(int index, double value) {
+            gatheredIndices[i] = index;
+            gatheredValues[i++] = value;
+            return true;
+          }
+        });
+        indices = gatheredIndices;
+        values = gatheredValues;
+        numNonZeros = gatheredIndices.length;
+      }
+      for (int row = 0; row < rows.length; row++) {
+        double[] rowValues = rows[row];
+        double sum = 0.0;
+        for (int i = 0; i < numNonZeros; i++) {
+          sum += values[i] * rowValues[indices[i]];
+        }
+        result[row] = sum;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes {@code result += factor * v}, iterating only over the non-zero elements of v.
+   */
+  static void addTo(Vector v, final double factor, final double[] result) {
+    Vector u = unwrap(v);
+    if (u instanceof DenseVector) {
+      double[] values = ((DenseVector) u).getValues();
+      for (int i = 0; i < values.length; i++) {
+        result[i] += factor * values[i];
+      }
+    } else if (u instanceof SequentialAccessSparseVector) {
+      OrderedIntDoubleMapping mapping = ((SequentialAccessSparseVector) u).getMapping();
+      int[] indices = mapping.getIndices();
+      double[] values = mapping.getValues();
+      int numMappings = mapping.getNumMappings();
+      for (int i = 0; i < numMappings; i++) {
+        result[indices[i]] += factor * values[i];
+      }
+    } else if (u instanceof RandomAccessSparseVector) {
+      ((RandomAccessSparseVector) u).forEachNonZero(new IntDoubleProcedure() {
+        public boolean apply(int index, double value) {
+          result[index] += factor * value;
+          return true;
+        }
+      });
+    } else {
+      Iterator<Vector.Element> nonZeros = u.iterateNonZero();
+      while (nonZeros.hasNext()) {
+        Vector.Element element = nonZeros.next();
+        result[element.index()] += factor * element.get();
+      }
+    }
+  }
+
+  private static Vector unwrap(Vector v) {
+    return v instanceof NamedVector ? ((NamedVector) v).getDelegate() : v;
+  }
+
+  private abstract static class DotProcedure implements IntDoubleProcedure {
+    double sum;
+  }
+
+}
@@ -28,9 +28,17 @@ import java.util.List;
 
 /**
  * {@see http://www.hpl.hp.com/personal/Robert_Schreiber/papers/2008%20AAIM%20Netflix/netflix_aaim08(submitted).pdf}
+ *
+ * <p>{@link #solve(double[][], int[], double[], int, double, int)} keeps its intermediate matrices between calls, so
+ * instances using it must not be shared between threads.</p>
  */
 public class AlternateLeastSquaresSolver {
 
+  /** scratch space for Ai, reused across calls of the buffered solve */
+  private Matrix Ai;
+  /** scratch space for Vi, reused across calls of the buffered solve */
+  private Matrix Vi;
+
   public Vector solve(List<Vector> featureVectors, Vector ratingVector, double lambda, int numFeatures) {
 
     Preconditions.checkNotNull(featureVectors);
@@ -51,6 +59,54 @@ public class AlternateLeastSquaresSolver {
     return solve(Ai, Vi);
   }
 
+  /**
+   * computes the same solution as {@link #solve(List, Vector, double, int)} without materializing MiIi: the feature
+   * vectors are read directly from the rows of {@code featureMatrix} that are referenced by the first
+   * {@code numRatings} entries of {@code rowIndexes}, and Ai and Vi are accumulated into scratch matrices owned by
+   * this solver.
+   *
+   * @param featureMatrix the fixed side of the factorization, one row per user or item
+   * @param rowIndexes the rows of {@code featureMatrix} that belong to the rated users or items
+   * @param ratings the ratings, in the same order as {@code rowIndexes}
+   * @param numRatings the number of valid entries in {@code rowIndexes} and {@code ratings}
+   */
+  public Vector solve(double[][] featureMatrix, int[] rowIndexes, double[] ratings, int numRatings, double lambda,
+      int numFeatures) {
+
+    Preconditions.checkNotNull(featureMatrix);
+    Preconditions.checkArgument(numRatings > 0);
+    Preconditions.checkArgument(rowIndexes.length >= numRatings && ratings.length >= numRatings);
+
+    if (Ai == null || Ai.numRows() != numFeatures) {
+      Ai = new DenseMatrix(numFeatures, numFeatures);
+      Vi = new DenseMatrix(numFeatures, 1);
+    } else {
+      Ai.assign(0);
+      Vi.assign(0);
+    }
+
+    /* accumulate MiIi * t(MiIi) and MiIi * t(R(i,Ii)) in the order the unbuffered solve sums them up */
+    for (int n = 0; n < numRatings; n++) {
+      double[] featureVector = featureMatrix[rowIndexes[n]];
+      double rating = ratings[n];
+      for (int row = 0; row < numFeatures; row++) {
+        double value = featureVector[row];
+        for (int col = row; col < numFeatures; col++) {
+          Ai.setQuick(row, col, Ai.getQuick(row, col) + value * featureVector[col]);
+        }
+        Vi.setQuick(row, 0, Vi.getQuick(row, 0) + value * rating);
+      }
+    }
+    for (int row = 1; row < numFeatures; row++) {
+      for (int col = 0; col < row; col++) {
+        Ai.setQuick(row, col, Ai.getQuick(col, row));
+      }
+    }
+
+    addLambdaTimesNuiTimesE(Ai, lambda, numRatings);
+    return solve(Ai, Vi);
+  }
+
   Vector solve(Matrix Ai, Matrix Vi) {
     return new QRDecomposition(Ai).solve(Vi).getColumn(0);
   }
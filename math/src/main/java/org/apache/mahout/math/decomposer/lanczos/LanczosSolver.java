@@ -21,7 +21,10 @@ package org.apache.mahout.math.decomposer.lanczos;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.MatrixSlice;
@@ -62,6 +65,15 @@ import org.slf4j.LoggerFactory;
  * This can be made smarter if (when!) this proves to be a major bottleneck.  Of course, this step can be parallelized
  * as well.
  * </p>
+ * <p>
+ * Every step of the iteration makes a pass over the corpus.  With a {@link #setBlockSize(int) block size} b greater
+ * than one, the solver runs a block Lanczos iteration instead: it starts from b orthonormal vectors, and each pass
+ * multiplies b basis vectors at once, so desiredRank basis vectors take about desiredRank / b passes.  The projection
+ * of the corpus onto the basis is then block tridiagonal.  A block Krylov space of the same dimension captures the
+ * extreme singular values a bit less accurately, so it may pay to ask for a somewhat larger rank.  A
+ * {@link SparseRowMatrix} corpus is multiplied with {@link #setNumThreads(int) numThreads} threads, each of which
+ * sums up a range of the rows.
+ * </p>
  */
 public class LanczosSolver {
 
@@ -71,13 +83,19 @@ public class LanczosSolver {
 
   private static final double NANOS_IN_MILLI = 1.0e6;
 
+  /**
+   * Sections of {@link #solve} which are timed.  CORPUS_PASS is the part of ITERATE spent multiplying with the corpus.
+   */
   public enum TimingSection {
-    ITERATE, ORTHOGANLIZE, TRIDIAG_DECOMP, FINAL_EIGEN_CREATE
+    ITERATE, CORPUS_PASS, ORTHOGANLIZE, TRIDIAG_DECOMP, FINAL_EIGEN_CREATE
   }
 
   private final Map<TimingSection, Long> startTimes = new EnumMap<TimingSection, Long>(TimingSection.class);
   private final Map<TimingSection, Long> times = new EnumMap<TimingSection, Long>(TimingSection.class);
   protected double scaleFactor = 0.0;
+  private int blockSize = 1;
+  private int numThreads = 1;
+  private int numCorpusPasses;
 
   private static final class Scale implements DoubleFunction {
     private final double d;
@@ -103,6 +121,10 @@ public class LanczosSolver {
                     Matrix eigenVectors,
                     List<Double> eigenValues,
                     boolean isSymmetric) {
+    if (blockSize > 1) {
+      solveBlock(corpus, desiredRank, eigenVectors, eigenValues, isSymmetric);
+      return;
+    }
     log.info("Finding {} singular vectors of matrix with {} rows, via Lanczos", desiredRank, corpus.numRows());
     Vector currentVector = getInitialVector(corpus);
     Vector previousVector = new DenseVector(currentVector.size());
@@ -112,8 +134,8 @@ public class LanczosSolver {
     DoubleMatrix2D triDiag = new DenseDoubleMatrix2D(desiredRank, desiredRank);
     for (int i = 1; i < desiredRank; i++) {
       startTime(TimingSection.ITERATE);
-      Vector nextVector = isSymmetric ? corpus.times(currentVector) : corpus.timesSquared(currentVector);
-      log.info("{} passes through the corpus so far...", i);
+      Vector nextVector = pass(corpus, new Vector[] {currentVector}, isSymmetric)[0];
+      log.info("{} passes through the corpus so far...", numCorpusPasses);
       calculateScaleFactor(nextVector);
       nextVector.assign(new Scale(1 / scaleFactor));
       nextVector.assign(previousVector, new PlusMult(-beta));
@@ -141,6 +163,79 @@ public class LanczosSolver {
         triDiag.set(i, i - 1, beta);
       }
     }
+    createEigenVectors(basis, triDiag, corpus.numCols(), eigenVectors, eigenValues);
+  }
+
+  /**
+   * Block Lanczos: multiplies a block of basis vectors per pass, and orthogonalizes each of the results against all
+   * basis vectors found so far.  The projections are the entries of the block tridiagonal matrix, of which the lower
+   * half is kept, like the single vector iteration does.
+   */
+  private void solveBlock(VectorIterable corpus,
+                          int desiredRank,
+                          Matrix eigenVectors,
+                          List<Double> eigenValues,
+                          boolean isSymmetric) {
+    int size = Math.min(blockSize, desiredRank);
+    log.info("Finding {} singular vectors of matrix with {} rows, via block Lanczos with blocks of {}",
+             new Object[] {desiredRank, corpus.numRows(), size});
+    Matrix basis = new DenseMatrix(desiredRank, corpus.numCols());
+    Vector[] initialBlock = getInitialBlock(corpus, size);
+    for (int i = 0; i < size; i++) {
+      basis.assignRow(i, initialBlock[i]);
+    }
+    int numBasisVectors = size;
+    boolean exhausted = false;
+    DoubleMatrix2D triDiag = new DenseDoubleMatrix2D(desiredRank, desiredRank);
+    for (int blockStart = 0; blockStart < numBasisVectors; blockStart += size) {
+      int blockEnd = Math.min(blockStart + size, numBasisVectors);
+      Vector[] block = new Vector[blockEnd - blockStart];
+      for (int k = 0; k < block.length; k++) {
+        block[k] = basis.getRow(blockStart + k);
+      }
+      startTime(TimingSection.ITERATE);
+      Vector[] nextVectors = pass(corpus, block, isSymmetric);
+      log.info("{} passes through the corpus so far...", numCorpusPasses);
+      endTime(TimingSection.ITERATE);
+      for (int k = 0; k < nextVectors.length; k++) {
+        int column = blockStart + k;
+        Vector nextVector = nextVectors[k];
+        calculateScaleFactor(nextVector);
+        nextVector.assign(new Scale(1 / scaleFactor));
+        startTime(TimingSection.ORTHOGANLIZE);
+        for (int i = 0; i < numBasisVectors; i++) {
+          Vector basisVector = basis.getRow(i);
+          double alpha = nextVector.dot(basisVector);
+          triDiag.setQuick(i, column, alpha);
+          nextVector.assign(basisVector, new PlusMult(-alpha));
+        }
+        endTime(TimingSection.ORTHOGANLIZE);
+        if (numBasisVectors < desiredRank && !exhausted) {
+          double beta = nextVector.norm(2);
+          if (outOfRange(beta) || beta == 0.0) {
+            log.warn("Lanczos parameters out of range: beta = {}.  Not extending the basis any further!", beta);
+            exhausted = true;
+          } else {
+            triDiag.setQuick(numBasisVectors, column, beta);
+            nextVector.assign(new Scale(1 / beta));
+            basis.assignRow(numBasisVectors++, nextVector);
+          }
+        }
+      }
+    }
+    for (int i = 0; i < desiredRank; i++) {
+      for (int j = 0; j < i; j++) {
+        triDiag.setQuick(j, i, triDiag.getQuick(i, j));
+      }
+    }
+    createEigenVectors(basis, triDiag, corpus.numCols(), eigenVectors, eigenValues);
+  }
+
+  private void createEigenVectors(Matrix basis,
+                                  DoubleMatrix2D triDiag,
+                                  int numCols,
+                                  Matrix eigenVectors,
+                                  List<Double> eigenValues) {
     startTime(TimingSection.TRIDIAG_DECOMP);
 
     log.info("Lanczos iteration complete - now to diagonalize the tri-diagonal auxiliary matrix.");
@@ -153,7 +248,7 @@ public class LanczosSolver {
     startTime(TimingSection.FINAL_EIGEN_CREATE);
 
     for (int i = 0; i < basis.numRows() - 1; i++) {
-      Vector realEigen = new DenseVector(corpus.numCols());
+      Vector realEigen = new DenseVector(numCols);
       // the eigenvectors live as columns of V, in reverse order.  Weird but true.
       DoubleMatrix1D ejCol = eigenVects.viewColumn(basis.numRows() - i - 1);
       for (int j = 0; j < ejCol.size(); j++) {
@@ -169,6 +264,32 @@ public class LanczosSolver {
     endTime(TimingSection.FINAL_EIGEN_CREATE);
   }
 
+  /**
+   * Multiplies the vectors with the corpus, timing it as a pass over the corpus.
+   */
+  private Vector[] pass(VectorIterable corpus, Vector[] vectors, boolean isSymmetric) {
+    startTime(TimingSection.CORPUS_PASS);
+    Vector[] result = multiply(corpus, vectors, isSymmetric);
+    endTime(TimingSection.CORPUS_PASS);
+    numCorpusPasses++;
+    return result;
+  }
+
+  /**
+   * Computes corpus.times(v), or corpus.timesSquared(v) if the corpus is not symmetric, for all the vectors.  This
+   * should take a single pass over the corpus where it can.
+   */
+  protected Vector[] multiply(VectorIterable corpus, Vector[] vectors, boolean isSymmetric) {
+    if (!isSymmetric && corpus instanceof SparseRowMatrix) {
+      return ((SparseRowMatrix) corpus).timesSquared(vectors, numThreads);
+    }
+    Vector[] result = new Vector[vectors.length];
+    for (int k = 0; k < vectors.length; k++) {
+      result[k] = isSymmetric ? corpus.times(vectors[k]) : corpus.timesSquared(vectors[k]);
+    }
+    return result;
+  }
+
   protected void calculateScaleFactor(Vector nextVector) {
     if(scaleFactor == 0) {
       scaleFactor = nextVector.norm(2);
@@ -207,6 +328,28 @@ public class LanczosSolver {
     return v;
   }
 
+  /**
+   * @return {@code size} orthonormal vectors to start the block iteration with: the {@link #getInitialVector initial
+   * vector}, and random vectors orthogonalized against it
+   */
+  protected Vector[] getInitialBlock(VectorIterable corpus, int size) {
+    Vector[] block = new Vector[size];
+    block[0] = getInitialVector(corpus);
+    Random random = RandomUtils.getRandom();
+    for (int k = 1; k < size; k++) {
+      Vector v = new DenseVector(corpus.numCols());
+      for (int j = 0; j < v.size(); j++) {
+        v.setQuick(j, random.nextGaussian());
+      }
+      for (int i = 0; i < k; i++) {
+        v.assign(block[i], new PlusMult(-v.dot(block[i])));
+      }
+      v.assign(div(v.norm(2)));
+      block[k] = v;
+    }
+    return block;
+  }
+
   private void startTime(TimingSection section) {
     startTimes.put(section, System.nanoTime());
   }
@@ -219,7 +362,43 @@ public class LanczosSolver {
   }
 
   public double getTimeMillis(TimingSection section) {
-    return ((double) times.get(section)) / NANOS_IN_MILLI;
+    Long time = times.get(section);
+    return time == null ? 0.0 : time / NANOS_IN_MILLI;
+  }
+
+  /**
+   * @return the number of passes over the corpus made so far to multiply with it
+   */
+  public int getNumCorpusPasses() {
+    return numCorpusPasses;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * @param blockSize the number of vectors to multiply with the corpus in one pass; 1 runs the plain Lanczos iteration
+   */
+  public void setBlockSize(int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be at least 1: " + blockSize);
+    }
+    this.blockSize = blockSize;
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * @param numThreads the number of threads to multiply a {@link SparseRowMatrix} corpus with
+   */
+  public void setNumThreads(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("numThreads must be at least 1: " + numThreads);
+    }
+    this.numThreads = numThreads;
   }
 
 }
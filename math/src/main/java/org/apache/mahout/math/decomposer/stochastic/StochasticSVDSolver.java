@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.decomposer.stochastic;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.QRDecomposition;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorIterable;
+import org.apache.mahout.math.function.PlusMult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Randomized singular value decomposition, after Halko, Martinsson and Tropp, "Finding structure with randomness:
+ * Probabilistic algorithms for constructing approximate matrix decompositions".  It finds the top right singular
+ * vectors of a matrix A with a constant number of passes over A, unlike {@link
+ * org.apache.mahout.math.decomposer.lanczos.LanczosSolver}, which makes one pass per basis vector.</p>
+ * <p>
+ * The range of A<sup>t</sup>A is sampled by multiplying rank + oversampling random gaussian vectors with it, all in
+ * the same pass.  The products are orthonormalized with a {@link QRDecomposition}, and multiplied with
+ * A<sup>t</sup>A again for every power iteration, which sharpens the basis towards the top of the spectrum.  A last
+ * pass projects A<sup>t</sup>A onto the basis; the {@link SingularValueDecomposition} of the small projection gives
+ * the singular vectors in terms of the basis, and the squares of the singular values.  So the corpus is read
+ * powerIterations + 2 times.
+ * </p>
+ * <p>
+ * The basis is held in memory, rank + oversampling dense vectors with as many elements as the corpus has columns,
+ * just like the basis of the Lanczos iteration.  A {@link SparseRowMatrix} corpus is multiplied with
+ * {@link #setNumThreads(int) numThreads} threads; any other corpus is iterated over once per pass, unless a subclass
+ * knows how to {@link #multiply} it.
+ * </p>
+ */
+public class StochasticSVDSolver {
+
+  private static final Logger log = LoggerFactory.getLogger(StochasticSVDSolver.class);
+
+  private static final double NANOS_IN_MILLI = 1.0e6;
+
+  public enum TimingSection {
+    CORPUS_PASS, ORTHONORMALIZE, SMALL_SVD
+  }
+
+  private final Map<TimingSection, Long> startTimes = new EnumMap<TimingSection, Long>(TimingSection.class);
+  private final Map<TimingSection, Long> times = new EnumMap<TimingSection, Long>(TimingSection.class);
+  private int oversampling = 10;
+  private int powerIterations = 1;
+  private int numThreads = 1;
+  private int numCorpusPasses;
+
+  /**
+   * @param corpus the matrix A to decompose
+   * @param rank the number of singular vectors to find
+   * @param singularVectors receives the right singular vectors of A as its first rank rows, largest first
+   * @param singularValues receives the corresponding singular values of A
+   */
+  public void solve(VectorIterable corpus, int rank, Matrix singularVectors, List<Double> singularValues) {
+    int numCols = corpus.numCols();
+    int size = Math.min(rank + oversampling, numCols);
+    log.info("Finding {} singular vectors of matrix with {} rows, with {} random projections",
+             new Object[] {rank, corpus.numRows(), size});
+    Random random = RandomUtils.getRandom();
+    Vector[] basis = new Vector[size];
+    for (int k = 0; k < size; k++) {
+      basis[k] = new DenseVector(numCols);
+      for (int j = 0; j < numCols; j++) {
+        basis[k].setQuick(j, random.nextGaussian());
+      }
+    }
+    basis = orthonormalize(pass(corpus, basis));
+    for (int i = 0; i < powerIterations; i++) {
+      basis = orthonormalize(pass(corpus, basis));
+    }
+    Vector[] projected = pass(corpus, basis);
+
+    startTime(TimingSection.SMALL_SVD);
+    Matrix projection = new DenseMatrix(size, size);
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j <= i; j++) {
+        double d = (basis[i].dot(projected[j]) + basis[j].dot(projected[i])) / 2;
+        projection.setQuick(i, j, d);
+        projection.setQuick(j, i, d);
+      }
+    }
+    SingularValueDecomposition svd = new SingularValueDecomposition(projection);
+    Matrix u = svd.getU();
+    double[] eigenValues = svd.getSingularValues();
+    for (int r = 0; r < Math.min(rank, size); r++) {
+      Vector singularVector = new DenseVector(numCols);
+      for (int k = 0; k < size; k++) {
+        singularVector.assign(basis[k], new PlusMult(u.getQuick(k, r)));
+      }
+      singularVectors.assignRow(r, singularVector);
+      singularValues.add(Math.sqrt(eigenValues[r]));
+      log.info("Singular vector {} found with singular value {}", r, singularValues.get(r));
+    }
+    endTime(TimingSection.SMALL_SVD);
+    log.info("StochasticSVDSolver finished after {} passes through the corpus.", numCorpusPasses);
+  }
+
+  private Vector[] orthonormalize(Vector[] vectors) {
+    startTime(TimingSection.ORTHONORMALIZE);
+    Matrix columns = new DenseMatrix(vectors[0].size(), vectors.length);
+    for (int k = 0; k < vectors.length; k++) {
+      columns.assignColumn(k, vectors[k]);
+    }
+    Matrix q = new QRDecomposition(columns).getQ();
+    Vector[] orthonormal = new Vector[vectors.length];
+    for (int k = 0; k < vectors.length; k++) {
+      orthonormal[k] = new DenseVector(q.getColumn(k));
+    }
+    endTime(TimingSection.ORTHONORMALIZE);
+    return orthonormal;
+  }
+
+  private Vector[] pass(VectorIterable corpus, Vector[] vectors) {
+    startTime(TimingSection.CORPUS_PASS);
+    Vector[] result = multiply(corpus, vectors);
+    endTime(TimingSection.CORPUS_PASS);
+    numCorpusPasses++;
+    log.info("{} passes through the corpus so far...", numCorpusPasses);
+    return result;
+  }
+
+  /**
+   * Computes corpus.timesSquared(v) for all the vectors, in a single pass over the corpus.
+   */
+  protected Vector[] multiply(VectorIterable corpus, Vector[] vectors) {
+    if (corpus instanceof SparseRowMatrix) {
+      return ((SparseRowMatrix) corpus).timesSquared(vectors, numThreads);
+    }
+    Vector[] result = new Vector[vectors.length];
+    for (int k = 0; k < vectors.length; k++) {
+      result[k] = new DenseVector(corpus.numCols());
+    }
+    for (MatrixSlice slice : corpus) {
+      Vector row;
+      if (slice == null || (row = slice.vector()) == null) {
+        continue;
+      }
+      for (int k = 0; k < vectors.length; k++) {
+        double d = row.dot(vectors[k]);
+        if (d != 0.0) {
+          result[k].assign(row, new PlusMult(d));
+        }
+      }
+    }
+    return result;
+  }
+
+  private void startTime(TimingSection section) {
+    startTimes.put(section, System.nanoTime());
+  }
+
+  private void endTime(TimingSection section) {
+    Long time = times.get(section);
+    times.put(section, (time == null ? 0L : time) + (System.nanoTime() - startTimes.get(section)));
+  }
+
+  public double getTimeMillis(TimingSection section) {
+    Long time = times.get(section);
+    return time == null ? 0.0 : time / NANOS_IN_MILLI;
+  }
+
+  /**
+   * @return the number of passes over the corpus made so far to multiply with it
+   */
+  public int getNumCorpusPasses() {
+    return numCorpusPasses;
+  }
+
+  public int getOversampling() {
+    return oversampling;
+  }
+
+  /**
+   * @param oversampling the number of random vectors used in addition to the rank; the default is 10
+   */
+  public void setOversampling(int oversampling) {
+    if (oversampling < 0) {
+      throw new IllegalArgumentException("oversampling must not be negative: " + oversampling);
+    }
+    this.oversampling = oversampling;
+  }
+
+  public int getPowerIterations() {
+    return powerIterations;
+  }
+
+  /**
+   * @param powerIterations the number of extra passes which refine the basis; the default is 1
+   */
+  public void setPowerIterations(int powerIterations) {
+    if (powerIterations < 0) {
+      throw new IllegalArgumentException("powerIterations must not be negative: " + powerIterations);
+    }
+    this.powerIterations = powerIterations;
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * @param numThreads the number of threads to multiply a {@link SparseRowMatrix} corpus with
+   */
+  public void setNumThreads(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("numThreads must be at least 1: " + numThreads);
+    }
+    this.numThreads = numThreads;
+  }
+
+}
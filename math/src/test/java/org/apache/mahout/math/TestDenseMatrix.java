@@ -17,6 +17,11 @@
 
 package org.apache.mahout.math;
 
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
 public final class TestDenseMatrix extends MatrixTest {
 
   @Override
@@ -24,4 +29,51 @@ public final class TestDenseMatrix extends MatrixTest {
     return new DenseMatrix(values);
   }
 
+  @Test
+  public void testBlockedTimesIsExact() {
+    Random random = RandomUtils.getRandom();
+    // sizes that are not multiples of the block sizes
+    DenseMatrix a = randomMatrix(random, 150, 300);
+    DenseMatrix b = randomMatrix(random, 300, 530);
+    Matrix expected = new DenseMatrix(150, 530);
+    for (int row = 0; row < 150; row++) {
+      for (int col = 0; col < 530; col++) {
+        double sum = 0;
+        for (int k = 0; k < 300; k++) {
+          sum += a.getQuick(row, k) * b.getQuick(k, col);
+        }
+        expected.setQuick(row, col, sum);
+      }
+    }
+    assertEquals(expected, a.times((Matrix) b));
+    assertEquals(expected, a.times(b, 4));
+    assertEquals(expected, ((DenseMatrix) a.transpose()).transposeTimes((Matrix) b));
+    assertEquals(expected, ((DenseMatrix) a.transpose()).transposeTimes(b, 4));
+  }
+
+  @Test(expected = CardinalityException.class)
+  public void testTransposeTimesCardinality() {
+    new DenseMatrix(3, 2).transposeTimes(new DenseMatrix(2, 3));
+  }
+
+  private static DenseMatrix randomMatrix(Random random, int rows, int columns) {
+    DenseMatrix matrix = new DenseMatrix(rows, columns);
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < columns; col++) {
+        matrix.setQuick(row, col, random.nextGaussian());
+      }
+    }
+    return matrix;
+  }
+
+  private static void assertEquals(Matrix expected, Matrix actual) {
+    assertEquals(expected.numRows(), actual.numRows());
+    assertEquals(expected.numCols(), actual.numCols());
+    for (int row = 0; row < expected.numRows(); row++) {
+      for (int col = 0; col < expected.numCols(); col++) {
+        assertEquals(expected.getQuick(row, col), actual.getQuick(row, col), 0.0);
+      }
+    }
+  }
+
 }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+
+public final class TestDoubleBufferMatrix extends MatrixTest {
+
+  @Override
+  public Matrix matrixFactory(double[][] values) {
+    try {
+      File file = getTestTempFile("matrix.bin");
+      DoubleBufferMatrix.write(new DenseMatrix(values), file);
+      return DoubleBufferMatrix.map(file, true);
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  @Test
+  public void testWriteAndMapSparse() throws Exception {
+    Matrix sparse = new SparseRowMatrix(new int[] {3, 1000});
+    sparse.setQuick(0, 999, 1.5);
+    sparse.setQuick(2, 0, -2.0);
+    File file = getTestTempFile("sparse.bin");
+    DoubleBufferMatrix.write(sparse, file);
+    assertEquals(32 + 3 * 1000 * 8, file.length());
+
+    DoubleBufferMatrix mapped = DoubleBufferMatrix.map(file, false);
+    assertTrue(mapped.isMapped());
+    assertEquals(3, mapped.rowSize());
+    assertEquals(1000, mapped.columnSize());
+    assertEquals(1.5, mapped.getQuick(0, 999), EPSILON);
+    assertEquals(-2.0, mapped.getQuick(2, 0), EPSILON);
+    assertEquals(0.0, mapped.getQuick(1, 500), EPSILON);
+    assertEquals(-0.5, mapped.zSum(), EPSILON);
+  }
+
+  @Test
+  public void testRowsShareMemory() throws Exception {
+    DoubleBufferMatrix matrix = (DoubleBufferMatrix) test;
+    Vector row = matrix.getRow(1);
+    assertTrue(row instanceof DoubleBufferVector);
+    row.setQuick(0, 7.0);
+    assertEquals(7.0, matrix.getQuick(1, 0), EPSILON);
+    matrix.setQuick(1, 1, 8.0);
+    assertEquals(8.0, row.getQuick(1), EPSILON);
+    assertEquals(7.0 * 2.0 + 8.0 * 3.0, row.dot(new DenseVector(new double[] {2.0, 3.0})), EPSILON);
+  }
+
+  @Test
+  public void testModificationsAreWrittenToFile() throws Exception {
+    File file = getTestTempFile("writable.bin");
+    DoubleBufferMatrix matrix = DoubleBufferMatrix.create(file, 2, 3);
+    matrix.assignRow(1, new DenseVector(new double[] {1.0, 2.0, 3.0}));
+    matrix.force();
+    Matrix mapped = DoubleBufferMatrix.map(file, false);
+    assertEquals(0.0, mapped.getQuick(0, 2), EPSILON);
+    assertEquals(3.0, mapped.getQuick(1, 2), EPSILON);
+  }
+
+  @Test(expected = ReadOnlyBufferException.class)
+  public void testReadOnly() throws Exception {
+    File file = getTestTempFile("readonly.bin");
+    DoubleBufferMatrix.write(test, file);
+    DoubleBufferMatrix.map(file, false).getRow(0).setQuick(0, 1.0);
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAMatrixFile() throws Exception {
+    File file = getTestTempFile("garbage.bin");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[64]);
+    } finally {
+      out.close();
+    }
+    DoubleBufferMatrix.map(file, false);
+  }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+
+public final class TestDoubleBufferVector extends AbstractTestVector {
+
+  @Override
+  Vector generateTestVector(int cardinality) {
+    return new DoubleBufferVector(cardinality);
+  }
+
+  @Override
+  public void testSize() throws Exception {
+    assertEquals("size", 7, getTestVector().getNumNondefaultElements());
+  }
+
+  @Test
+  public void testViewsBuffer() {
+    DoubleBuffer buffer = DoubleBuffer.wrap(new double[] {1.0, 2.0, 3.0, 4.0});
+    buffer.position(1);
+    buffer.limit(3);
+    Vector vector = new DoubleBufferVector(buffer);
+    assertEquals(2, vector.size());
+    assertEquals(2.0, vector.getQuick(0), EPSILON);
+    vector.setQuick(1, 5.0);
+    assertEquals(5.0, buffer.get(2), EPSILON);
+    assertEquals(2.0 * 2.0 + 5.0 * 5.0, vector.getLengthSquared(), EPSILON);
+  }
+
+  @Test
+  public void testReadOnly() {
+    DoubleBufferVector vector = new DoubleBufferVector(DoubleBuffer.wrap(new double[] {1.0, 2.0}).asReadOnlyBuffer());
+    assertTrue(vector.isReadOnly());
+    try {
+      vector.setQuick(0, 3.0);
+      fail("Should throw ReadOnlyBufferException");
+    } catch (ReadOnlyBufferException robe) {
+      // good
+    }
+    DoubleBufferVector copy = vector.clone();
+    assertFalse(copy.isReadOnly());
+    copy.setQuick(0, 3.0);
+    assertEquals(3.0, copy.getQuick(0), EPSILON);
+    assertEquals(1.0, vector.getQuick(0), EPSILON);
+  }
+
+}
@@ -17,6 +17,9 @@
 
 package org.apache.mahout.math;
 
+import org.apache.mahout.math.function.IntDoubleProcedure;
+import org.junit.Test;
+
 public final class TestRandomAccessSparseVector extends AbstractTestVector {
 
   @Override
@@ -24,4 +27,24 @@ public final class TestRandomAccessSparseVector extends AbstractTestVector {
     return new RandomAccessSparseVector(cardinality);
   }
 
+  @Test
+  public void testForEachNonZero() {
+    RandomAccessSparseVector v = new RandomAccessSparseVector(10);
+    v.setQuick(7, 2.0);
+    v.setQuick(2, -1.0);
+    final Vector copy = new DenseVector(10);
+    assertTrue(v.forEachNonZero(new IntDoubleProcedure() {
+      public boolean apply(int index, double value) {
+        copy.setQuick(index, value);
+        return true;
+      }
+    }));
+    assertEquals(0.0, copy.getDistanceSquared(v), EPSILON);
+    assertFalse(v.forEachNonZero(new IntDoubleProcedure() {
+      public boolean apply(int index, double value) {
+        return false;
+      }
+    }));
+  }
+
 }
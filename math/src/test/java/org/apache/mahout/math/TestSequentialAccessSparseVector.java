@@ -17,6 +17,7 @@
 
 package org.apache.mahout.math;
 
+import org.apache.mahout.math.function.IntDoubleProcedure;
 import org.junit.Test;
 
 public final class TestSequentialAccessSparseVector extends AbstractTestVector {
@@ -40,5 +41,41 @@ public final class TestSequentialAccessSparseVector extends AbstractTestVector {
     assertEquals("dot2", -0.666666667, v.dot(w), EPSILON);
   }
 
+  @Test
+  public void testForEachNonZero() {
+    SequentialAccessSparseVector v = new SequentialAccessSparseVector(10);
+    v.setQuick(7, 2.0);
+    v.setQuick(2, -1.0);
+    final Vector copy = new DenseVector(10);
+    assertTrue(v.forEachNonZero(new IntDoubleProcedure() {
+      public boolean apply(int index, double value) {
+        copy.setQuick(index, value);
+        return true;
+      }
+    }));
+    assertEquals(0.0, copy.getDistanceSquared(v), EPSILON);
+    assertFalse(v.forEachNonZero(new IntDoubleProcedure() {
+      public boolean apply(int index, double value) {
+        return false;
+      }
+    }));
+  }
+
+  @Test
+  public void testAssignZero() {
+    SequentialAccessSparseVector v = new SequentialAccessSparseVector(10);
+    v.setQuick(7, 2.0);
+    v.setQuick(2, -1.0);
+    assertEquals(5.0, v.getLengthSquared(), EPSILON);
+    v.assign(0.0);
+    assertEquals(0, v.getNumNondefaultElements());
+    assertEquals(0.0, v.getLengthSquared(), EPSILON);
+    v.setQuick(9, 1.0);
+    v.setQuick(4, 3.0);
+    v.setQuick(9, 0.0);
+    assertEquals(1, v.getNumNondefaultElements());
+    assertEquals(3.0, v.getQuick(4), EPSILON);
+    assertEquals(0.0, v.getQuick(9), EPSILON);
+  }
 
-}
\ No newline at end of file
+}
@@ -17,6 +17,12 @@
 
 package org.apache.mahout.math;
 
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
 public final class TestSparseRowMatrix extends MatrixTest {
 
   @Override
@@ -31,5 +37,35 @@ public final class TestSparseRowMatrix extends MatrixTest {
     return matrix;
   }
 
+  @Test
+  public void testTimesSquaredInParallel() {
+    Random random = RandomUtils.getRandom();
+    int numRows = 2000;
+    int numCols = 1000;
+    Vector[] rows = new Vector[numRows];
+    for (int row = 0; row < numRows; row++) {
+      rows[row] = new SequentialAccessSparseVector(numCols);
+      for (int i = 0; i < 500; i++) {
+        rows[row].setQuick(random.nextInt(numCols), random.nextGaussian());
+      }
+    }
+    SparseRowMatrix matrix = new SparseRowMatrix(new int[] {numRows, numCols}, rows, true, false);
+    Vector[] vectors = new Vector[3];
+    for (int k = 0; k < vectors.length; k++) {
+      vectors[k] = new DenseVector(numCols).assign(Functions.random());
+    }
+    vectors[2] = new RandomAccessSparseVector(vectors[2]);
+
+    Vector[] parallel = matrix.timesSquared(vectors, 4);
+    for (int k = 0; k < vectors.length; k++) {
+      Vector expected = new DenseVector(numCols);
+      for (Vector row : rows) {
+        expected.assign(row, Functions.plusMult(row.dot(vectors[k])));
+      }
+      assertEquals(0.0, expected.minus(parallel[k]).norm(Double.POSITIVE_INFINITY), 1.0e-8 * expected.norm(2));
+      assertEquals(0.0, expected.minus(matrix.timesSquared(vectors[k])).norm(Double.POSITIVE_INFINITY),
+                   1.0e-8 * expected.norm(2));
+    }
+  }
 
 }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class TestVectorKernels extends MahoutTestCase {
+
+  private static final int SIZE = 200;
+
+  @Test
+  public void testDotForEveryCombination() {
+    Random random = RandomUtils.getRandom();
+    for (double density : new double[] {0.0, 0.05, 0.5, 1.0}) {
+      double[] a = randomValues(random, density);
+      double[] b = randomValues(random, 0.3);
+      double expected = 0.0;
+      for (int i = 0; i < SIZE; i++) {
+        expected += a[i] * b[i];
+      }
+      for (Vector x : vectors(a)) {
+        for (Vector y : vectors(b)) {
+          assertEquals(x.getClass().getSimpleName() + " . " + y.getClass().getSimpleName(), expected, x.dot(y),
+              EPSILON);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTimesForEveryCombination() {
+    Random random = RandomUtils.getRandom();
+    double[][] values = new double[SIZE / 2][];
+    for (int row = 0; row < values.length; row++) {
+      values[row] = randomValues(random, 0.1);
+    }
+    double[] v = randomValues(random, 0.2);
+    double[] expected = new double[values.length];
+    for (int row = 0; row < values.length; row++) {
+      for (int column = 0; column < SIZE; column++) {
+        expected[row] += values[row][column] * v[column];
+      }
+    }
+    Vector expectedVector = new DenseVector(expected);
+    int[] cardinality = {values.length, SIZE};
+    for (Matrix matrix : new Matrix[] {new DenseMatrix(values), new SparseRowMatrix(cardinality, true),
+        new SparseRowMatrix(cardinality, false), new SparseColumnMatrix(cardinality)}) {
+      for (int row = 0; row < values.length; row++) {
+        for (int column = 0; column < SIZE; column++) {
+          if (values[row][column] != 0.0) {
+            matrix.setQuick(row, column, values[row][column]);
+          }
+        }
+      }
+      for (Vector x : vectors(v)) {
+        Vector actual = matrix.times(x);
+        assertEquals(matrix.getClass().getSimpleName() + " * " + x.getClass().getSimpleName(), 0.0,
+            actual.getDistanceSquared(expectedVector), EPSILON);
+      }
+    }
+  }
+
+  private static double[] randomValues(Random random, double density) {
+    double[] values = new double[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      if (random.nextDouble() < density) {
+        values[i] = random.nextGaussian();
+      }
+    }
+    return values;
+  }
+
+  private static Vector[] vectors(double[] values) {
+    Vector dense = new DenseVector(values);
+    return new Vector[] {
+        dense,
+        new RandomAccessSparseVector(dense),
+        new SequentialAccessSparseVector(dense),
+        new NamedVector(new SequentialAccessSparseVector(dense), "named"),
+        dense.viewPart(0, SIZE)
+    };
+  }
+
+}
@@ -95,4 +95,22 @@ public class AlternateLeastSquaresSolverTest extends MahoutTestCase {
     } catch (IllegalArgumentException e) {}
   }
 
+  @Test
+  public void bufferedSolveMatchesUnbufferedSolve() {
+    double[][] features = { { 1, 2, 3 }, { 4, 5, 6 }, { 0.5, 0.1, 2 }, { 3, 1, 1 } };
+    int[] rowIndexes = { 3, 0, 2, 1 };
+    double[] ratings = { 5, 2, 4, 1 };
+
+    Vector expected = solver.solve(Arrays.<Vector>asList(new DenseVector(features[3]), new DenseVector(features[0]),
+        new DenseVector(features[2])), new DenseVector(new double[] { 5, 2, 4 }), 0.065, 3);
+
+    /* solve something else first to make sure the scratch matrices get reset */
+    solver.solve(features, rowIndexes, ratings, 4, 0.1, 3);
+    Vector actual = solver.solve(features, rowIndexes, ratings, 3, 0.065, 3);
+
+    for (int n = 0; n < 3; n++) {
+      assertEquals(expected.get(n), actual.get(n), EPSILON);
+    }
+  }
+
 }
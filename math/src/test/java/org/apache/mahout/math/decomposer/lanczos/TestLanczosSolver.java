@@ -52,6 +52,39 @@ public final class TestLanczosSolver extends SolverTest {
     assertEigen(eigens, gramMatrix, 0.1, true);
   }
 
+  @Test
+  public void testBlockLanczosSolver() throws Exception {
+    int numColumns = 800;
+    Matrix corpus = randomSequentialAccessSparseMatrix(1000, 900, numColumns, 30, 1.0);
+    int rank = 50;
+    Matrix eigens = new DenseMatrix(rank, numColumns);
+    LanczosSolver solver = new LanczosSolver();
+    solver.setBlockSize(5);
+    solver.setNumThreads(2);
+    solver.solve(corpus, rank, eigens, new ArrayList<Double>(), false);
+    assertEquals(10, solver.getNumCorpusPasses());
+    assertTrue(solver.getTimeMillis(LanczosSolver.TimingSection.CORPUS_PASS)
+        <= solver.getTimeMillis(LanczosSolver.TimingSection.ITERATE));
+    assertOrthonormal(eigens);
+    // the block Krylov space approximates the top of the spectrum best
+    assertEigen(eigens, corpus, rank / 2, 0.1, false);
+  }
+
+  @Test
+  public void testBlockLanczosSolverSymmetric() throws Exception {
+    int numColumns = 400;
+    Matrix corpus = randomSequentialAccessSparseMatrix(500, 450, numColumns, 10, 1.0);
+    Matrix gramMatrix = corpus.times(corpus.transpose());
+    int rank = 30;
+    Matrix eigens = new DenseMatrix(rank, gramMatrix.numCols());
+    LanczosSolver solver = new LanczosSolver();
+    solver.setBlockSize(3);
+    solver.solve(gramMatrix, rank, eigens, new ArrayList<Double>(), true);
+    assertEquals(10, solver.getNumCorpusPasses());
+    assertOrthonormal(eigens);
+    assertEigen(eigens, gramMatrix, rank / 2, 0.1, true);
+  }
+
   public static long timeLanczos(Matrix corpus, Matrix eigens, int rank, boolean symmetric) {
     long start = System.currentTimeMillis();
 
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.decomposer.stochastic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.decomposer.SolverTest;
+import org.junit.Test;
+
+public final class TestStochasticSVDSolver extends SolverTest {
+
+  @Test
+  public void testStochasticSVDSolver() throws Exception {
+    int numColumns = 800;
+    Matrix corpus = randomSequentialAccessSparseMatrix(1000, 900, numColumns, 30, 1.0);
+    int rank = 10;
+    Matrix singularVectors = new DenseMatrix(rank, numColumns);
+    List<Double> singularValues = new ArrayList<Double>();
+    StochasticSVDSolver solver = new StochasticSVDSolver();
+    solver.setOversampling(20);
+    solver.setPowerIterations(2);
+    solver.setNumThreads(2);
+    solver.solve(corpus, rank, singularVectors, singularValues);
+
+    assertEquals(4, solver.getNumCorpusPasses());
+    assertEquals(rank, singularValues.size());
+    assertOrthonormal(singularVectors);
+    assertEigen(singularVectors, corpus, rank, 0.1, false);
+    for (int i = 0; i < rank; i++) {
+      Vector v = singularVectors.getRow(i);
+      double sigma = singularValues.get(i);
+      assertEquals(v.dot(corpus.timesSquared(v)), sigma * sigma, 1.0e-3 * sigma * sigma);
+      if (i > 0) {
+        assertTrue(sigma <= singularValues.get(i - 1));
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsSingularValueDecomposition() {
+    // a decaying spectrum, which is where random projections work well
+    Random random = RandomUtils.getRandom();
+    Matrix corpus = new DenseMatrix(300, 100);
+    for (int row = 0; row < corpus.numRows(); row++) {
+      for (int col = 0; col < corpus.numCols(); col++) {
+        corpus.setQuick(row, col, random.nextGaussian() * Math.pow(0.9, col));
+      }
+    }
+    int rank = 5;
+    Matrix singularVectors = new DenseMatrix(rank, corpus.numCols());
+    List<Double> singularValues = new ArrayList<Double>();
+    StochasticSVDSolver solver = new StochasticSVDSolver();
+    solver.solve(corpus, rank, singularVectors, singularValues);
+    assertEquals(3, solver.getNumCorpusPasses());
+
+    SingularValueDecomposition svd = new SingularValueDecomposition(corpus);
+    double[] expectedValues = svd.getSingularValues();
+    Matrix expectedVectors = svd.getV();
+    for (int i = 0; i < rank; i++) {
+      assertEquals(expectedValues[i], singularValues.get(i), 1.0e-4 * expectedValues[i]);
+      double cosine = Math.abs(singularVectors.getRow(i).dot(expectedVectors.getColumn(i)));
+      assertEquals(1.0, cosine, 1.0e-3);
+    }
+  }
+
+}
@@ -62,6 +62,11 @@ import org.apache.mahout.math.VectorWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Quick timings of the vector operations and distance measures over one set of random vectors. The numbers include
+ * no warm-up control, so use the JMH benchmarks of the mahout-benchmark module ({@code mvn -Pbenchmark package}) to
+ * compare implementations or releases.
+ */
 public class VectorBenchmarks implements Summarizable {
 
   private static final Logger log = LoggerFactory.getLogger(VectorBenchmarks.class);